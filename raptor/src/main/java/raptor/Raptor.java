@@ -32,6 +32,7 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 
+import raptor.chat.ChatLogWriter;
 import raptor.connector.Connector;
 import raptor.connector.fics.FicsConnector;
 import raptor.international.L10n;
@@ -39,10 +40,14 @@ import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
 import raptor.service.ActionScriptService;
 import raptor.service.AliasService;
+import raptor.service.BlunderCheckService;
 import raptor.service.ChessBoardCacheService;
+import raptor.service.ClockService;
 import raptor.service.ConnectorService;
 import raptor.service.DictionaryService;
 import raptor.service.EcoService;
+import raptor.service.EngineSupervisorService;
+import raptor.service.EvaluationCacheService;
 import raptor.service.MemoService;
 import raptor.service.ScriptService;
 import raptor.service.SoundService;
@@ -551,6 +556,14 @@ public class Raptor implements PreferenceKeys {
 	    }
 	}
 
+	if (ClockService.serviceCreated) {
+	    try {
+		ClockService.getInstance().dispose();
+	    } catch (Throwable t) {
+		LOG.warn("Error shutting ClockService", t);
+	    }
+	}
+
 	if (ThemeService.serviceCreated) {
 	    try {
 		ThemeService.getInstance().dispose();
@@ -559,6 +572,22 @@ public class Raptor implements PreferenceKeys {
 	    }
 	}
 
+	if (BlunderCheckService.serviceCreated) {
+	    try {
+		BlunderCheckService.getInstance().dispose();
+	    } catch (Throwable t) {
+		LOG.warn("Error shutting BlunderCheckService", t);
+	    }
+	}
+
+	if (EngineSupervisorService.serviceCreated) {
+	    try {
+		EngineSupervisorService.getInstance().dispose();
+	    } catch (Throwable t) {
+		LOG.warn("Error shutting EngineSupervisorService", t);
+	    }
+	}
+
 	if (UCIEngineService.serviceCreated) {
 	    try {
 		UCIEngineService.getInstance().dispose();
@@ -567,6 +596,14 @@ public class Raptor implements PreferenceKeys {
 	    }
 	}
 		
+	if (EvaluationCacheService.serviceCreated) {
+	    try {
+		EvaluationCacheService.getInstance().dispose();
+	    } catch (Throwable t) {
+		LOG.warn("Error shutting EvaluationCacheService", t);
+	    }
+	}
+
 	if (XboardEngineService.serviceCreated) {
 	    try {
 		XboardEngineService.getInstance().dispose();
@@ -629,6 +666,15 @@ public class Raptor implements PreferenceKeys {
 	    }
 	}
 
+	// Last, so the chat and memos written while shutting down reach disk.
+	if (ChatLogWriter.serviceCreated) {
+	    try {
+		ChatLogWriter.getInstance().dispose();
+	    } catch (Throwable t) {
+		LOG.warn("Error shutting down ChatLogWriter", t);
+	    }
+	}
+
 	try {
 	    if (raptorWindow != null && !raptorWindow.getShell().isDisposed()) {
 		raptorWindow.close();
@@ -14,14 +14,15 @@
 package raptor.action;
 
 import raptor.Raptor;
+import raptor.script.CompiledScript;
 import raptor.script.ScriptContext;
-import bsh.Interpreter;
 
 /**
  * A RaptorAction executed from a script.
  */
 public class ScriptedAction extends AbstractRaptorAction {
 	protected String script;
+	protected CompiledScript compiledScript;
 
 	public ScriptedAction() {
 	}
@@ -60,9 +61,15 @@ public class ScriptedAction extends AbstractRaptorAction {
 									+ " because a ScriptContext could not be created from a null connector.");
 		} else {
 			try {
-				Interpreter interpeter = new Interpreter();
-				interpeter.set("context", context);
-				interpeter.eval(script);
+				CompiledScript toExecute;
+				synchronized (this) {
+					if (compiledScript == null) {
+						compiledScript = new CompiledScript(getName(), "",
+								script);
+					}
+					toExecute = compiledScript;
+				}
+				toExecute.execute(context);
 			} catch (Throwable t) {
 				Raptor.getInstance().onError(
 						"Error executing script " + getName(), t);
@@ -75,7 +82,8 @@ public class ScriptedAction extends AbstractRaptorAction {
 	 * 
 	 * @param script
 	 */
-	public void setScript(String script) {
+	public synchronized void setScript(String script) {
 		this.script = script;
+		compiledScript = null;
 	}
 }
\ No newline at end of file
@@ -15,14 +15,16 @@ package raptor.alias;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 
 import raptor.Raptor;
 import raptor.chat.ChatEvent;
+import raptor.chat.ChatLogger;
+import raptor.chat.ChatQuery;
 import raptor.chat.ChatType;
-import raptor.chat.ChatLogger.ChatEventParseListener;
 import raptor.service.ThreadService;
 import raptor.swt.chat.ChatConsoleController;
 import raptor.util.RaptorRunnable;
@@ -32,6 +34,21 @@ public class ShowRegexAlias extends RaptorAlias {
 	private static final SimpleDateFormat FORMAT = new SimpleDateFormat(
 			"'['hh:mma']'");
 
+	/**
+	 * The chat types searched, everything except chat which isn't
+	 * conversation.
+	 */
+	private static final ChatType[] SEARCHED_TYPES;
+	static {
+		EnumSet<ChatType> types = EnumSet.allOf(ChatType.class);
+		types.removeAll(EnumSet.of(ChatType.INTERNAL,
+				ChatType.BUGWHO_AVAILABLE_TEAMS, ChatType.BUGWHO_GAMES,
+				ChatType.BUGWHO_UNPARTNERED_BUGGERS, ChatType.SEEKS,
+				ChatType.CHALLENGE, ChatType.OUTBOUND, ChatType.MOVES,
+				ChatType.PLAYING_STATISTICS, ChatType.UNKNOWN));
+		SEARCHED_TYPES = types.toArray(new ChatType[types.size()]);
+	}
+
 	public ShowRegexAlias() {
 		super(
 				"=regex",
@@ -54,63 +71,41 @@ public class ShowRegexAlias extends RaptorAlias {
 						+ command + ".\n" + getUsage());
 			} else {
 				final Pattern regExPattern = RegExUtils.getPattern(whatsLeft);
+				if (regExPattern == null) {
+					return new RaptorAliasResult(null,
+							"Invalid regular expression: " + whatsLeft);
+				}
 				ThreadService.getInstance().run(new Runnable() {
 					public void run() {
-						final StringBuilder builder = new StringBuilder(5000);
-						controller.getConnector().getChatService()
-								.getChatLogger().parseFile(
-										new ChatEventParseListener() {
-											public boolean onNewEventParsed(
-													ChatEvent event) {
-												if (event.getType() != ChatType.INTERNAL
-														&& event.getType() != ChatType.BUGWHO_AVAILABLE_TEAMS
-														&& event.getType() != ChatType.BUGWHO_GAMES
-														&& event.getType() != ChatType.BUGWHO_UNPARTNERED_BUGGERS
-														&& event.getType() != ChatType.SEEKS
-														&& event.getType() != ChatType.CHALLENGE
-														&& event.getType() != ChatType.OUTBOUND
-														&& event.getType() != ChatType.MOVES
-														&& event.getType() != ChatType.PLAYING_STATISTICS
-														&& event.getType() != ChatType.UNKNOWN
-														&& RegExUtils
-																.matches(
-																		regExPattern,
-																		event
-																				.getMessage())) {
-                                                    builder.append(FORMAT
-                                                            .format(new Date(
-                                                                    event
-                                                                            .getTime()))).append(event
-                                                            .getMessage()
-                                                            .trim()).append("\n");
-												}
-												return true;
-											}
+						ChatLogger logger = controller.getConnector()
+								.getChatService().getChatLogger();
+						ChatQuery query = new ChatQuery();
+						query.setTypes(SEARCHED_TYPES);
+						query.setPattern(regExPattern);
+						query.setFromTime(logger.getSessionStartTime());
 
-											public void onParseCompleted() {
-												Raptor
-														.getInstance()
-														.getDisplay()
-														.asyncExec(
-																new RaptorRunnable(
-																		controller
-																				.getConnector()) {
-																	@Override
-																	public void execute() {
-
-																		controller
-																				.onAppendChatEventToInputText(new ChatEvent(
-																						null,
-																						ChatType.INTERNAL,
-																						"All messages matching "
-																								+ whatsLeft
-																								+ " since you logged in:\n"
-																								+ builder));
-																	}
-																});
-											}
-										});
+						final StringBuilder builder = new StringBuilder(5000);
+						for (ChatEvent event : logger.search(query)) {
+							builder.append(
+									FORMAT.format(new Date(event.getTime())))
+									.append(event.getMessage().trim()).append(
+											"\n");
+						}
 
+						Raptor.getInstance().getDisplay().asyncExec(
+								new RaptorRunnable(controller.getConnector()) {
+									@Override
+									public void execute() {
+										controller
+												.onAppendChatEventToInputText(new ChatEvent(
+														null,
+														ChatType.INTERNAL,
+														"All messages matching "
+																+ whatsLeft
+																+ " since you logged in:\n"
+																+ builder));
+									}
+								});
 					}
 				});
 				return new RaptorAliasResult(null,
@@ -21,8 +21,9 @@ import org.apache.commons.lang.math.NumberUtils;
 
 import raptor.Raptor;
 import raptor.chat.ChatEvent;
+import raptor.chat.ChatLogger;
+import raptor.chat.ChatQuery;
 import raptor.chat.ChatType;
-import raptor.chat.ChatLogger.ChatEventParseListener;
 import raptor.service.ThreadService;
 import raptor.swt.chat.ChatConsoleController;
 import raptor.util.RaptorRunnable;
@@ -52,155 +53,61 @@ public class ShowTellsAlias extends RaptorAlias {
 			if (whatsLeft.contains(" ")) {
 				return new RaptorAliasResult(null, "Invalid command: "
 						+ command + ".\n" + getUsage());
-			} else if (StringUtils.isBlank(whatsLeft)) {
-				ThreadService.getInstance().run(new Runnable() {
-					public void run() {
-						final StringBuilder builder = new StringBuilder(5000);
-						controller.getConnector().getChatService()
-								.getChatLogger().parseFile(
-										new ChatEventParseListener() {
-											public boolean onNewEventParsed(
-													ChatEvent event) {
-												if (event.getType() == ChatType.TELL) {
-                                                    builder.append(FORMAT
-                                                            .format(new Date(
-                                                                    event
-                                                                            .getTime()))).append(event
-                                                            .getMessage()
-                                                            .trim()).append("\n");
-												}
-												return true;
-											}
-
-											public void onParseCompleted() {
-												Raptor
-														.getInstance()
-														.getDisplay()
-														.asyncExec(
-																new RaptorRunnable(
-																		controller
-																				.getConnector()) {
-																	@Override
-																	public void execute() {
-																		controller
-																				.onAppendChatEventToInputText(new ChatEvent(
-																						null,
-																						ChatType.INTERNAL,
-																						"All direct tells sent since you logged in:\n"
-																								+ builder));
-																	}
-																});
-											}
-										});
-
-					}
-				});
-				return new RaptorAliasResult(null,
-						"Your request is being processed. This may take a moment");
+			}
 
+			ChatQuery query = new ChatQuery();
+			String header;
+			if (StringUtils.isBlank(whatsLeft)) {
+				query.setTypes(ChatType.TELL);
+				header = "All direct tells sent since you logged in:\n";
 			} else if (NumberUtils.isDigits(whatsLeft)) {
-				ThreadService.getInstance().run(new Runnable() {
-					public void run() {
-						final StringBuilder builder = new StringBuilder(5000);
-						controller.getConnector().getChatService()
-								.getChatLogger().parseFile(
-										new ChatEventParseListener() {
-											public boolean onNewEventParsed(
-													ChatEvent event) {
-												if (event.getType() == ChatType.CHANNEL_TELL
-														&& StringUtils
-																.equals(
-																		event
-																				.getChannel(),
-																		whatsLeft)) {
-                                                    builder.append(FORMAT
-                                                            .format(new Date(
-                                                                    event
-                                                                            .getTime()))).append(event
-                                                            .getMessage()
-                                                            .trim()).append("\n");
-												}
-												return true;
-											}
-
-											public void onParseCompleted() {
-												Raptor.getInstance()
-														.getDisplay()
-														.asyncExec(
-																new Runnable() {
-
-																	public void run() {
-																		controller
-																				.onAppendChatEventToInputText(new ChatEvent(
-																						null,
-																						ChatType.INTERNAL,
-																						"All "
-																								+ whatsLeft
-																								+ " tells sent since you logged in:\n"
-																								+ builder));
-																	}
-																});
-											}
-										});
-
-					}
-				});
-				return new RaptorAliasResult(null,
-						"Your request is being processed. This may take a moment");
+				query.setTypes(ChatType.CHANNEL_TELL);
+				query.setChannel(whatsLeft);
+				header = "All " + whatsLeft
+						+ " tells sent since you logged in:\n";
 			} else {
-				ThreadService.getInstance().run(new Runnable() {
-					public void run() {
-						final StringBuilder builder = new StringBuilder(5000);
-						controller.getConnector().getChatService()
-								.getChatLogger().parseFile(
-										new ChatEventParseListener() {
-											public boolean onNewEventParsed(
-													ChatEvent event) {
-												if (event.getType() == ChatType.TELL
-														&& StringUtils
-																.startsWithIgnoreCase(
-																		event
-																				.getSource(),
-																		whatsLeft)) {
-                                                    builder.append(FORMAT
-                                                            .format(new Date(
-                                                                    event
-                                                                            .getTime()))).append(event
-                                                            .getMessage()
-                                                            .trim()).append("\n");
-												}
-												return true;
-											}
-
-											public void onParseCompleted() {
-												Raptor
-														.getInstance()
-														.getDisplay()
-														.asyncExec(
-																new RaptorRunnable(
-																		controller
-																				.getConnector()) {
-																	@Override
-																	public void execute() {
-																		controller
-																				.onAppendChatEventToInputText(new ChatEvent(
-																						null,
-																						ChatType.INTERNAL,
-																						"All "
-																								+ whatsLeft
-																								+ " tells sent since you logged in:\n"
-																								+ builder));
-																	}
-																});
-											}
-										});
-
-					}
-				});
-				return new RaptorAliasResult(null,
-						"Your request is being processed. This may take a moment");
+				query.setTypes(ChatType.TELL);
+				query.setSource(whatsLeft);
+				query.setSourcePrefix(true);
+				header = "All " + whatsLeft
+						+ " tells sent since you logged in:\n";
 			}
+			showTells(controller, query, header);
+			return new RaptorAliasResult(null,
+					"Your request is being processed. This may take a moment");
 		}
 		return null;
 	}
+
+	/**
+	 * Searches the chat logged since the connector was created and appends
+	 * the matches to the controller.
+	 */
+	protected void showTells(final ChatConsoleController controller,
+			final ChatQuery query, final String header) {
+		ThreadService.getInstance().run(new Runnable() {
+			public void run() {
+				ChatLogger logger = controller.getConnector().getChatService()
+						.getChatLogger();
+				query.setFromTime(logger.getSessionStartTime());
+
+				final StringBuilder builder = new StringBuilder(5000);
+				for (ChatEvent event : logger.search(query)) {
+					builder.append(FORMAT.format(new Date(event.getTime())))
+							.append(event.getMessage().trim()).append("\n");
+				}
+
+				Raptor.getInstance().getDisplay().asyncExec(
+						new RaptorRunnable(controller.getConnector()) {
+							@Override
+							public void execute() {
+								controller
+										.onAppendChatEventToInputText(new ChatEvent(
+												null, ChatType.INTERNAL, header
+														+ builder));
+							}
+						});
+			}
+		});
+	}
 }
@@ -0,0 +1,205 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chat;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads chat events written by ChatEventWriter, whose documentation describes
+ * the format. Type names in a block header which are no longer ChatTypes are
+ * read as ChatType.UNKNOWN.
+ * 
+ * This class is not thread safe.
+ */
+public class ChatEventReader {
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+	protected InputStream in;
+	protected ChatType[] types;
+	protected List<String> strings = new ArrayList<String>();
+	protected long lastTime;
+	protected byte[] buffer = new byte[256];
+	protected int position;
+	protected int limit;
+
+	public ChatEventReader(InputStream in) {
+		this.in = in instanceof BufferedInputStream ? in
+				: new BufferedInputStream(in);
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Returns the next event, or null at the end of the stream.
+	 * 
+	 * @throws IOException
+	 *             If the stream is not in this format, or ends within a
+	 *             record.
+	 */
+	public ChatEvent read() throws IOException {
+		int first;
+		while ((first = in.read()) == 0) {
+			readHeader();
+		}
+		if (first == -1) {
+			return null;
+		}
+		if (types == null) {
+			throw new IOException("Not a chat event stream");
+		}
+
+		int length = readVarInt(first);
+		if (length < 0) {
+			throw new IOException("Invalid chat event record length");
+		}
+		if (length > buffer.length) {
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		}
+		readFully(buffer, length);
+		position = 0;
+		limit = length;
+
+		ChatEvent result = new ChatEvent();
+		long delta = getVarLong();
+		lastTime += delta >>> 1 ^ -(delta & 1);
+		result.time = lastTime;
+		int type = getVarInt();
+		if (type > types.length) {
+			throw new IOException("Invalid chat type " + type);
+		}
+		result.type = type == 0 ? null : types[type - 1];
+		result.gameId = getString();
+		result.channel = getString();
+		result.source = getString();
+		int messageLength = getVarInt();
+		if (messageLength > 0) {
+			result.message = getUtf8(messageLength - 1);
+		}
+		return result;
+	}
+
+	protected String getString() throws IOException {
+		int reference = getVarInt();
+		if (reference == 0) {
+			return null;
+		} else if (reference == 1) {
+			String result = getUtf8(getVarInt());
+			strings.add(result);
+			return result;
+		} else if (reference - 2 < strings.size()) {
+			return strings.get(reference - 2);
+		} else {
+			throw new IOException("Invalid string reference " + reference);
+		}
+	}
+
+	protected String getUtf8(int byteCount) throws IOException {
+		if (byteCount > limit - position) {
+			throw new IOException("Chat event record is truncated");
+		}
+		String result = new String(buffer, position, byteCount, UTF8);
+		position += byteCount;
+		return result;
+	}
+
+	protected int getVarInt() throws IOException {
+		return (int) getVarLong();
+	}
+
+	protected long getVarLong() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position == limit) {
+				throw new IOException("Chat event record is truncated");
+			}
+			byte b = buffer[position++];
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new IOException("Invalid varint in chat event record");
+	}
+
+	protected void readFully(byte[] bytes, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int count = in.read(bytes, read, length - read);
+			if (count == -1) {
+				throw new EOFException("Chat event stream ends within a record");
+			}
+			read += count;
+		}
+	}
+
+	/**
+	 * Reads a block header, after its leading 0, and resets the block state.
+	 */
+	protected void readHeader() throws IOException {
+		byte[] header = new byte[ChatEventWriter.MAGIC.length + 1];
+		readFully(header, header.length);
+		for (int i = 0; i < ChatEventWriter.MAGIC.length; i++) {
+			if (header[i] != ChatEventWriter.MAGIC[i]) {
+				throw new IOException("Not a chat event stream");
+			}
+		}
+		int version = header[ChatEventWriter.MAGIC.length];
+		if (version > ChatEventWriter.VERSION) {
+			throw new IOException("Unsupported chat event format version "
+					+ version);
+		}
+
+		int count = readVarInt(in.read());
+		types = new ChatType[count];
+		for (int i = 0; i < count; i++) {
+			int length = readVarInt(in.read());
+			byte[] name = new byte[length];
+			readFully(name, length);
+			try {
+				types[i] = ChatType.valueOf(new String(name, UTF8));
+			} catch (IllegalArgumentException iae) {
+				types[i] = ChatType.UNKNOWN;
+			}
+		}
+		strings.clear();
+		lastTime = 0;
+	}
+
+	/**
+	 * Reads a varint from the stream whose first byte has been read.
+	 */
+	protected int readVarInt(int first) throws IOException {
+		int result = 0;
+		int b = first;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (b == -1) {
+				throw new EOFException("Chat event stream ends within a record");
+			}
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+			b = in.read();
+		}
+		throw new IOException("Invalid varint in chat event stream");
+	}
+}
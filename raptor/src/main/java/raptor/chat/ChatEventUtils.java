@@ -13,16 +13,74 @@
  */
 package raptor.chat;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
 import org.apache.commons.lang.StringUtils;
 
+import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
 
+/**
+ * The line based text form chat events were logged in before
+ * ChatEventWriter. It is still read to import and convert older logs.
+ */
 public class ChatEventUtils {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ChatEventUtils.class);
 
 	// Use low unicode ascii characters so a hacker can't defeat this feature.
 	public static final char FIELD_SEPARATOR = '\u0005';
 	public static final char NEW_LINE_REPLACEMENT = '\u0006';
 
+	/**
+	 * Converts a file of serialized chat events to the form ChatEventWriter
+	 * writes, replacing the target file. Lines which can't be read are
+	 * skipped. Returns the number of events converted.
+	 */
+	public static int convertTextLog(File textFile, File binaryFile)
+			throws IOException {
+		int result = 0;
+		BufferedReader reader = null;
+		ChatEventWriter writer = null;
+		try {
+			reader = new BufferedReader(new FileReader(textFile));
+			writer = new ChatEventWriter(new BufferedOutputStream(
+					new FileOutputStream(binaryFile)));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0) {
+					continue;
+				}
+				ChatEvent event;
+				try {
+					event = deserializeChatEvent(line);
+				} catch (Throwable t) {
+					LOG.warn("Skipping unreadable chat event in " + textFile
+							+ ": " + line, t);
+					continue;
+				}
+				writer.write(event);
+				result++;
+			}
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (Throwable t) {
+				}
+			}
+			if (writer != null) {
+				writer.close();
+			}
+		}
+		return result;
+	}
+
 	public static ChatEvent deserializeChatEvent(String lineOfText) {
 		RaptorStringTokenizer tok = new RaptorStringTokenizer(lineOfText, ""
 				+ FIELD_SEPARATOR, false);
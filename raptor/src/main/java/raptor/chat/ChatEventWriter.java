@@ -0,0 +1,249 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes chat events in a compact binary form which ChatEventReader reads
+ * back.
+ * 
+ * A stream is a series of blocks. A block starts with a header: a 0 byte, the
+ * bytes 'R' 'C' 'E', the format VERSION, then the number of ChatTypes followed
+ * by their names. Each record in the block is a varint length followed by:
+ * <ul>
+ * <li>the time, as a zigzag varint delta from the time of the previous record
+ * in the block,</li>
+ * <li>the position of the ChatType in the header plus one, 0 for null,</li>
+ * <li>the game id, channel and source, as string references,</li>
+ * <li>the message, as its UTF-8 byte count plus one, 0 for null, then the
+ * bytes.</li>
+ * </ul>
+ * A string reference is 0 for null, 1 followed by a new string which gets the
+ * next id in the block, or the id of an earlier string plus 2. Types are
+ * stored by position in the header rather than by ordinal, so adding a
+ * ChatType doesn't change how older files read.
+ * 
+ * Every writer starts a new block, so a file can be appended to by a new
+ * writer without reading it first. A new block is also started once a block
+ * holds MAX_STRINGS strings, which bounds the table a reader keeps.
+ * 
+ * This class is not thread safe.
+ */
+public class ChatEventWriter {
+	public static final int VERSION = 1;
+	public static final int MAX_STRINGS = 4096;
+
+	protected static final byte[] MAGIC = { 'R', 'C', 'E' };
+	protected static final byte[] HEADER = createHeader();
+
+	protected OutputStream out;
+	protected Map<String, Integer> strings = new HashMap<String, Integer>();
+	protected long lastTime;
+	protected boolean isBlockStarted;
+	protected byte[] buffer = new byte[256];
+	protected int size;
+	protected byte[] lengthBuffer = new byte[5];
+
+	/**
+	 * Creates a writer appending to out. Pass a buffered stream, records are
+	 * written with a few calls each.
+	 */
+	public ChatEventWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	protected static byte[] createHeader() {
+		ChatEventWriter writer = new ChatEventWriter(null);
+		writer.putByte(0);
+		for (byte b : MAGIC) {
+			writer.putByte(b);
+		}
+		writer.putByte(VERSION);
+		ChatType[] types = ChatType.values();
+		writer.putVarInt(types.length);
+		for (ChatType type : types) {
+			writer.putUtf8(type.name());
+		}
+		byte[] result = new byte[writer.size];
+		System.arraycopy(writer.buffer, 0, result, 0, writer.size);
+		return result;
+	}
+
+	/**
+	 * Returns the number of bytes UTF-8 encodes text in.
+	 */
+	protected static int getUtf8Length(String text) {
+		int length = text.length();
+		int result = length;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				// A pair takes four bytes, an unpaired surrogate one '?'.
+				if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(text.charAt(i + 1))) {
+					result += 2;
+					i++;
+				}
+			} else if (c >= 0x800) {
+				result += 2;
+			} else if (c >= 0x80) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes an event, starting a block first if needed, and returns the
+	 * number of bytes written.
+	 */
+	public int write(ChatEvent event) throws IOException {
+		int result = 0;
+		if (!isBlockStarted || strings.size() + 3 > MAX_STRINGS) {
+			out.write(HEADER);
+			result += HEADER.length;
+			strings.clear();
+			lastTime = 0;
+			isBlockStarted = true;
+		}
+
+		size = 0;
+		long delta = event.time - lastTime;
+		putVarLong(delta << 1 ^ delta >> 63);
+		lastTime = event.time;
+		putVarInt(event.type == null ? 0 : event.type.ordinal() + 1);
+		putString(event.gameId);
+		putString(event.channel);
+		putString(event.source);
+		if (event.message == null) {
+			putVarInt(0);
+		} else {
+			putUtf8(event.message, 1);
+		}
+
+		int lengthSize = 0;
+		int length = size;
+		while ((length & ~0x7F) != 0) {
+			lengthBuffer[lengthSize++] = (byte) (length & 0x7F | 0x80);
+			length >>>= 7;
+		}
+		lengthBuffer[lengthSize++] = (byte) length;
+		out.write(lengthBuffer, 0, lengthSize);
+		out.write(buffer, 0, size);
+		return result + lengthSize + size;
+	}
+
+	protected void ensureCapacity(int additional) {
+		if (size + additional > buffer.length) {
+			byte[] newBuffer = new byte[Math.max(size + additional,
+					buffer.length * 2)];
+			System.arraycopy(buffer, 0, newBuffer, 0, size);
+			buffer = newBuffer;
+		}
+	}
+
+	protected void putByte(int value) {
+		ensureCapacity(1);
+		buffer[size++] = (byte) value;
+	}
+
+	protected void putString(String value) {
+		if (value == null) {
+			putVarInt(0);
+			return;
+		}
+		Integer id = strings.get(value);
+		if (id != null) {
+			putVarInt(id + 2);
+		} else {
+			strings.put(value, strings.size());
+			putVarInt(1);
+			putUtf8(value);
+		}
+	}
+
+	/**
+	 * Puts the UTF-8 byte count of text as a varint, then the bytes.
+	 */
+	protected void putUtf8(String text) {
+		putUtf8(text, 0);
+	}
+
+	/**
+	 * Puts the UTF-8 byte count of text plus lengthBias as a varint, then the
+	 * bytes. Unpaired surrogates are written as '?'.
+	 */
+	protected void putUtf8(String text, int lengthBias) {
+		int byteCount = getUtf8Length(text);
+		putVarInt(byteCount + lengthBias);
+		ensureCapacity(byteCount);
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				buffer[size++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[size++] = (byte) (0xC0 | c >> 6);
+				buffer[size++] = (byte) (0x80 | c & 0x3F);
+			} else if (c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE) {
+				if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(text.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, text
+							.charAt(++i));
+					buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+					buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+					buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+					buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+				} else {
+					buffer[size++] = '?';
+				}
+			} else {
+				buffer[size++] = (byte) (0xE0 | c >> 12);
+				buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buffer[size++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	protected void putVarInt(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			buffer[size++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+
+	protected void putVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer[size++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+}
@@ -0,0 +1,533 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chat;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import raptor.Raptor;
+import raptor.util.RaptorLogger;
+
+/**
+ * A Singleton which writes every chat log from one background thread.
+ * Callers only queue records, so logging never blocks the thread dispatching
+ * chat events.
+ * 
+ * The writer thread keeps the files it writes open, up to MAX_OPEN_FILES in
+ * least recently used order, and closes files idle for IDLE_CLOSE_MILLIS.
+ * Records are taken off the queue in batches; the files written by a batch
+ * are flushed once at its end and synced to disk at most every
+ * SYNC_INTERVAL_MILLIS.
+ * 
+ * Files opened for rotation are renamed to name-yyyy-MM-dd.ext when a record
+ * for a new day arrives or the file grows past MAX_FILE_BYTES. A suffix is
+ * added if a file of that name exists.
+ * 
+ * Deleting and flushing are queued like writes, so they take effect after
+ * every record queued before them. If the queue is full log lines are dropped
+ * and counted rather than blocking the caller. Serialized events are data, so
+ * they wait for room for a while instead.
+ */
+public class ChatLogWriter {
+	/**
+	 * A queued write, delete or flush.
+	 */
+	protected static class Record {
+		protected static final int WRITE = 0;
+		protected static final int DELETE = 1;
+		protected static final int FLUSH = 2;
+
+		protected int type;
+		protected String path;
+		protected ChatEvent event;
+		protected boolean isTimestamped;
+		protected boolean isRotating;
+		protected long enqueueNanos;
+		protected CountDownLatch latch;
+	}
+
+	/**
+	 * An open log file.
+	 */
+	protected static class LogFile {
+		protected File file;
+		protected FileOutputStream out;
+		protected OutputStream stream;
+		protected ChatEventWriter eventWriter;
+		protected long length;
+		protected String day;
+		protected long lastWriteTime;
+		protected boolean isDirty;
+		protected boolean isUnsynced;
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ChatLogWriter.class);
+
+	public static final int QUEUE_CAPACITY = 50000;
+	public static final int MAX_BATCH = 1000;
+	public static final int MAX_OPEN_FILES = 32;
+	public static final long FLUSH_INTERVAL_MILLIS = 1000;
+	public static final long SYNC_INTERVAL_MILLIS = 5000;
+	public static final long IDLE_CLOSE_MILLIS = 5 * 60 * 1000L;
+	public static final long MAX_FILE_BYTES = 5 * 1024 * 1024L;
+
+	/**
+	 * The longest flush waits for the queue to drain.
+	 */
+	public static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+	public static boolean serviceCreated = false;
+	private static ChatLogWriter singletonInstance;
+
+	public static synchronized ChatLogWriter getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new ChatLogWriter();
+		return singletonInstance;
+	}
+
+	protected BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(
+			QUEUE_CAPACITY);
+	protected LinkedHashMap<String, LogFile> openFiles = new LinkedHashMap<String, LogFile>(
+			MAX_OPEN_FILES, .75f, true);
+	protected Set<String> failedPaths = new HashSet<String>();
+	protected SimpleDateFormat timestampFormat = new SimpleDateFormat(
+			"yyyy-MM-dd HH:mm");
+	protected SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+	protected Thread thread;
+	protected volatile boolean isDisposed = false;
+	protected long lastSyncTime = System.currentTimeMillis();
+
+	// Metrics. Written by the writer thread, except droppedCount.
+	protected volatile int maxQueueSize;
+	protected volatile long writtenCount;
+	protected volatile long writtenBytes;
+	protected volatile long batchCount;
+	protected volatile long syncCount;
+	protected volatile long rotationCount;
+	protected volatile long totalLatencyNanos;
+	protected volatile long maxLatencyNanos;
+	protected volatile long droppedCount;
+
+	private ChatLogWriter() {
+		thread = new Thread(new Runnable() {
+			public void run() {
+				runWriter();
+			}
+		}, "ChatLogWriter");
+		thread.setDaemon(true);
+		thread.start();
+		serviceCreated = true;
+	}
+
+	/**
+	 * Writes the queued records, closes every file and stops the writer
+	 * thread.
+	 */
+	public void dispose() {
+		isDisposed = true;
+		try {
+			thread.join(FLUSH_TIMEOUT_MILLIS);
+		} catch (InterruptedException ie) {
+		}
+		if (LOG.isInfoEnabled()) {
+			LOG.info("ChatLogWriter disposed. " + getMetrics());
+		}
+	}
+
+	/**
+	 * Queues appending a chat event to a file in the binary form
+	 * ChatEventReader reads back. The file is never rotated.
+	 */
+	public void writeSerialized(String path, ChatEvent event) {
+		Record record = new Record();
+		record.type = Record.WRITE;
+		record.path = path;
+		record.event = event;
+		put(record);
+	}
+
+	/**
+	 * Queues appending a chat event's message to a human readable log file,
+	 * prefixed with the time of the event. The file is rotated daily and by
+	 * size.
+	 */
+	public void writeLogLine(String path, ChatEvent event) {
+		Record record = new Record();
+		record.type = Record.WRITE;
+		record.path = path;
+		record.event = event;
+		record.isTimestamped = true;
+		record.isRotating = true;
+		offer(record);
+	}
+
+	/**
+	 * Queues deleting a file. It happens after every write queued before it.
+	 */
+	public void delete(String path) {
+		Record record = new Record();
+		record.type = Record.DELETE;
+		record.path = path;
+		put(record);
+	}
+
+	/**
+	 * Blocks until every record queued before this call has been written and
+	 * flushed, or FLUSH_TIMEOUT_MILLIS passes.
+	 */
+	public void flush() {
+		if (Thread.currentThread() == thread || !thread.isAlive()) {
+			return;
+		}
+		Record record = new Record();
+		record.type = Record.FLUSH;
+		record.latch = new CountDownLatch(1);
+		try {
+			if (queue.offer(record, FLUSH_TIMEOUT_MILLIS,
+					TimeUnit.MILLISECONDS)) {
+				record.latch.await(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the average time in milliseconds from queueing a record to
+	 * handing it to the operating system.
+	 */
+	public double getAverageLatencyMillis() {
+		long written = writtenCount;
+		return written == 0 ? 0.0 : totalLatencyNanos / 1000000.0 / written;
+	}
+
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	public double getMaxLatencyMillis() {
+		return maxLatencyNanos / 1000000.0;
+	}
+
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+
+	/**
+	 * Returns a one line summary of the metrics.
+	 */
+	public String getMetrics() {
+		return "queue=" + getQueueSize() + " maxQueue=" + maxQueueSize
+				+ " written=" + writtenCount + " bytes=" + writtenBytes
+				+ " batches=" + batchCount + " syncs=" + syncCount
+				+ " rotations=" + rotationCount + " dropped=" + droppedCount
+				+ " latency avg/max ms="
+				+ String.format("%.2f/%.2f", getAverageLatencyMillis(),
+						getMaxLatencyMillis());
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public long getRotationCount() {
+		return rotationCount;
+	}
+
+	public long getSyncCount() {
+		return syncCount;
+	}
+
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	public long getWrittenCount() {
+		return writtenCount;
+	}
+
+	protected void close(LogFile logFile) {
+		try {
+			logFile.stream.close();
+		} catch (IOException ioe) {
+			LOG.warn("Error closing " + logFile.file, ioe);
+		}
+	}
+
+	/**
+	 * Closes files idle for IDLE_CLOSE_MILLIS.
+	 */
+	protected void closeIdleFiles(long now) {
+		for (Iterator<LogFile> i = openFiles.values().iterator(); i.hasNext();) {
+			LogFile logFile = i.next();
+			if (now - logFile.lastWriteTime > IDLE_CLOSE_MILLIS) {
+				close(logFile);
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Flushes the files written since the last flush, and syncs them if
+	 * isSyncing is true.
+	 */
+	protected void flushFiles(boolean isSyncing) {
+		for (LogFile logFile : openFiles.values()) {
+			try {
+				if (logFile.isDirty) {
+					logFile.stream.flush();
+					logFile.isDirty = false;
+					logFile.isUnsynced = true;
+				}
+				if (isSyncing && logFile.isUnsynced) {
+					logFile.out.getChannel().force(false);
+					logFile.isUnsynced = false;
+				}
+			} catch (IOException ioe) {
+				LOG.warn("Error flushing " + logFile.file, ioe);
+			}
+		}
+		if (isSyncing) {
+			syncCount++;
+		}
+	}
+
+	protected void offer(Record record) {
+		record.enqueueNanos = System.nanoTime();
+		if (!queue.offer(record)) {
+			droppedCount++;
+			return;
+		}
+		int size = queue.size();
+		if (size > maxQueueSize) {
+			maxQueueSize = size;
+		}
+	}
+
+	/**
+	 * Queues a record which must not be lost, waiting up to
+	 * FLUSH_TIMEOUT_MILLIS for room if needed.
+	 */
+	protected void put(Record record) {
+		record.enqueueNanos = System.nanoTime();
+		try {
+			if (!queue.offer(record)
+					&& !queue.offer(record, FLUSH_TIMEOUT_MILLIS,
+							TimeUnit.MILLISECONDS)) {
+				LOG.warn("ChatLogWriter queue is full, dropped a write to "
+						+ record.path);
+				droppedCount++;
+				return;
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			droppedCount++;
+			return;
+		}
+		int size = queue.size();
+		if (size > maxQueueSize) {
+			maxQueueSize = size;
+		}
+	}
+
+	/**
+	 * Returns the open file for a path, opening it if needed. The least
+	 * recently used file is closed if MAX_OPEN_FILES are open.
+	 */
+	protected LogFile open(String path) throws IOException {
+		LogFile result = openFiles.get(path);
+		if (result != null) {
+			return result;
+		}
+		if (openFiles.size() >= MAX_OPEN_FILES) {
+			Iterator<LogFile> eldest = openFiles.values().iterator();
+			close(eldest.next());
+			eldest.remove();
+		}
+
+		result = new LogFile();
+		result.file = new File(path);
+		if (result.file.getParentFile() != null) {
+			result.file.getParentFile().mkdirs();
+		}
+		result.length = result.file.length();
+		result.day = result.length > 0 ? dayFormat.format(new Date(
+				result.file.lastModified())) : null;
+		result.out = new FileOutputStream(result.file, true);
+		result.stream = new BufferedOutputStream(result.out);
+		openFiles.put(path, result);
+		return result;
+	}
+
+	protected void process(Record record) {
+		switch (record.type) {
+		case Record.DELETE:
+			LogFile logFile = openFiles.remove(record.path);
+			if (logFile != null) {
+				close(logFile);
+			}
+			new File(record.path).delete();
+			break;
+		case Record.FLUSH:
+			flushFiles(false);
+			record.latch.countDown();
+			break;
+		default:
+			write(record);
+			break;
+		}
+	}
+
+	/**
+	 * Renames a file to name-day.ext, adding -1, -2, ... if that exists.
+	 */
+	protected void rotate(LogFile logFile, String path) {
+		close(logFile);
+		openFiles.remove(path);
+
+		String name = logFile.file.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot == -1 ? name : name.substring(0, dot);
+		String extension = dot == -1 ? "" : name.substring(dot);
+		String day = logFile.day != null ? logFile.day : dayFormat
+				.format(new Date());
+
+		File target = new File(logFile.file.getParentFile(), base + "-" + day
+				+ extension);
+		for (int i = 1; target.exists(); i++) {
+			target = new File(logFile.file.getParentFile(), base + "-" + day
+					+ "-" + i + extension);
+		}
+		if (logFile.file.renameTo(target)) {
+			rotationCount++;
+		} else {
+			LOG.warn("Could not rotate " + logFile.file + " to " + target);
+		}
+	}
+
+	protected void runWriter() {
+		List<Record> batch = new ArrayList<Record>(MAX_BATCH);
+		while (true) {
+			try {
+				Record first = queue.poll(FLUSH_INTERVAL_MILLIS,
+						TimeUnit.MILLISECONDS);
+				if (first == null && isDisposed) {
+					break;
+				}
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, MAX_BATCH - 1);
+					for (Record record : batch) {
+						process(record);
+					}
+					batch.clear();
+					batchCount++;
+				}
+
+				long now = System.currentTimeMillis();
+				boolean isSyncing = now - lastSyncTime >= SYNC_INTERVAL_MILLIS;
+				flushFiles(isSyncing);
+				if (isSyncing) {
+					lastSyncTime = now;
+					closeIdleFiles(now);
+				}
+			} catch (InterruptedException ie) {
+				break;
+			} catch (Throwable t) {
+				LOG.error("Error in ChatLogWriter", t);
+				batch.clear();
+			}
+		}
+
+		flushFiles(true);
+		for (LogFile logFile : openFiles.values()) {
+			close(logFile);
+		}
+		openFiles.clear();
+	}
+
+	protected void write(Record record) {
+		try {
+			LogFile logFile = open(record.path);
+			if (record.isRotating) {
+				String day = dayFormat.format(new Date(record.event.time));
+				if (logFile.length > 0
+						&& (logFile.length >= MAX_FILE_BYTES || logFile.day != null
+								&& !logFile.day.equals(day))) {
+					rotate(logFile, record.path);
+					logFile = open(record.path);
+				}
+				logFile.day = day;
+			}
+
+			int length;
+			if (record.isTimestamped) {
+				byte[] line = ("["
+						+ timestampFormat.format(new Date(record.event.time))
+						+ "] " + record.event.getMessage() + "\n").getBytes();
+				logFile.stream.write(line);
+				length = line.length;
+			} else {
+				// A writer for each open starts a new block, so appending
+				// never needs to read the file.
+				if (logFile.eventWriter == null) {
+					logFile.eventWriter = new ChatEventWriter(logFile.stream);
+				}
+				length = logFile.eventWriter.write(record.event);
+			}
+			logFile.length += length;
+			logFile.lastWriteTime = System.currentTimeMillis();
+			logFile.isDirty = true;
+
+			long latency = System.nanoTime() - record.enqueueNanos;
+			totalLatencyNanos += latency;
+			if (latency > maxLatencyNanos) {
+				maxLatencyNanos = latency;
+			}
+			writtenCount++;
+			writtenBytes += length;
+		} catch (IOException ioe) {
+			LOG.warn("Error writing to " + record.path, ioe);
+			if (record.isRotating && failedPaths.add(record.path)
+					&& Raptor.getInstance() != null) {
+				// Report each file once instead of once per line.
+				Raptor.getInstance().onError(
+						"Error occured writing to file: " + record.path, ioe);
+			}
+		}
+	}
+}
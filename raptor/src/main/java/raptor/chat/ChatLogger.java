@@ -13,30 +13,25 @@
  */
 package raptor.chat;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.List;
 
 import raptor.Raptor;
 import raptor.connector.Connector;
 import raptor.connector.bics.BicsConnector;
 import raptor.connector.fics.FicsConnector;
 import raptor.pref.PreferenceKeys;
-import raptor.service.ThreadService;
 import raptor.util.RaptorLogger;
-import raptor.util.RaptorRunnable;
 import raptor.util.RaptorStringTokenizer;
 
 /**
- * Logs chat messages to a file and provides, and allows a
- * ChatEventParseListener to parse the file.
+ * Logs chat messages to a ChatStore, and allows a ChatEventParseListener to
+ * parse them or a ChatQuery to search them.
  * 
  * This is being used to add old tells to a newly created Channel or Person tab.
  * 
+ * Also appends chat to the log files configured in the preferences. Those
+ * writes are queued on the ChatLogWriter, so they return immediately.
  */
 public class ChatLogger {
 	public static interface ChatEventParseListener {
@@ -49,67 +44,77 @@ public class ChatLogger {
 		public void onParseCompleted();
 	}
 
-	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd HH:mm");
-
 	private static final RaptorLogger LOG = RaptorLogger.getLog(ChatLogger.class);
 
-	protected String pathToFile;
+	/**
+	 * The longest parseFile waits for chat from earlier sessions to load.
+	 */
+	public static final long LOAD_TIMEOUT_MILLIS = 30000;
+
+	protected String pathToStore;
 	protected Connector connector;
+	protected ChatStore store;
+	protected long sessionStartTime;
 
 	/**
-	 * Constructs a ChatLogger which writes to the specified file. Deletes the
-	 * file if it already exists.
+	 * Constructs a ChatLogger for a connector's chat. Chat from earlier
+	 * sessions is kept for ChatStore.DEFAULT_RETENTION_DAYS and can be
+	 * searched, but parseFile only parses chat logged since this ChatLogger
+	 * was created.
 	 * 
 	 * @param connector
 	 *            The connector
-	 * @param pathToFile
-	 *            The path to the backing file.
+	 * @param pathToStore
+	 *            The path to the directory of the backing ChatStore.
 	 */
-	public ChatLogger(Connector connector, String pathToFile) {
-		this(connector, pathToFile, true);
+	public ChatLogger(Connector connector, String pathToStore) {
+		this.pathToStore = pathToStore;
+		this.connector = connector;
+		store = new ChatStore(new File(pathToStore),
+				ChatStore.DEFAULT_RETENTION_DAYS);
+		sessionStartTime = System.currentTimeMillis();
 	}
 
 	/**
-	 * Constructs a ChatLogger which writes to the specified file.
+	 * Creates a chat logger which keeps its events until they are deleted.
+	 * parseFile parses all of them.
 	 * 
-	 * @param connector
-	 *            The connector
-	 * @param pathToFile
-	 *            The path to the backing file.
+	 * @param pathToStore
+	 *            Path to the directory of the backing ChatStore.
 	 * @param isDeleting
-	 *            True if an existing file should be deleted, false otherwise.
+	 *            True if existing events should be deleted, false otherwise.
 	 */
-	public ChatLogger(Connector connector, String pathToFile, boolean isDeleting) {
-		this.pathToFile = pathToFile;
+	public ChatLogger(String pathToStore, boolean isDeleting) {
+		this.pathToStore = pathToStore;
+		store = new ChatStore(new File(pathToStore), 0);
 		if (isDeleting) {
 			delete();
 		}
-		this.connector = connector;
 	}
 
 	/**
-	 * Creates a read only chat logger.
-	 * 
-	 * @param pathToFile
-	 *            Path to log file.
-	 * @param isDeleting
-	 *            True if the file should be deleted if it exists, false
-	 *            otherwise.
+	 * Deletes every logged event.
 	 */
-	public ChatLogger(String pathToFile, boolean isDeleting) {
-		this.pathToFile = pathToFile;
-		if (isDeleting) {
-			delete();
-		}
+	public void delete() {
+		store.clear();
 	}
 
 	/**
-	 * Deletes the backing file.
+	 * Stops logging to the backing store.
 	 */
-	public void delete() {
-		File file = new File(pathToFile);
-		file.delete();
+	public void dispose() {
+		store.dispose();
+	}
+
+	/**
+	 * Returns the time parseFile parses from.
+	 */
+	public long getSessionStartTime() {
+		return sessionStartTime;
+	}
+
+	public ChatStore getStore() {
+		return store;
 	}
 
 	/**
@@ -117,38 +122,27 @@ public class ChatLogger {
 	 * encountered.
 	 */
 	public void parseFile(ChatEventParseListener listener) {
-		synchronized (this) {
-			@SuppressWarnings("unused")
-			long startTime = System.currentTimeMillis();
-			BufferedReader reader = null;
-			try {
-				reader = new BufferedReader(new FileReader(pathToFile));
-				String currentLine = reader.readLine();
-				while (currentLine != null) {
-					try {
-						ChatEvent event = ChatEventUtils
-								.deserializeChatEvent(currentLine);
-						if (!listener.onNewEventParsed(event)) {
-							break;
-						}
-					} catch (Throwable t) {
-						LOG.warn("Error reading chat event line " + currentLine
-								+ " skipping ChatEvent", t);
-					}
-					currentLine = reader.readLine();
-				}
-				listener.onParseCompleted();
-			} catch (IOException ioe) {
-				throw new RuntimeException(ioe);
-			} finally {
-				if (reader != null) {
-					try {
-						reader.close();
-					} catch (Throwable t) {
-					}
-				}
+		ChatQuery query = new ChatQuery();
+		if (sessionStartTime == 0) {
+			store.awaitLoaded(LOAD_TIMEOUT_MILLIS);
+		} else {
+			query.setFromTime(sessionStartTime);
+		}
+		for (ChatEvent event : store.search(query)) {
+			if (!listener.onNewEventParsed(event)) {
+				break;
 			}
 		}
+		listener.onParseCompleted();
+	}
+
+	/**
+	 * Returns the events matching the query, oldest first. Chat from earlier
+	 * sessions is only included once the store has loaded it, see
+	 * ChatStore.awaitLoaded.
+	 */
+	public List<ChatEvent> search(ChatQuery query) {
+		return store.search(query);
 	}
 
 	protected boolean vetoWrite(ChatEvent event) {
@@ -168,27 +162,9 @@ public class ChatLogger {
 		if (vetoWrite(event)) {
 			return;
 		}
-		synchronized (this) {
-			writeToLogFiles(event);
-			if (event.getMessage().length() < 1500) {
-				@SuppressWarnings("unused")
-				long startTime = System.currentTimeMillis();
-				FileWriter writer = null;
-				try {
-					writer = new FileWriter(pathToFile, true);
-					writer.write(ChatEventUtils.serializeChatEvent(event)
-							+ "\n");
-				} catch (Throwable t) {
-					LOG.warn("Error occured writing chat event: ", t);
-				} finally {
-					if (writer != null) {
-						try {
-							writer.close();
-						} catch (Throwable t) {
-						}
-					}
-				}
-			}
+		writeToLogFiles(event);
+		if (event.getMessage().length() < 1500) {
+			store.append(event);
 		}
 	}
 
@@ -215,58 +191,53 @@ public class ChatLogger {
 	 * @param event
 	 *            The event to log.
 	 */
-	protected void writeToLogFiles(final ChatEvent event) {
-		ThreadService.getInstance().run(new RaptorRunnable() {
-			@Override
-			public void execute() {
-				if (Raptor.getInstance().getPreferences().getBoolean(
-						PreferenceKeys.APP_IS_LOGGING_CONSOLE)
-						&& !vetoLogging(event.getSource())) {
-					appendToFile(Raptor.USER_RAPTOR_HOME_PATH
-							+ "/logs/console/" + getConnectorType()
-							+ "-console.txt", event);
-				}
-				if (Raptor.getInstance().getPreferences().getBoolean(
-						PreferenceKeys.APP_IS_LOGGING_CHANNEL_TELLS)
-						&& event.getType() == ChatType.CHANNEL_TELL) {
-					appendToFile(Raptor.USER_RAPTOR_HOME_PATH
-							+ "/logs/console/" + getConnectorType() + "-"
-							+ event.getChannel() + ".txt", event);
-				}
-				if (Raptor.getInstance().getPreferences().getBoolean(
-						PreferenceKeys.APP_IS_LOGGING_PERSON_TELLS)
-						&& event.getType() == ChatType.TELL
-						&& !vetoLogging(event.getSource())) {
-					appendToFile(Raptor.USER_RAPTOR_HOME_PATH
-							+ "/logs/console/" + getConnectorType() + "-"
-							+ event.getSource().toLowerCase() + ".txt", event);
-				}
-				if (Raptor.getInstance().getPreferences().getBoolean(
-						PreferenceKeys.APP_IS_LOGGING_PERSON_TELLS)
-						&& event.getType() == ChatType.OUTBOUND) {
+	protected void writeToLogFiles(ChatEvent event) {
+		if (Raptor.getInstance().getPreferences().getBoolean(
+				PreferenceKeys.APP_IS_LOGGING_CONSOLE)
+				&& !vetoLogging(event.getSource())) {
+			appendToFile(Raptor.USER_RAPTOR_HOME_PATH
+					+ "/logs/console/" + getConnectorType()
+					+ "-console.txt", event);
+		}
+		if (Raptor.getInstance().getPreferences().getBoolean(
+				PreferenceKeys.APP_IS_LOGGING_CHANNEL_TELLS)
+				&& event.getType() == ChatType.CHANNEL_TELL) {
+			appendToFile(Raptor.USER_RAPTOR_HOME_PATH
+					+ "/logs/console/" + getConnectorType() + "-"
+					+ event.getChannel() + ".txt", event);
+		}
+		if (Raptor.getInstance().getPreferences().getBoolean(
+				PreferenceKeys.APP_IS_LOGGING_PERSON_TELLS)
+				&& event.getType() == ChatType.TELL
+				&& !vetoLogging(event.getSource())) {
+			appendToFile(Raptor.USER_RAPTOR_HOME_PATH
+					+ "/logs/console/" + getConnectorType() + "-"
+					+ event.getSource().toLowerCase() + ".txt", event);
+		}
+		if (Raptor.getInstance().getPreferences().getBoolean(
+				PreferenceKeys.APP_IS_LOGGING_PERSON_TELLS)
+				&& event.getType() == ChatType.OUTBOUND) {
 
-					RaptorStringTokenizer tok = new RaptorStringTokenizer(event
-							.getMessage(), " ", true);
+			RaptorStringTokenizer tok = new RaptorStringTokenizer(event
+					.getMessage(), " ", true);
 
-					String firstWord = tok.nextToken();
-					String secondWord = tok.nextToken();
+			String firstWord = tok.nextToken();
+			String secondWord = tok.nextToken();
 
-					if (firstWord != null && secondWord != null) {
-						if ("tell".startsWith(firstWord.toLowerCase())
-								&& !vetoLogging(secondWord)) {
-							try {
-								Integer.parseInt(secondWord);
-							} catch (NumberFormatException nfe) {
-								appendToFile(Raptor.USER_RAPTOR_HOME_PATH
-										+ "/logs/" + getConnectorType() + "-"
-										+ secondWord.toLowerCase() + ".txt",
-										event);
-							}
-						}
+			if (firstWord != null && secondWord != null) {
+				if ("tell".startsWith(firstWord.toLowerCase())
+						&& !vetoLogging(secondWord)) {
+					try {
+						Integer.parseInt(secondWord);
+					} catch (NumberFormatException nfe) {
+						appendToFile(Raptor.USER_RAPTOR_HOME_PATH
+								+ "/logs/" + getConnectorType() + "-"
+								+ secondWord.toLowerCase() + ".txt",
+								event);
 					}
 				}
 			}
-		});
+		}
 	}
 
 	/**
@@ -285,7 +256,7 @@ public class ChatLogger {
 	}
 
 	/**
-	 * Appends the chat event to the specified file.
+	 * Queues appending the chat event to the specified log file.
 	 * 
 	 * @param fileName
 	 *            The file name.
@@ -293,19 +264,6 @@ public class ChatLogger {
 	 *            The chat event.
 	 */
 	protected void appendToFile(String fileName, ChatEvent event) {
-		FileWriter fileWriter = null;
-		try {
-			fileWriter = new FileWriter(fileName, true);
-            fileWriter.append("[").append(DATE_FORMAT.format(new Date(event.time))).append("] ").append(event.getMessage()).append("\n");
-			fileWriter.flush();
-		} catch (IOException ioe) {
-			Raptor.getInstance().onError(
-					"Error occured writing to file: " + fileName, ioe);
-		} finally {
-			try {
-				fileWriter.close();
-			} catch (Throwable t) {
-			}
-		}
+		ChatLogWriter.getInstance().writeLogLine(fileName, event);
 	}
 }
@@ -0,0 +1,179 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chat;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * The criteria for a ChatStore search. Every criterion set must match. Unset
+ * criteria match everything.
+ */
+public class ChatQuery {
+	protected ChatType[] types;
+	protected String source;
+	protected boolean isSourcePrefix;
+	protected String channel;
+	protected String words;
+	protected String text;
+	protected Pattern pattern;
+	protected long fromTime;
+	protected long toTime;
+	protected int limit;
+
+	public String getChannel() {
+		return channel;
+	}
+
+	public long getFromTime() {
+		return fromTime;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public long getToTime() {
+		return toTime;
+	}
+
+	public ChatType[] getTypes() {
+		return types;
+	}
+
+	public String getWords() {
+		return words;
+	}
+
+	public boolean isSourcePrefix() {
+		return isSourcePrefix;
+	}
+
+	/**
+	 * Only events sent to this channel match.
+	 */
+	public void setChannel(String channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Only events at or after this time match.
+	 */
+	public void setFromTime(long fromTime) {
+		this.fromTime = fromTime;
+	}
+
+	/**
+	 * The maximum number of events returned. When more match, the most recent
+	 * are returned. 0 means no limit.
+	 */
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Only events whose message matches this pattern match. Patterns can't use
+	 * the indexes, so combine them with other criteria when possible.
+	 */
+	public void setPattern(Pattern pattern) {
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Only events from this source, ignoring case, match.
+	 */
+	public void setSource(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * If true events whose source starts with the source set match.
+	 */
+	public void setSourcePrefix(boolean isSourcePrefix) {
+		this.isSourcePrefix = isSourcePrefix;
+	}
+
+	/**
+	 * Only events whose message contains this text, ignoring case, match.
+	 */
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Only events before this time match. 0 means no limit.
+	 */
+	public void setToTime(long toTime) {
+		this.toTime = toTime;
+	}
+
+	/**
+	 * Only events of one of these types match.
+	 */
+	public void setTypes(ChatType... types) {
+		this.types = types;
+	}
+
+	/**
+	 * Only events whose message contains each of these space separated words,
+	 * ignoring case, match. Unlike text the words must be whole words.
+	 */
+	public void setWords(String words) {
+		this.words = words;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(100);
+		result.append("ChatQuery[");
+		if (types != null) {
+			result.append(" types=").append(Arrays.toString(types));
+		}
+		if (source != null) {
+			result.append(" source=").append(source).append(
+					isSourcePrefix ? "*" : "");
+		}
+		if (channel != null) {
+			result.append(" channel=").append(channel);
+		}
+		if (words != null) {
+			result.append(" words=").append(words);
+		}
+		if (text != null) {
+			result.append(" text=").append(text);
+		}
+		if (pattern != null) {
+			result.append(" pattern=").append(pattern.pattern());
+		}
+		if (fromTime != 0 || toTime != 0) {
+			result.append(" time=").append(fromTime).append("-").append(toTime);
+		}
+		if (limit != 0) {
+			result.append(" limit=").append(limit);
+		}
+		return result.append(" ]").toString();
+	}
+}
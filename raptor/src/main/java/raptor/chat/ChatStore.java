@@ -0,0 +1,794 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.util.RaptorLogger;
+import raptor.util.RegExUtils;
+
+/**
+ * An append only store of chat events which can be searched without reading
+ * all of it.
+ * 
+ * Events are written, in ChatEventWriter's binary form, to segment files of
+ * up to SEGMENT_SIZE events in a directory. Each segment has an index: sorted
+ * lists of the positions of each event type, source, channel and word of the
+ * message. Searches go from the newest segment to the oldest, skipping
+ * segments outside the query's time range, and intersect the lists of a
+ * segment to find its matches. The words of UNKNOWN events, which are raw
+ * server output, are not indexed, so word and text searches don't find them.
+ * 
+ * Only the index of the segment being appended to is always in memory. The
+ * indexes of other segments are built from their events when a search needs
+ * them, and the most recently used MAX_CACHED_INDEXES are kept. Events read
+ * from segment files are kept softly reachable.
+ * 
+ * Segments written by earlier sessions are counted by a background thread.
+ * Until it finishes searches only see events appended since the store was
+ * opened; use awaitLoaded to wait for it. Segments last written more than the
+ * retention period ago are deleted while loading, and segments in the text
+ * form of ChatEventUtils, which earlier versions wrote, are converted.
+ * 
+ * Writes go through the ChatLogWriter, so appending never touches the disk.
+ * Searches only hold the store's lock while searching the segment being
+ * appended to, so reading older segments never blocks appending. All methods
+ * are thread safe.
+ */
+public class ChatStore {
+	/**
+	 * A growable list of ints, used for the sorted positions of an index key.
+	 */
+	protected static class IntList {
+		protected int[] values;
+		protected int size;
+
+		protected IntList() {
+			values = new int[4];
+		}
+
+		protected IntList(int capacity) {
+			values = new int[Math.max(capacity, 4)];
+		}
+
+		/**
+		 * Returns the sorted values in any of the lists.
+		 */
+		protected static IntList union(Collection<IntList> lists) {
+			if (lists.size() == 1) {
+				return lists.iterator().next();
+			}
+			int size = 0;
+			for (IntList list : lists) {
+				size += list.size;
+			}
+			IntList result = new IntList(size);
+			for (IntList list : lists) {
+				System.arraycopy(list.values, 0, result.values, result.size,
+						list.size);
+				result.size += list.size;
+			}
+			Arrays.sort(result.values, 0, result.size);
+			return result;
+		}
+
+		protected void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		protected boolean contains(int value) {
+			return Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+	}
+
+	/**
+	 * The position lists of each type, source, channel and word in a segment.
+	 */
+	protected static class Index {
+		protected Map<ChatType, IntList> byType = new EnumMap<ChatType, IntList>(
+				ChatType.class);
+		protected TreeMap<String, IntList> bySource = new TreeMap<String, IntList>();
+		protected Map<String, IntList> byChannel = new HashMap<String, IntList>();
+		protected Map<String, IntList> byWord = new HashMap<String, IntList>();
+
+		protected static <K> void add(Map<K, IntList> map, K key, int ordinal) {
+			IntList list = map.get(key);
+			if (list == null) {
+				list = new IntList();
+				map.put(key, list);
+			}
+			list.add(ordinal);
+		}
+
+		/**
+		 * Adds an event. Positions must be added in increasing order.
+		 */
+		protected void add(int ordinal, ChatEvent event) {
+			if (event.getType() != null) {
+				add(byType, event.getType(), ordinal);
+			}
+			if (StringUtils.isNotBlank(event.getSource())) {
+				add(bySource, event.getSource().toLowerCase(), ordinal);
+			}
+			if (StringUtils.isNotBlank(event.getChannel())) {
+				add(byChannel, event.getChannel(), ordinal);
+			}
+			if (event.getType() != ChatType.UNKNOWN) {
+				Set<String> words = new LinkedHashSet<String>();
+				tokenize(event.getMessage(), false, words);
+				for (String word : words) {
+					add(byWord, word, ordinal);
+				}
+			}
+		}
+
+		/**
+		 * Returns the position lists every match must be in, or null if
+		 * nothing in the segment can match.
+		 */
+		protected List<IntList> getLists(ChatQuery query, Set<String> words) {
+			List<IntList> result = new ArrayList<IntList>();
+			if (query.getTypes() != null && query.getTypes().length > 0) {
+				List<IntList> typeLists = new ArrayList<IntList>();
+				for (ChatType type : query.getTypes()) {
+					IntList list = byType.get(type);
+					if (list != null) {
+						typeLists.add(list);
+					}
+				}
+				if (typeLists.isEmpty()) {
+					return null;
+				}
+				result.add(IntList.union(typeLists));
+			}
+			if (query.getSource() != null) {
+				String source = query.getSource().toLowerCase();
+				Collection<IntList> sourceLists;
+				if (query.isSourcePrefix()) {
+					sourceLists = bySource.subMap(source,
+							source + Character.MAX_VALUE).values();
+				} else {
+					IntList list = bySource.get(source);
+					sourceLists = list == null ? Collections
+							.<IntList> emptyList() : Collections
+							.singletonList(list);
+				}
+				if (sourceLists.isEmpty()) {
+					return null;
+				}
+				result.add(IntList.union(sourceLists));
+			}
+			if (query.getChannel() != null) {
+				IntList list = byChannel.get(query.getChannel());
+				if (list == null) {
+					return null;
+				}
+				result.add(list);
+			}
+			for (String word : words) {
+				IntList list = byWord.get(word);
+				if (list == null) {
+					return null;
+				}
+				result.add(list);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A segment file. The segment being appended to holds its events and its
+	 * index, the others read their events from the file when needed.
+	 */
+	protected static class Segment {
+		protected int number;
+		protected File file;
+		protected int count;
+		protected long firstTime;
+		protected long lastTime;
+		protected ChatEvent[] events;
+		protected Index index;
+		protected volatile SoftReference<ChatEvent[]> cache;
+		protected boolean isWrittenThisSession;
+
+		protected Segment(int number, File file) {
+			this.number = number;
+			this.file = file;
+		}
+
+		/**
+		 * Adds an event to the segment being appended to.
+		 */
+		protected void add(ChatEvent event) {
+			if (count == 0) {
+				firstTime = event.getTime();
+			}
+			lastTime = event.getTime();
+			events[count] = event;
+			index.add(count, event);
+			count++;
+		}
+
+		/**
+		 * Returns the segment's events, reading the file if they are not in
+		 * memory. Entries for events which could not be read are null.
+		 */
+		protected ChatEvent[] getEvents() {
+			if (events != null) {
+				return events;
+			}
+			ChatEvent[] result = cache == null ? null : cache.get();
+			if (result == null) {
+				if (isWrittenThisSession) {
+					ChatLogWriter.getInstance().flush();
+				}
+				List<ChatEvent> read = readEvents(file);
+				result = read.toArray(new ChatEvent[Math.max(count, read
+						.size())]);
+				cache = new SoftReference<ChatEvent[]>(result);
+			}
+			return result;
+		}
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ChatStore.class);
+
+	public static final int SEGMENT_SIZE = 8192;
+	public static final int DEFAULT_RETENTION_DAYS = 90;
+
+	/**
+	 * The number of indexes of segments other than the one being appended to
+	 * kept in memory.
+	 */
+	public static final int MAX_CACHED_INDEXES = 4;
+
+	protected static final int MAX_SEGMENT_NUMBER = Short.MAX_VALUE;
+	protected static final String SEGMENT_PREFIX = "segment-";
+	protected static final String SEGMENT_SUFFIX = ".dat";
+	protected static final String TEXT_SEGMENT_SUFFIX = ".txt";
+	protected static final int MIN_WORD_LENGTH = 2;
+	protected static final int MAX_WORD_LENGTH = 32;
+	protected static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	protected File directory;
+	protected long retentionMillis;
+	protected TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	protected Segment active;
+	protected int generation;
+	protected CountDownLatch loadedLatch = new CountDownLatch(1);
+	protected volatile boolean isDisposed;
+
+	/**
+	 * The indexes of segments other than the active one, least recently used
+	 * first. Guarded by itself rather than the store's lock.
+	 */
+	protected Map<Segment, Index> indexCache = new LinkedHashMap<Segment, Index>(
+			MAX_CACHED_INDEXES * 2, .75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Segment, Index> eldest) {
+			return size() > MAX_CACHED_INDEXES;
+		}
+	};
+
+	/**
+	 * Opens the store in the specified directory, creating it if needed.
+	 * 
+	 * @param directory
+	 *            The directory holding the segment files.
+	 * @param retentionDays
+	 *            Segments last written more than this many days ago are
+	 *            deleted. 0 keeps every segment.
+	 */
+	public ChatStore(File directory, int retentionDays) {
+		this.directory = directory;
+		retentionMillis = retentionDays * DAY_MILLIS;
+		directory.mkdirs();
+
+		final List<File> files = listSegmentFiles(true);
+		active = createSegment(files.isEmpty() ? 1 : getNumber(files.get(files
+				.size() - 1)) + 1);
+		final int loadGeneration = generation;
+
+		Thread loader = new Thread(new Runnable() {
+			public void run() {
+				load(files, loadGeneration);
+			}
+		}, "ChatStoreLoader-" + directory.getName());
+		loader.setDaemon(true);
+		loader.setPriority(Thread.NORM_PRIORITY - 1);
+		loader.start();
+	}
+
+	/**
+	 * Returns the events in a segment file. If the file can't be read to its
+	 * end the events before the error are returned.
+	 */
+	protected static List<ChatEvent> readEvents(File file) {
+		List<ChatEvent> result = new ArrayList<ChatEvent>(SEGMENT_SIZE);
+		if (!file.exists()) {
+			return result;
+		}
+		ChatEventReader reader = null;
+		try {
+			reader = new ChatEventReader(new FileInputStream(file));
+			ChatEvent event;
+			while ((event = reader.read()) != null) {
+				result.add(event);
+			}
+		} catch (IOException ioe) {
+			LOG.warn("Error reading " + file + " after " + result.size()
+					+ " events", ioe);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (Throwable t) {
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the lower case words of text to result. Words are runs of letters
+	 * and digits. If isWholeWordsOnly is true runs touching the start or end
+	 * of text are skipped, they may be parts of longer words.
+	 */
+	protected static void tokenize(String text, boolean isWholeWordsOnly,
+			Collection<String> result) {
+		if (text == null) {
+			return;
+		}
+		int length = text.length();
+		int start = -1;
+		for (int i = 0; i <= length; i++) {
+			boolean isWordChar = i < length
+					&& Character.isLetterOrDigit(text.charAt(i));
+			if (isWordChar && start == -1) {
+				start = i;
+			} else if (!isWordChar && start != -1) {
+				int wordLength = i - start;
+				if (wordLength >= MIN_WORD_LENGTH
+						&& wordLength <= MAX_WORD_LENGTH
+						&& (!isWholeWordsOnly || start > 0 && i < length)) {
+					result.add(text.substring(start, i).toLowerCase());
+				}
+				start = -1;
+			}
+		}
+	}
+
+	/**
+	 * Appends an event to the store.
+	 */
+	public synchronized void append(ChatEvent event) {
+		if (isDisposed) {
+			return;
+		}
+		if (active.count == SEGMENT_SIZE) {
+			if (active.number == MAX_SEGMENT_NUMBER) {
+				LOG.warn("ChatStore " + directory
+						+ " has no segments left until it is reopened.");
+				return;
+			}
+			active.cache = new SoftReference<ChatEvent[]>(active.events);
+			active.events = null;
+			active.index = null;
+			active = createSegment(active.number + 1);
+		}
+		active.add(event);
+		ChatLogWriter.getInstance().writeSerialized(
+				active.file.getAbsolutePath(), event);
+	}
+
+	/**
+	 * Waits until the segments written by earlier sessions are searchable.
+	 * Returns true if they are, false if the timeout passed first.
+	 */
+	public boolean awaitLoaded(long timeoutMillis) {
+		try {
+			return loadedLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes every event in the store.
+	 */
+	public synchronized void clear() {
+		generation++;
+		Set<String> paths = new LinkedHashSet<String>();
+		for (Segment segment : segments.values()) {
+			paths.add(segment.file.getAbsolutePath());
+		}
+		for (File file : listSegmentFiles(false)) {
+			paths.add(file.getAbsolutePath());
+		}
+		for (String path : paths) {
+			ChatLogWriter.getInstance().delete(path);
+		}
+		segments.clear();
+		synchronized (indexCache) {
+			indexCache.clear();
+		}
+		active = createSegment(active.number + 1);
+	}
+
+	/**
+	 * Stops loading and appending. Events already appended are still written.
+	 */
+	public synchronized void dispose() {
+		isDisposed = true;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the number of searchable events.
+	 */
+	public synchronized int getEventCount() {
+		int result = 0;
+		for (Segment segment : segments.values()) {
+			result += segment.count;
+		}
+		return result;
+	}
+
+	public boolean isLoaded() {
+		return loadedLatch.getCount() == 0;
+	}
+
+	/**
+	 * Returns the events matching the query, oldest first. If a limit is set
+	 * and more events match, the most recent are returned.
+	 */
+	public List<ChatEvent> search(ChatQuery query) {
+		List<ChatEvent> result = new ArrayList<ChatEvent>();
+		int limit = query.getLimit() > 0 ? query.getLimit()
+				: Integer.MAX_VALUE;
+		String text = query.getText() == null ? null : query.getText()
+				.toLowerCase();
+		String[] words = query.getWords() == null ? null : StringUtils
+				.split(query.getWords().toLowerCase());
+		Set<String> indexedWords = new LinkedHashSet<String>();
+		tokenize(query.getWords(), false, indexedWords);
+		tokenize(query.getText(), true, indexedWords);
+		boolean isIndexed = query.getTypes() != null
+				&& query.getTypes().length > 0 || query.getSource() != null
+				|| query.getChannel() != null || !indexedWords.isEmpty();
+
+		List<Segment> older;
+		synchronized (this) {
+			if (isInTimeRange(active, query)) {
+				search(active, active.events, active.index, query, text,
+						words, indexedWords, limit, result);
+			}
+			older = new ArrayList<Segment>(segments.headMap(active.number,
+					false).descendingMap().values());
+		}
+
+		// Older segments don't change, so they are read without the lock.
+		for (Segment segment : older) {
+			if (result.size() == limit || query.getFromTime() > 0
+					&& segment.lastTime < query.getFromTime()) {
+				break;
+			}
+			if (segment.count == 0 || !isInTimeRange(segment, query)) {
+				continue;
+			}
+			ChatEvent[] events = segment.getEvents();
+			search(segment, events, isIndexed ? getIndex(segment, events)
+					: null, query, text, words, indexedWords, limit, result);
+		}
+
+		Collections.reverse(result);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Searched " + directory.getName() + " " + query
+					+ " found " + result.size());
+		}
+		return result;
+	}
+
+	protected boolean containsAll(List<IntList> lists, IntList driver,
+			int ordinal) {
+		for (IntList list : lists) {
+			if (list != driver && !list.contains(ordinal)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Converts a text segment to a binary one and deletes it. Returns the
+	 * binary segment, or null if the conversion failed, in which case the
+	 * text segment is kept to try again next time.
+	 */
+	protected File convertTextSegment(File textFile) {
+		File result = getSegmentFile(getNumber(textFile));
+		try {
+			int count = ChatEventUtils.convertTextLog(textFile, result);
+			result.setLastModified(textFile.lastModified());
+			if (!textFile.delete()) {
+				LOG.warn("Could not delete converted segment " + textFile);
+			}
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Converted " + count + " chat events in " + textFile);
+			}
+			return result;
+		} catch (IOException ioe) {
+			LOG.warn("Could not convert " + textFile, ioe);
+			result.delete();
+			return null;
+		}
+	}
+
+	protected Segment createSegment(int number) {
+		Segment result = new Segment(number, getSegmentFile(number));
+		result.events = new ChatEvent[SEGMENT_SIZE];
+		result.index = new Index();
+		result.isWrittenThisSession = true;
+		segments.put(number, result);
+		return result;
+	}
+
+	/**
+	 * Returns the index of a segment other than the active one, building it
+	 * from the segment's events if it is not cached.
+	 */
+	protected Index getIndex(Segment segment, ChatEvent[] events) {
+		synchronized (indexCache) {
+			Index result = indexCache.get(segment);
+			if (result != null) {
+				return result;
+			}
+		}
+		Index result = new Index();
+		for (int i = 0; i < segment.count && i < events.length; i++) {
+			if (events[i] != null) {
+				result.add(i, events[i]);
+			}
+		}
+		synchronized (indexCache) {
+			indexCache.put(segment, result);
+		}
+		return result;
+	}
+
+	protected int getNumber(File file) {
+		String name = file.getName();
+		return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name
+				.lastIndexOf('.')));
+	}
+
+	protected File getSegmentFile(int number) {
+		return getSegmentFile(number, SEGMENT_SUFFIX);
+	}
+
+	protected File getSegmentFile(int number, String suffix) {
+		return new File(directory, SEGMENT_PREFIX
+				+ StringUtils.leftPad(String.valueOf(number), 5, '0') + suffix);
+	}
+
+	/**
+	 * Returns the segment files in the directory in number order. If a text
+	 * and a binary segment have the same number the conversion was
+	 * interrupted, so the binary one is deleted. If isRenumbering is true
+	 * and the numbers are running out they are renamed to start at 1 again.
+	 */
+	protected List<File> listSegmentFiles(boolean isRenumbering) {
+		TreeMap<Integer, File> numbered = new TreeMap<Integer, File>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				boolean isText = name.endsWith(TEXT_SEGMENT_SUFFIX);
+				if (name.startsWith(SEGMENT_PREFIX)
+						&& (isText || name.endsWith(SEGMENT_SUFFIX))) {
+					try {
+						int number = getNumber(file);
+						File other = numbered.get(number);
+						if (other == null) {
+							numbered.put(number, file);
+						} else {
+							// Delete the partial binary segment.
+							if (isText) {
+								numbered.put(number, file);
+							}
+							(isText ? other : file).delete();
+						}
+					} catch (NumberFormatException nfe) {
+					}
+				}
+			}
+		}
+		List<File> result = new ArrayList<File>(numbered.values());
+		if (isRenumbering && !numbered.isEmpty()
+				&& numbered.lastKey() > MAX_SEGMENT_NUMBER / 2) {
+			for (int i = 0; i < result.size(); i++) {
+				String name = result.get(i).getName();
+				File renamed = getSegmentFile(i + 1, name.substring(name
+						.lastIndexOf('.')));
+				if (result.get(i).renameTo(renamed)) {
+					result.set(i, renamed);
+				} else {
+					LOG.warn("Could not rename " + result.get(i) + " to "
+							+ renamed);
+					return result.subList(0, i);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the events in the segment files of earlier sessions and adds the
+	 * segments to the store, unless it was cleared or disposed meanwhile.
+	 */
+	protected void load(List<File> files, int loadGeneration) {
+		long startTime = System.currentTimeMillis();
+		try {
+			long oldest = retentionMillis > 0 ? startTime - retentionMillis
+					: 0;
+			List<Segment> loaded = new ArrayList<Segment>(files.size());
+			for (File file : files) {
+				if (isDisposed) {
+					return;
+				}
+				if (file.lastModified() < oldest) {
+					if (!file.delete()) {
+						LOG.warn("Could not delete expired segment " + file);
+					}
+					continue;
+				}
+				if (file.getName().endsWith(TEXT_SEGMENT_SUFFIX)) {
+					file = convertTextSegment(file);
+					if (file == null) {
+						continue;
+					}
+				}
+				Segment segment = new Segment(getNumber(file), file);
+				List<ChatEvent> events = readEvents(file);
+				segment.count = events.size();
+				if (!events.isEmpty()) {
+					segment.firstTime = events.get(0).getTime();
+					segment.lastTime = events.get(events.size() - 1)
+							.getTime();
+				}
+				loaded.add(segment);
+			}
+
+			synchronized (this) {
+				if (loadGeneration == generation && !isDisposed) {
+					for (Segment segment : loaded) {
+						segments.put(segment.number, segment);
+					}
+				}
+			}
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Loaded " + loaded.size() + " chat segments from "
+						+ directory + " in "
+						+ (System.currentTimeMillis() - startTime) + "ms");
+			}
+		} catch (Throwable t) {
+			LOG.error("Error loading chat store " + directory, t);
+		} finally {
+			loadedLatch.countDown();
+		}
+	}
+
+	/**
+	 * Returns true if some of a segment's events may be in the query's time
+	 * range. Events are assumed to be appended in time order.
+	 */
+	protected boolean isInTimeRange(Segment segment, ChatQuery query) {
+		return (query.getFromTime() <= 0 || segment.lastTime >= query
+				.getFromTime())
+				&& (query.getToTime() <= 0 || segment.firstTime < query
+						.getToTime());
+	}
+
+	protected boolean matches(ChatEvent event, ChatQuery query, String text,
+			String[] words) {
+		if (event == null) {
+			return false;
+		}
+		if (query.getFromTime() > 0 && event.getTime() < query.getFromTime()
+				|| query.getToTime() > 0 && event.getTime() >= query.getToTime()) {
+			return false;
+		}
+		if (text != null || words != null) {
+			String message = StringUtils.defaultString(event.getMessage())
+					.toLowerCase();
+			if (text != null && !message.contains(text)) {
+				return false;
+			}
+			if (words != null) {
+				for (String word : words) {
+					if (!message.contains(word)) {
+						return false;
+					}
+				}
+			}
+		}
+		return query.getPattern() == null
+				|| RegExUtils.matches(query.getPattern(), StringUtils
+						.defaultString(event.getMessage()));
+	}
+
+	/**
+	 * Adds the matches in a segment to result, newest first, until result
+	 * holds limit events. If index is null every event is checked.
+	 */
+	protected void search(Segment segment, ChatEvent[] events, Index index,
+			ChatQuery query, String text, String[] words,
+			Set<String> indexedWords, int limit, List<ChatEvent> result) {
+		int count = Math.min(segment.count, events.length);
+		List<IntList> lists = index == null ? Collections
+				.<IntList> emptyList() : index.getLists(query, indexedWords);
+		if (lists == null) {
+			return;
+		}
+		if (lists.isEmpty()) {
+			for (int i = count - 1; i >= 0 && result.size() < limit; i--) {
+				if (matches(events[i], query, text, words)) {
+					result.add(events[i]);
+				}
+			}
+		} else {
+			IntList driver = lists.get(0);
+			for (IntList list : lists) {
+				if (list.size < driver.size) {
+					driver = list;
+				}
+			}
+			for (int i = driver.size - 1; i >= 0 && result.size() < limit; i--) {
+				int ordinal = driver.values[i];
+				if (ordinal < count && containsAll(lists, driver, ordinal)
+						&& matches(events[ordinal], query, text, words)) {
+					result.add(events[ordinal]);
+				}
+			}
+		}
+	}
+}
@@ -251,6 +251,12 @@ public interface Connector {
 	 */
 	public String getUserName();
 
+	/**
+	 * Returns one line per active chat event script and pending message
+	 * callback, with how often it was evaluated and how long that took.
+	 */
+	public String getDispatchDiagnostics();
+
 	/**
 	 * Invokes callback on the next message found that matches the specified
 	 * regular expression.
@@ -147,6 +147,7 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 	protected Action disconnectAction;
 	protected Action reconnectAction;
 	protected Action bugbuttonsAction;
+	protected Action gameMonitorAction;
 	protected String partnerOnConnect;
 
 	protected Object extendedCensorSync = new Object();
@@ -174,6 +175,7 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 				reconnectAction.setEnabled(false);
 				autoConnectAction.setEnabled(true);
 				bugbuttonsAction.setEnabled(false);
+				gameMonitorAction.setEnabled(false);
 				super.disconnect();
 			}
 		}
@@ -341,6 +343,7 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 				disconnectAction.setEnabled(true);
 				reconnectAction.setEnabled(true);
 				bugbuttonsAction.setEnabled(true);
+				gameMonitorAction.setEnabled(true);
 
 				if (getPreferences().getBoolean(
 						context.getPreferencePrefix()
@@ -404,6 +407,13 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 			}
 		};
 
+		gameMonitorAction = new Action(local.getString("gameMonitor1")) {
+			@Override
+			public void run() {
+				SWTUtils.openGameMonitorWindowItem(BicsConnector.this);
+			}
+		};
+
 		autoConnectAction = new Action(local.getString("bicsConnector9"),
 				IAction.AS_CHECK_BOX) {
 			@Override
@@ -484,16 +494,25 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 			}
 		};
 
+		bics2.gameMonitorAction = new Action(local.getString("gameMonitor1")) {
+			@Override
+			public void run() {
+				SWTUtils.openGameMonitorWindowItem(bics2);
+			}
+		};
+
 		connectAction.setEnabled(true);
 		disconnectAction.setEnabled(false);
 		reconnectAction.setEnabled(false);
 		autoConnectAction.setEnabled(true);
 		bugbuttonsAction.setEnabled(false);
+		gameMonitorAction.setEnabled(false);
 
 		bics2.connectAction.setEnabled(true);
 		bics2.disconnectAction.setEnabled(false);
 		bics2.reconnectAction.setEnabled(false);
 		bics2.bugbuttonsAction.setEnabled(false);
+		bics2.gameMonitorAction.setEnabled(false);
 
 		bicsMenu.add(connectAction);
 		bicsMenu.add(disconnectAction);
@@ -509,6 +528,7 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 		MenuManager bics2Tabs = new MenuManager(
 				local.getString("bicsConnector17"));
 		bics2Tabs.add(bics2.bugbuttonsAction);
+		bics2Tabs.add(bics2.gameMonitorAction);
 		bics2Menu.add(bics2Tabs);
 		bicsMenu.add(bics2Menu);
 
@@ -516,6 +536,7 @@ public class BicsConnector extends IcsConnector implements PreferenceKeys {
 		MenuManager tabsMenu = new MenuManager(
 				local.getString("bicsConnector17"));
 		tabsMenu.add(bugbuttonsAction);
+		tabsMenu.add(gameMonitorAction);
 		bicsMenu.add(tabsMenu);
 
 		linksMenu = new MenuManager(local.getString("bicsConnector18"));
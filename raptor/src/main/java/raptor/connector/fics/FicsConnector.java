@@ -600,6 +600,13 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 			}
 		};
 
+		Action gameMonitorAction = new Action(local.getString("gameMonitor1")) {
+			@Override
+			public void run() {
+				SWTUtils.openGameMonitorWindowItem(FicsConnector.this);
+			}
+		};
+
 		Action regexTabAction = new Action(local.getString("ficsConn14")) {
 			@Override
 			public void run() {
@@ -701,6 +708,14 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 			}
 		};
 
+		Action fics2GameMonitorAction = new Action(
+				local.getString("gameMonitor1")) {
+			@Override
+			public void run() {
+				SWTUtils.openGameMonitorWindowItem(fics2);
+			}
+		};
+
 		Action fics2bugwhoAction = new Action(local.getString("ficsConn11")) {
 			@Override
 			public void run() {
@@ -760,6 +775,7 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 		bugbuttonsAction.setEnabled(false);
 		showSeekDialogAction.setEnabled(false);
 		gamesAction.setEnabled(false);
+		gameMonitorAction.setEnabled(false);
 
 		onlyEnabledOnConnectActions.add(bugwhoAction);
 		onlyEnabledOnConnectActions.add(disconnectAction);
@@ -769,6 +785,7 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 		onlyEnabledOnConnectActions.add(bugbuttonsAction);
 		onlyEnabledOnConnectActions.add(showSeekDialogAction);
 		onlyEnabledOnConnectActions.add(gamesAction);
+		onlyEnabledOnConnectActions.add(gameMonitorAction);
 
 		fics2.connectAction.setEnabled(true);
 		fics2DisconnectAction.setEnabled(false);
@@ -778,6 +795,7 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 		fics2RegexTabAction.setEnabled(false);
 		fics2BugbuttonsAction.setEnabled(false);
 		fics2GamesAction.setEnabled(false);
+		fics2GameMonitorAction.setEnabled(false);
 
 		fics2.onlyEnabledOnConnectActions.add(fics2bugwhoAction);
 		fics2.onlyEnabledOnConnectActions.add(fics2DisconnectAction);
@@ -786,6 +804,7 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 		fics2.onlyEnabledOnConnectActions.add(fics2SeekTableAction);
 		fics2.onlyEnabledOnConnectActions.add(fics2BugbuttonsAction);
 		fics2.onlyEnabledOnConnectActions.add(fics2GamesAction);
+		fics2.onlyEnabledOnConnectActions.add(fics2GameMonitorAction);
 
 		autoConnectAction.setChecked(getPreferences().getBoolean(
 				context.getPreferencePrefix() + "auto-connect"));
@@ -804,6 +823,7 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 		fics2Menu.add(fics2ReconnectAction);
 		fics2Menu.add(new Separator());
 		fics2TabsMenu.add(fics2GamesAction);
+		fics2TabsMenu.add(fics2GameMonitorAction);
 		fics2TabsMenu.add(fics2SeekTableAction);
 		fics2TabsMenu.add(new Separator());
 		fics2TabsMenu.add(fics2BugbuttonsAction);
@@ -817,6 +837,7 @@ public class FicsConnector extends IcsConnector implements PreferenceKeys,
 		ficsMenu.add(actions);
 		MenuManager tabsMenu = new MenuManager(local.getString("ficsConn23"));
 		tabsMenu.add(gamesAction);
+		tabsMenu.add(gameMonitorAction);
 		tabsMenu.add(seekTableAction);
 		tabsMenu.add(new Separator());
 		tabsMenu.add(bugbuttonsAction);
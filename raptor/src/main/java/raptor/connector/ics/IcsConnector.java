@@ -13,16 +13,20 @@
  */
 package raptor.connector.ics;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
@@ -31,6 +35,8 @@ import org.apache.commons.lang.exception.ExceptionUtils;
 import org.eclipse.jface.action.MenuManager;
 import org.eclipse.jface.preference.PreferenceNode;
 import org.eclipse.jface.preference.PreferencePage;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 
 import raptor.Raptor;
 import raptor.RaptorConnectorWindowItem;
@@ -47,6 +53,8 @@ import raptor.chess.util.GameUtils;
 import raptor.connector.Connector;
 import raptor.connector.ConnectorListener;
 import raptor.connector.MessageCallback;
+import raptor.connector.ics.replay.ReplayLatencyMonitor;
+import raptor.connector.ics.replay.ReplayMessageProducer;
 import raptor.connector.ics.timeseal.MessageListener;
 import raptor.connector.ics.timeseal.MessageProducer;
 import raptor.connector.ics.timeseal.TimesealSocketMessageProducer;
@@ -61,6 +69,7 @@ import raptor.script.RaptorParameterScriptContext;
 import raptor.script.RaptorScriptContext;
 import raptor.script.ScriptConnectorType;
 import raptor.script.ScriptContext;
+import raptor.service.BlunderCheckService;
 import raptor.service.BughouseService;
 import raptor.service.ChatService;
 import raptor.service.GameService;
@@ -77,6 +86,7 @@ import raptor.service.ThreadService;
 import raptor.service.UserTagService;
 import raptor.swt.BugButtonsWindowItem;
 import raptor.swt.BugWhoWindowItem;
+import raptor.swt.GameMonitorWindowItem;
 import raptor.swt.GamesWindowItem;
 import raptor.swt.SWTUtils;
 import raptor.swt.SeekTableWindowItem;
@@ -86,6 +96,9 @@ import raptor.swt.chat.controller.ChannelController;
 import raptor.swt.chat.controller.MainController;
 import raptor.swt.chat.controller.RegExController;
 import raptor.swt.chess.ChessBoardUtils;
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
+import raptor.util.PatternSet;
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
 import raptor.util.RaptorStringUtils;
@@ -102,6 +115,31 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		protected int missCount;
 		protected Pattern regularExpression;
 		protected MessageCallback callback;
+
+		/**
+		 * Literal text a matching message starts with, checked before the
+		 * regular expression. "" if there is none.
+		 */
+		protected String prefix;
+		protected int skipCount;
+		protected int matchCount;
+		protected long totalNanos;
+		protected long maxNanos;
+
+		@Override
+		public String toString() {
+			int evaluated = matchCount + missCount - skipCount;
+			return regularExpression.pattern()
+					+ " skipped="
+					+ skipCount
+					+ " evaluated="
+					+ evaluated
+					+ " matched="
+					+ matchCount
+					+ String.format(" avg/max us=%.1f/%.1f",
+							evaluated == 0 ? 0.0 : totalNanos / 1000.0
+									/ evaluated, maxNanos / 1000.0);
+		}
 	}
 
 	// max mmessage size is 400 on fics right now.
@@ -118,8 +156,8 @@ public abstract class IcsConnector implements Connector, MessageListener {
 
 	protected ChatService chatService;
 
-	protected List<ConnectorListener> connectorListeners = Collections
-			.synchronizedList(new ArrayList<ConnectorListener>(10));
+	protected ListenerList<ConnectorListener> connectorListeners = new ListenerList<ConnectorListener>(
+			"IcsConnector");
 
 	protected IcsConnectorContext context;
 
@@ -133,7 +171,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	protected SeekService seekService;
 	protected boolean isSpeakingAllPersonTells = false;
     protected TreeMap<String,String> autoCompleteList = new TreeMap<String,String>();
-	protected List<Pattern> patternsToBlock = new ArrayList<Pattern>(20);
+	protected volatile PatternSet patternsToBlock = PatternSet.empty();
 	protected MessageProducer messageProducer;
 
 	/**
@@ -142,6 +180,13 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	protected GameServiceListener gameServiceListener = new GameServiceAdapter() {
 		@Override
 		public void gameCreated(Game game) {
+			if (gameService.isMonitoringObservedGames()
+					&& game.isInState(Game.OBSERVING_STATE)) {
+				// The game monitor picks it up and only builds a board if the
+				// user opens it.
+				return;
+			}
+
 			if (game instanceof BughouseGame) {
 				if (isSimulBugConnector && game.isInState(Game.PLAYING_STATE)) {
 					// Always make white the primary and black the other board.
@@ -194,6 +239,10 @@ public abstract class IcsConnector implements Connector, MessageListener {
 
 	protected long lagNotifyCounter = 0;
 
+	protected LagTracker lagTracker = new LagTracker();
+
+	protected OutboundQueue outboundQueue;
+
 	protected String simulBugPartnerName;
 	protected Runnable keepAlive = new Runnable() {
 		public void run() {
@@ -230,9 +279,30 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	protected String userName;
 	protected String userFollowing;
 	protected List<String> extendedCensorList = new ArrayList<String>(300);
+	/**
+	 * The names in extendedCensorList, for lookups from the reader thread.
+	 */
+	protected Set<String> extendedCensorSet = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 	protected String[] bughouseSounds = SoundService.getInstance()
 			.getBughouseSoundKeys();
 	protected ChatEventScript[] chatEventScripts = null;
+	protected IPropertyChangeListener blockListPropertyListener = new IPropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent event) {
+			if (event.getProperty().equals(
+					context.getPreferencePrefix()
+							+ PreferenceKeys.REGULAR_EXPRESSIONS_TO_BLOCK)) {
+				setRegexPatternsToBlock();
+			}
+		}
+	};
+
+	/**
+	 * The active chat event scripts which handle each ChatType, including the
+	 * ChatType.ALL scripts.
+	 */
+	protected volatile Map<ChatType, ChatEventScript[]> chatTypeToScripts = new EnumMap<ChatType, ChatEventScript[]>(
+			ChatType.class);
 
 	protected List<MessageCallbackEntry> messageCallbackEntries = new ArrayList<MessageCallbackEntry>(
 			20);
@@ -258,13 +328,19 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		seekService = new SeekService(this);
 		gameService = new GameService();
 		gameService.addGameServiceListener(gameServiceListener);
+		BlunderCheckService.getInstance().watch(this);
 		setBughouseService(new BughouseService(this));
 		prepopulateAutoCompleteList();
+		getPreferences().addPropertyChangeListener(blockListPropertyListener);
 	}
 
 	@Override
 	public void connectionClosed(StringBuilder buffer) {
 		parseMessage(drainInboundMessageBuffer(buffer));
+		if (ReplayLatencyMonitor.getInstance().isEnabled()) {
+			publishEvent(new ChatEvent(null, ChatType.INTERNAL,
+					ReplayLatencyMonitor.getInstance().getReport()));
+		}
 		disconnect();
 	}
 
@@ -292,19 +368,23 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		return false;
 	}
 
+	/**
+	 * Rebuilds patternsToBlock from the preferences. Invoked on connect and
+	 * whenever the preference changes. Nothing is recompiled if the patterns
+	 * didn't change.
+	 */
 	protected void setRegexPatternsToBlock() {
-		patternsToBlock.clear();
 		String[] regexPatterns = getPreferences().getStringArray(
 				context.getPreferencePrefix()
 						+ PreferenceKeys.REGULAR_EXPRESSIONS_TO_BLOCK);
-		if (regexPatterns != null) {
-			for (String regex : regexPatterns) {
-				Pattern pattern = RegExUtils.getPattern(regex);
-				if (pattern == null) {
-					LOG.error("Invalid regex pattern. Will be ignored.");
-				} else {
-					patternsToBlock.add(pattern);
-				}
+		if (regexPatterns == null) {
+			regexPatterns = new String[0];
+		}
+		PatternSet patterns = patternsToBlock.with(regexPatterns);
+		if (patterns != patternsToBlock) {
+			patternsToBlock = patterns;
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Rebuilt patterns to block: " + patterns);
 			}
 		}
 	}
@@ -321,7 +401,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	public void addExtendedCensor(String person) {
-		extendedCensorList.add(IcsUtils.stripTitles(person).toLowerCase());
+		String name = IcsUtils.stripTitles(person).toLowerCase();
+		extendedCensorList.add(name);
+		extendedCensorSet.add(name);
 		Collections.sort(extendedCensorList);
 		writeExtendedCensorList();
 	}
@@ -450,6 +532,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	public int clearExtendedCensor() {
 		int result = extendedCensorList.size();
 		extendedCensorList.clear();
+		extendedCensorSet.clear();
 		writeExtendedCensorList();
 		return result;
 	}
@@ -491,6 +574,12 @@ public abstract class IcsConnector implements Connector, MessageListener {
 					ScriptService.getInstance().removeScriptServiceListener(
 							scriptServiceListener);
 
+					if (outboundQueue != null) {
+						if (LOG.isInfoEnabled()) {
+							LOG.info(outboundQueue.getReport());
+						}
+						outboundQueue.stop();
+					}
 					if (messageProducer != null) {
 						try {
 							messageProducer.close();
@@ -512,6 +601,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 					isSpeakingAllPersonTells = false;
 					messageCallbackEntries.clear();
 					extendedCensorList.clear();
+					extendedCensorSet.clear();
 				}
 			}
 
@@ -531,6 +621,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 			disconnect();
 		}
 		if (connectorListeners != null) {
+			connectorListeners.logTimings();
 			connectorListeners.clear();
 			connectorListeners = null;
 		}
@@ -540,6 +631,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 			chatService = null;
 		}
 		if (gameService != null) {
+			if (BlunderCheckService.serviceCreated) {
+				BlunderCheckService.getInstance().unwatch(this);
+			}
 			gameService.removeGameServiceListener(gameServiceListener);
 			gameService.dispose();
 			gameService = null;
@@ -552,6 +646,8 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		if (keepAlive != null) {
 			ThreadService.getInstance().getExecutor().remove(keepAlive);
 		}
+		getPreferences().removePropertyChangeListener(
+				blockListPropertyListener);
 
 		LOG.info("Disposed " + getShortName() + "Connector");
 	}
@@ -724,6 +820,13 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		return lastPingTime;
 	}
 
+	/**
+	 * Returns the tracker holding the smoothed lag of this connection.
+	 */
+	public LagTracker getLagTracker() {
+		return lagTracker;
+	}
+
 	public static RaptorPreferenceStore getPreferences() {
 		return Raptor.getInstance().getPreferences();
 	}
@@ -763,6 +866,27 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		return "tell " + handle + " ";
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getDispatchDiagnostics() {
+		StringBuilder result = new StringBuilder(1000);
+		Set<ChatEventScript> scripts = new TreeSet<ChatEventScript>();
+		for (ChatEventScript[] typeScripts : chatTypeToScripts.values()) {
+			scripts.addAll(Arrays.asList(typeScripts));
+		}
+		for (ChatEventScript script : scripts) {
+			result.append("Script ").append(script.getChatType()).append(" ")
+					.append(script.getCompiledScript()).append("\n");
+		}
+		synchronized (messageCallbackEntries) {
+			for (MessageCallbackEntry entry : messageCallbackEntries) {
+				result.append("Callback ").append(entry).append("\n");
+			}
+		}
+		return result.toString();
+	}
+
 	/**
 	 * Returns the name of the current user logged in.
 	 */
@@ -778,9 +902,13 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		MessageCallbackEntry messageCallbackEntry = new MessageCallbackEntry();
 		messageCallbackEntry.regularExpression = RegExUtils
 				.getPattern(regularExpression);
+		messageCallbackEntry.prefix = RegExUtils
+				.getLiteralPrefix(regularExpression);
 		messageCallbackEntry.isOneShot = true;
 		messageCallbackEntry.callback = callback;
-		messageCallbackEntries.add(messageCallbackEntry);
+		synchronized (messageCallbackEntries) {
+			messageCallbackEntries.add(messageCallbackEntry);
+		}
 	}
 
 	public boolean isConnected() {
@@ -808,8 +936,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	public boolean isOnExtendedCensor(String person) {
-		return extendedCensorList.contains(IcsUtils.stripTitles(person)
-				.toLowerCase());
+		return !extendedCensorSet.isEmpty()
+				&& extendedCensorSet.contains(IcsUtils.stripTitles(person)
+						.toLowerCase());
 	}
 
 	public boolean isSimulBugConnector() {
@@ -823,7 +952,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	public void makeMove(Game game, Move move) {
-		sendMessage(move.getLan(), true);
+		sendMessage(move.getLan(), true, null, OutboundQueue.Lane.MOVE);
 	}
 
 	public void matchBughouse(String playerName, boolean isRated, int time,
@@ -995,14 +1124,36 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	public void processMessageCallbacks(final ChatEvent event) {
+		synchronized (messageCallbackEntries) {
+			if (messageCallbackEntries.isEmpty()) {
+				return;
+			}
+		}
 		ThreadService.getInstance().run(new Runnable() {
 			public void run() {
+				String message = event.getMessage();
 				synchronized (messageCallbackEntries) {
 					for (int i = 0; i < messageCallbackEntries.size(); i++) {
 						MessageCallbackEntry entry = messageCallbackEntries
 								.get(i);
-						if (RegExUtils.matches(entry.regularExpression,
-								event.getMessage())) {
+						if (!message.regionMatches(true, 0, entry.prefix, 0,
+								entry.prefix.length())) {
+							entry.skipCount++;
+							entry.missCount++;
+							continue;
+						}
+
+						long startTime = System.nanoTime();
+						boolean isMatch = RegExUtils.matches(
+								entry.regularExpression, message);
+						long nanos = System.nanoTime() - startTime;
+						entry.totalNanos += nanos;
+						if (nanos > entry.maxNanos) {
+							entry.maxNanos = nanos;
+						}
+
+						if (isMatch) {
+							entry.matchCount++;
 							if (LOG.isDebugEnabled()) {
 								LOG.debug("Invoking callback " + entry.callback);
 							}
@@ -1024,15 +1175,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	protected boolean isBlockedByRegularExpressionBlocks(ChatEvent event) {
-		String message = event.getMessage().trim();
-		boolean result = false;
-		for (Pattern pattern : patternsToBlock) {
-			if (RegExUtils.matches(pattern, message)) {
-				result = true;
-				break;
-			}
-		}
-		return result;
+		PatternSet patterns = patternsToBlock;
+		return patterns.size() > 0
+				&& patterns.matchesAny(event.getMessage().trim());
 	}
 
 	/**
@@ -1141,9 +1286,10 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	public boolean removeExtendedCensor(String person) {
-		boolean result = extendedCensorList.remove(IcsUtils.stripTitles(person)
-				.toLowerCase());
+		String name = IcsUtils.stripTitles(person).toLowerCase();
+		boolean result = extendedCensorList.remove(name);
 		if (result) {
+			extendedCensorSet.remove(name);
 			Collections.sort(extendedCensorList);
 			writeExtendedCensorList();
 		}
@@ -1191,6 +1337,8 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				SWTUtils.openBugButtonsWindowItem(this);
 			} else if (type.equals("GamesWindowItem")) {
 				SWTUtils.openGamesWindowItem(this);
+			} else if (type.equals("GameMonitorWindowItem")) {
+				SWTUtils.openGameMonitorWindowItem(this);
 			}
 		}
 
@@ -1260,6 +1408,18 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	 */
 	public void sendMessage(String message, boolean isHidingFromUser,
 			ChatType hideNextChatType) {
+		sendMessage(message, isHidingFromUser, hideNextChatType,
+				OutboundQueue.getLane(message));
+	}
+
+	/**
+	 * Sends a message to the connector in the specified lane of the outbound
+	 * queue.
+	 * 
+	 * @see #sendMessage(String, boolean, ChatType)
+	 */
+	protected void sendMessage(String message, boolean isHidingFromUser,
+			ChatType hideNextChatType, OutboundQueue.Lane lane) {
 		// long start = System.currentTimeMillis();
 		if (isConnected()) {
 
@@ -1281,30 +1441,13 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				ignoringChatTypes.add(hideNextChatType);
 			}
 
-			try {
-				String[] messages = breakUpMessage(builder);
-				for (String current : messages) {
-					if (!current.endsWith("\n")) {
-						current += "\n";
-					}
-					messageProducer.send(current);
-				}
-				if (message.startsWith("$$")) {
-					// Don't update last send time on a $$ since idle time
-					// isn't effected on the server.
-					lastSendPingTime = System.currentTimeMillis();
-				} else {
-					lastSendTime = lastSendPingTime = System
-							.currentTimeMillis();
+			String[] messages = breakUpMessage(builder);
+			boolean isResettingIdleTime = !message.startsWith("$$");
+			for (String current : messages) {
+				if (!current.endsWith("\n")) {
+					current += "\n";
 				}
-
-			} catch (Throwable t) {
-				t.printStackTrace(); // Used to track down issues when
-										// developing. Dont remove.
-				publishEvent(new ChatEvent(null, ChatType.INTERNAL, 
-						L10n.getInstance().getString("err")
-						+ t.getMessage()));
-				disconnect();
+				outboundQueue.add(current, lane, isResettingIdleTime);
 			}
 
 			if (!isHidingFromUser) {
@@ -1470,6 +1613,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				} else if (item instanceof GamesWindowItem) {
 					preference += (StringUtils.isBlank(preference) ? "" : "`")
 							+ "GamesWindowItem` ` ";
+				} else if (item instanceof GameMonitorWindowItem) {
+					preference += (StringUtils.isBlank(preference) ? "" : "`")
+							+ "GameMonitorWindowItem` ` ";
 				}
 			}
 			Raptor.getInstance()
@@ -1507,6 +1653,8 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		}
 		setRegexPatternsToBlock();
 		loadExtendedCensorList();
+		extendedCensorSet.clear();
+		extendedCensorSet.addAll(extendedCensorList);
 		resetConnectionStateVars();
 
 		currentProfileName = profileName;
@@ -1558,12 +1706,10 @@ public abstract class IcsConnector implements Connector, MessageListener {
 					boolean isTimesealEnabled = getPreferences().getBoolean(
 							profilePrefix + "timeseal-enabled");
 
-					messageProducer = new TimesealSocketMessageProducer(
-							getPreferences().getString(
-									profilePrefix + "server-url"),
+					messageProducer = createMessageProducer(getPreferences()
+							.getString(profilePrefix + "server-url"),
 							getPreferences().getInt(profilePrefix + "port"),
-							getInitialTimesealString(), isTimesealEnabled,
-							IcsConnector.this);
+							isTimesealEnabled);
 
 					publishEvent(new ChatEvent(null, ChatType.INTERNAL,
 							L10n.getInstance().getString("timesString")
@@ -1610,6 +1756,78 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		fireConnecting();
 	}
 
+	/**
+	 * Starts a new outbound queue writing to the message producer. It is
+	 * started before the producer is created so commands sent while logging
+	 * in are never dropped.
+	 */
+	protected void startOutboundQueue() {
+		if (outboundQueue != null) {
+			outboundQueue.stop();
+		}
+		outboundQueue = new OutboundQueue(getShortName(),
+				new OutboundQueue.Sender() {
+					public void send(String text, boolean isResettingIdleTime)
+							throws Exception {
+						MessageProducer producer = messageProducer;
+						if (producer == null) {
+							return;
+						}
+						producer.send(text);
+						if (isResettingIdleTime) {
+							lastSendTime = lastSendPingTime = System
+									.currentTimeMillis();
+						} else {
+							// Don't update last send time on a $$ since idle
+							// time isn't effected on the server.
+							lastSendPingTime = System.currentTimeMillis();
+						}
+					}
+
+					public void onSendError(Throwable t) {
+						t.printStackTrace(); // Used to track down issues when
+												// developing. Dont remove.
+						publishEvent(new ChatEvent(null, ChatType.INTERNAL,
+								L10n.getInstance().getString("err")
+										+ t.getMessage()));
+						disconnect();
+					}
+				});
+		outboundQueue.start();
+	}
+
+	/**
+	 * Returns the queue commands are written to the server from. It is null
+	 * until the first connection is made.
+	 */
+	public OutboundQueue getOutboundQueue() {
+		return outboundQueue;
+	}
+
+	/**
+	 * Creates the MessageProducer used to talk to the server. If Raptor was
+	 * started with -Draptor.replay.session a captured session is replayed
+	 * instead of opening a socket.
+	 */
+	protected MessageProducer createMessageProducer(String address, int port,
+			boolean isTimesealEnabled) throws IOException {
+		ReplayLatencyMonitor.getInstance().reset();
+		lagTracker.reset();
+		lagNotifyCounter = 0;
+		startOutboundQueue();
+		MessageProducer result = ReplayMessageProducer
+				.createFromSystemProperties(context.getRawPrompt(), this);
+		if (result == null) {
+			result = new TimesealSocketMessageProducer(address, port,
+					getInitialTimesealString(), isTimesealEnabled, this);
+		} else {
+			publishEvent(new ChatEvent(null, ChatType.INTERNAL,
+					"Replaying captured session "
+							+ System.getProperty(ReplayMessageProducer.SESSION_PROPERTY)));
+		}
+		return result;
+	}
+
 	protected void createMainConsoleWindowItem() {
 		mainConsoleWindowItem = new ChatConsoleWindowItem(new MainController(
 				this));
@@ -1670,11 +1888,11 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				if (connectorListeners == null) {
 					return;
 				}
-				synchronized (connectorListeners) {
-					for (ConnectorListener listener : connectorListeners) {
+				connectorListeners.fire(new Notification<ConnectorListener>() {
+					public void deliver(ConnectorListener listener) {
 						listener.onConnect();
 					}
-				}
+				});
 			}
 
 			public String toString() {
@@ -1689,11 +1907,11 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				if (connectorListeners == null) {
 					return;
 				}
-				synchronized (connectorListeners) {
-					for (ConnectorListener listener : connectorListeners) {
+				connectorListeners.fire(new Notification<ConnectorListener>() {
+					public void deliver(ConnectorListener listener) {
 						listener.onConnecting();
 					}
-				}
+				});
 			}
 
 			public String toString() {
@@ -1708,11 +1926,11 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				if (connectorListeners == null) {
 					return;
 				}
-				synchronized (connectorListeners) {
-					for (ConnectorListener listener : connectorListeners) {
+				connectorListeners.fire(new Notification<ConnectorListener>() {
+					public void deliver(ConnectorListener listener) {
 						listener.onDisconnect();
 					}
-				}
+				});
 			}
 
 			public String toString() {
@@ -1912,20 +2130,26 @@ public abstract class IcsConnector implements Connector, MessageListener {
 
 		// System.err.println("Message arrived (buffer): " + buffer);
 
-		if (lastSendPingTime != 0 && (lagNotifyCounter % 10 == 0)) {
-			ThreadService.getInstance().run(new Runnable() {
-				public void run() {
-					long currentTime = System.currentTimeMillis();
-					lastPingTime = currentTime - lastSendPingTime;
-					Raptor.getInstance().getWindow()
-							.setPingTime(IcsConnector.this, lastPingTime);
-					lastSendPingTime = 0;
-				}
+		if (lastSendPingTime != 0) {
+			// Sample on every reply so the estimate used to compensate the
+			// clocks stays current. Only the window's ping display is
+			// throttled.
+			lastPingTime = lagTracker.addSample(System.currentTimeMillis()
+					- lastSendPingTime);
+			lastSendPingTime = 0;
+			if (lagNotifyCounter++ % 10 == 0) {
+				final long pingTime = lastPingTime;
+				ThreadService.getInstance().run(new Runnable() {
+					public void run() {
+						Raptor.getInstance().getWindow()
+								.setPingTime(IcsConnector.this, pingTime);
+					}
 
-				public String toString() {
-					return "IcsConnector.messageArrived runnable";
-				}
-			});
+					public String toString() {
+						return "IcsConnector.messageArrived runnable";
+					}
+				});
+			}
 		}
 
 		if (isLoggedIn) {
@@ -2170,18 +2394,17 @@ public abstract class IcsConnector implements Connector, MessageListener {
 
 	/**
 	 * Processes the scripts for the specified chat event. Script processing is
-	 * kicked off on a different thread.
+	 * kicked off on the ScriptService's script threads, only if a script
+	 * handles the event's type.
 	 */
 	protected void processChatEventScripts(final ChatEvent event) {
-		if (chatEventScripts != null && chatEventScripts.length > 0) {
-			ThreadService.getInstance().run(new Runnable() {
+		final ChatEventScript[] scripts = chatTypeToScripts
+				.get(event.getType());
+		if (scripts != null) {
+			ScriptService.getInstance().runScripts(new Runnable() {
 				public void run() {
-					for (ChatEventScript script : chatEventScripts) {
-						if (script.isActive()
-								&& script.getChatType() == event.getType()
-								|| script.getChatType() == ChatType.ALL) {
-							script.execute(getChatScriptContext(event));
-						}
+					for (ChatEventScript script : scripts) {
+						script.execute(getChatScriptContext(event));
 					}
 				}
 
@@ -2332,6 +2555,41 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	protected void refreshChatScripts() {
 		chatEventScripts = ScriptService.getInstance().getChatEventScripts(
 				getScriptConnectorType());
+
+		Map<ChatType, List<ChatEventScript>> typeToList = new EnumMap<ChatType, List<ChatEventScript>>(
+				ChatType.class);
+		for (ChatEventScript script : chatEventScripts) {
+			if (!script.isActive() || script.getChatType() == null) {
+				continue;
+			}
+			if (script.getChatType() == ChatType.ALL) {
+				for (ChatType type : ChatType.values()) {
+					addScript(typeToList, type, script);
+				}
+			} else {
+				addScript(typeToList, script.getChatType(), script);
+			}
+		}
+		Map<ChatType, ChatEventScript[]> result = new EnumMap<ChatType, ChatEventScript[]>(
+				ChatType.class);
+		for (Map.Entry<ChatType, List<ChatEventScript>> entry : typeToList
+				.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toArray(
+					new ChatEventScript[entry.getValue().size()]));
+		}
+		// Replaced, never modified, so publishEvent can read it unlocked.
+		chatTypeToScripts = result;
+	}
+
+	private static void addScript(
+			Map<ChatType, List<ChatEventScript>> typeToList, ChatType type,
+			ChatEventScript script) {
+		List<ChatEventScript> list = typeToList.get(type);
+		if (list == null) {
+			list = new ArrayList<ChatEventScript>(2);
+			typeToList.put(type, list);
+		}
+		list.add(script);
 	}
 
 	/**
@@ -867,6 +867,17 @@ public class IcsParser implements GameConstants {
 		}
 		long startTime = System.currentTimeMillis();
 
+		// Synchronize the clock model before any listeners are notified so
+		// boards refreshing on this update see the new times. The running
+		// clock is compensated for the time the update spent in transit,
+		// except our own clock which the server already adjusts with timeseal.
+		service.syncClock(message.gameId, message.whiteRemainingTimeMillis,
+				message.blackRemainingTimeMillis, message.isClockTicking,
+				message.isWhitesMoveAfterMoveIsMade,
+				message.relation == Style12Message.PLAYING_MY_MOVE_RELATION
+						|| connector == null ? 0 : connector.getLagTracker()
+						.getOneWayEstimate());
+
 		Game game = service.getGame(message.gameId);
 		if (game != null) {
 			if (LOG.isDebugEnabled()) {
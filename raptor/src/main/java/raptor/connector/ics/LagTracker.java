@@ -0,0 +1,97 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics;
+
+/**
+ * Tracks the round trip lag of a connection as an exponentially weighted
+ * moving average of the samples taken between sending a command and
+ * receiving the next block of text from the server.
+ * 
+ * A single outlier (a GC pause, a burst of observed games) moves the estimate
+ * by at most ALPHA of its distance from the mean, so the clocks compensated
+ * with it do not jump around.
+ */
+public class LagTracker {
+	/**
+	 * The weight given to a new sample.
+	 */
+	public static final double ALPHA = 0.2;
+
+	/**
+	 * Samples larger than this are ignored. They are almost always caused by
+	 * the server sitting on a command (e.g. a long query) and not by the
+	 * network.
+	 */
+	public static final long MAX_SAMPLE_MILLIS = 10000L;
+
+	protected double estimate = -1;
+	protected long lastSample = 0;
+	protected long sampleCount = 0;
+
+	/**
+	 * Adds a round trip sample in milliseconds and returns the new estimate.
+	 */
+	public synchronized long addSample(long roundTripMillis) {
+		if (roundTripMillis >= 0 && roundTripMillis <= MAX_SAMPLE_MILLIS) {
+			lastSample = roundTripMillis;
+			sampleCount++;
+			if (estimate < 0) {
+				estimate = roundTripMillis;
+			} else {
+				estimate += ALPHA * (roundTripMillis - estimate);
+			}
+		}
+		return getEstimate();
+	}
+
+	/**
+	 * Returns the smoothed round trip time in milliseconds, 0 if no samples
+	 * have been taken.
+	 */
+	public synchronized long getEstimate() {
+		return estimate < 0 ? 0 : Math.round(estimate);
+	}
+
+	/**
+	 * Returns the last raw sample in milliseconds.
+	 */
+	public synchronized long getLastSample() {
+		return lastSample;
+	}
+
+	/**
+	 * Returns the estimated time it takes a message from the server to reach
+	 * this client. This is the amount clocks are compensated by when a board
+	 * update arrives.
+	 */
+	public synchronized long getOneWayEstimate() {
+		return getEstimate() / 2;
+	}
+
+	/**
+	 * Returns the number of samples taken since the last reset.
+	 */
+	public synchronized long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Clears the estimate. Invoked when a new connection is made.
+	 */
+	public synchronized void reset() {
+		estimate = -1;
+		lastSample = 0;
+		sampleCount = 0;
+	}
+}
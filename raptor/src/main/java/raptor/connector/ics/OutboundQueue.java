@@ -0,0 +1,429 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import raptor.util.RaptorLogger;
+
+/**
+ * Queues the commands a connector sends and writes them to the server from a
+ * single writer thread.
+ *
+ * Commands are placed in one of three lanes. Each flush drains every queued
+ * move and game command, in the order they were added, then at most
+ * MAX_CHAT_PER_TICK chat commands, and writes them to the server as one batch.
+ * Chat beyond that waits for the next tick, so a script flooding tells can
+ * never delay a move by more than the batch already being written.
+ *
+ * Moves and game commands are never reordered relative to each other, since
+ * for example $$back followed by a move in examine mode depends on it. Only
+ * chat is overtaken. Commands within a lane are always sent in the order they
+ * were added.
+ */
+public class OutboundQueue {
+	/**
+	 * The lanes commands are queued in. MOVE and GAME are sent before CHAT.
+	 */
+	public static enum Lane {
+		MOVE, GAME, CHAT
+	}
+
+	/**
+	 * Writes a batch of commands to the server.
+	 */
+	public static interface Sender {
+		/**
+		 * Writes text, one or more newline terminated commands.
+		 *
+		 * @param isResettingIdleTime
+		 *            False if every command in the batch started with $$.
+		 */
+		public void send(String text, boolean isResettingIdleTime)
+				throws Exception;
+
+		/**
+		 * Invoked on the writer thread if send throws. The queue stops.
+		 */
+		public void onSendError(Throwable t);
+	}
+
+	protected static class Entry {
+		String text;
+		long sequence;
+		long enqueuedNanos;
+		boolean isResettingIdleTime;
+
+		Entry(String text, long sequence, boolean isResettingIdleTime) {
+			this.text = text;
+			this.sequence = sequence;
+			this.isResettingIdleTime = isResettingIdleTime;
+			enqueuedNanos = System.nanoTime();
+		}
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(OutboundQueue.class);
+
+	/**
+	 * The length of a tick for the chat lane.
+	 */
+	public static final long FLUSH_TICK_MILLIS = 50L;
+
+	/**
+	 * The maximum number of chat commands written per tick.
+	 */
+	public static final int MAX_CHAT_PER_TICK = 4;
+
+	/**
+	 * The longest stop waits for the writer thread to send the commands still
+	 * queued.
+	 */
+	public static final long STOP_TIMEOUT_MILLIS = 1000L;
+
+	protected static final Set<String> CHAT_COMMANDS = new HashSet<String>(
+			Arrays.asList(new String[] { "tell", "t", "xtell", "say",
+					"kibitz", "kib", "whisper", "whi", "shout", "sh",
+					"cshout", "csh", "it", "i", "ptell", "pt", "message",
+					"mess", "qtell", ".", ",", "xkibitz", "xwhisper" }));
+
+	protected static final Pattern MOVE_PATTERN = Pattern
+			.compile("([KQRBNP]?[a-h]?[1-8]?[x-]?[a-h][1-8](=?[QRBNKqrbnk])?[+#]?|[KQRBNPkqrbnp]@[a-h][1-8]|[oO0]-[oO0](-[oO0])?)");
+
+	/**
+	 * Returns the lane a command typed by the user or sent by a script should
+	 * be queued in.
+	 */
+	public static Lane getLane(String command) {
+		String trimmed = command.trim();
+		if (trimmed.startsWith("$$")) {
+			trimmed = trimmed.substring(2);
+		}
+		int spaceIndex = trimmed.indexOf(' ');
+		String firstWord = spaceIndex == -1 ? trimmed : trimmed.substring(0,
+				spaceIndex);
+
+		if (spaceIndex == -1 && MOVE_PATTERN.matcher(firstWord).matches()) {
+			return Lane.MOVE;
+		} else if (CHAT_COMMANDS.contains(firstWord.toLowerCase())
+				|| isChannelTell(firstWord)) {
+			return Lane.CHAT;
+		} else {
+			return Lane.GAME;
+		}
+	}
+
+	/**
+	 * Returns true for the FICS shorthand "24 text" for a channel tell.
+	 */
+	protected static boolean isChannelTell(String firstWord) {
+		if (firstWord.length() == 0 || firstWord.length() > 3) {
+			return false;
+		}
+		for (int i = 0; i < firstWord.length(); i++) {
+			if (!Character.isDigit(firstWord.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected String name;
+	protected Sender sender;
+	protected Thread writerThread;
+	protected volatile boolean isRunning;
+	protected boolean isStopping;
+	protected long nextSequence;
+
+	@SuppressWarnings("unchecked")
+	protected LinkedList<Entry>[] lanes = new LinkedList[Lane.values().length];
+
+	protected long chatTickStartNanos;
+	protected int chatSentThisTick;
+
+	protected long[] enqueuedCount = new long[Lane.values().length];
+	protected long[] sentCount = new long[Lane.values().length];
+	protected long[] totalWaitNanos = new long[Lane.values().length];
+	protected long[] maxWaitNanos = new long[Lane.values().length];
+	protected long batchCount;
+	protected long charsSent;
+
+	public OutboundQueue(String name, Sender sender) {
+		this.name = name;
+		this.sender = sender;
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new LinkedList<Entry>();
+		}
+	}
+
+	/**
+	 * Queues a newline terminated command.
+	 *
+	 * @param isResettingIdleTime
+	 *            False for $$ commands which do not effect idle time on the
+	 *            server.
+	 */
+	public synchronized void add(String text, Lane lane,
+			boolean isResettingIdleTime) {
+		lanes[lane.ordinal()].add(new Entry(text, nextSequence++,
+				isResettingIdleTime));
+		enqueuedCount[lane.ordinal()]++;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the number of commands waiting in a lane.
+	 */
+	public synchronized int getDepth(Lane lane) {
+		return lanes[lane.ordinal()].size();
+	}
+
+	/**
+	 * Returns the number of commands added to a lane since the queue was
+	 * created or reset.
+	 */
+	public synchronized long getEnqueuedCount(Lane lane) {
+		return enqueuedCount[lane.ordinal()];
+	}
+
+	/**
+	 * Returns the number of commands sent from a lane since the queue was
+	 * created or reset.
+	 */
+	public synchronized long getSentCount(Lane lane) {
+		return sentCount[lane.ordinal()];
+	}
+
+	/**
+	 * Returns the average time commands in a lane waited to be written in
+	 * milliseconds.
+	 */
+	public synchronized double getAverageWaitMillis(Lane lane) {
+		long sent = sentCount[lane.ordinal()];
+		return sent == 0 ? 0.0 : totalWaitNanos[lane.ordinal()] / sent
+				/ 1000000.0;
+	}
+
+	/**
+	 * Returns the longest time a command in a lane waited to be written in
+	 * milliseconds.
+	 */
+	public synchronized double getMaxWaitMillis(Lane lane) {
+		return maxWaitNanos[lane.ordinal()] / 1000000.0;
+	}
+
+	/**
+	 * Returns the number of batches written.
+	 */
+	public synchronized long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Returns a one line per lane summary of the queue metrics.
+	 */
+	public synchronized String getReport() {
+		StringBuilder result = new StringBuilder(200);
+		result.append(name).append(" outbound queue: ").append(batchCount)
+				.append(" batches, ").append(charsSent).append(" chars");
+		for (Lane lane : Lane.values()) {
+			result.append(String.format(
+					"\n  %-5s added=%d sent=%d queued=%d avgWait=%.1fms maxWait=%.1fms",
+					lane, enqueuedCount[lane.ordinal()],
+					sentCount[lane.ordinal()], lanes[lane.ordinal()].size(),
+					getAverageWaitMillis(lane),
+					getMaxWaitMillis(lane)));
+		}
+		return result.toString();
+	}
+
+	public boolean isRunning() {
+		return isRunning;
+	}
+
+	/**
+	 * Clears the metrics.
+	 */
+	public synchronized void resetMetrics() {
+		Arrays.fill(enqueuedCount, 0);
+		Arrays.fill(sentCount, 0);
+		Arrays.fill(totalWaitNanos, 0);
+		Arrays.fill(maxWaitNanos, 0);
+		batchCount = 0;
+		charsSent = 0;
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	public synchronized void start() {
+		if (isRunning) {
+			return;
+		}
+		isRunning = true;
+		isStopping = false;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		});
+		writerThread.setDaemon(true);
+		writerThread.setName(name + " OutboundQueue Thread");
+		writerThread.setPriority(Thread.MAX_PRIORITY);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops the writer thread after it sends the commands still queued, chat
+	 * included, waiting up to STOP_TIMEOUT_MILLIS. Commands which could not be
+	 * sent in that time, or because the queue was never started or failed,
+	 * are discarded and logged.
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			isStopping = true;
+			thread = isRunning ? writerThread : null;
+			notifyAll();
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join(STOP_TIMEOUT_MILLIS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (this) {
+			isRunning = false;
+			int dropped = 0;
+			for (LinkedList<Entry> lane : lanes) {
+				dropped += lane.size();
+			}
+			if (dropped > 0) {
+				LOG.warn(name + " outbound queue stopped, dropped " + dropped
+						+ " queued commands: " + getReport());
+			}
+			for (LinkedList<Entry> lane : lanes) {
+				lane.clear();
+			}
+			writerThread = null;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Removes the next batch from the lanes, waiting until there is one. Must
+	 * be invoked while holding this queue's lock. Returns null if the queue
+	 * was stopped. While stopping chat is not throttled, and null is returned
+	 * once every lane is empty.
+	 */
+	protected Entry[] takeBatch() throws InterruptedException {
+		LinkedList<Entry> moves = lanes[Lane.MOVE.ordinal()];
+		LinkedList<Entry> games = lanes[Lane.GAME.ordinal()];
+		LinkedList<Entry> chat = lanes[Lane.CHAT.ordinal()];
+		while (isRunning) {
+			long now = System.nanoTime();
+			if (now - chatTickStartNanos >= FLUSH_TICK_MILLIS * 1000000L) {
+				chatTickStartNanos = now;
+				chatSentThisTick = 0;
+			}
+			int chatToSend = isStopping ? chat.size() : Math.min(chat.size(),
+					MAX_CHAT_PER_TICK - chatSentThisTick);
+
+			int size = moves.size() + games.size() + chatToSend;
+			if (size > 0) {
+				Entry[] result = new Entry[size];
+				int index = 0;
+				while (!moves.isEmpty() || !games.isEmpty()) {
+					Lane lane = games.isEmpty() || !moves.isEmpty()
+							&& moves.getFirst().sequence < games.getFirst().sequence ? Lane.MOVE
+							: Lane.GAME;
+					index = drain(lane, 1, result, index, now);
+				}
+				drain(Lane.CHAT, chatToSend, result, index, now);
+				chatSentThisTick += chatToSend;
+				return result;
+			} else if (isStopping) {
+				return null;
+			} else if (!chat.isEmpty()) {
+				// Chat is throttled, wait for the next tick unless something
+				// with a higher priority arrives.
+				long waitMillis = FLUSH_TICK_MILLIS
+						- (now - chatTickStartNanos) / 1000000L;
+				wait(Math.max(1L, waitMillis));
+			} else {
+				wait();
+			}
+		}
+		return null;
+	}
+
+	protected int drain(Lane lane, int count, Entry[] result, int index,
+			long now) {
+		LinkedList<Entry> entries = lanes[lane.ordinal()];
+		for (int i = 0; i < count; i++) {
+			Entry entry = entries.removeFirst();
+			long waitNanos = now - entry.enqueuedNanos;
+			totalWaitNanos[lane.ordinal()] += waitNanos;
+			if (waitNanos > maxWaitNanos[lane.ordinal()]) {
+				maxWaitNanos[lane.ordinal()] = waitNanos;
+			}
+			sentCount[lane.ordinal()]++;
+			result[index++] = entry;
+		}
+		return index;
+	}
+
+	protected void writeLoop() {
+		StringBuilder batch = new StringBuilder(1024);
+		try {
+			while (isRunning) {
+				Entry[] entries = null;
+				synchronized (this) {
+					entries = takeBatch();
+				}
+				if (entries == null) {
+					break;
+				}
+
+				batch.setLength(0);
+				boolean isResettingIdleTime = false;
+				for (Entry entry : entries) {
+					batch.append(entry.text);
+					isResettingIdleTime |= entry.isResettingIdleTime;
+				}
+
+				sender.send(batch.toString(), isResettingIdleTime);
+
+				synchronized (this) {
+					batchCount++;
+					charsSent += batch.length();
+				}
+			}
+		} catch (InterruptedException ie) {
+		} catch (Throwable t) {
+			isRunning = false;
+			sender.onSendError(t);
+		} finally {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Leaving writeLoop. " + getReport());
+			}
+		}
+	}
+}
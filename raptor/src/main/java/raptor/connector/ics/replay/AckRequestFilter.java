@@ -0,0 +1,64 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.replay;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import raptor.connector.ics.timeseal.TimesealCodec;
+
+/**
+ * Removes the timeseal ack requests from captured chunks, the way
+ * TimesealSocketMessageProducer removes them from socket reads. A request
+ * split across two chunks is held back and matched against the next one.
+ * 
+ * This class is not thread safe.
+ */
+public class AckRequestFilter {
+	protected TimesealCodec codec = new TimesealCodec();
+	protected ByteBuffer buffer = ByteBuffer.allocate(8192);
+	protected int ackRequestCount;
+
+	/**
+	 * Returns the bytes of a chunk with its ack requests removed. The buffer
+	 * returned is only valid until the next call.
+	 */
+	public ByteBuffer filter(SessionLog.Chunk chunk) {
+		byte[] bytes;
+		try {
+			bytes = chunk.getText().getBytes(SessionLog.CHARSET);
+		} catch (UnsupportedEncodingException uee) {
+			throw new RuntimeException(uee);
+		}
+		codec.retainPending(buffer);
+		if (buffer.remaining() < bytes.length) {
+			ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(
+					buffer.capacity() * 2, buffer.position() + bytes.length));
+			buffer.flip();
+			newBuffer.put(buffer);
+			buffer = newBuffer;
+		}
+		buffer.put(bytes);
+		buffer.flip();
+		ackRequestCount += codec.stripAckRequests(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Returns the number of ack requests removed so far.
+	 */
+	public int getAckRequestCount() {
+		return ackRequestCount;
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import raptor.util.RaptorLogger;
+
+/**
+ * A local stand-in for an ICS server. Accepts connections on localhost and
+ * replays a captured SessionLog to each one, so an unmodified IcsConnector and
+ * TimesealSocketMessageProducer can be benchmarked offline by pointing a
+ * connector profile at localhost and the server's port. Everything the client
+ * sends is read and discarded.
+ * 
+ * Ack requests in a raw capture are removed. When timeseal is on, one timeseal
+ * ack request is sent after every chunk instead, so the client's ack handling
+ * is exercised as well.
+ * 
+ * Usage: ReplayIcsServer sessionFile [port] [speed] [timeseal]
+ */
+public class ReplayIcsServer {
+	public static final String TIMESEAL_ACK_REQUEST = "\n\r[G]\n\r";
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ReplayIcsServer.class);
+
+	protected SessionLog session;
+	protected double speed;
+	protected boolean isTimesealOn;
+	protected ServerSocket serverSocket;
+	protected Thread acceptThread;
+	protected volatile boolean isRunning;
+	protected volatile long bytesReceived;
+
+	public static void main(String args[]) throws Exception {
+		if (args.length == 0) {
+			System.err
+					.println("Usage: ReplayIcsServer sessionFile [port] [speed] [timeseal]");
+			System.exit(1);
+		}
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+		boolean isTimesealOn = args.length > 3
+				&& Boolean.valueOf(args[3]).booleanValue();
+
+		ReplayIcsServer server = new ReplayIcsServer(SessionLog.load(new File(
+				args[0]), "fics% "), speed, isTimesealOn);
+		server.start(port);
+		System.out.println("Replaying " + args[0] + " on localhost:"
+				+ server.getPort() + " speed=" + speed + " timeseal="
+				+ isTimesealOn);
+		server.acceptThread.join();
+	}
+
+	/**
+	 * @param session
+	 *            The session to replay to each client.
+	 * @param speed
+	 *            The replay speed, 0 replays as fast as possible.
+	 * @param isTimesealOn
+	 *            True if timeseal ack requests should be sent.
+	 */
+	public ReplayIcsServer(SessionLog session, double speed,
+			boolean isTimesealOn) {
+		this.session = session;
+		this.speed = speed;
+		this.isTimesealOn = isTimesealOn;
+	}
+
+	/**
+	 * Returns the number of bytes received from all clients.
+	 */
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 */
+	public int getPort() {
+		return serverSocket == null ? -1 : serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Starts listening on the specified port. Use 0 to listen on any free
+	 * port.
+	 */
+	public void start(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 5, InetAddress
+				.getByName("localhost"));
+		isRunning = true;
+		acceptThread = new Thread(new Runnable() {
+			public void run() {
+				while (isRunning) {
+					try {
+						final Socket socket = serverSocket.accept();
+						Thread thread = new Thread(new Runnable() {
+							public void run() {
+								serve(socket);
+							}
+						});
+						thread.setDaemon(true);
+						thread.setName("ReplayIcsServer Client Thread");
+						thread.start();
+					} catch (IOException ioe) {
+						if (isRunning) {
+							LOG.error("Error accepting connection", ioe);
+						}
+					}
+				}
+			}
+		});
+		acceptThread.setDaemon(true);
+		acceptThread.setName("ReplayIcsServer Accept Thread");
+		acceptThread.start();
+	}
+
+	public void stop() {
+		isRunning = false;
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException ioe) {
+		}
+	}
+
+	protected void drainInput(final Socket socket) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				byte[] buffer = new byte[4096];
+				try {
+					InputStream in = socket.getInputStream();
+					int numRead = 0;
+					while ((numRead = in.read(buffer)) != -1) {
+						bytesReceived += numRead;
+					}
+				} catch (IOException ioe) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.setName("ReplayIcsServer Input Thread");
+		thread.start();
+	}
+
+	protected void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			drainInput(socket);
+			OutputStream out = socket.getOutputStream();
+			byte[] ackRequest = TIMESEAL_ACK_REQUEST
+					.getBytes(SessionLog.CHARSET);
+			AckRequestFilter ackRequestFilter = new AckRequestFilter();
+
+			long startTime = System.nanoTime();
+			for (SessionLog.Chunk chunk : session.getChunks()) {
+				if (!isRunning) {
+					break;
+				}
+				if (speed > 0) {
+					long sleepNanos = startTime
+							+ (long) (chunk.getOffset() * 1000000L / speed)
+							- System.nanoTime();
+					if (sleepNanos > 0) {
+						Thread.sleep(sleepNanos / 1000000L,
+								(int) (sleepNanos % 1000000L));
+					}
+				}
+				ByteBuffer buffer = ackRequestFilter.filter(chunk);
+				out.write(buffer.array(), buffer.position(), buffer.remaining());
+				if (isTimesealOn) {
+					out.write(ackRequest);
+				}
+				out.flush();
+			}
+			LOG.info("Replay of " + session.getName() + " completed.");
+		} catch (InterruptedException ie) {
+		} catch (IOException ioe) {
+			LOG.info("Client disconnected during replay", ioe);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ioe) {
+			}
+		}
+	}
+}
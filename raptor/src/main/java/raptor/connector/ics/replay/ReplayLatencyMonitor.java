@@ -0,0 +1,195 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.replay;
+
+import java.util.Arrays;
+
+/**
+ * Measures end to end latency while replaying a captured session. Latencies
+ * are measured from the most recent socket read to
+ * GameService.fireGameStateChanged and to a chat console append, so replay at a
+ * speed which keeps chunks from overlapping to get meaningful numbers.
+ * 
+ * The monitor is off unless Raptor was started with -Draptor.replay.session or
+ * -Draptor.replay.latency=true, and all of the hooks are a single volatile
+ * read when it is off.
+ */
+public class ReplayLatencyMonitor {
+	public static final String LATENCY_PROPERTY = "raptor.replay.latency";
+
+	/**
+	 * Keeps the most recent samples of a latency measurement.
+	 */
+	public static class LatencyStats {
+		protected String name;
+		protected long[] samples;
+		protected int sampleCount;
+		protected long count;
+		protected long totalNanos;
+		protected long maxNanos;
+
+		public LatencyStats(String name, int maxSamples) {
+			this.name = name;
+			samples = new long[maxSamples];
+		}
+
+		public synchronized void add(long nanos) {
+			samples[(int) (count % samples.length)] = nanos;
+			if (sampleCount < samples.length) {
+				sampleCount++;
+			}
+			count++;
+			totalNanos += nanos;
+			if (nanos > maxNanos) {
+				maxNanos = nanos;
+			}
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the mean latency in milliseconds.
+		 */
+		public synchronized double getMean() {
+			return count == 0 ? 0 : totalNanos / (double) count / 1000000.0;
+		}
+
+		/**
+		 * Returns the specified percentile, 0-100, of the retained samples in
+		 * milliseconds.
+		 */
+		public synchronized double getPercentile(double percentile) {
+			if (sampleCount == 0) {
+				return 0;
+			}
+			long[] sorted = new long[sampleCount];
+			System.arraycopy(samples, 0, sorted, 0, sampleCount);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+			return sorted[Math.max(0, Math.min(index, sampleCount - 1))] / 1000000.0;
+		}
+
+		public synchronized void reset() {
+			sampleCount = 0;
+			count = 0;
+			totalNanos = 0;
+			maxNanos = 0;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format(
+					"%s: n=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+					name, count, getMean(), getPercentile(50),
+					getPercentile(95), getPercentile(99), maxNanos / 1000000.0);
+		}
+	}
+
+	private static final ReplayLatencyMonitor instance = new ReplayLatencyMonitor();
+
+	public static ReplayLatencyMonitor getInstance() {
+		return instance;
+	}
+
+	protected volatile boolean isEnabled;
+	protected volatile long lastReadNanos;
+	protected long bytesRead;
+	protected long readCount;
+	protected long firstReadNanos;
+	protected LatencyStats readToGameStateChanged = new LatencyStats(
+			"read->fireGameStateChanged", 10000);
+	protected LatencyStats readToConsoleAppend = new LatencyStats(
+			"read->console append", 10000);
+
+	private ReplayLatencyMonitor() {
+		isEnabled = System.getProperty(ReplayMessageProducer.SESSION_PROPERTY) != null
+				|| Boolean.getBoolean(LATENCY_PROPERTY);
+	}
+
+	public LatencyStats getReadToConsoleAppend() {
+		return readToConsoleAppend;
+	}
+
+	public LatencyStats getReadToGameStateChanged() {
+		return readToGameStateChanged;
+	}
+
+	/**
+	 * Returns a multi line summary of everything measured since the last
+	 * reset.
+	 */
+	public synchronized String getReport() {
+		double seconds = readCount == 0 ? 0
+				: (lastReadNanos - firstReadNanos) / 1000000000.0;
+		return String.format("Replay latency report%n"
+				+ "reads=%d bytes=%d elapsed=%.2fs throughput=%.1fKB/s%n%s%n%s",
+				readCount, bytesRead, seconds, seconds == 0 ? 0.0 : bytesRead
+						/ 1024.0 / seconds, readToGameStateChanged,
+				readToConsoleAppend);
+	}
+
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * Invoked from the chat console after an event is appended.
+	 */
+	public void onConsoleAppend() {
+		if (isEnabled && lastReadNanos != 0) {
+			readToConsoleAppend.add(System.nanoTime() - lastReadNanos);
+		}
+	}
+
+	/**
+	 * Invoked from GameService after gameStateChanged has been fired.
+	 */
+	public void onGameStateChanged() {
+		if (isEnabled && lastReadNanos != 0) {
+			readToGameStateChanged.add(System.nanoTime() - lastReadNanos);
+		}
+	}
+
+	/**
+	 * Invoked from a MessageProducer when bytes are read from the server.
+	 */
+	public void onRead(int numBytes) {
+		if (isEnabled) {
+			long now = System.nanoTime();
+			synchronized (this) {
+				if (readCount == 0) {
+					firstReadNanos = now;
+				}
+				readCount++;
+				bytesRead += numBytes;
+			}
+			lastReadNanos = now;
+		}
+	}
+
+	public synchronized void reset() {
+		lastReadNanos = 0;
+		bytesRead = 0;
+		readCount = 0;
+		firstReadNanos = 0;
+		readToGameStateChanged.reset();
+		readToConsoleAppend.reset();
+	}
+
+	public void setEnabled(boolean isEnabled) {
+		this.isEnabled = isEnabled;
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.connector.ics.IcsUtils;
+import raptor.connector.ics.timeseal.MessageListener;
+import raptor.connector.ics.timeseal.MessageProducer;
+import raptor.util.RaptorLogger;
+
+/**
+ * A MessageProducer which replays a captured SessionLog to a MessageListener
+ * without a socket. Used to drive a connector offline with
+ * -Draptor.replay.session=pathToFile and optionally -Draptor.replay.speed=2.0
+ * (0 replays as fast as possible). Messages sent to the producer are counted
+ * and dropped.
+ * 
+ * Timeseal ack requests in a raw capture are removed, as
+ * TimesealSocketMessageProducer removes them, so the connector sees the same
+ * text it did live.
+ */
+public class ReplayMessageProducer implements MessageProducer {
+	public static final String SESSION_PROPERTY = "raptor.replay.session";
+	public static final String SPEED_PROPERTY = "raptor.replay.speed";
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ReplayMessageProducer.class);
+
+	protected SessionLog session;
+	protected double speed;
+	protected MessageListener listener;
+	protected AckRequestFilter ackRequestFilter = new AckRequestFilter();
+	protected Thread daemonThread;
+	protected StringBuilder inboundMessageBuffer = new StringBuilder(25000);
+	protected volatile boolean isClosed;
+	protected int messagesSent;
+
+	/**
+	 * Returns a ReplayMessageProducer for the session specified by the
+	 * raptor.replay.session system property, or null if it is not set.
+	 */
+	public static ReplayMessageProducer createFromSystemProperties(
+			String rawPrompt, MessageListener listener) throws IOException {
+		String path = System.getProperty(SESSION_PROPERTY);
+		if (path == null || path.length() == 0) {
+			return null;
+		}
+		double speed = 1.0;
+		String speedString = System.getProperty(SPEED_PROPERTY);
+		if (speedString != null) {
+			speed = Double.parseDouble(speedString);
+		}
+		return new ReplayMessageProducer(SessionLog.load(new File(path),
+				rawPrompt), speed, listener);
+	}
+
+	/**
+	 * Constructs and starts a ReplayMessageProducer.
+	 * 
+	 * @param session
+	 *            The session to replay.
+	 * @param speed
+	 *            The replay speed, 2.0 replays twice as fast as the session
+	 *            was captured. 0 replays as fast as possible.
+	 * @param listener
+	 *            The listener to send the session to.
+	 */
+	public ReplayMessageProducer(SessionLog session, double speed,
+			MessageListener listener) {
+		this.session = session;
+		this.speed = speed;
+		this.listener = listener;
+
+		daemonThread = new Thread(new Runnable() {
+			public void run() {
+				replay();
+			}
+		});
+		daemonThread.setDaemon(true);
+		daemonThread.setName("ReplayMessageProducer Thread");
+		daemonThread.setPriority(Thread.MAX_PRIORITY);
+		daemonThread.start();
+	}
+
+	public void close() {
+		if (isClosed) {
+			return;
+		}
+		isClosed = true;
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Replay of " + session.getName() + " closed. "
+					+ messagesSent + " messages were sent.\n"
+					+ ReplayLatencyMonitor.getInstance().getReport());
+		}
+		if (listener != null) {
+			MessageListener tempListener = listener;
+			listener = null;
+			try {
+				tempListener.connectionClosed(inboundMessageBuffer);
+			} catch (Throwable t) {
+			}
+		}
+	}
+
+	public int getMessagesSent() {
+		return messagesSent;
+	}
+
+	public void send(String message) {
+		messagesSent++;
+	}
+
+	/**
+	 * Returns the text a socket read of the chunk would have produced. Chunks
+	 * hold the raw bytes, so strip the ack requests and decode them the same
+	 * way TimesealSocketMessageProducer does.
+	 */
+	protected String decode(SessionLog.Chunk chunk) {
+		ByteBuffer buffer = ackRequestFilter.filter(chunk);
+		return new String(buffer.array(), buffer.position(), buffer
+				.remaining());
+	}
+
+	protected void replay() {
+		try {
+			// Give the connector time to store this producer before the first
+			// chunk arrives, TimesealSocketMessageProducer does the same.
+			Thread.sleep(100);
+
+			long startTime = System.nanoTime();
+			for (SessionLog.Chunk chunk : session.getChunks()) {
+				if (isClosed) {
+					return;
+				}
+				if (speed > 0) {
+					long sleepNanos = startTime
+							+ (long) (chunk.getOffset() * 1000000L / speed)
+							- System.nanoTime();
+					if (sleepNanos > 0) {
+						Thread.sleep(sleepNanos / 1000000L,
+								(int) (sleepNanos % 1000000L));
+					}
+				}
+
+				String text = decode(chunk);
+				ReplayLatencyMonitor.getInstance().onRead(
+						chunk.getText().length());
+				MessageListener currentListener = listener;
+				if (currentListener != null && StringUtils.isNotBlank(text)) {
+					inboundMessageBuffer.append(IcsUtils.cleanupMessage(text));
+					currentListener.messageArrived(inboundMessageBuffer);
+				}
+			}
+			LOG.info("Replay of " + session.getName() + " completed.");
+		} catch (InterruptedException ie) {
+		} catch (Throwable t) {
+			MessageListener currentListener = listener;
+			if (currentListener != null) {
+				currentListener.onError("ReplayMessageProducer error", t);
+			}
+		} finally {
+			close();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.replay;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A captured ICS session which can be replayed through a
+ * ReplayMessageProducer or a ReplayIcsServer.
+ * 
+ * A captured session is a sequence of chunks. Each chunk is a header line of
+ * the form <code>@@offset length</code> followed by exactly length characters
+ * of server output and a line feed. The offset is the time in milliseconds
+ * since the session started the chunk was read. Files written by
+ * SessionRecorder use this format. A file without a header is treated as a
+ * raw transcript and is split into one chunk per prompt, all delivered without
+ * delay.
+ */
+public class SessionLog {
+	public static final String CHUNK_MARKER = "@@";
+
+	/**
+	 * Servers send Latin-1, so every byte read maps to exactly one char.
+	 */
+	public static final String CHARSET = "ISO-8859-1";
+
+	/**
+	 * A block of text read from the server in a single socket read.
+	 */
+	public static class Chunk {
+		protected long offset;
+		protected String text;
+
+		public Chunk(long offset, String text) {
+			this.offset = offset;
+			this.text = text;
+		}
+
+		/**
+		 * Returns the time in milliseconds since the session started this
+		 * chunk arrived.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+
+	protected List<Chunk> chunks = new ArrayList<Chunk>(1000);
+	protected String name;
+
+	public SessionLog(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Loads a captured session from the specified file.
+	 * 
+	 * @param file
+	 *            The captured session.
+	 * @param rawPrompt
+	 *            The prompt used to split transcripts which contain no chunk
+	 *            headers, i.e. "fics% ".
+	 */
+	public static SessionLog load(File file, String rawPrompt)
+			throws IOException {
+		SessionLog result = new SessionLog(file.getName());
+		String contents = readFully(file);
+		if (contents.startsWith(CHUNK_MARKER)) {
+			int index = 0;
+			while (index < contents.length()
+					&& contents.startsWith(CHUNK_MARKER, index)) {
+				int lineEnd = contents.indexOf('\n', index);
+				if (lineEnd == -1) {
+					throw new IOException("Truncated chunk header at " + index
+							+ " in " + file.getAbsolutePath());
+				}
+				String[] header = contents.substring(
+						index + CHUNK_MARKER.length(), lineEnd).trim().split(
+						" ");
+				long offset = Long.parseLong(header[0]);
+				int length = Integer.parseInt(header[1]);
+				int textEnd = Math.min(lineEnd + 1 + length, contents.length());
+				result.addChunk(offset, contents.substring(lineEnd + 1,
+						textEnd));
+				index = textEnd + 1;
+			}
+		} else {
+			result.splitTranscript(contents, rawPrompt);
+		}
+		return result;
+	}
+
+	public void addChunk(long offset, String text) {
+		chunks.add(new Chunk(offset, text));
+	}
+
+	public Chunk[] getChunks() {
+		return chunks.toArray(new Chunk[0]);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the total number of characters in the session.
+	 */
+	public long getSize() {
+		long result = 0;
+		for (Chunk chunk : chunks) {
+			result += chunk.text.length();
+		}
+		return result;
+	}
+
+	protected static String readFully(File file) throws IOException {
+		StringBuilder result = new StringBuilder((int) file.length());
+		Reader reader = null;
+		try {
+			reader = new InputStreamReader(new FileInputStream(file),
+					CHARSET);
+			char[] buffer = new char[8192];
+			int numRead = 0;
+			while ((numRead = reader.read(buffer)) != -1) {
+				result.append(buffer, 0, numRead);
+			}
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException ioe) {
+				}
+			}
+		}
+		return result.toString();
+	}
+
+	protected void splitTranscript(String transcript, String rawPrompt) {
+		int start = 0;
+		int promptIndex = -1;
+		while ((promptIndex = transcript.indexOf(rawPrompt, start)) != -1) {
+			int end = promptIndex + rawPrompt.length();
+			addChunk(0, transcript.substring(start, end));
+			start = end;
+		}
+		if (start < transcript.length()) {
+			addChunk(0, transcript.substring(start));
+		}
+	}
+}
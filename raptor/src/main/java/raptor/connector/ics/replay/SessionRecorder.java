@@ -0,0 +1,89 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import raptor.util.RaptorLogger;
+
+/**
+ * Captures the raw bytes read from an ICS server into a file SessionLog can
+ * load. Capturing is turned on by starting Raptor with
+ * -Draptor.replay.capture=pathToFile.
+ */
+public class SessionRecorder {
+	public static final String CAPTURE_PROPERTY = "raptor.replay.capture";
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(SessionRecorder.class);
+
+	protected OutputStream out;
+	protected long startTime;
+
+	/**
+	 * Returns a SessionRecorder writing to the file specified by the
+	 * raptor.replay.capture system property, or null if capturing is not
+	 * turned on or the file could not be opened.
+	 */
+	public static SessionRecorder createFromSystemProperties() {
+		String path = System.getProperty(CAPTURE_PROPERTY);
+		if (path == null || path.length() == 0) {
+			return null;
+		}
+		try {
+			return new SessionRecorder(path);
+		} catch (IOException ioe) {
+			LOG.error("Could not open session capture file " + path, ioe);
+			return null;
+		}
+	}
+
+	public SessionRecorder(String path) throws IOException {
+		out = new BufferedOutputStream(new FileOutputStream(path, false));
+		startTime = System.currentTimeMillis();
+	}
+
+	public synchronized void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException ioe) {
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Records the bytes of a single socket read.
+	 */
+	public synchronized void record(byte[] buffer, int offset, int length) {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.write((SessionLog.CHUNK_MARKER
+					+ (System.currentTimeMillis() - startTime) + " " + length + "\n")
+					.getBytes(SessionLog.CHARSET));
+			out.write(buffer, offset, length);
+			out.write('\n');
+			out.flush();
+		} catch (IOException ioe) {
+			LOG.error("Error writing session capture, capturing stopped.", ioe);
+			close();
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package raptor.connector.ics.timeseal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes outbound timeseal lines and strips timeseal ack requests from
+ * inbound text. Both directions work in place on ByteBuffers so sending a
+ * command or reading a block of text allocates nothing.
+ *
+ * The buffers must be heap buffers; the socket streams need the backing
+ * arrays anyway and working on them directly is several times faster than
+ * ByteBuffer's absolute get and put.
+ *
+ * The outbound methods are stateless. The inbound methods remember a partial
+ * ack request split across two reads, so a codec used for input must only be
+ * used by the thread reading the socket.
+ */
+public class TimesealCodec {
+	/**
+	 * The sequence the server sends when it wants an ack.
+	 */
+	public static final byte[] ACK_REQUEST = { '\n', '\r', '[', 'G', ']',
+			'\n', '\r' };
+
+	/**
+	 * The line sent back (encoded) in response to an ack request.
+	 */
+	public static final byte[] ACK_REPLY = { 2, '9' };
+
+	/**
+	 * Bytes appended after the encoded block of every line.
+	 */
+	public static final int TRAILER_LENGTH = 2;
+
+	protected static final int BLOCK_SIZE = 12;
+
+	/**
+	 * A trailing partial ack request shorter than this is treated as text.
+	 * "\n\r" ends most lines, holding it back would delay text until the next
+	 * read, but "\n\r[" almost never ends a read unless an ack request was
+	 * split.
+	 */
+	protected static final int MIN_PENDING_ACK_LENGTH = 3;
+
+	protected static final byte[] KEY = "Timestamp (FICS) v1.0 - programmed by Henrik Gram."
+			.getBytes();
+
+	protected int pendingAckLength = 0;
+
+	/**
+	 * Returns the maximum number of bytes encode can write for a line of the
+	 * specified length.
+	 */
+	public static int getMaxEncodedLength(int lineLength) {
+		// line + 24 + up to 19 timestamp digits + 25, padded, plus trailer.
+		return lineLength + 21 + BLOCK_SIZE + TRAILER_LENGTH;
+	}
+
+	/**
+	 * Encodes the bytes between src's position and limit as one timeseal line
+	 * and writes it to dst. The line must not contain the terminating
+	 * newline. src's position is advanced to its limit.
+	 *
+	 * @param timestamp
+	 *            Milliseconds since the connection was opened.
+	 * @return The number of bytes written to dst.
+	 */
+	public int encode(ByteBuffer src, long timestamp, ByteBuffer dst) {
+		int start = dst.position();
+		dst.put(src);
+		dst.put((byte) 24);
+		putDigits(timestamp, dst);
+		dst.put((byte) 25);
+		// Like the original client this always pads, even a full block.
+		do {
+			dst.put((byte) '1');
+		} while ((dst.position() - start) % BLOCK_SIZE != 0);
+
+		byte[] bytes = dst.array();
+		int offset = dst.arrayOffset();
+		int end = offset + dst.position();
+		for (int i = offset + start; i < end; i += BLOCK_SIZE) {
+			swap(bytes, i, i + 11);
+			swap(bytes, i + 2, i + 9);
+			swap(bytes, i + 4, i + 7);
+		}
+
+		int keyIndex = 0;
+		for (int i = offset + start; i < end; i++) {
+			bytes[i] = (byte) (((bytes[i] | 0x80) ^ KEY[keyIndex++]) - 32);
+			if (keyIndex == KEY.length) {
+				keyIndex = 0;
+			}
+		}
+
+		dst.put((byte) -128);
+		dst.put((byte) 10);
+		return dst.position() - start;
+	}
+
+	/**
+	 * Reverses encode. src must hold exactly one encoded block between its
+	 * position and limit, without the trailer. The line is written to dst and
+	 * the timestamp is returned. This is what the server does and is used to
+	 * verify encode.
+	 */
+	public long decode(ByteBuffer src, ByteBuffer dst) {
+		byte[] bytes = src.array();
+		int start = src.arrayOffset() + src.position();
+		int end = src.arrayOffset() + src.limit();
+		if ((end - start) % BLOCK_SIZE != 0) {
+			throw new IllegalArgumentException("Encoded length "
+					+ (end - start) + " is not a multiple of " + BLOCK_SIZE);
+		}
+
+		int keyIndex = 0;
+		for (int i = start; i < end; i++) {
+			bytes[i] = (byte) (((bytes[i] + 32) ^ KEY[keyIndex++]) & 0x7f);
+			if (keyIndex == KEY.length) {
+				keyIndex = 0;
+			}
+		}
+		for (int i = start; i < end; i += BLOCK_SIZE) {
+			swap(bytes, i, i + 11);
+			swap(bytes, i + 2, i + 9);
+			swap(bytes, i + 4, i + 7);
+		}
+
+		long timestamp = -1;
+		for (int i = start; i < end; i++) {
+			byte b = bytes[i];
+			if (b == 24) {
+				timestamp = 0;
+			} else if (b == 25) {
+				break;
+			} else if (timestamp == -1) {
+				dst.put(b);
+			} else {
+				timestamp = timestamp * 10 + (b - '0');
+			}
+		}
+		src.position(src.limit());
+		return timestamp;
+	}
+
+	/**
+	 * Removes every ack request from the bytes between buffer's position and
+	 * limit, compacting the remaining text in place. On return the text is
+	 * between buffer's position and its new limit.
+	 *
+	 * If the bytes end with the start of an ack request it is held back and
+	 * getPendingAckLength() returns its length. Call retainPending before the
+	 * next read so it is matched against the bytes that follow.
+	 *
+	 * @return The number of ack requests removed. One ack must be sent for
+	 *         each.
+	 */
+	public int stripAckRequests(ByteBuffer buffer) {
+		byte[] bytes = buffer.array();
+		int offset = buffer.arrayOffset();
+		int read = offset + buffer.position();
+		int write = read;
+		int limit = offset + buffer.limit();
+		int matched = 0;
+		int result = 0;
+
+		while (read + matched < limit) {
+			if (bytes[read + matched] == ACK_REQUEST[matched]) {
+				matched++;
+				if (matched == ACK_REQUEST.length) {
+					result++;
+					read += matched;
+					matched = 0;
+				}
+			} else {
+				// Emit one byte and retry the match from the next, the held
+				// bytes may contain the start of another request.
+				bytes[write++] = bytes[read++];
+				matched = 0;
+			}
+		}
+
+		if (matched < MIN_PENDING_ACK_LENGTH) {
+			while (read < limit) {
+				bytes[write++] = bytes[read++];
+			}
+			matched = 0;
+		}
+		pendingAckLength = matched;
+		buffer.limit(write - offset);
+		return result;
+	}
+
+	/**
+	 * Returns the length of the partial ack request held back by the last
+	 * call to stripAckRequests.
+	 */
+	public int getPendingAckLength() {
+		return pendingAckLength;
+	}
+
+	/**
+	 * Clears buffer for the next read, keeping a partial ack request held back
+	 * by stripAckRequests at its start.
+	 */
+	public void retainPending(ByteBuffer buffer) {
+		buffer.clear();
+		buffer.put(ACK_REQUEST, 0, pendingAckLength);
+		pendingAckLength = 0;
+	}
+
+	/**
+	 * Writes the decimal digits of a non negative value without creating a
+	 * String.
+	 */
+	protected static void putDigits(long value, ByteBuffer dst) {
+		int digits = 1;
+		for (long i = value / 10; i > 0; i /= 10) {
+			digits++;
+		}
+		byte[] bytes = dst.array();
+		int position = dst.arrayOffset() + dst.position();
+		for (int i = position + digits - 1; i >= position; i--) {
+			bytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		dst.position(dst.position() + digits);
+	}
+
+	protected static void swap(byte[] bytes, int i, int j) {
+		byte temp = bytes[i];
+		bytes[i] = bytes[j];
+		bytes[j] = temp;
+	}
+}
@@ -1,98 +1,131 @@
 package raptor.connector.ics.timeseal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.lang.StringUtils;
 
 import raptor.connector.ics.IcsUtils;
+import raptor.connector.ics.replay.ReplayLatencyMonitor;
+import raptor.connector.ics.replay.SessionRecorder;
 import raptor.util.RaptorLogger;
 
 public class TimesealSocketMessageProducer implements MessageProducer {
+	/**
+	 * Buffers a line and encodes it when the newline arrives. All the lines
+	 * of one write are sent to the socket together, so a batch of commands
+	 * goes out in one packet. The line and encoded buffers are reused, so a
+	 * write allocates nothing unless it is longer than any seen before.
+	 */
 	private class CryptOutputStream extends OutputStream {
-		private byte buffer[];
-		private final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		private ByteBuffer lineBuffer = ByteBuffer.allocate(1024);
+		private ByteBuffer encodedBuffer = ByteBuffer
+				.allocate(TimesealCodec.getMaxEncodedLength(1024));
+		private final TimesealCodec codec = new TimesealCodec();
 		private OutputStream outputStreamToDecorate;
-		private final byte timesealKey[] = "Timestamp (FICS) v1.0 - programmed by Henrik Gram."
-				.getBytes();
 
 		public CryptOutputStream(OutputStream outputstream) {
-			buffer = new byte[10000];
 			outputStreamToDecorate = outputstream;
 		}
 
 		@Override
 		public void write(int i) throws IOException {
-			if (i == 10) {
-				synchronized (socket) {
-					if (initialTime == -1) {
-						initialTime = System.currentTimeMillis();
-					}
-					int resultLength = crypt(
-							byteArrayOutputStream.toByteArray(),
-							System.currentTimeMillis() - initialTime);
-					outputStreamToDecorate.write(buffer, 0, resultLength);
-					outputStreamToDecorate.flush();
-					byteArrayOutputStream.reset();
+			synchronized (socket) {
+				if (i == 10) {
+					encodeLine();
+					flushEncoded();
+				} else {
+					ensureLineCapacity();
+					lineBuffer.put((byte) i);
 				}
-			} else {
-				byteArrayOutputStream.write(i);
-				//System.err.print(i);
 			}
 		}
 
-		private int crypt(byte stringToWriteBytes[], long timestamp) {
-			//System.err.println("Writing " + stringToWriteBytes);
-			int bytesInLength = stringToWriteBytes.length;
-			System.arraycopy(stringToWriteBytes, 0, buffer, 0,
-					stringToWriteBytes.length);
-			buffer[bytesInLength++] = 24;
-			byte abyte1[] = Long.toString(timestamp).getBytes();
-			System.arraycopy(abyte1, 0, buffer, bytesInLength, abyte1.length);
-			bytesInLength += abyte1.length;
-			buffer[bytesInLength++] = 25;
-			int j = bytesInLength;
-			for (bytesInLength += 12 - bytesInLength % 12; j < bytesInLength;) {
-				buffer[j++] = 49;
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			synchronized (socket) {
+				int end = offset + length;
+				for (int i = offset; i < end; i++) {
+					if (bytes[i] == 10) {
+						encodeLine();
+					} else {
+						ensureLineCapacity();
+						lineBuffer.put(bytes[i]);
+					}
+				}
+				flushEncoded();
 			}
+		}
 
-			for (int k = 0; k < bytesInLength; k++) {
-                buffer[k] |= 0x80;
+		/**
+		 * Writes the chars of an ASCII string without encoding it to a byte
+		 * array first.
+		 */
+		public void writeAscii(CharSequence text) throws IOException {
+			synchronized (socket) {
+				for (int i = 0; i < text.length(); i++) {
+					char c = text.charAt(i);
+					if (c == 10) {
+						encodeLine();
+					} else {
+						ensureLineCapacity();
+						lineBuffer.put((byte) c);
+					}
+				}
+				flushEncoded();
 			}
+		}
 
-			for (int i1 = 0; i1 < bytesInLength; i1 += 12) {
-				byte byte0 = buffer[i1 + 11];
-				buffer[i1 + 11] = buffer[i1];
-				buffer[i1] = byte0;
-				byte0 = buffer[i1 + 9];
-				buffer[i1 + 9] = buffer[i1 + 2];
-				buffer[i1 + 2] = byte0;
-				byte0 = buffer[i1 + 7];
-				buffer[i1 + 7] = buffer[i1 + 4];
-				buffer[i1 + 4] = byte0;
+		private void ensureLineCapacity() {
+			if (!lineBuffer.hasRemaining()) {
+				ByteBuffer newBuffer = ByteBuffer.allocate(lineBuffer
+						.capacity() * 2);
+				lineBuffer.flip();
+				newBuffer.put(lineBuffer);
+				lineBuffer = newBuffer;
 			}
+		}
 
-			int l1 = 0;
-			for (int j1 = 0; j1 < bytesInLength; j1++) {
-                buffer[j1] ^= timesealKey[l1];
-				l1 = (l1 + 1) % timesealKey.length;
+		private void encodeLine() {
+			if (initialTime == -1) {
+				initialTime = System.currentTimeMillis();
 			}
-
-			for (int k1 = 0; k1 < bytesInLength; k1++) {
-                buffer[k1] -= 32;
+			int maxLength = TimesealCodec.getMaxEncodedLength(lineBuffer
+					.position());
+			if (encodedBuffer.remaining() < maxLength) {
+				ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(
+						encodedBuffer.capacity() * 2, encodedBuffer
+								.position()
+								+ maxLength));
+				encodedBuffer.flip();
+				newBuffer.put(encodedBuffer);
+				encodedBuffer = newBuffer;
 			}
+			lineBuffer.flip();
+			codec.encode(lineBuffer, System.currentTimeMillis() - initialTime,
+					encodedBuffer);
+			lineBuffer.clear();
+		}
 
-			buffer[bytesInLength++] = -128;
-			buffer[bytesInLength++] = 10;
-			return bytesInLength;
+		private void flushEncoded() throws IOException {
+			if (encodedBuffer.position() > 0) {
+				outputStreamToDecorate.write(encodedBuffer.array(), 0,
+						encodedBuffer.position());
+				outputStreamToDecorate.flush();
+				encodedBuffer.clear();
+			}
 		}
 	}
 
 	private static final RaptorLogger LOG = RaptorLogger
 			.getLog(TimesealSocketMessageProducer.class);
 
+	private static final byte[] ACK_LINE = { TimesealCodec.ACK_REPLY[0],
+			TimesealCodec.ACK_REPLY[1], '\n' };
+
 	private CryptOutputStream cryptedOutputStream;
 
 	private long initialTime = -1;
@@ -107,12 +140,21 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 
 	protected StringBuilder inboundMessageBuffer = new StringBuilder(25000);
 
+	protected TimesealCodec inboundCodec = new TimesealCodec();
+
 	protected boolean isTimesealOn;
 
+	protected SessionRecorder sessionRecorder = SessionRecorder
+			.createFromSystemProperties();
+
 	@Override
 	public void send(String message) {
 		try {
-			getOutputStream().write(message.getBytes());
+			if (isTimesealOn && isAscii(message)) {
+				cryptedOutputStream.writeAscii(message);
+			} else {
+				getOutputStream().write(message.getBytes());
+			}
 		} catch (IOException ioe) {
 			throw new RuntimeException(ioe);
 		}
@@ -129,6 +171,9 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 
 		socket = null;
 		daemonThread = null;
+		if (sessionRecorder != null) {
+			sessionRecorder.close();
+		}
 		cryptedOutputStream = null;
 		initialTimesealString = null;
 		if (listener != null) {
@@ -162,26 +207,23 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 	}
 
 	/**
-	 * Handles sending the timeseal ack.
-	 * 
-	 * @param text
-	 * @return
-	 * @throws IOException
+	 * Strips the timeseal ack requests from the text read into buffer and
+	 * sends an ack for each one.
 	 */
-	protected String handleTimeseal(String text) throws IOException {
-		//text.replace("[G]\0", "") TIMESEAL 2.
-		
-		//Send an ack for each \n\r[G]\n\r received.
-		String beforeReplace = text;
-		String afterReplace  = StringUtils.replaceOnce(beforeReplace,"\n\r[G]\n\r", "");
-		
-		while (!StringUtils.equals(beforeReplace,afterReplace)) {
+	protected void handleTimeseal(ByteBuffer buffer) throws IOException {
+		int acks = inboundCodec.stripAckRequests(buffer);
+		for (int i = 0; i < acks; i++) {
 			sendAck();
-			beforeReplace = afterReplace;
-			afterReplace  = StringUtils.replaceOnce(beforeReplace,"\n\r[G]\n\r", "");
 		}
+	}
 
-		return afterReplace;
+	protected static boolean isAscii(String message) {
+		for (int i = 0; i < message.length(); i++) {
+			if (message.charAt(i) > 127) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -190,29 +232,42 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 	 */
 	protected void messageLoop() {
 		try {
-			byte[] buffer = new byte[40000];
+			ByteBuffer buffer = ByteBuffer.allocate(40000);
+			byte[] bytes = buffer.array();
 			while (isConnected()) {
 				//long start = System.currentTimeMillis();
-				int numRead = socket.getInputStream().read(buffer);
+				int numRead = socket.getInputStream().read(bytes,
+						buffer.position(), buffer.remaining());
 				if (numRead > 0) {
 					if (LOG.isDebugEnabled()) {
 						LOG.debug("TimesealSocketMessageProducer " + "Read "
 								+ numRead + " bytes.");
 					}
-					
+					ReplayLatencyMonitor.getInstance().onRead(numRead);
+					if (sessionRecorder != null) {
+						sessionRecorder.record(bytes, buffer.position(),
+								numRead);
+					}
 
-					//System.err.println("Raw in: " + new String(buffer, 0,
-					//numRead));
+					//System.err.println("Raw in: " + new String(bytes,
+					//buffer.position(), numRead));
 
-					String text = isTimesealOn ? handleTimeseal(new String(
-							buffer, 0, numRead)) : new String(buffer, 0,
-							numRead);
+					buffer.position(buffer.position() + numRead);
+					buffer.flip();
+					if (isTimesealOn) {
+						handleTimeseal(buffer);
+					}
 
-					if (StringUtils.isNotBlank(text)) {
-						inboundMessageBuffer.append(IcsUtils
-								.cleanupMessage(text));
-						listener.messageArrived(inboundMessageBuffer);
+					if (buffer.hasRemaining()) {
+						String text = new String(bytes, buffer.position(),
+								buffer.remaining());
+						if (StringUtils.isNotBlank(text)) {
+							inboundMessageBuffer.append(IcsUtils
+									.cleanupMessage(text));
+							listener.messageArrived(inboundMessageBuffer);
+						}
 					}
+					inboundCodec.retainPending(buffer);
 				} else {
 					if (LOG.isDebugEnabled()) {
 						LOG.debug("TimesealSocketMessageProducer  "
@@ -247,7 +302,7 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 	}
 
 	private void sendAck() throws IOException {
-		getOutputStream().write("\0029\n".getBytes());
+		getOutputStream().write(ACK_LINE);
 	}
 
 	private void init() throws IOException {
@@ -0,0 +1,235 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.MultiPVInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.util.RaptorLogger;
+
+/**
+ * Searches a single position with a bounded budget and returns as soon as the
+ * engine's answer stops changing.
+ * 
+ * The go command carries every bound in the budget (depth, nodes and
+ * movetime), so the engine itself stops at whichever comes first. On top of
+ * that the search is stopped early once the first move of the principal
+ * variation and the score have been stable for a number of consecutive
+ * iterations. Easy positions typically settle in a fraction of the budget.
+ * The call returns the moment bestmove arrives.
+ */
+public class BoundedAnalysis {
+	/**
+	 * The limits of a search. A zero bound is not sent.
+	 */
+	public static class Budget {
+		public int maxDepth;
+		public long maxNodes;
+		public long maxMillis;
+
+		/**
+		 * Iterations are not considered stable before this depth.
+		 */
+		public int minDepth = 8;
+
+		/**
+		 * The number of consecutive iterations with the same best move and a
+		 * score within scoreToleranceCentipawns needed to stop early. Zero
+		 * disables early termination.
+		 */
+		public int stableIterations = 3;
+
+		public int scoreToleranceCentipawns = 15;
+
+		/**
+		 * Returns a budget bounded by time only, with early termination.
+		 */
+		public static Budget forMillis(long maxMillis) {
+			Budget result = new Budget();
+			result.maxMillis = maxMillis;
+			return result;
+		}
+
+		/**
+		 * Returns the go arguments for this budget, "infinite" if it has no
+		 * bounds.
+		 */
+		public String toGoArguments() {
+			StringBuilder result = new StringBuilder(40);
+			if (maxDepth > 0) {
+				result.append("depth ").append(maxDepth);
+			}
+			if (maxNodes > 0) {
+				result.append(result.length() > 0 ? " " : "").append("nodes ")
+						.append(maxNodes);
+			}
+			if (maxMillis > 0) {
+				result.append(result.length() > 0 ? " " : "")
+						.append("movetime ").append(maxMillis);
+			}
+			return result.length() == 0 ? "infinite" : result.toString();
+		}
+
+		@Override
+		public String toString() {
+			return toGoArguments() + " stable=" + stableIterations + "@"
+					+ minDepth + "+/-" + scoreToleranceCentipawns;
+		}
+	}
+
+	/**
+	 * The outcome of a search.
+	 */
+	public static class Result {
+		public UCIBestMove bestMove;
+		public ScoreInfo score;
+		public BestLineFoundInfo bestLine;
+		public int depth;
+		public long elapsedMillis;
+		public boolean isStoppedEarly;
+
+		@Override
+		public String toString() {
+			return "depth=" + depth + " elapsed=" + elapsedMillis
+					+ " stoppedEarly=" + isStoppedEarly;
+		}
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(BoundedAnalysis.class);
+
+	/**
+	 * How long past maxMillis to wait for bestmove before forcing a stop.
+	 */
+	public static final long GRACE_MILLIS = 2000L;
+
+	/**
+	 * Searches fen on a connected engine and blocks until the engine sends
+	 * bestmove. Infos are forwarded to delegate if it is not null.
+	 */
+	public static Result analyze(final UCIEngine engine, String fen,
+			final Budget budget, final UCIInfoListener delegate) {
+		final Result result = new Result();
+		final CountDownLatch latch = new CountDownLatch(1);
+		long startTime = System.currentTimeMillis();
+
+		if (engine.isProcessingGo()) {
+			engine.stop();
+		}
+		engine.setPosition(fen, null);
+
+		engine.go(budget.toGoArguments(), new UCIInfoListener() {
+			int lastDepth = 0;
+			int stableCount = 0;
+			ScoreInfo previousScore;
+			String previousMove;
+
+			public void engineSentBestMove(UCIBestMove uciBestMove) {
+				result.bestMove = uciBestMove;
+				if (delegate != null) {
+					delegate.engineSentBestMove(uciBestMove);
+				}
+				latch.countDown();
+			}
+
+			public void engineSentInfo(UCIInfo[] infos) {
+				if (delegate != null) {
+					delegate.engineSentInfo(infos);
+				}
+				if (MultiPVInfo.getIndex(infos) != 1) {
+					return;
+				}
+
+				int depth = 0;
+				ScoreInfo score = null;
+				BestLineFoundInfo line = null;
+				for (UCIInfo info : infos) {
+					if (info instanceof DepthInfo) {
+						depth = ((DepthInfo) info).getSearchDepthPlies();
+					} else if (info instanceof ScoreInfo) {
+						score = (ScoreInfo) info;
+					} else if (info instanceof BestLineFoundInfo) {
+						line = (BestLineFoundInfo) info;
+					}
+				}
+				if (score == null || line == null || line.getMoves() == null
+						|| line.getMoves().length == 0) {
+					return;
+				}
+
+				result.score = score;
+				result.bestLine = line;
+				if (score.isLowerBoundScore() || score.isUpperBoundScore()
+						|| depth <= lastDepth) {
+					// Bounds and updates within an iteration don't count.
+					return;
+				}
+
+				String move = line.getMoves()[0].getValue();
+				if (previousScore != null && move.equals(previousMove)
+						&& isSameScore(previousScore, score, budget)) {
+					stableCount++;
+				} else {
+					stableCount = 0;
+				}
+				lastDepth = result.depth = depth;
+				previousScore = score;
+				previousMove = move;
+
+				if (budget.stableIterations > 0
+						&& stableCount >= budget.stableIterations
+						&& depth >= budget.minDepth && !result.isStoppedEarly) {
+					result.isStoppedEarly = true;
+					engine.requestStop();
+				}
+			}
+		});
+
+		try {
+			long timeout = budget.maxMillis > 0 ? budget.maxMillis
+					+ GRACE_MILLIS : Long.MAX_VALUE;
+			if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+				LOG.warn(engine + " ignored " + budget + ". Stopping it.");
+				engine.stop();
+			}
+		} catch (InterruptedException ie) {
+			engine.stop();
+		}
+		engine.waitForBestMove(GRACE_MILLIS);
+
+		result.elapsedMillis = System.currentTimeMillis() - startTime;
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Analyzed " + fen + " " + budget + " " + result);
+		}
+		return result;
+	}
+
+	protected static boolean isSameScore(ScoreInfo previous, ScoreInfo current,
+			Budget budget) {
+		if (previous.getMateInMoves() != 0 || current.getMateInMoves() != 0) {
+			// A mate that gets one move shorter per iteration is still the
+			// same mate.
+			return previous.getMateInMoves() != 0
+					&& current.getMateInMoves() != 0
+					&& Math.abs(previous.getMateInMoves()
+							- current.getMateInMoves()) <= 1;
+		}
+		return Math.abs(previous.getValueInCentipawns()
+				- current.getValueInCentipawns()) <= budget.scoreToleranceCentipawns;
+	}
+}
@@ -13,9 +13,7 @@
  */
 package raptor.engine.uci;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -26,17 +24,6 @@ import java.util.concurrent.Future;
 import org.apache.commons.lang.StringUtils;
 
 import raptor.chess.Move;
-import raptor.engine.uci.info.BestLineFoundInfo;
-import raptor.engine.uci.info.CPULoadInfo;
-import raptor.engine.uci.info.CurrentMoveInfo;
-import raptor.engine.uci.info.DepthInfo;
-import raptor.engine.uci.info.NodesPerSecondInfo;
-import raptor.engine.uci.info.NodesSearchedInfo;
-import raptor.engine.uci.info.ScoreInfo;
-import raptor.engine.uci.info.SelectiveSearchDepthInfo;
-import raptor.engine.uci.info.StringInfo;
-import raptor.engine.uci.info.TableBaseHitsInfo;
-import raptor.engine.uci.info.TimeInfo;
 import raptor.engine.uci.options.UCIButton;
 import raptor.engine.uci.options.UCICheck;
 import raptor.engine.uci.options.UCICombo;
@@ -55,15 +42,20 @@ import raptor.util.RaptorStringTokenizer;
  */
 public class UCIEngine {
 	private static final RaptorLogger LOG = RaptorLogger.getLog(UCIEngine.class);
-	protected static final String[] SUPPORTED_INFO_TYPES = { "depth",
-			"seldepth", "time", "nodes", "pv", "multipv", "score", "currmove",
-			"currentmovenumber", "hashfull", "nps", "tbhits", "cpuload",
-			"string" };
+	/**
+	 * The minimum interval between progress-only info lines passed to a go
+	 * listener.
+	 */
+	protected static final long INFO_THROTTLE_NANOS = 100 * 1000000L;
 	protected static final long CONNECTION_TIMEOUT = 5000;
+	/**
+	 * How long restart waits for the go thread of the killed process to exit.
+	 */
+	protected static final long GO_THREAD_EXIT_TIMEOUT = 5000;
 
 	protected Process process;
 	protected boolean isUsingThreadService = true;
-	protected BufferedReader in;
+	protected UCIProtocolReader in;
 	protected PrintWriter out;
 	protected boolean isConnected;
 	protected Map<String, UCIOption> nameToOptions = new HashMap<String, UCIOption>();
@@ -71,7 +63,7 @@ public class UCIEngine {
 	protected String processPath;
 	protected String engineName;
 	protected String engineAuthor;
-	protected Runnable goRunnable;
+	protected volatile Runnable goRunnable;
 	protected boolean cancelGo;
 	protected boolean multiplyBlackScoreByMinus1 = true;
 	protected UCIBestMove lastBestMove;
@@ -79,9 +71,24 @@ public class UCIEngine {
 	protected String userName;
 	protected boolean isDefault;
 	protected Object stopSynch = new Object();
+	protected Object goMonitor = new Object();
 	protected String goAnalysisParameters = "infinite";
 	private boolean supportsFischerRandom;
 	private String lastSetFen;
+	protected String lastPositionCommand;
+	protected UCIEngineMetrics metrics = new UCIEngineMetrics();
+	protected volatile boolean isQuitting;
+	protected volatile boolean hasCrashed;
+	/**
+	 * Incremented whenever a process is started or disconnected, so a go
+	 * thread of an earlier process can't mark the current one crashed.
+	 */
+	protected volatile int connectionGeneration;
+	protected volatile Thread goThread;
+	protected volatile String activeGoOptions;
+	protected volatile UCIInfoListener activeGoListener;
+	protected Object readyMonitor = new Object();
+	protected long readySentNanos;
 
 	/**
 	 * Connects to the engine. After this method is invoked the engine name,
@@ -95,6 +102,7 @@ public class UCIEngine {
 		}
 
 		resetConnectionState();
+		isQuitting = false;
 		Future<?> connectionTimeoutFuture = ThreadService.getInstance()
 				.scheduleOneShot(CONNECTION_TIMEOUT, new Runnable() {
 					public void run() {
@@ -114,8 +122,8 @@ public class UCIEngine {
                 System.arraycopy(parameters, 0, args, 1, parameters.length);
 				process = new ProcessBuilder(args).start();
 			}
-			in = new BufferedReader(new InputStreamReader(process
-					.getInputStream()), 10000);
+			connectionGeneration++;
+			in = new UCIProtocolReader(process.getInputStream());
 			out = new PrintWriter(process.getOutputStream());
 
 			send("uci");
@@ -148,12 +156,15 @@ public class UCIEngine {
 						+ (System.currentTimeMillis() - startTime));
 			}
 
-			connectionTimeoutFuture.cancel(true);
+			hasCrashed = false;
 			return true;
 		} catch (Throwable t) {
 			LOG.error("Error connecting to UCI Engine " + this, t);
 			disconnect();
 			return false;
+		} finally {
+			// A timeout left scheduled would disconnect a later connection.
+			connectionTimeoutFuture.cancel(true);
 		}
 	}
 
@@ -169,6 +180,23 @@ public class UCIEngine {
 		return result;
 	}
 
+	/**
+	 * Returns a copy like getDeepCopy which shares no options with this
+	 * engine. Options set on the copy, e.g. an engine pool giving each
+	 * instance its own hash size, do not change this engine's configuration.
+	 * The copy's options are populated when it connects.
+	 */
+	public UCIEngine getIsolatedCopy() {
+		UCIEngine result = new UCIEngine();
+		result.setProcessPath(processPath);
+		result.setParameters(parameters);
+		result.setUserName(userName);
+		result.setGoAnalysisParameters(goAnalysisParameters);
+		result.overrideOptions = new HashMap<String, String>(overrideOptions);
+		result.isDefault = isDefault;
+		return result;
+	}
+
 	public String getEngineAuthor() {
 		return engineAuthor;
 	}
@@ -280,6 +308,9 @@ public class UCIEngine {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Entering go(" + options + ",...)");
 			}
+			final long goTime = System.nanoTime();
+			activeGoOptions = options;
+			activeGoListener = listener;
 
 			if (StringUtils.isBlank(options)) {
 				send("go");
@@ -287,23 +318,78 @@ public class UCIEngine {
 				send("go " + options);
 			}
 
+			final Process goProcess = process;
+			final UCIProtocolReader goReader = in;
+			final int goGeneration = connectionGeneration;
 			Runnable runnable = goRunnable = new Runnable() {
 				public void run() {
+					synchronized (goMonitor) {
+						goThread = Thread.currentThread();
+					}
+					UCIProtocolReader reader = goReader;
+					UCIInfoLine info = new UCIInfoLine();
+					int lastDepth = 0;
+					long lastDeliveryTime = 0;
+					boolean isFirstInfo = true;
+					boolean isFinished = false;
 					try {
-						String line = readLine();
-						while (!cancelGo && line != null) {
-							if (line.startsWith("info")) {
-								parseInfoLine(line, listener);
-							} else if (line.startsWith("bestmove")) {
-								lastBestMove = parseBestMove(line);
+						while (!cancelGo && reader != null
+								&& isAlive(goProcess) && reader.nextLine()) {
+							if (reader.lineStartsWith("info")) {
+								if (!info.parse(reader.getLineBytes(), reader
+										.getLineLength())) {
+									continue;
+								}
+								long now = System.nanoTime();
+								if (isFirstInfo) {
+									isFirstInfo = false;
+									metrics.recordTimeToFirstInfo((now - goTime) / 1000000L);
+								}
+								if (info.has(UCIInfoLine.NPS)) {
+									metrics.recordNodesPerSecond(info
+											.getNodesPerSecond());
+								}
+								if (isInfoDelivered(info, lastDepth, now
+										- lastDeliveryTime)) {
+									if (info.has(UCIInfoLine.DEPTH)) {
+										lastDepth = info.getDepth();
+									}
+									lastDeliveryTime = now;
+									parseInfoLine(info, listener);
+								}
+							} else if (reader.lineStartsWith("readyok")) {
+								recordReady();
+							} else if (reader.lineStartsWith("bestmove")) {
+								isFinished = true;
+								activeGoOptions = null;
+								activeGoListener = null;
+								lastBestMove = parseBestMove(reader.getLine());
+								// Free the engine before notifying so the
+								// listener can start the next search.
+								finishGo(this);
 								listener.engineSentBestMove(lastBestMove);
 								break;
 							}
-							line = readLine();
 						}
-						goRunnable = null;
 					} catch (Throwable t) {
-						LOG.error("Error occured executng go ", t);
+						if (!isQuitting) {
+							LOG.error("Error occured executng go ", t);
+						}
+					} finally {
+						if (!isFinished && !cancelGo && !isQuitting
+								&& !isAlive(goProcess)) {
+							// The engine died mid search. activeGoOptions and
+							// activeGoListener are left set so restart() can
+							// resume it.
+							markCrashed(goGeneration);
+						}
+						finishGo(this);
+						synchronized (goMonitor) {
+							if (goThread == Thread.currentThread()) {
+								goThread = null;
+							}
+							goMonitor.notifyAll();
+						}
 					}
 				}
 			};
@@ -323,16 +409,7 @@ public class UCIEngine {
 	 * Returns true if there is a connection to the UCIEngine, false otherwise.
 	 */
 	public boolean isConnected() {
-		if (process != null) {
-			try {
-				process.exitValue();
-				resetConnectionState();
-				return false;
-			} catch (IllegalThreadStateException itse) {
-				return true;
-			}
-		}
-		return false;
+		return isAlive(process);
 	}
 
 	public boolean isDefault() {
@@ -446,6 +523,9 @@ public class UCIEngine {
 			LOG.debug("Entering quit()");
 		}
 
+		isQuitting = true;
+		activeGoOptions = null;
+		activeGoListener = null;
 		send("quit");
 		try {
 			Thread.sleep(100);
@@ -514,6 +594,8 @@ public class UCIEngine {
 		try {
 			if (!option.isDefaultValue()) {
 				overrideOptions.put(option.getName(), option.getValue());
+			} else {
+				overrideOptions.remove(option.getName());
 			}
 
 			if (LOG.isDebugEnabled()) {
@@ -569,13 +651,13 @@ public class UCIEngine {
 		}
 
 		if (moves == null || moves.length == 0) {
-			send("position fen " + fen);
+			sendPosition("position fen " + fen);
 		} else {
 			StringBuffer movesString = new StringBuffer();
 			for (UCIMove move : moves) {
                 movesString.append(StringUtils.isBlank(movesString.toString()) ? "" : " ").append(move.getValue());
 			}
-			send("position fen " + fen + " " + movesString);
+			sendPosition("position fen " + fen + " " + movesString);
 		}
 	}
 
@@ -616,13 +698,13 @@ public class UCIEngine {
 		}
 
 		if (moves == null || moves.length == 0) {
-			send("position startpos");
+			sendPosition("position startpos");
 		} else {
 			StringBuffer movesString = new StringBuffer();
 			for (UCIMove move : moves) {
                 movesString.append(movesString.toString().isEmpty() ? "" : " ").append(move.getValue());
 			}
-			send("position startpos " + movesString);
+			sendPosition("position startpos moves " + movesString);
 		}
 	}
 
@@ -654,15 +736,8 @@ public class UCIEngine {
 				lastBestMove = null;
 
 			} else {
-				long totalSleepTime = 0;
 				send("stop");
-				while (goRunnable != null && totalSleepTime < 2500) {
-					try {
-						Thread.sleep(500);
-						totalSleepTime += 500;
-					} catch (InterruptedException ie) {
-					}
-				}
+				waitForBestMove(2500);
 				result = lastBestMove;
 				lastBestMove = null;
 			}
@@ -670,17 +745,239 @@ public class UCIEngine {
 		return result;
 	}
 
+	/**
+	 * Sends stop without waiting for the best move. Unlike stop() this can be
+	 * invoked from a UCIInfoListener, which runs on the thread reading the
+	 * engine's output.
+	 */
+	public void requestStop() {
+		if (isProcessingGo()) {
+			send("stop");
+		}
+	}
+
+	/**
+	 * Blocks until the go in process finishes or timeoutMillis elapses.
+	 * Returns true if no go is in process on return.
+	 */
+	public boolean waitForBestMove(long timeoutMillis) {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized (goMonitor) {
+			long remaining = timeoutMillis;
+			while (goRunnable != null && remaining > 0) {
+				try {
+					goMonitor.wait(remaining);
+				} catch (InterruptedException ie) {
+					break;
+				}
+				remaining = end - System.currentTimeMillis();
+			}
+			return goRunnable == null;
+		}
+	}
+
+	/**
+	 * Returns the health and performance measurements of this engine.
+	 */
+	public UCIEngineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns true if the engine process died or failed without quit being
+	 * invoked. Cleared when the engine connects again.
+	 */
+	public boolean hasCrashed() {
+		return hasCrashed;
+	}
+
+	/**
+	 * Marks the engine crashed and disconnects it if its process exited
+	 * without quit being invoked. Invoked periodically by
+	 * EngineSupervisorService.
+	 * 
+	 * @return hasCrashed().
+	 */
+	public boolean checkForCrash() {
+		Process checked = process;
+		int generation = connectionGeneration;
+		if (checked != null && !isAlive(checked)) {
+			if (!isQuitting) {
+				markCrashed(generation);
+			}
+			if (generation == connectionGeneration) {
+				disconnect();
+			}
+		}
+		return hasCrashed;
+	}
+
+	/**
+	 * Sends isready while a go is in process and returns the milliseconds
+	 * until readyok, or -1 if no go is in process or the engine did not reply
+	 * within timeoutMillis. Engines must answer isready immediately even when
+	 * searching, so a timeout means the engine is hung.
+	 */
+	public long ping(long timeoutMillis) {
+		if (!isProcessingGo()) {
+			return -1;
+		}
+		synchronized (readyMonitor) {
+			long sentTime = readySentNanos = System.nanoTime();
+			send("isready");
+			long end = System.currentTimeMillis() + timeoutMillis;
+			long remaining = timeoutMillis;
+			while (readySentNanos == sentTime && remaining > 0
+					&& isProcessingGo()) {
+				try {
+					readyMonitor.wait(remaining);
+				} catch (InterruptedException ie) {
+					break;
+				}
+				remaining = end - System.currentTimeMillis();
+			}
+			if (readySentNanos == sentTime) {
+				readySentNanos = 0;
+				return -1;
+			}
+			return metrics.getLastReadyMillis();
+		}
+	}
+
+	/**
+	 * Kills the engine process, connects again and restores the state the
+	 * engine had: options are resent by connect, then the last position is
+	 * resent and a search that had not finished is started again with its
+	 * original listener.
+	 * 
+	 * @return true if the engine was reconnected.
+	 */
+	public boolean restart() {
+		String options = activeGoOptions;
+		UCIInfoListener listener = activeGoListener;
+		String positionCommand = lastPositionCommand;
+		activeGoOptions = null;
+		activeGoListener = null;
+
+		LOG.warn("Restarting " + this + " " + metrics);
+		isQuitting = true;
+		try {
+			disconnect();
+			// Let the go thread of the old process see the end of its output.
+			if (!waitForGoThread(GO_THREAD_EXIT_TIMEOUT)) {
+				LOG.warn("The go thread of " + this + " did not exit within "
+						+ GO_THREAD_EXIT_TIMEOUT + "ms.");
+			}
+		} finally {
+			isQuitting = false;
+		}
+		if (!connect()) {
+			return false;
+		}
+		metrics.recordRestart();
+
+		if (positionCommand != null) {
+			sendPosition(positionCommand);
+			isReady();
+		}
+		if (listener != null) {
+			go(options, listener);
+		}
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return engineName != null ? engineName : processPath;
 	}
 
+	/**
+	 * Records a crash once per connection. Ignored if generation is not the
+	 * current connectionGeneration.
+	 */
+	protected synchronized void markCrashed(int generation) {
+		if (!hasCrashed && generation == connectionGeneration) {
+			hasCrashed = true;
+			metrics.recordCrash();
+			LOG.warn(this + " crashed. " + metrics);
+		}
+	}
+
+	/**
+	 * Records the round trip of an isready sent by ping. Invoked by the go
+	 * thread when it reads readyok.
+	 */
+	protected void recordReady() {
+		synchronized (readyMonitor) {
+			if (readySentNanos != 0) {
+				metrics.recordReady((System.nanoTime() - readySentNanos) / 1000000L);
+				readySentNanos = 0;
+				readyMonitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Sends a position command and remembers it so restart can resend it.
+	 */
+	protected void sendPosition(String command) {
+		lastPositionCommand = command;
+		send(command);
+	}
+
+	/**
+	 * Marks the go started by runnable as finished and wakes threads waiting
+	 * for its best move.
+	 */
+	protected void finishGo(Runnable runnable) {
+		synchronized (goMonitor) {
+			if (goRunnable == runnable) {
+				goRunnable = null;
+			}
+			goMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Blocks until the thread running the last go exits or timeoutMillis
+	 * elapses. Returns true if no go thread is running on return.
+	 */
+	protected boolean waitForGoThread(long timeoutMillis) {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized (goMonitor) {
+			long remaining = timeoutMillis;
+			while (goThread != null && goThread != Thread.currentThread()
+					&& remaining > 0) {
+				try {
+					goMonitor.wait(remaining);
+				} catch (InterruptedException ie) {
+					break;
+				}
+				remaining = end - System.currentTimeMillis();
+			}
+			return goThread == null || goThread == Thread.currentThread();
+		}
+	}
+
+	protected static boolean isAlive(Process process) {
+		if (process == null) {
+			return false;
+		}
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException itse) {
+			return true;
+		}
+	}
+
 	/**
 	 * Disconnects from the engine
 	 */
 	protected void disconnect() {
 		try {
-			if (isConnected()) {
+			connectionGeneration++;
+			if (process != null) {
 				process.destroy();
 
 				if (in != null) {
@@ -714,17 +1011,6 @@ public class UCIEngine {
 		quit();
 	}
 
-	protected boolean isSupportedInfoType(String type) {
-		boolean result = false;
-		for (String currentType : SUPPORTED_INFO_TYPES) {
-			if (currentType.equalsIgnoreCase(type)) {
-				result = true;
-				break;
-			}
-		}
-		return result;
-	}
-
 	protected UCIBestMove parseBestMove(String bestMove) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("parseBestMove(" + bestMove + ")");
@@ -847,133 +1133,28 @@ public class UCIEngine {
 	 * stop
 	 * </pre>
 	 */
-	protected void parseInfoLine(String info, UCIInfoListener listener) {
+	protected void parseInfoLine(UCIInfoLine info, UCIInfoListener listener) {
 		if (!isProcessingGo() || Thread.holdsLock(stopSynch))
 			return;
 		
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Entering parseInfoLine(" + info + ",...)");
 		}
-		RaptorStringTokenizer tok = new RaptorStringTokenizer(info, " ", true);
-		tok.nextToken();
-
-		int currentMoveNumber = 0;
-
-		List<UCIInfo> infos = new ArrayList<UCIInfo>(10);
-
-		String nextType = null;
-		while (tok.hasMoreTokens()) {
-			String type = null;
-			if (nextType != null) {
-				type = nextType;
-				nextType = null;
-			} else {
-				type = tok.nextToken();
-			}
-
-			while (!isSupportedInfoType(type) && tok.hasMoreTokens()) {
-				type = tok.nextToken();
-			}
-
-			if (!isSupportedInfoType(type)) {
-				break;
-			}
+		listener.engineSentInfo(info.toInfos());
+	}
 
-			if (type.equalsIgnoreCase("depth")) {
-				DepthInfo depthInfo = new DepthInfo();
-				depthInfo
-						.setSearchDepthPlies(Integer.parseInt(tok.nextToken()));
-				infos.add(depthInfo);
-			} else if (type.equalsIgnoreCase("seldepth")) {
-				SelectiveSearchDepthInfo ssDepthInfo = new SelectiveSearchDepthInfo();
-				ssDepthInfo.setDepthInPlies(Integer.parseInt(tok.nextToken()));
-				infos.add(ssDepthInfo);
-			} else if (type.equalsIgnoreCase("time")) {
-				TimeInfo timeInfo = new TimeInfo();
-				timeInfo.setTimeMillis(Integer.parseInt(tok.nextToken()));
-				infos.add(timeInfo);
-			} else if (type.equalsIgnoreCase("nodes")) {
-				NodesSearchedInfo nodesSearched = new NodesSearchedInfo();
-				nodesSearched.setNodesSearched(Integer
-						.parseInt(tok.nextToken()));
-				infos.add(nodesSearched);
-			} else if (type.equalsIgnoreCase("pv")) {
-				BestLineFoundInfo bestLineFoundInfo = new BestLineFoundInfo();
-				String currentMove = tok.nextToken();
-				List<UCIMove> currentLine = new ArrayList<UCIMove>(10);
-				while (true) {
-					currentLine.add(new UCIMove(currentMove));
-					if (tok.hasMoreTokens()) {
-						currentMove = tok.nextToken();
-						if (isSupportedInfoType(currentMove)) {
-							nextType = currentMove;
-							break;
-						}
-					} else {
-						break;
-					}
-				}
-				bestLineFoundInfo.setMoves(currentLine.toArray(new UCIMove[0]));
-				infos.add(bestLineFoundInfo);
-			} else if (type.equalsIgnoreCase("multipv")) {
-				tok.nextToken();
-			} else if (type.equalsIgnoreCase("score")) {
-				ScoreInfo scoreInfo = new ScoreInfo();
-				String nextToken = tok.nextToken();
-				
-				while (true) {
-					if (nextToken.equalsIgnoreCase("cp")) {
-						scoreInfo.setValueInCentipawns(Integer.parseInt(tok
-								.nextToken()));
-					} else if (nextToken.equalsIgnoreCase("mate")) {
-						scoreInfo.setMateInMoves(Integer.parseInt(tok
-								.nextToken()));
-					} else if (nextToken.equalsIgnoreCase("lowerbound")) {
-						scoreInfo.setLowerBoundScore(true);
-					} else if (nextToken.equalsIgnoreCase("upperbound")) {
-						scoreInfo.setUpperBoundScore(true);
-					} else {
-						nextType = nextToken;
-						break;
-					}
-					if (tok.hasMoreTokens()) {
-						nextToken = tok.nextToken();
-					} else {
-						break;
-					}
-				}
-				infos.add(scoreInfo);
-			} else if (type.equalsIgnoreCase("currmove")) {
-				CurrentMoveInfo currentMoveInfo = new CurrentMoveInfo();
-				currentMoveInfo.setMove(parseUCIMove(tok.nextToken()));
-				currentMoveInfo.setMoveNumber(currentMoveNumber);
-				infos.add(currentMoveInfo);
-			} else if (type.equalsIgnoreCase("currentmovenumber")) {
-				currentMoveNumber = Integer.parseInt(tok.nextToken());
-			} else if (type.equalsIgnoreCase("hashfull")) {
-				tok.nextToken();
-			} else if (type.equalsIgnoreCase("nps")) {
-				NodesPerSecondInfo nodesPerSecInfo = new NodesPerSecondInfo();
-				nodesPerSecInfo.setNodesPerSecond(Integer.parseInt(tok
-						.nextToken()));
-				infos.add(nodesPerSecInfo);
-			} else if (type.equalsIgnoreCase("tbhits")) {
-				TableBaseHitsInfo tbInfo = new TableBaseHitsInfo();
-				tbInfo.setNumberOfHits(Integer.parseInt(tok.nextToken()));
-				infos.add(tbInfo);
-			} else if (type.equalsIgnoreCase("cpuload")) {
-				CPULoadInfo cpuInfo = new CPULoadInfo();
-				cpuInfo.setCpuUsage(Integer.parseInt(tok.nextToken()));
-				infos.add(cpuInfo);
-			} else if (type.equalsIgnoreCase("string")) {
-				StringInfo stringInfo = new StringInfo();
-				stringInfo.setValue(tok.getWhatsLeft().trim());
-				infos.add(stringInfo);
-			} else {
-				LOG.warn("Unkown type: " + type);
-			}
-		}
-		listener.engineSentInfo(infos.toArray(new UCIInfo[0]));
+	/**
+	 * Returns true if an info line should be passed to the listener. Lines
+	 * with a pv, a score, a string or a new depth always are. Progress lines
+	 * carrying only currmove, nodes, nps and the like are passed at most once
+	 * every INFO_THROTTLE_NANOS; engines send thousands of them a second.
+	 */
+	protected boolean isInfoDelivered(UCIInfoLine info, int lastDepth,
+			long nanosSinceLastDelivery) {
+		return info.has(UCIInfoLine.PV | UCIInfoLine.SCORE
+				| UCIInfoLine.STRING)
+				|| info.has(UCIInfoLine.DEPTH) && info.getDepth() != lastDepth
+				|| nanosSinceLastDelivery >= INFO_THROTTLE_NANOS;
 	}
 
 	protected void parseOptionLine(String optionLine) {
@@ -0,0 +1,153 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+/**
+ * Health and performance measurements of one UCI engine process. The engine
+ * records crashes, isready round trips, the delay before the first info of
+ * each go and its nodes per second. EngineSupervisorService samples the
+ * nodes per second into a history and records restarts.
+ * 
+ * All methods are thread safe.
+ */
+public class UCIEngineMetrics {
+	/**
+	 * The number of nodes per second samples kept.
+	 */
+	public static final int NPS_HISTORY_SIZE = 60;
+
+	protected static final double ALPHA = 0.2;
+
+	protected int crashCount;
+	protected int restartCount;
+	protected long lastCrashTime;
+	protected long lastReadyMillis = -1;
+	protected double averageReadyMillis = -1;
+	protected long maxReadyMillis;
+	protected long lastTimeToFirstInfoMillis = -1;
+	protected double averageTimeToFirstInfoMillis = -1;
+	protected volatile long lastNodesPerSecond;
+	protected long[] npsHistory = new long[NPS_HISTORY_SIZE];
+	protected int npsHistoryStart;
+	protected int npsHistoryLength;
+
+	public synchronized double getAverageReadyMillis() {
+		return averageReadyMillis;
+	}
+
+	public synchronized double getAverageTimeToFirstInfoMillis() {
+		return averageTimeToFirstInfoMillis;
+	}
+
+	public synchronized int getCrashCount() {
+		return crashCount;
+	}
+
+	public synchronized long getLastCrashTime() {
+		return lastCrashTime;
+	}
+
+	public long getLastNodesPerSecond() {
+		return lastNodesPerSecond;
+	}
+
+	/**
+	 * Returns the last isready round trip in milliseconds, -1 if none has
+	 * been measured.
+	 */
+	public synchronized long getLastReadyMillis() {
+		return lastReadyMillis;
+	}
+
+	/**
+	 * Returns the time from the last go to its first info line in
+	 * milliseconds, -1 if none has been measured.
+	 */
+	public synchronized long getLastTimeToFirstInfoMillis() {
+		return lastTimeToFirstInfoMillis;
+	}
+
+	public synchronized long getMaxReadyMillis() {
+		return maxReadyMillis;
+	}
+
+	/**
+	 * Returns the sampled nodes per second, oldest first.
+	 */
+	public synchronized long[] getNpsHistory() {
+		long[] result = new long[npsHistoryLength];
+		for (int i = 0; i < npsHistoryLength; i++) {
+			result[i] = npsHistory[(npsHistoryStart + i) % NPS_HISTORY_SIZE];
+		}
+		return result;
+	}
+
+	public synchronized int getRestartCount() {
+		return restartCount;
+	}
+
+	public synchronized String getReport() {
+		return "crashes=" + crashCount + " restarts=" + restartCount
+				+ " ready=" + lastReadyMillis + "ms avg="
+				+ Math.round(averageReadyMillis) + "ms max=" + maxReadyMillis
+				+ "ms firstInfo=" + lastTimeToFirstInfoMillis + "ms avg="
+				+ Math.round(averageTimeToFirstInfoMillis) + "ms nps="
+				+ lastNodesPerSecond;
+	}
+
+	public synchronized void recordCrash() {
+		crashCount++;
+		lastCrashTime = System.currentTimeMillis();
+	}
+
+	public void recordNodesPerSecond(long nodesPerSecond) {
+		lastNodesPerSecond = nodesPerSecond;
+	}
+
+	public synchronized void recordReady(long millis) {
+		lastReadyMillis = millis;
+		averageReadyMillis = averageReadyMillis < 0 ? millis
+				: averageReadyMillis + ALPHA * (millis - averageReadyMillis);
+		maxReadyMillis = Math.max(maxReadyMillis, millis);
+	}
+
+	public synchronized void recordRestart() {
+		restartCount++;
+	}
+
+	public synchronized void recordTimeToFirstInfo(long millis) {
+		lastTimeToFirstInfoMillis = millis;
+		averageTimeToFirstInfoMillis = averageTimeToFirstInfoMillis < 0 ? millis
+				: averageTimeToFirstInfoMillis + ALPHA
+						* (millis - averageTimeToFirstInfoMillis);
+	}
+
+	/**
+	 * Adds the last nodes per second to the history.
+	 */
+	public synchronized void sampleNodesPerSecond() {
+		if (npsHistoryLength < NPS_HISTORY_SIZE) {
+			npsHistory[(npsHistoryStart + npsHistoryLength++)
+					% NPS_HISTORY_SIZE] = lastNodesPerSecond;
+		} else {
+			npsHistory[npsHistoryStart] = lastNodesPerSecond;
+			npsHistoryStart = (npsHistoryStart + 1) % NPS_HISTORY_SIZE;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getReport();
+	}
+}
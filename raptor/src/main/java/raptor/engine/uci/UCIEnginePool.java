@@ -0,0 +1,361 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import raptor.chess.Variant;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.service.EngineSupervisorService;
+import raptor.service.EvaluationCacheService;
+import raptor.util.RaptorLogger;
+
+/**
+ * Runs several instances of one UCI engine and shares a list of positions
+ * between them. Each instance is an isolated copy of the configured engine
+ * with its own Hash and Threads options, so together they use about the
+ * memory and cores a single configured instance would.
+ * 
+ * Positions are handed out in order and results are delivered to the
+ * listener strictly in position order, whichever instance finishes first.
+ * 
+ * Work which is not a list of positions can check instances out with acquire
+ * and return them with release instead. The two must not be mixed while an
+ * analyze call is running.
+ */
+public class UCIEnginePool {
+	/**
+	 * Receives the analysis of each position.
+	 */
+	public static interface PoolListener {
+		/**
+		 * Invoked once per position in position order from one of the pool's
+		 * threads. score and bestLine are null if the engine sent none.
+		 */
+		public void positionAnalyzed(int index, ScoreInfo score,
+				BestLineFoundInfo bestLine);
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(UCIEnginePool.class);
+
+	public static final int MAX_ENGINES = 8;
+	public static final int MIN_HASH_MB = 16;
+
+	/**
+	 * Returns the default number of engines, one per core up to MAX_ENGINES.
+	 */
+	public static int getDefaultSize() {
+		return Math.max(1, Math.min(MAX_ENGINES, Runtime.getRuntime()
+				.availableProcessors()));
+	}
+
+	protected UCIEngine template;
+	protected UCIEngine[] engines;
+	protected volatile boolean isCancelled;
+	protected boolean isSupervised = true;
+	protected BlockingQueue<UCIEngine> idleEngines = new LinkedBlockingQueue<UCIEngine>();
+
+	protected ScoreInfo[] scores;
+	protected BestLineFoundInfo[] bestLines;
+	protected boolean[] isAnalyzed;
+	protected int nextToDeliver;
+	protected long[] positionHashes;
+	protected Variant variant;
+
+	/**
+	 * @param template
+	 *            The configured engine. It is not connected or modified.
+	 * @param size
+	 *            The number of instances to run.
+	 */
+	public UCIEnginePool(UCIEngine template, int size) {
+		this.template = template;
+		engines = new UCIEngine[Math.max(1, size)];
+	}
+
+	/**
+	 * Analyzes each fen for up to millisPerPosition and blocks until every
+	 * position has been delivered to the listener or the pool is cancelled.
+	 */
+	public void analyze(String[] fens, long millisPerPosition,
+			PoolListener listener) {
+		analyze(fens, BoundedAnalysis.Budget.forMillis(millisPerPosition),
+				listener);
+	}
+
+	/**
+	 * Analyzes each fen within budget and blocks until every position has been
+	 * delivered to the listener or the pool is cancelled. Positions whose
+	 * best move settles early are stopped early.
+	 */
+	public void analyze(final String[] fens,
+			final BoundedAnalysis.Budget budget, final PoolListener listener) {
+		scores = new ScoreInfo[fens.length];
+		bestLines = new BestLineFoundInfo[fens.length];
+		isAnalyzed = new boolean[fens.length];
+		nextToDeliver = 0;
+
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		Thread[] workers = new Thread[engines.length];
+		for (int i = 0; i < engines.length; i++) {
+			final UCIEngine engine = engines[i];
+			if (engine == null) {
+				continue;
+			}
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					int index;
+					while (!isCancelled
+							&& (index = nextIndex.getAndIncrement()) < fens.length) {
+						analyzePosition(engine, index, fens[index], budget,
+								listener);
+					}
+				}
+			});
+			workers[i].setDaemon(true);
+			workers[i].setName("UCIEnginePool " + engine.getUserName() + " "
+					+ i);
+			workers[i].start();
+		}
+
+		for (Thread worker : workers) {
+			if (worker != null) {
+				try {
+					worker.join();
+				} catch (InterruptedException ie) {
+					cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blocks until an instance is idle and returns it. The caller owns the
+	 * instance until it passes it to release.
+	 */
+	public UCIEngine acquire() throws InterruptedException {
+		return idleEngines.take();
+	}
+
+	/**
+	 * Returns an instance obtained from acquire to the pool.
+	 */
+	public void release(UCIEngine engine) {
+		idleEngines.add(engine);
+	}
+
+	/**
+	 * Sets whether started instances are watched by the
+	 * EngineSupervisorService. Defaults to true. Callers which restart
+	 * crashed instances themselves, like ProblemGenerator, turn this off
+	 * before start so an instance is not restarted twice.
+	 */
+	public void setSupervised(boolean isSupervised) {
+		this.isSupervised = isSupervised;
+	}
+
+	/**
+	 * Identifies the positions of the next analyze call by zobrist position
+	 * hash so results are read from and written to the evaluation cache. A
+	 * position cached at least as deep as a search that stopped early would
+	 * reach is delivered without searching it again. Pass null to disable.
+	 */
+	public void setPositionHashes(long[] positionHashes, Variant variant) {
+		this.positionHashes = positionHashes;
+		this.variant = variant;
+	}
+
+	/**
+	 * Stops handing out positions. Searches in progress finish.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
+
+	/**
+	 * Returns the number of connected instances.
+	 */
+	public int getSize() {
+		int result = 0;
+		for (UCIEngine engine : engines) {
+			if (engine != null && engine.isConnected()) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Returns true if the instances report scores for black as negative
+	 * numbers.
+	 */
+	public boolean isMultiplyBlackScoreByMinus1() {
+		return engines[0] != null ? engines[0].isMultiplyBlackScoreByMinus1()
+				: template.isMultiplyBlackScoreByMinus1();
+	}
+
+	/**
+	 * Quits all instances.
+	 */
+	public void quit() {
+		idleEngines.clear();
+		for (int i = 0; i < engines.length; i++) {
+			if (engines[i] != null) {
+				try {
+					if (isSupervised) {
+						EngineSupervisorService.getInstance().unsupervise(
+								engines[i]);
+					}
+					engines[i].quit();
+				} catch (Throwable t) {
+					LOG.warn("Error quitting pooled engine " + engines[i], t);
+				}
+				engines[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Launches the instances. Hash is divided between them and each gets an
+	 * equal share of the cores. Returns the number that connected.
+	 */
+	public int start() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int threadsPerEngine = Math.max(1, cores / engines.length);
+		int started = 0;
+
+		for (int i = 0; i < engines.length; i++) {
+			UCIEngine engine = template.getIsolatedCopy();
+			engine.setUsingThreadService(false);
+			if (!engine.connect()) {
+				LOG.warn("Could not start pooled engine " + i + " "
+						+ template.getUserName());
+				continue;
+			}
+
+			UCIOption hash = engine.getOption("Hash");
+			if (hash != null) {
+				int totalHash = parseInt(hash.getValue(), MIN_HASH_MB);
+				setOption(engine, hash, Math.max(MIN_HASH_MB, totalHash
+						/ engines.length));
+			}
+			UCIOption threads = engine.getOption("Threads");
+			if (threads != null) {
+				setOption(engine, threads, threadsPerEngine);
+			}
+			engine.isReady();
+			engines[i] = engine;
+			idleEngines.add(engine);
+			if (isSupervised) {
+				EngineSupervisorService.getInstance().supervise(engine);
+			}
+			started++;
+		}
+
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Started " + started + " of " + engines.length
+					+ " instances of " + template.getUserName()
+					+ " with Threads=" + threadsPerEngine);
+		}
+		return started;
+	}
+
+	protected void analyzePosition(UCIEngine engine, int index, String fen,
+			BoundedAnalysis.Budget budget, PoolListener listener) {
+		ScoreInfo score = null;
+		BestLineFoundInfo bestLine = null;
+		try {
+			EvaluationCacheService.Evaluation cached = getCachedEvaluation(
+					index, budget);
+			if (cached != null) {
+				UCIInfo[] infos = cached.toUCIInfos();
+				score = (ScoreInfo) infos[1];
+				bestLine = (BestLineFoundInfo) infos[2];
+			} else {
+				BoundedAnalysis.Result result = BoundedAnalysis.analyze(
+						engine, fen, budget, null);
+				score = result.score;
+				bestLine = result.bestLine;
+				if (positionHashes != null) {
+					EvaluationCacheService.getInstance().put(
+							positionHashes[index], variant,
+							engine.getUserName(), result.depth, score,
+							bestLine);
+				}
+			}
+		} catch (Throwable t) {
+			LOG.error("Error analyzing " + fen + " with " + engine, t);
+		}
+
+		deliver(index, score, bestLine, listener);
+	}
+
+	/**
+	 * Returns the cached evaluation of the position at index if it is deep
+	 * enough to stand in for a search within budget.
+	 */
+	protected EvaluationCacheService.Evaluation getCachedEvaluation(int index,
+			BoundedAnalysis.Budget budget) {
+		if (positionHashes == null) {
+			return null;
+		}
+		EvaluationCacheService.Evaluation result = EvaluationCacheService
+				.getInstance().get(positionHashes[index], variant);
+		int requiredDepth = budget.maxDepth > 0 ? budget.maxDepth
+				: budget.minDepth + budget.stableIterations;
+		return result != null && result.isCoordinatePv()
+				&& result.getDepth() >= requiredDepth ? result : null;
+	}
+
+	/**
+	 * Stores a result and delivers every result that is now next in order.
+	 */
+	protected synchronized void deliver(int index, ScoreInfo score,
+			BestLineFoundInfo bestLine, PoolListener listener) {
+		scores[index] = score;
+		bestLines[index] = bestLine;
+		isAnalyzed[index] = true;
+
+		while (nextToDeliver < isAnalyzed.length && isAnalyzed[nextToDeliver]) {
+			if (!isCancelled) {
+				listener.positionAnalyzed(nextToDeliver, scores[nextToDeliver],
+						bestLines[nextToDeliver]);
+			}
+			scores[nextToDeliver] = null;
+			bestLines[nextToDeliver] = null;
+			nextToDeliver++;
+		}
+	}
+
+	protected int parseInt(String value, int defaultValue) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (Throwable t) {
+			return defaultValue;
+		}
+	}
+
+	protected void setOption(UCIEngine engine, UCIOption option, int value) {
+		option.setValue(String.valueOf(value));
+		engine.setOption(option);
+	}
+}
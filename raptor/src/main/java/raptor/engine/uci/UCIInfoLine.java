@@ -0,0 +1,457 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.CPULoadInfo;
+import raptor.engine.uci.info.CurrentMoveInfo;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.MultiPVInfo;
+import raptor.engine.uci.info.NodesPerSecondInfo;
+import raptor.engine.uci.info.NodesSearchedInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.engine.uci.info.SelectiveSearchDepthInfo;
+import raptor.engine.uci.info.StringInfo;
+import raptor.engine.uci.info.TableBaseHitsInfo;
+import raptor.engine.uci.info.TimeInfo;
+
+/**
+ * A reusable holder for one UCI info line. parse reads the line straight from
+ * bytes without tokenizing it into Strings, so an engine sending thousands of
+ * lines a second creates almost no garbage. toInfos creates the UCIInfo
+ * objects listeners expect, and is only invoked for lines that are delivered.
+ */
+public class UCIInfoLine {
+	public static final int DEPTH = 1;
+	public static final int SELDEPTH = 1 << 1;
+	public static final int TIME = 1 << 2;
+	public static final int NODES = 1 << 3;
+	public static final int PV = 1 << 4;
+	public static final int MULTIPV = 1 << 5;
+	public static final int SCORE = 1 << 6;
+	public static final int CURRMOVE = 1 << 7;
+	public static final int CURRMOVENUMBER = 1 << 8;
+	public static final int HASHFULL = 1 << 9;
+	public static final int NPS = 1 << 10;
+	public static final int TBHITS = 1 << 11;
+	public static final int CPULOAD = 1 << 12;
+	public static final int STRING = 1 << 13;
+
+	protected static final String[] KEYWORDS = { "depth", "seldepth", "time",
+			"nodes", "pv", "multipv", "score", "currmove", "currmovenumber",
+			"hashfull", "nps", "tbhits", "cpuload", "string",
+			"currentmovenumber", "refutation", "currline" };
+
+	protected byte[] text = new byte[1024];
+	protected int length;
+	protected int position;
+	protected int tokenStart;
+	protected int tokenEnd;
+	protected boolean isTokenPushedBack;
+
+	protected int fields;
+	protected int depth;
+	protected int selDepth;
+	protected long timeMillis;
+	protected long nodes;
+	protected long nodesPerSecond;
+	protected int multiPv;
+	protected int scoreCentipawns;
+	protected int scoreMate;
+	protected boolean isLowerBound;
+	protected boolean isUpperBound;
+	protected int currMoveStart;
+	protected int currMoveEnd;
+	protected int currMoveNumber;
+	protected int hashFull;
+	protected long tbHits;
+	protected int cpuLoad;
+	protected int stringStart;
+
+	protected int[] pvStarts = new int[64];
+	protected int[] pvEnds = new int[64];
+	protected int pvLength;
+
+	public int getCpuLoad() {
+		return cpuLoad;
+	}
+
+	public int getCurrMoveNumber() {
+		return currMoveNumber;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the bitwise or of the field constants present in the line.
+	 */
+	public int getFields() {
+		return fields;
+	}
+
+	public int getHashFull() {
+		return hashFull;
+	}
+
+	/**
+	 * Returns the multipv index, 1 if the line did not have one.
+	 */
+	public int getMultiPv() {
+		return has(MULTIPV) ? multiPv : 1;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getNodesPerSecond() {
+		return nodesPerSecond;
+	}
+
+	public int getPvLength() {
+		return pvLength;
+	}
+
+	/**
+	 * Returns the move at index in the pv in UCI notation.
+	 */
+	public String getPvMove(int index) {
+		return toString(pvStarts[index], pvEnds[index]);
+	}
+
+	public int getScoreCentipawns() {
+		return scoreCentipawns;
+	}
+
+	public int getScoreMate() {
+		return scoreMate;
+	}
+
+	public int getSelDepth() {
+		return selDepth;
+	}
+
+	public long getTbHits() {
+		return tbHits;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * Returns true if the line contained the field.
+	 */
+	public boolean has(int field) {
+		return (fields & field) != 0;
+	}
+
+	public boolean isLowerBound() {
+		return isLowerBound;
+	}
+
+	public boolean isUpperBound() {
+		return isUpperBound;
+	}
+
+	/**
+	 * Parses an info line, replacing the previous contents. The bytes are
+	 * copied so the caller may reuse its array.
+	 * 
+	 * @return true if the line contained at least one field.
+	 */
+	public boolean parse(byte[] bytes, int length) {
+		if (text.length < length) {
+			text = new byte[Math.max(text.length * 2, length)];
+		}
+		System.arraycopy(bytes, 0, text, 0, length);
+		this.length = length;
+		position = 0;
+		isTokenPushedBack = false;
+		fields = 0;
+		pvLength = 0;
+		isLowerBound = false;
+		isUpperBound = false;
+
+		if (!nextToken() || !isToken("info")) {
+			return false;
+		}
+
+		while (nextToken()) {
+			if (isToken("depth")) {
+				depth = (int) nextNumber(DEPTH);
+			} else if (isToken("seldepth")) {
+				selDepth = (int) nextNumber(SELDEPTH);
+			} else if (isToken("time")) {
+				timeMillis = nextNumber(TIME);
+			} else if (isToken("nodes")) {
+				nodes = nextNumber(NODES);
+			} else if (isToken("nps")) {
+				nodesPerSecond = nextNumber(NPS);
+			} else if (isToken("multipv")) {
+				multiPv = (int) nextNumber(MULTIPV);
+			} else if (isToken("hashfull")) {
+				hashFull = (int) nextNumber(HASHFULL);
+			} else if (isToken("tbhits")) {
+				tbHits = nextNumber(TBHITS);
+			} else if (isToken("cpuload")) {
+				cpuLoad = (int) nextNumber(CPULOAD);
+			} else if (isToken("currmovenumber")
+					|| isToken("currentmovenumber")) {
+				currMoveNumber = (int) nextNumber(CURRMOVENUMBER);
+			} else if (isToken("currmove")) {
+				if (nextToken()) {
+					currMoveStart = tokenStart;
+					currMoveEnd = tokenEnd;
+					fields |= CURRMOVE;
+				}
+			} else if (isToken("score")) {
+				parseScore();
+			} else if (isToken("pv")) {
+				parsePv();
+			} else if (isToken("string")) {
+				while (position < length && text[position] == ' ') {
+					position++;
+				}
+				stringStart = position;
+				position = length;
+				fields |= STRING;
+			}
+			// Anything else, including the values of refutation and
+			// currline, is skipped a token at a time.
+		}
+		return fields != 0;
+	}
+
+	/**
+	 * Creates the UCIInfo objects for the fields in the line.
+	 */
+	public UCIInfo[] toInfos() {
+		List<UCIInfo> result = new ArrayList<UCIInfo>(10);
+		if (has(DEPTH)) {
+			DepthInfo info = new DepthInfo();
+			info.setSearchDepthPlies(depth);
+			result.add(info);
+		}
+		if (has(SELDEPTH)) {
+			SelectiveSearchDepthInfo info = new SelectiveSearchDepthInfo();
+			info.setDepthInPlies(selDepth);
+			result.add(info);
+		}
+		if (has(MULTIPV)) {
+			MultiPVInfo info = new MultiPVInfo();
+			info.setIndex(multiPv);
+			result.add(info);
+		}
+		if (has(SCORE)) {
+			ScoreInfo info = new ScoreInfo();
+			info.setValueInCentipawns(scoreCentipawns);
+			info.setMateInMoves(scoreMate);
+			info.setLowerBoundScore(isLowerBound);
+			info.setUpperBoundScore(isUpperBound);
+			result.add(info);
+		}
+		if (has(TIME)) {
+			TimeInfo info = new TimeInfo();
+			info.setTimeMillis(toInt(timeMillis));
+			result.add(info);
+		}
+		if (has(NODES)) {
+			NodesSearchedInfo info = new NodesSearchedInfo();
+			info.setNodesSearched(toInt(nodes));
+			result.add(info);
+		}
+		if (has(NPS)) {
+			NodesPerSecondInfo info = new NodesPerSecondInfo();
+			info.setNodesPerSecond(toInt(nodesPerSecond));
+			result.add(info);
+		}
+		if (has(TBHITS)) {
+			TableBaseHitsInfo info = new TableBaseHitsInfo();
+			info.setNumberOfHits(toInt(tbHits));
+			result.add(info);
+		}
+		if (has(CPULOAD)) {
+			CPULoadInfo info = new CPULoadInfo();
+			info.setCpuUsage(cpuLoad);
+			result.add(info);
+		}
+		if (has(CURRMOVE)) {
+			CurrentMoveInfo info = new CurrentMoveInfo();
+			info.setMove(new UCIMove(toString(currMoveStart, currMoveEnd)));
+			info.setMoveNumber(currMoveNumber);
+			result.add(info);
+		}
+		if (has(PV)) {
+			UCIMove[] moves = new UCIMove[pvLength];
+			for (int i = 0; i < pvLength; i++) {
+				moves[i] = new UCIMove(getPvMove(i));
+			}
+			BestLineFoundInfo info = new BestLineFoundInfo();
+			info.setMoves(moves);
+			result.add(info);
+		}
+		if (has(STRING)) {
+			StringInfo info = new StringInfo();
+			info.setValue(toString(stringStart, length).trim());
+			result.add(info);
+		}
+		return result.toArray(new UCIInfo[result.size()]);
+	}
+
+	@Override
+	public String toString() {
+		return toString(0, length);
+	}
+
+	protected boolean isKeyword() {
+		for (String keyword : KEYWORDS) {
+			if (isToken(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the current token equals keyword, ignoring case.
+	 */
+	protected boolean isToken(String keyword) {
+		if (tokenEnd - tokenStart != keyword.length()) {
+			return false;
+		}
+		for (int i = 0; i < keyword.length(); i++) {
+			if (Character.toLowerCase((char) text[tokenStart + i]) != keyword
+					.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next token, which must be a number, and marks field as
+	 * present if it was one. Values too large for a long are clamped.
+	 */
+	protected long nextNumber(int field) {
+		if (!nextToken()) {
+			return 0;
+		}
+		int i = tokenStart;
+		boolean isNegative = false;
+		if (text[i] == '-' || text[i] == '+') {
+			isNegative = text[i] == '-';
+			i++;
+		}
+		if (i == tokenEnd) {
+			return 0;
+		}
+		long result = 0;
+		for (; i < tokenEnd; i++) {
+			int digit = text[i] - '0';
+			if (digit < 0 || digit > 9) {
+				// Not a number; let the loop in parse look at it.
+				isTokenPushedBack = true;
+				return 0;
+			}
+			result = result < Long.MAX_VALUE / 10 ? result * 10 + digit
+					: Long.MAX_VALUE;
+		}
+		fields |= field;
+		return isNegative ? -result : result;
+	}
+
+	/**
+	 * Advances to the next space separated token.
+	 * 
+	 * @return false if there are no more tokens.
+	 */
+	protected boolean nextToken() {
+		if (isTokenPushedBack) {
+			isTokenPushedBack = false;
+			return true;
+		}
+		while (position < length && text[position] == ' ') {
+			position++;
+		}
+		if (position == length) {
+			return false;
+		}
+		tokenStart = position;
+		while (position < length && text[position] != ' ') {
+			position++;
+		}
+		tokenEnd = position;
+		return true;
+	}
+
+	protected void parsePv() {
+		while (nextToken()) {
+			if (isKeyword()) {
+				isTokenPushedBack = true;
+				break;
+			}
+			if (pvLength == pvStarts.length) {
+				int[] newStarts = new int[pvLength * 2];
+				int[] newEnds = new int[pvLength * 2];
+				System.arraycopy(pvStarts, 0, newStarts, 0, pvLength);
+				System.arraycopy(pvEnds, 0, newEnds, 0, pvLength);
+				pvStarts = newStarts;
+				pvEnds = newEnds;
+			}
+			pvStarts[pvLength] = tokenStart;
+			pvEnds[pvLength] = tokenEnd;
+			pvLength++;
+		}
+		if (pvLength > 0) {
+			fields |= PV;
+		}
+	}
+
+	protected void parseScore() {
+		scoreCentipawns = 0;
+		scoreMate = 0;
+		while (nextToken()) {
+			if (isToken("cp")) {
+				scoreCentipawns = (int) nextNumber(SCORE);
+			} else if (isToken("mate")) {
+				scoreMate = (int) nextNumber(SCORE);
+			} else if (isToken("lowerbound")) {
+				isLowerBound = true;
+			} else if (isToken("upperbound")) {
+				isUpperBound = true;
+			} else {
+				isTokenPushedBack = true;
+				break;
+			}
+		}
+	}
+
+	protected int toInt(long value) {
+		return value > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) value;
+	}
+
+	protected String toString(int start, int end) {
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (text[start + i] & 0xff);
+		}
+		return new String(chars);
+	}
+}
@@ -23,20 +23,48 @@ public class UCIMove {
 	protected int endSquare;
 	protected int promotedPiece = 0;
 
+	/**
+	 * Creates the UCI move for a move made on a game. Drops are written as
+	 * piece@square, with a lower case piece for black.
+	 */
 	public UCIMove(Move move) {
 		startSquare = move.getFrom();
-		endSquare = move.getEpSquare();
-		if (move.isPromotion()) {
-			promotedPiece = move.getPiecePromotedTo();
-			value = GameUtils.getSan(startSquare) + GameUtils.getSan(endSquare)
-					+ "=" + GameConstants.PIECE_TO_SAN.charAt(promotedPiece);
-        } else {
+		endSquare = move.getTo();
+		if (move.isDrop()) {
+			value = GameConstants.COLOR_PIECE_TO_CHAR[move.getColor()]
+					.charAt(move.getPiece())
+					+ "@" + GameUtils.getSan(endSquare);
+		} else if (move.isPromotion()) {
+			promotedPiece = move.getPiecePromotedTo()
+					& GameConstants.NOT_PROMOTED_MASK;
+			value = GameUtils.getSan(startSquare)
+					+ GameUtils.getSan(endSquare)
+					+ Character.toLowerCase(GameConstants.PIECE_TO_SAN
+							.charAt(promotedPiece));
+		} else {
 			value = GameUtils.getSan(startSquare) + GameUtils.getSan(endSquare);
 		}
 	}
 
+	/**
+	 * Parses a move in UCI notation. Drops written as piece@square get the
+	 * drop square of the piece as their start square, so they can be made
+	 * like any other move. An upper case piece is white, a lower case one
+	 * black.
+	 */
 	public UCIMove(String uciString) {
 		value = uciString;
+		if (uciString.length() > 3 && uciString.charAt(1) == '@') {
+			char pieceChar = uciString.charAt(0);
+			int piece = GameConstants.PIECE_TO_SAN.indexOf(Character
+					.toUpperCase(pieceChar));
+			startSquare = GameUtils.getDropSquareFromColoredPiece(GameUtils
+					.getColoredPiece(piece,
+							Character.isUpperCase(pieceChar) ? GameConstants.WHITE
+									: GameConstants.BLACK));
+			endSquare = GameUtils.getSquare(uciString.substring(2, 4));
+			return;
+		}
 		startSquare = GameUtils.getSquare(uciString.substring(0, 2));
 		endSquare = GameUtils.getSquare(uciString.substring(2, 4));
 		if (uciString.length() > 4) {
@@ -46,10 +74,6 @@ public class UCIMove {
 		}
 	}
 
-	/**
-	 * Returns the end square constant in GameConstants representing the to
-	 * square for the move.
-	 */
 	public int getEndSquare() {
 		return endSquare;
 	}
@@ -74,6 +98,10 @@ public class UCIMove {
 		return value;
 	}
 
+	public boolean isDrop() {
+		return GameUtils.isDropSquare(startSquare);
+	}
+
 	public boolean isPromotion() {
 		return promotedPiece != 0;
 	}
@@ -0,0 +1,133 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Splits an engine's output into lines without decoding it into Strings.
+ * The current line stays in a reusable byte array until the next call to
+ * nextLine, so info lines can be parsed straight from bytes with
+ * UCIInfoLine.parse and only the lines that need one become Strings.
+ * 
+ * UCI output is ASCII. Bytes are widened to chars when a String is needed.
+ */
+public class UCIProtocolReader {
+	protected static final int BUFFER_SIZE = 16 * 1024;
+	protected static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	protected InputStream in;
+	protected byte[] buffer = new byte[BUFFER_SIZE];
+	protected int position;
+	protected int limit;
+
+	protected byte[] line = new byte[1024];
+	protected int lineLength;
+
+	public UCIProtocolReader(InputStream in) {
+		this.in = in;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Returns the array holding the current line. Only the first
+	 * getLineLength() bytes are part of it.
+	 */
+	public byte[] getLineBytes() {
+		return line;
+	}
+
+	public int getLineLength() {
+		return lineLength;
+	}
+
+	/**
+	 * Returns the current line as a String.
+	 */
+	public String getLine() {
+		return new String(line, 0, lineLength, ASCII);
+	}
+
+	/**
+	 * Returns true if the current line starts with prefix.
+	 */
+	public boolean lineStartsWith(String prefix) {
+		if (prefix.length() > lineLength) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (line[i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next line, without its terminator, into the line buffer.
+	 * Blocks until a full line is available.
+	 * 
+	 * @return false if the stream ended before another line.
+	 */
+	public boolean nextLine() throws IOException {
+		lineLength = 0;
+		while (true) {
+			if (position == limit) {
+				int read = in.read(buffer, 0, buffer.length);
+				if (read == -1) {
+					return lineLength > 0;
+				}
+				position = 0;
+				limit = read;
+			}
+
+			int start = position;
+			while (position < limit && buffer[position] != '\n') {
+				position++;
+			}
+			append(start, position);
+			if (position < limit) {
+				position++;
+				if (lineLength > 0 && line[lineLength - 1] == '\r') {
+					lineLength--;
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next line as a String, or null at the end of the stream.
+	 */
+	public String readLine() throws IOException {
+		return nextLine() ? getLine() : null;
+	}
+
+	protected void append(int start, int end) {
+		int length = end - start;
+		if (lineLength + length > line.length) {
+			byte[] newLine = new byte[Math.max(line.length * 2, lineLength
+					+ length)];
+			System.arraycopy(line, 0, newLine, 0, lineLength);
+			line = newLine;
+		}
+		System.arraycopy(buffer, start, line, lineLength, length);
+		lineLength += length;
+	}
+}
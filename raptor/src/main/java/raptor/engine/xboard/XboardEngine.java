@@ -13,26 +13,52 @@
  */
 package raptor.engine.xboard;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.Move;
 import raptor.chess.Variant;
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.UCIInfoListener;
+import raptor.engine.uci.UCIMove;
+import raptor.engine.uci.UCIProtocolReader;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.NodesPerSecondInfo;
+import raptor.engine.uci.info.NodesSearchedInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.engine.uci.info.SelectiveSearchDepthInfo;
+import raptor.engine.uci.info.TableBaseHitsInfo;
+import raptor.engine.uci.info.TimeInfo;
 import raptor.service.ThreadService;
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
 
+/**
+ * An xboard/CECP engine used for analysis. Output is read by one reader
+ * thread per connection with the same byte based UCIProtocolReader UCI
+ * engines use. Thinking output is turned into the UCIInfo arrays a UCI engine
+ * delivers, with the principal variation converted from the engine's SAN or
+ * coordinate moves to UCIMoves, so the analysis widgets and the evaluation
+ * cache treat both protocols alike.
+ */
 public class XboardEngine {
 	private static final RaptorLogger LOG = RaptorLogger
 			.getLog(XboardEngine.class);
 	protected static final long CONNECTION_TIMEOUT = 5000;
 
-	protected BufferedReader in;
+	/**
+	 * xboard mate scores are 100000 + N for mate in N moves.
+	 */
+	protected static final int MATE_SCORE = 100000;
+
+	protected UCIProtocolReader in;
 	protected PrintWriter out;
 	protected Process process;
 	protected String processPath;
@@ -40,13 +66,20 @@ public class XboardEngine {
 	protected boolean isDefault;
 
 	protected boolean supportsSetboard;
-	private Runnable readerRunnable;
 	protected Object stopSynch = new Object();
-	protected boolean cancelGo;
 	private boolean isUsingThreadService = true;
 	protected List<Variant> supportedVariants = new ArrayList<Variant>();
-	private boolean processingGo;
+	private volatile boolean processingGo;
 	private boolean colorCommand;
+	protected volatile UCIInfoListener analysisListener;
+	protected volatile String lastSetFen;
+	protected volatile Variant variant = Variant.classic;
+
+	/**
+	 * Used by the reader thread only. Positioned at pvGameFen between lines.
+	 */
+	protected Game pvGame;
+	protected String pvGameFen;
 
 	/**
 	 * Connects to the engine using specified processPath. Also sets the engine
@@ -61,8 +94,7 @@ public class XboardEngine {
 			// a bit dirty, but that the way it is
 			process = new ProcessBuilder(processPath).directory(
 					new File(new File(processPath).getParent())).start();
-			in = new BufferedReader(new InputStreamReader(process
-					.getInputStream()), 10000);
+			in = new UCIProtocolReader(process.getInputStream());
 			out = new PrintWriter(process.getOutputStream());	
 
 			send("xboard");
@@ -96,6 +128,7 @@ public class XboardEngine {
 						+ "\" initialized in "
 						+ (System.currentTimeMillis() - startTime));
 			}
+			startReader();
 
 		} catch (Throwable t) {
 			LOG.error("Error connecting to Xboard Engine " + this, t);
@@ -106,35 +139,12 @@ public class XboardEngine {
 		return true;
 	}
 
-	public void analyze(final XboardInfoListener listener) {
-		
-		if (readerRunnable == null) {
-			readerRunnable = new Runnable() {
-				public void run() {
-					try {
-						String line = in.readLine();
-						while (line != null) {							
-							if (line.length() > 1
-									&& Character.isDigit(line.trim().charAt(0))) {
-								parseInfoLine(line, listener);
-							}
-
-							line = in.readLine();
-						}
-						readerRunnable = null;
-					}  
-					catch (Throwable t) {
-						LOG.error("Error occured executng go ", t);
-					}
-				}
-			};
-			if (isUsingThreadService) {
-				ThreadService.getInstance().run(readerRunnable);
-			} else {
-				new Thread(readerRunnable).start();
-			}
-		}
-
+	/**
+	 * Starts analyzing the position last set. Infos are sent to listener from
+	 * the reader thread until stop is invoked.
+	 */
+	public void analyze(UCIInfoListener listener) {
+		analysisListener = listener;
 		if (!processingGo) {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Entering analyze");
@@ -144,40 +154,247 @@ public class XboardEngine {
 			processingGo = true;
 		}
 	}
-	
-	protected void parseInfoLine(String info, XboardInfoListener listener) {
+
+	/**
+	 * Returns the fen of the position last set.
+	 */
+	public String getLastSetFen() {
+		return lastSetFen;
+	}
+
+	/**
+	 * xboard engines report scores from the side to move's point of view.
+	 */
+	public boolean isMultiplyBlackScoreByMinus1() {
+		return true;
+	}
+
+	/**
+	 * Converts a line of thinking output, "ply score time nodes pv" with
+	 * optional "seldepth nps tbhits" fields before a tab, to infos. Returns
+	 * null if the line is not thinking output or its principal variation is
+	 * not legal in the position last set, which means it is left over from a
+	 * previous position.
+	 */
+	protected UCIInfo[] parseInfoLine(String info) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Entering parseInfoLine(" + info + ",...)");
 		}
 
-		String ply = null, score = null, time = null, nodes = null;
-		StringBuffer pv = new StringBuffer();
-		List<String> infos = new ArrayList<String>(10);
+		String fields = info.trim();
+		String pv = null;
+		int tabIndex = fields.indexOf('\t');
+		if (tabIndex != -1) {
+			pv = fields.substring(tabIndex + 1);
+			fields = fields.substring(0, tabIndex);
+		}
 
-		RaptorStringTokenizer tok = new RaptorStringTokenizer(info, " ", true);
+		RaptorStringTokenizer tok = new RaptorStringTokenizer(fields, " ",
+				true);
+		long[] values = new long[7];
+		int valueCount = 0;
+		while (tok.hasMoreTokens() && valueCount < values.length
+				&& (pv != null || valueCount < 4)) {
+			try {
+				values[valueCount] = Long.parseLong(tok.nextToken());
+				valueCount++;
+			} catch (NumberFormatException nfe) {
+				return null;
+			}
+		}
+		if (valueCount < 4) {
+			return null;
+		}
+		if (pv == null) {
+			StringBuilder builder = new StringBuilder(100);
+			while (tok.hasMoreTokens()) {
+				builder.append(tok.nextToken()).append(' ');
+			}
+			pv = builder.toString();
+		}
 
-		while (tok.hasMoreTokens()) {
-			infos.add(tok.nextToken());
+		List<UCIInfo> result = new ArrayList<UCIInfo>(8);
+		DepthInfo depth = new DepthInfo();
+		depth.setSearchDepthPlies(toInt(values[0]));
+		result.add(depth);
+
+		ScoreInfo score = new ScoreInfo();
+		long value = values[1];
+		if (Math.abs(value) >= MATE_SCORE) {
+			int moves = Math.max(1, toInt(Math.abs(value) - MATE_SCORE));
+			score.setMateInMoves(value > 0 ? moves : -moves);
+		} else {
+			score.setValueInCentipawns(toInt(value));
+		}
+		result.add(score);
+
+		// Time is in centiseconds.
+		TimeInfo time = new TimeInfo();
+		time.setTimeMillis(toInt(values[2] * 10));
+		result.add(time);
+
+		NodesSearchedInfo nodes = new NodesSearchedInfo();
+		nodes.setNodesSearched(toInt(values[3]));
+		result.add(nodes);
+
+		NodesPerSecondInfo nps = new NodesPerSecondInfo();
+		if (valueCount > 5) {
+			nps.setNodesPerSecond(toInt(values[5]));
+			result.add(nps);
+		} else if (values[2] > 0) {
+			nps.setNodesPerSecond(toInt(values[3] * 100 / values[2]));
+			result.add(nps);
+		}
+		if (valueCount > 4) {
+			SelectiveSearchDepthInfo selDepth = new SelectiveSearchDepthInfo();
+			selDepth.setDepthInPlies(toInt(values[4]));
+			result.add(selDepth);
+		}
+		if (valueCount > 6) {
+			TableBaseHitsInfo tbHits = new TableBaseHitsInfo();
+			tbHits.setNumberOfHits(toInt(values[6]));
+			result.add(tbHits);
 		}
 
-		ply = infos.get(0);
-		score = infos.get(1);
-		time = infos.get(2);
-		nodes = infos.get(3).trim();
-		
-		for (int i = 4; i < infos.size(); i++) {
-            pv.append(infos.get(i)).append(" ");
+		if (StringUtils.isNotBlank(pv)) {
+			UCIMove[] moves = parsePv(pv);
+			if (moves == null) {
+				return null;
+			}
+			BestLineFoundInfo bestLine = new BestLineFoundInfo();
+			bestLine.setMoves(moves);
+			result.add(bestLine);
 		}
 
 		if (LOG.isDebugEnabled()) {
-			LOG.debug("Parsed ply=\"" + ply + "\" score=\"" + score
-					+ "\" time=\"" + time + "\" nodes=\"" + nodes + "\" pv=\""
-					+ pv + "\"");
+			LOG.debug("Parsed " + result);
 		}
+		return result.toArray(new UCIInfo[result.size()]);
+	}
 
-		listener.engineSentInfo(ply, score, time, nodes, pv.toString());
+	/**
+	 * Converts a principal variation in SAN or coordinate notation to
+	 * UCIMoves by playing it from the position last set. Move numbers,
+	 * annotations and comments are skipped and the line ends at the first
+	 * move that can not be made. Returns null if not even the first move can
+	 * be made.
+	 */
+	protected UCIMove[] parsePv(String pv) {
+		String fen = lastSetFen;
+		if (fen == null) {
+			return null;
+		}
+		if (pvGame == null || !fen.equals(pvGameFen)) {
+			pvGame = GameFactory.createFromFen(fen, variant);
+			pvGame.clearState(Game.UPDATING_SAN_STATE);
+			pvGame.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+			pvGameFen = fen;
+		}
+
+		List<UCIMove> result = new ArrayList<UCIMove>(20);
+		RaptorStringTokenizer tok = new RaptorStringTokenizer(pv, " ", true);
+		try {
+			while (tok.hasMoreTokens()) {
+				String word = StringUtils.stripEnd(tok.nextToken(), "+#!?");
+				if (word.startsWith("0-0")) {
+					word = word.replace('0', 'O');
+				}
+				if (word.length() == 0 || Character.isDigit(word.charAt(0))
+						|| word.startsWith("<") || word.startsWith("(")
+						|| word.startsWith("{") || word.startsWith("[")) {
+					continue;
+				}
+				Move move = makePvMove(word);
+				if (move == null) {
+					break;
+				}
+				result.add(new UCIMove(move));
+			}
+		} finally {
+			for (int i = 0; i < result.size(); i++) {
+				pvGame.rollback();
+			}
+		}
+		return result.isEmpty() ? null : result.toArray(new UCIMove[result
+				.size()]);
 	}
-	
+
+	/**
+	 * Makes a move sent in a principal variation on pvGame. Returns null if it
+	 * is not a legal move.
+	 */
+	protected Move makePvMove(String word) {
+		try {
+			if (word.length() >= 4 && word.length() <= 5
+					&& Character.isLowerCase(word.charAt(0))
+					&& Character.isDigit(word.charAt(1))
+					&& Character.isLowerCase(word.charAt(2))
+					&& Character.isDigit(word.charAt(3))) {
+				UCIMove coordinate = new UCIMove(word);
+				return coordinate.isPromotion() ? pvGame.makeMove(coordinate
+						.getStartSquare(), coordinate.getEndSquare(),
+						coordinate.getPromotedPiece()) : pvGame.makeMove(
+						coordinate.getStartSquare(), coordinate.getEndSquare());
+			}
+			return pvGame.makeSanMove(word);
+		} catch (IllegalArgumentException iae) {
+			return null;
+		}
+	}
+
+	/**
+	 * Starts the thread which reads the engine's output for as long as it is
+	 * connected and hands thinking output to the analysis listener.
+	 */
+	protected void startReader() {
+		final UCIProtocolReader reader = in;
+		Runnable runnable = new Runnable() {
+			public void run() {
+				try {
+					while (reader.nextLine()) {
+						UCIInfoListener listener = analysisListener;
+						if (!processingGo || listener == null) {
+							continue;
+						}
+						byte[] bytes = reader.getLineBytes();
+						int start = 0;
+						while (start < reader.getLineLength()
+								&& bytes[start] == ' ') {
+							start++;
+						}
+						if (start < reader.getLineLength()
+								&& Character.isDigit((char) bytes[start])) {
+							UCIInfo[] infos = parseInfoLine(reader.getLine());
+							if (infos != null && processingGo) {
+								listener.engineSentInfo(infos);
+							}
+						}
+					}
+				} catch (Throwable t) {
+					if (isConnected()) {
+						LOG.error("Error reading from " + XboardEngine.this,
+								t);
+					}
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "XboardEngine reader " + engineName;
+			}
+		};
+		if (isUsingThreadService) {
+			ThreadService.getInstance().run(runnable);
+		} else {
+			new Thread(runnable).start();
+		}
+	}
+
+	protected int toInt(long value) {
+		return value > Integer.MAX_VALUE ? Integer.MAX_VALUE
+				: value < Integer.MIN_VALUE ? Integer.MIN_VALUE : (int) value;
+	}
+
 	public void setPosition(String fen, boolean isWhite) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Entering setPosition(" + fen + ",...)");
@@ -189,6 +406,7 @@ public class XboardEngine {
 		
 		send("force");
 		send("setboard " + fen);
+		lastSetFen = fen;
 		
 		if (colorCommand)
 			send(isWhite ? "white" : "black");
@@ -203,6 +421,7 @@ public class XboardEngine {
 			if (processingGo) {
 				send("exit");
 				processingGo = false;
+				analysisListener = null;
 			}
 		}
 	}
@@ -342,7 +561,8 @@ public class XboardEngine {
 		out = null;
 		process = null;
 		engineName = null;
-		readerRunnable = null;
+		processingGo = false;
+		analysisListener = null;
 	}
 	
 	/**
@@ -398,6 +618,7 @@ public class XboardEngine {
 		}
 		send("new");
 		send("variant " + var.name());
+		variant = var;
 	}
 
 	public boolean isDefault() {
@@ -1,8 +0,0 @@
-package raptor.engine.xboard;
-
-public interface XboardInfoListener {
-
-	public void engineSentInfo(String ply, String score, String time, String nodes,
-			String pv);
-
-}
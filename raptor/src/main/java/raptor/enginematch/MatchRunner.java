@@ -0,0 +1,685 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.enginematch;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.Move;
+import raptor.chess.Result;
+import raptor.chess.pgn.Comment;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnUtils;
+import raptor.engine.uci.UCIBestMove;
+import raptor.engine.uci.UCIEngine;
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.UCIInfoListener;
+import raptor.engine.uci.UCIMove;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.MultiPVInfo;
+import raptor.engine.uci.info.ScoreInfo;
+
+/**
+ * Plays a match between two UCI engines without a GUI or a network
+ * connection, e.g. to compare two settings of the same engine.
+ * 
+ * Games are played concurrently. Each worker thread owns one instance of
+ * each engine and plays one game at a time, so the number of workers should
+ * not exceed the number of cores divided by the threads each engine searches
+ * with. Every opening is played twice with colors reversed. Games are
+ * appended to the PGN file as they finish and the running score, Elo
+ * difference and SPRT state are printed after each one. The match stops
+ * early once the SPRT accepts a hypothesis.
+ * 
+ * Besides checkmate, stalemate, the fifty move rule, threefold repetition and
+ * insufficient material, games can be adjudicated on the engines' scores: a
+ * win once the scores have favored one side by resignScore for resignMoves
+ * moves of each engine, a draw once they have been within drawScore for
+ * drawMoves moves of each engine after move drawMoveNumber.
+ */
+public class MatchRunner {
+	/**
+	 * The time allowed for a game: base time plus an increment per move, or a
+	 * fixed time per move if moveMillis is not zero.
+	 */
+	public static class TimeControl {
+		public long baseMillis;
+		public long incrementMillis;
+		public long moveMillis;
+
+		/**
+		 * Parses "base+increment" in seconds, e.g. "10+0.1", or "base".
+		 */
+		public static TimeControl parse(String timeControl) {
+			TimeControl result = new TimeControl();
+			int plus = timeControl.indexOf('+');
+			if (plus == -1) {
+				result.baseMillis = toMillis(timeControl);
+			} else {
+				result.baseMillis = toMillis(timeControl.substring(0, plus));
+				result.incrementMillis = toMillis(timeControl
+						.substring(plus + 1));
+			}
+			if (result.baseMillis <= 0) {
+				throw new IllegalArgumentException("Invalid time control "
+						+ timeControl);
+			}
+			return result;
+		}
+
+		/**
+		 * Returns a fixed time per move.
+		 */
+		public static TimeControl forMoveTime(String seconds) {
+			TimeControl result = new TimeControl();
+			result.moveMillis = toMillis(seconds);
+			if (result.moveMillis <= 0) {
+				throw new IllegalArgumentException("Invalid move time "
+						+ seconds);
+			}
+			return result;
+		}
+
+		protected static long toMillis(String seconds) {
+			return Math.round(Double.parseDouble(seconds) * 1000.0);
+		}
+
+		protected static String toSeconds(long millis) {
+			return millis % 1000 == 0 ? String.valueOf(millis / 1000)
+					: String.valueOf(millis / 1000.0);
+		}
+
+		public String toGoArguments(long whiteMillis, long blackMillis) {
+			if (moveMillis > 0) {
+				return "movetime " + moveMillis;
+			}
+			return "wtime " + whiteMillis + " btime " + blackMillis
+					+ " winc " + incrementMillis + " binc " + incrementMillis;
+		}
+
+		/**
+		 * Returns the value of the PGN TimeControl header.
+		 */
+		@Override
+		public String toString() {
+			if (moveMillis > 0) {
+				return "1/" + toSeconds(moveMillis);
+			}
+			return toSeconds(baseMillis) + "+" + toSeconds(incrementMillis);
+		}
+	}
+
+	/**
+	 * Waits for bestmove and keeps the score and depth of the last complete
+	 * iteration for adjudication and the move comment.
+	 */
+	protected static class SearchListener implements UCIInfoListener {
+		protected CountDownLatch latch = new CountDownLatch(1);
+		protected volatile UCIBestMove bestMove;
+		protected volatile ScoreInfo score;
+		protected volatile int depth;
+
+		public void engineSentBestMove(UCIBestMove uciBestMove) {
+			bestMove = uciBestMove;
+			latch.countDown();
+		}
+
+		public void engineSentInfo(UCIInfo[] infos) {
+			if (MultiPVInfo.getIndex(infos) != 1) {
+				return;
+			}
+			ScoreInfo newScore = null;
+			int newDepth = 0;
+			for (UCIInfo info : infos) {
+				if (info instanceof ScoreInfo) {
+					newScore = (ScoreInfo) info;
+				} else if (info instanceof DepthInfo) {
+					newDepth = ((DepthInfo) info).getSearchDepthPlies();
+				}
+			}
+			if (newScore != null && !newScore.isLowerBoundScore()
+					&& !newScore.isUpperBoundScore()) {
+				score = newScore;
+				if (newDepth > 0) {
+					depth = newDepth;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Plays games until the match is over. engines[0] is the first engine.
+	 */
+	protected class Worker implements Runnable {
+		protected UCIEngine[] engines = new UCIEngine[2];
+
+		public void run() {
+			try {
+				engines[0] = first.getIsolatedCopy();
+				engines[1] = second.getIsolatedCopy();
+				for (UCIEngine engine : engines) {
+					engine.setUsingThreadService(false);
+				}
+
+				int index;
+				while (!isStopped
+						&& (index = nextGame.getAndIncrement()) < games) {
+					for (UCIEngine engine : engines) {
+						if (!engine.isConnected() && !engine.connect()) {
+							System.err.println("Could not start " + engine
+									+ ", stopping a worker. Game "
+									+ (index + 1) + " was not played.");
+							return;
+						}
+					}
+					Game game = playGame(index, engines);
+					gameFinished(index, game);
+				}
+			} catch (Throwable t) {
+				System.err.println("Error in match worker");
+				t.printStackTrace();
+			} finally {
+				for (UCIEngine engine : engines) {
+					if (engine != null) {
+						engine.quit();
+					}
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "MatchRunner.Worker";
+		}
+	}
+
+	/**
+	 * Usage: MatchRunner -engine cmd=path [name=name] [option.Name=value]...
+	 * -engine ... [-games 100] [-concurrency cores] [-tc 10+0.1 | -st 1]
+	 * [-openings file.epd|file.pgn] [-plies 8] [-pgnout match.pgn] [-resign
+	 * moves score] [-draw moveNumber moves score] [-sprt elo0 elo1 alpha
+	 * beta]
+	 */
+	public static void main(String[] args) throws Exception {
+		List<UCIEngine> engines = new ArrayList<UCIEngine>(2);
+		MatchRunner runner = new MatchRunner();
+		String openingsFile = null;
+		int plies = 8;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-engine")) {
+					UCIEngine engine = new UCIEngine();
+					while (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+						String value = args[++i];
+						int equals = value.indexOf('=');
+						if (value.startsWith("cmd=")) {
+							engine.setProcessPath(value.substring(4));
+						} else if (value.startsWith("name=")) {
+							engine.setUserName(value.substring(5));
+						} else if (value.startsWith("option.") && equals != -1) {
+							engine.setOverrideOption(value.substring(7,
+									equals), value.substring(equals + 1));
+						} else {
+							throw new IllegalArgumentException(value);
+						}
+					}
+					if (engine.getProcessPath() == null) {
+						throw new IllegalArgumentException(
+								"-engine needs cmd=path");
+					}
+					engines.add(engine);
+				} else if (arg.equals("-games")) {
+					runner.setGames(Integer.parseInt(args[++i]));
+				} else if (arg.equals("-concurrency")) {
+					runner.setConcurrency(Integer.parseInt(args[++i]));
+				} else if (arg.equals("-tc")) {
+					runner.setTimeControl(TimeControl.parse(args[++i]));
+				} else if (arg.equals("-st")) {
+					runner.setTimeControl(TimeControl.forMoveTime(args[++i]));
+				} else if (arg.equals("-openings")) {
+					openingsFile = args[++i];
+				} else if (arg.equals("-plies")) {
+					plies = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-pgnout")) {
+					runner.setPgnFile(args[++i]);
+				} else if (arg.equals("-resign")) {
+					runner.setResignAdjudication(Integer.parseInt(args[++i]),
+							Integer.parseInt(args[++i]));
+				} else if (arg.equals("-draw")) {
+					runner.setDrawAdjudication(Integer.parseInt(args[++i]),
+							Integer.parseInt(args[++i]), Integer
+									.parseInt(args[++i]));
+				} else if (arg.equals("-sprt")) {
+					runner.getStatistics().setSprt(
+							Double.parseDouble(args[++i]),
+							Double.parseDouble(args[++i]),
+							Double.parseDouble(args[++i]),
+							Double.parseDouble(args[++i]));
+				} else {
+					throw new IllegalArgumentException(arg);
+				}
+			}
+			if (engines.size() != 2) {
+				throw new IllegalArgumentException("Two engines are required");
+			}
+		} catch (RuntimeException re) {
+			System.err.println("Invalid arguments: " + re.getMessage());
+			System.err
+					.println("Usage: MatchRunner -engine cmd=path [name=name] [option.Name=value]... -engine ... "
+							+ "[-games 100] [-concurrency cores] [-tc 10+0.1 | -st 1] [-openings file.epd|file.pgn] "
+							+ "[-plies 8] [-pgnout match.pgn] [-resign moves score] [-draw moveNumber moves score] "
+							+ "[-sprt elo0 elo1 alpha beta]");
+			return;
+		}
+
+		runner.setEngines(engines.get(0), engines.get(1));
+		if (openingsFile != null) {
+			runner.setOpenings(OpeningSuite.load(openingsFile, plies));
+		}
+		runner.run();
+	}
+
+	/**
+	 * A mate score is treated as this many centipawns for adjudication.
+	 */
+	public static final int MATE_SCORE = 100000;
+
+	/**
+	 * How far past its clock an engine may go before it loses on time. Covers
+	 * the latency of the pipes and the engine's own overhead.
+	 */
+	public static final long TIME_MARGIN_MILLIS = 100L;
+
+	/**
+	 * How long past a fixed move time an engine may take.
+	 */
+	public static final long MOVE_TIME_MARGIN_MILLIS = 1000L;
+
+	protected static final long CRASH_POLL_MILLIS = 250L;
+
+	protected UCIEngine first;
+	protected UCIEngine second;
+	protected int games = 100;
+	protected int concurrency = Runtime.getRuntime().availableProcessors();
+	protected TimeControl timeControl = TimeControl.parse("10+0.1");
+	protected OpeningSuite openings = OpeningSuite.createStartingPosition();
+	protected String pgnFile = "match.pgn";
+	protected int resignMoves;
+	protected int resignScore;
+	protected int drawMoveNumber;
+	protected int drawMoves;
+	protected int drawScore;
+	protected MatchStatistics statistics = new MatchStatistics();
+
+	protected AtomicInteger nextGame = new AtomicInteger();
+	protected volatile boolean isStopped;
+	protected Writer pgnWriter;
+	protected String date;
+
+	/**
+	 * Plays the match and blocks until it is over.
+	 */
+	public void run() throws Exception {
+		if (first == null || second == null) {
+			throw new IllegalStateException("Engines are not set.");
+		}
+		date = PgnUtils.longToPgnDate(System.currentTimeMillis());
+		nextGame.set(0);
+		isStopped = false;
+
+		pgnWriter = new BufferedWriter(new FileWriter(pgnFile, true));
+		try {
+			System.err.println(new Date() + " Starting " + games + " games "
+					+ getName(first) + " vs " + getName(second) + " at "
+					+ timeControl + " with " + openings.size()
+					+ " openings on " + concurrency + " workers.");
+			List<Thread> workers = new ArrayList<Thread>(concurrency);
+			for (int i = 0; i < concurrency; i++) {
+				Thread worker = new Thread(new Worker(), "MatchRunner-" + i);
+				workers.add(worker);
+				worker.start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			System.err.println(new Date() + " Finished. " + statistics);
+		} finally {
+			pgnWriter.close();
+		}
+	}
+
+	/**
+	 * Stops the match once the games being played are over.
+	 */
+	public void stop() {
+		isStopped = true;
+	}
+
+	public MatchStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void setConcurrency(int concurrency) {
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	/**
+	 * Sets the engines. They are not connected, each worker connects its own
+	 * copies.
+	 */
+	public void setEngines(UCIEngine first, UCIEngine second) {
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * Adjudicates a draw once the score has been within score centipawns of
+	 * zero for moves moves of each engine, starting at move moveNumber. A
+	 * moves of zero disables it.
+	 */
+	public void setDrawAdjudication(int moveNumber, int moves, int score) {
+		drawMoveNumber = moveNumber;
+		drawMoves = moves;
+		drawScore = score;
+	}
+
+	public void setGames(int games) {
+		this.games = games;
+	}
+
+	public void setOpenings(OpeningSuite openings) {
+		this.openings = openings;
+	}
+
+	public void setPgnFile(String pgnFile) {
+		this.pgnFile = pgnFile;
+	}
+
+	/**
+	 * Adjudicates a win once both engines have scored the position at least
+	 * score centipawns for the same side for moves moves each. A moves of
+	 * zero disables it.
+	 */
+	public void setResignAdjudication(int moves, int score) {
+		resignMoves = moves;
+		resignScore = score;
+	}
+
+	public void setTimeControl(TimeControl timeControl) {
+		this.timeControl = timeControl;
+	}
+
+	/**
+	 * Ends a game with a result and a description of why.
+	 */
+	protected void endGame(Game game, Result result, String description) {
+		game.setHeader(PgnHeader.Result, result.getDescription());
+		game.setHeader(PgnHeader.ResultDescription, description);
+	}
+
+	/**
+	 * Records a finished game, appends it to the PGN file and stops the match
+	 * if the SPRT is decided.
+	 */
+	protected synchronized void gameFinished(int index, Game game)
+			throws IOException {
+		Result result = game.getResult();
+		boolean isFirstWhite = index % 2 == 0;
+		double score = 0.5;
+		if (result == Result.WHITE_WON) {
+			score = isFirstWhite ? 1.0 : 0.0;
+		} else if (result == Result.BLACK_WON) {
+			score = isFirstWhite ? 0.0 : 1.0;
+		}
+		statistics.addResult(score);
+
+		pgnWriter.write(game.toPgn());
+		pgnWriter.write("\n\n");
+		pgnWriter.flush();
+
+		System.err.println(new Date() + " Game " + (index + 1) + " "
+				+ game.getHeader(PgnHeader.White) + " vs "
+				+ game.getHeader(PgnHeader.Black) + ": "
+				+ result.getDescription() + " {"
+				+ game.getHeader(PgnHeader.ResultDescription) + "}");
+		System.err.println(statistics);
+
+		int sprtResult = statistics.getSprtResult();
+		if (sprtResult != MatchStatistics.SPRT_CONTINUE && !isStopped) {
+			System.err.println("SPRT accepted "
+					+ (sprtResult == MatchStatistics.SPRT_ACCEPT_H1 ? "H1"
+							: "H0") + ". Stopping the match.");
+			stop();
+		}
+	}
+
+	protected String getName(UCIEngine engine) {
+		if (engine.getUserName() != null) {
+			return engine.getUserName();
+		}
+		return engine.getEngineName() != null ? engine.getEngineName()
+				: engine.getProcessPath();
+	}
+
+	/**
+	 * Returns a score in centipawns from white's point of view.
+	 */
+	protected int getWhiteScore(ScoreInfo score, boolean isWhitesMove) {
+		int result = score.getMateInMoves() != 0 ? (score.getMateInMoves() > 0 ? MATE_SCORE
+				: -MATE_SCORE)
+				: score.getValueInCentipawns();
+		return isWhitesMove ? result : -result;
+	}
+
+	/**
+	 * Returns true if neither side has pawns, rooks or queens and neither has
+	 * more than one minor piece.
+	 */
+	protected boolean isInsufficientMaterial(Game game) {
+		for (int color = GameConstants.WHITE; color <= GameConstants.BLACK; color++) {
+			if (game.getPieceCount(color, GameConstants.PAWN) > 0
+					|| game.getPieceCount(color, GameConstants.ROOK) > 0
+					|| game.getPieceCount(color, GameConstants.QUEEN) > 0
+					|| game.getPieceCount(color, GameConstants.BISHOP)
+							+ game.getPieceCount(color, GameConstants.KNIGHT) > 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Plays one game. Even games are played with the first engine as white,
+	 * odd games repeat the opening of the previous game with colors reversed.
+	 */
+	protected Game playGame(int index, UCIEngine[] engines) {
+		int opening = (index / 2) % openings.size();
+		boolean isFirstWhite = index % 2 == 0;
+		UCIEngine white = engines[isFirstWhite ? 0 : 1];
+		UCIEngine black = engines[isFirstWhite ? 1 : 0];
+		String startFen = openings.getFen(opening);
+
+		Game game = openings.createGame(opening);
+		game.setHeader(PgnHeader.Event, "Engine match");
+		game.setHeader(PgnHeader.Site, "?");
+		game.setHeader(PgnHeader.Date, date);
+		game.setHeader(PgnHeader.Round, String.valueOf(index + 1));
+		game.setHeader(PgnHeader.White, getName(white));
+		game.setHeader(PgnHeader.Black, getName(black));
+		game.setHeader(PgnHeader.TimeControl, timeControl.toString());
+		if (!startFen.equals(GameConstants.STARTING_POSITION_FEN)) {
+			game.setHeader(PgnHeader.FEN, startFen);
+		}
+
+		List<UCIMove> moves = new ArrayList<UCIMove>(200);
+		for (int i = 0; i < game.getMoveList().getSize(); i++) {
+			moves.add(new UCIMove(game.getMoveList().get(i)));
+		}
+		white.newGame();
+		white.isReady();
+		black.newGame();
+		black.isReady();
+
+		long whiteMillis = timeControl.baseMillis;
+		long blackMillis = timeControl.baseMillis;
+		int resignPlies = 0;
+		int resignSide = 0;
+		int drawPlies = 0;
+
+		while (true) {
+			if (game.isCheckmate()) {
+				endGame(game, game.isWhitesMove() ? Result.BLACK_WON
+						: Result.WHITE_WON, game.isWhitesMove() ? "Black mates"
+						: "White mates");
+				break;
+			} else if (game.isStalemate()) {
+				endGame(game, Result.DRAW, "Draw by stalemate");
+				break;
+			} else if (game.getFiftyMoveCount() >= 100) {
+				endGame(game, Result.DRAW, "Draw by fifty move rule");
+				break;
+			} else if (game.getRepCount() >= 3) {
+				endGame(game, Result.DRAW, "Draw by 3-fold repetition");
+				break;
+			} else if (isInsufficientMaterial(game)) {
+				endGame(game, Result.DRAW, "Draw by insufficient material");
+				break;
+			}
+
+			boolean isWhitesMove = game.isWhitesMove();
+			String side = isWhitesMove ? "White" : "Black";
+			Result loss = isWhitesMove ? Result.BLACK_WON : Result.WHITE_WON;
+			UCIEngine engine = isWhitesMove ? white : black;
+			long clock = isWhitesMove ? whiteMillis : blackMillis;
+
+			SearchListener listener = new SearchListener();
+			engine.setPosition(startFen, moves.toArray(new UCIMove[moves
+					.size()]));
+			long startTime = System.nanoTime();
+			engine.go(timeControl.toGoArguments(whiteMillis, blackMillis),
+					listener);
+			long timeout = timeControl.moveMillis > 0 ? timeControl.moveMillis
+					+ MOVE_TIME_MARGIN_MILLIS
+					: clock + TIME_MARGIN_MILLIS;
+			boolean isAnswered = false;
+			try {
+				// Wait in slices so a crashed engine loses straight away
+				// instead of when its clock runs out.
+				long deadline = startTime / 1000000L + timeout;
+				long remaining = timeout;
+				while (!isAnswered && remaining > 0 && engine.isConnected()) {
+					isAnswered = listener.latch.await(Math.min(remaining,
+							CRASH_POLL_MILLIS), TimeUnit.MILLISECONDS);
+					remaining = deadline - System.nanoTime() / 1000000L;
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			long elapsed = (System.nanoTime() - startTime) / 1000000L;
+
+			if (!isAnswered && listener.bestMove == null) {
+				if (!engine.isConnected()) {
+					endGame(game, loss, side + " disconnects");
+				} else {
+					engine.stop();
+					endGame(game, loss, side + " loses on time");
+				}
+				break;
+			}
+			if (timeControl.moveMillis == 0) {
+				clock += timeControl.incrementMillis - elapsed;
+				if (isWhitesMove) {
+					whiteMillis = clock;
+				} else {
+					blackMillis = clock;
+				}
+			}
+
+			UCIMove bestMove = listener.bestMove.getBestMove();
+			Move move = null;
+			try {
+				if (bestMove != null) {
+					move = bestMove.isPromotion() ? game.makeMove(bestMove
+							.getStartSquare(), bestMove.getEndSquare(),
+							bestMove.getPromotedPiece()) : game.makeMove(
+							bestMove.getStartSquare(), bestMove.getEndSquare());
+				}
+			} catch (Throwable t) {
+				move = null;
+			}
+			if (move == null) {
+				endGame(game, loss, side + " makes an illegal move: "
+						+ bestMove);
+				break;
+			}
+			moves.add(bestMove);
+
+			ScoreInfo score = listener.score;
+			if (score == null) {
+				move.addAnnotation(new Comment(TimeControl.toSeconds(elapsed)
+						+ "s"));
+				resignPlies = drawPlies = 0;
+				continue;
+			}
+			int whiteScore = getWhiteScore(score, isWhitesMove);
+			move.addAnnotation(new Comment(String.format("%+.2f/%d %ss",
+					whiteScore / 100.0, listener.depth, TimeControl
+							.toSeconds(elapsed))));
+
+			if (resignMoves > 0 && Math.abs(whiteScore) >= resignScore) {
+				int winningSide = whiteScore > 0 ? 1 : -1;
+				resignPlies = winningSide == resignSide ? resignPlies + 1 : 1;
+				resignSide = winningSide;
+				if (resignPlies >= 2 * resignMoves) {
+					endGame(game, resignSide > 0 ? Result.WHITE_WON
+							: Result.BLACK_WON, (resignSide > 0 ? "White"
+							: "Black")
+							+ " wins by adjudication");
+					break;
+				}
+			} else {
+				resignPlies = 0;
+			}
+
+			if (drawMoves > 0
+					&& game.getHalfMoveCount() >= 2 * drawMoveNumber
+					&& Math.abs(whiteScore) <= drawScore) {
+				if (++drawPlies >= 2 * drawMoves) {
+					endGame(game, Result.DRAW, "Draw by adjudication");
+					break;
+				}
+			} else {
+				drawPlies = 0;
+			}
+		}
+
+		if (white.isProcessingGo() || black.isProcessingGo()) {
+			white.stop();
+			black.stop();
+		}
+		return game;
+	}
+}
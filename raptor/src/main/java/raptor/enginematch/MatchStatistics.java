@@ -0,0 +1,243 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.enginematch;
+
+/**
+ * Keeps the score of a match from the first engine's point of view and
+ * derives the Elo difference, its 95% error margin, the likelihood of
+ * superiority and the log likelihood ratio of a sequential probability ratio
+ * test (SPRT).
+ * 
+ * The SPRT uses the normal approximation of the trinomial model: with score
+ * s, per game variance v and n games, the log likelihood ratio of H1 (the
+ * difference is elo1) against H0 (the difference is elo0) is
+ * (s1 - s0) * (2s - s0 - s1) / (2v / n). The test stops once it crosses
+ * ln(beta / (1 - alpha)) or ln((1 - beta) / alpha).
+ * 
+ * This class is thread safe.
+ */
+public class MatchStatistics {
+	/**
+	 * Returned by getSprtResult.
+	 */
+	public static final int SPRT_CONTINUE = 0;
+	public static final int SPRT_ACCEPT_H0 = -1;
+	public static final int SPRT_ACCEPT_H1 = 1;
+
+	protected int wins;
+	protected int draws;
+	protected int losses;
+
+	protected boolean isSprtEnabled;
+	protected double elo0;
+	protected double elo1;
+	protected double lowerBound;
+	protected double upperBound;
+
+	/**
+	 * Converts a score between 0 and 1 to an Elo difference.
+	 */
+	public static double scoreToElo(double score) {
+		if (score <= 0.0) {
+			return Double.NEGATIVE_INFINITY;
+		} else if (score >= 1.0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return -400.0 * Math.log10(1.0 / score - 1.0);
+	}
+
+	/**
+	 * Converts an Elo difference to the expected score.
+	 */
+	public static double eloToScore(double elo) {
+		return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+	}
+
+	/**
+	 * The error function, Abramowitz and Stegun 7.1.26. The absolute error is
+	 * below 1.5e-7 which is plenty for a likelihood of superiority.
+	 */
+	protected static double erf(double x) {
+		double t = 1.0 / (1.0 + 0.3275911 * Math.abs(x));
+		double y = 1.0
+				- ((((1.061405429 * t - 1.453152027) * t + 1.421413741) * t - 0.284496736)
+						* t + 0.254829592) * t * Math.exp(-x * x);
+		return x >= 0 ? y : -y;
+	}
+
+	/**
+	 * Enables the SPRT.
+	 * 
+	 * @param elo0
+	 *            The Elo difference of the null hypothesis.
+	 * @param elo1
+	 *            The Elo difference of the alternative hypothesis.
+	 * @param alpha
+	 *            The probability of accepting H1 when H0 is true.
+	 * @param beta
+	 *            The probability of accepting H0 when H1 is true.
+	 */
+	public synchronized void setSprt(double elo0, double elo1, double alpha,
+			double beta) {
+		if (elo1 <= elo0 || alpha <= 0 || alpha >= 1 || beta <= 0
+				|| beta >= 1) {
+			throw new IllegalArgumentException("Invalid SPRT " + elo0 + " "
+					+ elo1 + " " + alpha + " " + beta);
+		}
+		isSprtEnabled = true;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		lowerBound = Math.log(beta / (1.0 - alpha));
+		upperBound = Math.log((1.0 - beta) / alpha);
+	}
+
+	/**
+	 * Adds the result of a game.
+	 * 
+	 * @param score
+	 *            1 if the first engine won, 0.5 for a draw, 0 if it lost.
+	 */
+	public synchronized void addResult(double score) {
+		if (score > 0.5) {
+			wins++;
+		} else if (score < 0.5) {
+			losses++;
+		} else {
+			draws++;
+		}
+	}
+
+	public synchronized int getWins() {
+		return wins;
+	}
+
+	public synchronized int getDraws() {
+		return draws;
+	}
+
+	public synchronized int getLosses() {
+		return losses;
+	}
+
+	public synchronized int getGames() {
+		return wins + draws + losses;
+	}
+
+	/**
+	 * Returns the first engine's score per game, 0.5 before any game.
+	 */
+	public synchronized double getScore() {
+		int games = getGames();
+		return games == 0 ? 0.5 : (wins + draws / 2.0) / games;
+	}
+
+	public synchronized double getEloDifference() {
+		return scoreToElo(getScore());
+	}
+
+	/**
+	 * Returns half the width of the 95% confidence interval of the Elo
+	 * difference.
+	 */
+	public synchronized double getEloErrorMargin() {
+		int games = getGames();
+		if (games == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double score = getScore();
+		double margin = 1.959964 * Math.sqrt(getVariance() / games);
+		return (scoreToElo(score + margin) - scoreToElo(score - margin)) / 2.0;
+	}
+
+	/**
+	 * Returns the probability that the first engine is stronger. Draws carry
+	 * no information and are ignored.
+	 */
+	public synchronized double getLikelihoodOfSuperiority() {
+		if (wins + losses == 0) {
+			return 0.5;
+		}
+		return 0.5 * (1.0 + erf((wins - losses)
+				/ Math.sqrt(2.0 * (wins + losses))));
+	}
+
+	/**
+	 * Returns the SPRT log likelihood ratio, 0 while it is undefined.
+	 */
+	public synchronized double getSprtLlr() {
+		int games = getGames();
+		double variance = getVariance();
+		if (!isSprtEnabled || games == 0 || variance <= 0) {
+			return 0.0;
+		}
+		double score0 = eloToScore(elo0);
+		double score1 = eloToScore(elo1);
+		return (score1 - score0) * (2.0 * getScore() - score0 - score1)
+				/ (2.0 * variance / games);
+	}
+
+	/**
+	 * Returns SPRT_ACCEPT_H0, SPRT_ACCEPT_H1 or SPRT_CONTINUE. Always
+	 * SPRT_CONTINUE if the SPRT is not enabled.
+	 */
+	public synchronized int getSprtResult() {
+		if (!isSprtEnabled) {
+			return SPRT_CONTINUE;
+		}
+		double llr = getSprtLlr();
+		if (llr >= upperBound) {
+			return SPRT_ACCEPT_H1;
+		} else if (llr <= lowerBound) {
+			return SPRT_ACCEPT_H0;
+		}
+		return SPRT_CONTINUE;
+	}
+
+	public synchronized boolean isSprtEnabled() {
+		return isSprtEnabled;
+	}
+
+	/**
+	 * Returns the variance of a single game's score.
+	 */
+	protected double getVariance() {
+		int games = getGames();
+		if (games == 0) {
+			return 0.0;
+		}
+		double score = getScore();
+		return (wins * (1.0 - score) * (1.0 - score) + draws * (0.5 - score)
+				* (0.5 - score) + losses * score * score)
+				/ games;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder result = new StringBuilder(120);
+		result.append("Score ").append(wins).append(" - ").append(losses)
+				.append(" - ").append(draws).append(" [")
+				.append(String.format("%.3f", getScore())).append("] ")
+				.append(getGames()).append(" games. Elo ")
+				.append(String.format("%.1f +/- %.1f", getEloDifference(),
+						getEloErrorMargin())).append(" LOS ")
+				.append(String.format("%.1f%%",
+						100.0 * getLikelihoodOfSuperiority()));
+		if (isSprtEnabled) {
+			result.append(String.format(
+					" SPRT [%.1f, %.1f] LLR %.2f (%.2f, %.2f)", elo0, elo1,
+					getSprtLlr(), lowerBound, upperBound));
+		}
+		return result.toString();
+	}
+}
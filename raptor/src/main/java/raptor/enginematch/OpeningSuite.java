@@ -0,0 +1,157 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.enginematch;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.GameFactory;
+import raptor.chess.MoveList;
+import raptor.chess.Variant;
+import raptor.chess.pgn.LenientPgnParserListener;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.StreamingPgnParser;
+import raptor.engine.uci.UCIMove;
+
+/**
+ * The start positions of a match. An opening is a FEN and the moves played
+ * from it before the engines take over.
+ * 
+ * Files ending in .epd hold one position per line, only the first four
+ * fields are used. Any other file is read as PGN: each game contributes its
+ * start position and up to maxPlies of its moves. Openings which are not
+ * legal classic positions are skipped.
+ */
+public class OpeningSuite {
+	protected List<String> fens = new ArrayList<String>();
+	protected List<UCIMove[]> moves = new ArrayList<UCIMove[]>();
+
+	/**
+	 * Returns a suite with only the standard starting position.
+	 */
+	public static OpeningSuite createStartingPosition() {
+		OpeningSuite result = new OpeningSuite();
+		result.add(GameConstants.STARTING_POSITION_FEN, new UCIMove[0]);
+		return result;
+	}
+
+	/**
+	 * Loads the openings in an EPD or PGN file.
+	 * 
+	 * @param maxPlies
+	 *            The number of moves of each PGN game which are kept.
+	 */
+	public static OpeningSuite load(String file, final int maxPlies)
+			throws IOException {
+		final OpeningSuite result = new OpeningSuite();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			if (file.toLowerCase().endsWith(".epd")) {
+				String line = null;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = StringUtils.split(line);
+					if (fields.length >= 4) {
+						result.add(fields[0] + " " + fields[1] + " "
+								+ fields[2] + " " + fields[3] + " 0 1",
+								new UCIMove[0]);
+					}
+				}
+			} else {
+				StreamingPgnParser parser = new StreamingPgnParser(reader,
+						Integer.MAX_VALUE);
+				parser.addPgnParserListener(new LenientPgnParserListener() {
+					@Override
+					public void errorEncountered(PgnParserError error) {
+					}
+
+					@Override
+					public void gameParsed(Game game, int lineNumber) {
+						String fen = game.getHeader(PgnHeader.FEN);
+						if (StringUtils.isBlank(fen)) {
+							fen = GameConstants.STARTING_POSITION_FEN;
+						}
+						MoveList moveList = game.getMoveList();
+						UCIMove[] opening = new UCIMove[Math.min(maxPlies,
+								moveList.getSize())];
+						for (int i = 0; i < opening.length; i++) {
+							opening[i] = new UCIMove(moveList.get(i));
+						}
+						result.add(fen, opening);
+					}
+				});
+				parser.parse();
+			}
+		} finally {
+			reader.close();
+		}
+		if (result.size() == 0) {
+			throw new IOException(file + " contains no openings.");
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the classic game at the end of an opening. Moves which can not
+	 * be made end the opening early.
+	 */
+	public Game createGame(int index) {
+		Game result = GameFactory.createFromFen(fens.get(index),
+				Variant.classic);
+		result.addState(Game.UPDATING_SAN_STATE);
+		result.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+		for (UCIMove move : moves.get(index)) {
+			try {
+				if (move.isPromotion()) {
+					result.makeMove(move.getStartSquare(), move
+							.getEndSquare(), move.getPromotedPiece());
+				} else {
+					result.makeMove(move.getStartSquare(), move
+							.getEndSquare());
+				}
+			} catch (Throwable t) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	public String getFen(int index) {
+		return fens.get(index);
+	}
+
+	public int size() {
+		return fens.size();
+	}
+
+	protected void add(String fen, UCIMove[] opening) {
+		try {
+			if (!GameFactory.createFromFen(fen, Variant.classic)
+					.isLegalPosition()) {
+				return;
+			}
+		} catch (Throwable t) {
+			return;
+		}
+		fens.add(fen);
+		moves.add(opening);
+	}
+}
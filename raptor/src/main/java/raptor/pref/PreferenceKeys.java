@@ -26,6 +26,7 @@ public interface PreferenceKeys {
 	public static final String REGEX_TAB_QUADRANT = "regex-quadrantv2.0";
 	public static final String SEEK_TABLE_QUADRANT = "seek-table-quadrantv2.0";
 	public static final String GAMES_TAB_QUADRANT = "games-tab-quadrantv2.0";
+	public static final String GAME_MONITOR_QUADRANT = "game-monitor-quadrantv2.0";
 	public static final String GAME_BOT_QUADRANT = "game-bot-quadrantv2.0";
 	public static final String BUG_WHO_QUADRANT = "bug-who-quadrantv2.0";
 	public static final String BUG_BUTTONS_QUADRANT = "bug-buttons-quadrantv2.0";
@@ -200,6 +201,10 @@ public interface PreferenceKeys {
 	public static final String BOARD_SPEAK_WHEN_OBSERVING = "board-speak-moves-when-observing";
 	public static final String BOARD_SPEAK_RESULTS = "board-speak-results";
 	public static final String BOARD_IGNORE_OBSERVED_GAMES_IF_PLAYING = "board-ignore-observed-games-if-playing";
+	public static final String BOARD_BLUNDER_CHECK_OBSERVED = "board-blunder-check-observed";
+	public static final String BOARD_BLUNDER_CHECK_PLAYED = "board-blunder-check-played";
+	public static final String BOARD_BLUNDER_CHECK_THRESHOLD = "board-blunder-check-threshold";
+	public static final String BOARD_BLUNDER_CHECK_MILLIS = "board-blunder-check-millis";
 	public static final String BOARD_LAST_OPEN_PGN = "board-last-open-pgn";
 	public static final String BOARD_MOVE_LIST_CLASS = "board-move-list-class";
 	public static final String BOARD_SQUARE_BACKGROUND_IMAGE_EFFECT = "board-square-background-image-effect";
@@ -595,6 +595,10 @@ public class RaptorPreferenceStore extends PreferenceStore implements
 		setDefault(BOARD_SPEAK_WHEN_OBSERVING, false);
 		setDefault(BOARD_SPEAK_RESULTS, false);
 		setDefault(BOARD_IGNORE_OBSERVED_GAMES_IF_PLAYING, false);
+		setDefault(BOARD_BLUNDER_CHECK_OBSERVED, false);
+		setDefault(BOARD_BLUNDER_CHECK_PLAYED, false);
+		setDefault(BOARD_BLUNDER_CHECK_THRESHOLD, 150);
+		setDefault(BOARD_BLUNDER_CHECK_MILLIS, 1000);
 		setDefault(BOARD_MOVE_LIST_CLASS,
 				"raptor.swt.chess.movelist.TextAreaMoveList");
 		setDefault(BOARD_IS_USING_SOLID_BACKGROUND_COLORS, false);
@@ -1074,6 +1078,7 @@ public class RaptorPreferenceStore extends PreferenceStore implements
 		setDefault("fics-" + BUG_BUTTONS_QUADRANT, Quadrant.IX);
 		setDefault("fics-" + GAME_CHAT_TAB_QUADRANT, Quadrant.VI);
 		setDefault("fics-" + GAMES_TAB_QUADRANT, Quadrant.VIII);
+		setDefault("fics-" + GAME_MONITOR_QUADRANT, Quadrant.VIII);
 		setDefault("fics-" + GAME_BOT_QUADRANT, Quadrant.VIII);
 
 		setDefault("fics2-" + MAIN_TAB_QUADRANT, Quadrant.VII);
@@ -1086,6 +1091,7 @@ public class RaptorPreferenceStore extends PreferenceStore implements
 		setDefault("fics2-" + BUG_BUTTONS_QUADRANT, Quadrant.IX);
 		setDefault("fics2-" + GAME_CHAT_TAB_QUADRANT, Quadrant.VII);
 		setDefault("fics2-" + GAMES_TAB_QUADRANT, Quadrant.VIII);
+		setDefault("fics2-" + GAME_MONITOR_QUADRANT, Quadrant.VIII);
 		setDefault("fics2-" + GAME_BOT_QUADRANT, Quadrant.VIII);
 
 		setDefault("bics-" + MAIN_TAB_QUADRANT, Quadrant.VI);
@@ -1098,6 +1104,7 @@ public class RaptorPreferenceStore extends PreferenceStore implements
 		setDefault("bics-" + BUG_BUTTONS_QUADRANT, Quadrant.IX);
 		setDefault("bics-" + GAME_CHAT_TAB_QUADRANT, Quadrant.VI);
 		setDefault("bics-" + GAMES_TAB_QUADRANT, Quadrant.VIII);
+		setDefault("bics-" + GAME_MONITOR_QUADRANT, Quadrant.VIII);
 
 		setDefault("bics2-" + MAIN_TAB_QUADRANT, Quadrant.VII);
 		setDefault("bics2-" + CHANNEL_TAB_QUADRANT, Quadrant.VII);
@@ -1109,6 +1116,7 @@ public class RaptorPreferenceStore extends PreferenceStore implements
 		setDefault("bics2-" + BUG_BUTTONS_QUADRANT, Quadrant.IX);
 		setDefault("bics2-" + GAME_CHAT_TAB_QUADRANT, Quadrant.VII);
 		setDefault("bics2-" + GAMES_TAB_QUADRANT, Quadrant.VIII);
+		setDefault("bics2-" + GAME_MONITOR_QUADRANT, Quadrant.VIII);
 
 		LOG.info("Loaded defaults " + PREFERENCE_PROPERTIES_FILE);
 	}
@@ -13,10 +13,13 @@
  */
 package raptor.pref.page;
 
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 
 import raptor.Raptor;
 import raptor.international.L10n;
+import raptor.pref.PreferenceKeys;
 
 public class ChessEnginesPage extends FieldEditorPreferencePage {
 	public ChessEnginesPage() {
@@ -27,5 +30,24 @@ public class ChessEnginesPage extends FieldEditorPreferencePage {
 
 	@Override
 	protected void createFieldEditors() {
+		L10n local = L10n.getInstance();
+		addField(new BooleanFieldEditor(
+				PreferenceKeys.BOARD_BLUNDER_CHECK_OBSERVED, local
+						.getString("blunderCheck1"), getFieldEditorParent()));
+		addField(new BooleanFieldEditor(
+				PreferenceKeys.BOARD_BLUNDER_CHECK_PLAYED, local
+						.getString("blunderCheck2"), getFieldEditorParent()));
+
+		IntegerFieldEditor threshold = new IntegerFieldEditor(
+				PreferenceKeys.BOARD_BLUNDER_CHECK_THRESHOLD, local
+						.getString("blunderCheck3"), getFieldEditorParent());
+		threshold.setValidRange(20, 2000);
+		addField(threshold);
+
+		IntegerFieldEditor millis = new IntegerFieldEditor(
+				PreferenceKeys.BOARD_BLUNDER_CHECK_MILLIS, local
+						.getString("blunderCheck4"), getFieldEditorParent());
+		millis.setValidRange(100, 60000);
+		addField(millis);
 	}
 }
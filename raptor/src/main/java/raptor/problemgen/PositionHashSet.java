@@ -0,0 +1,123 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.problemgen;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A set of zobrist position hashes stored in an open addressed long array. A
+ * run over a large PGN file remembers millions of positions, a HashSet of
+ * Longs would need several times the memory.
+ * 
+ * This class is not thread safe.
+ */
+public class PositionHashSet {
+	protected static final int INITIAL_CAPACITY = 1 << 16;
+
+	protected long[] hashes = new long[INITIAL_CAPACITY];
+	protected int size;
+
+	/**
+	 * 0 marks an empty slot, so the hash 0 is tracked separately.
+	 */
+	protected boolean containsZero;
+
+	/**
+	 * Adds a hash. Returns true if it was not already in the set.
+	 */
+	public boolean add(long hash) {
+		if (hash == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		if ((size + 1) * 2 > hashes.length) {
+			grow();
+		}
+		int mask = hashes.length - 1;
+		for (int i = indexOf(hash, mask);; i = (i + 1) & mask) {
+			if (hashes[i] == hash) {
+				return false;
+			} else if (hashes[i] == 0) {
+				hashes[i] = hash;
+				size++;
+				return true;
+			}
+		}
+	}
+
+	public boolean contains(long hash) {
+		if (hash == 0) {
+			return containsZero;
+		}
+		int mask = hashes.length - 1;
+		for (int i = indexOf(hash, mask);; i = (i + 1) & mask) {
+			if (hashes[i] == hash) {
+				return true;
+			} else if (hashes[i] == 0) {
+				return false;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Reads hashes written by write and adds them to this set.
+	 */
+	public void read(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			add(in.readLong());
+		}
+	}
+
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		if (containsZero) {
+			out.writeLong(0);
+		}
+		for (long hash : hashes) {
+			if (hash != 0) {
+				out.writeLong(hash);
+			}
+		}
+	}
+
+	protected void grow() {
+		long[] oldHashes = hashes;
+		hashes = new long[oldHashes.length * 2];
+		size = containsZero ? 1 : 0;
+		for (long hash : oldHashes) {
+			if (hash != 0) {
+				add(hash);
+			}
+		}
+	}
+
+	/**
+	 * Zobrist hashes are already random, the high bits are folded in so a
+	 * small table does not only use the low ones.
+	 */
+	protected int indexOf(long hash, int mask) {
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
@@ -13,63 +13,72 @@
  */
 package raptor.problemgen;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 
 import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.GameFactory;
 import raptor.chess.Move;
 import raptor.chess.MoveList;
 import raptor.chess.Variant;
 import raptor.chess.pgn.LenientPgnParserListener;
 import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParser;
 import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.PgnUtils;
 import raptor.chess.pgn.StreamingPgnParser;
+import raptor.engine.uci.BoundedAnalysis;
 import raptor.engine.uci.UCIBestMove;
 import raptor.engine.uci.UCIEngine;
+import raptor.engine.uci.UCIEnginePool;
 import raptor.engine.uci.UCIInfo;
 import raptor.engine.uci.UCIInfoListener;
 import raptor.engine.uci.UCIMove;
 import raptor.engine.uci.info.BestLineFoundInfo;
 import raptor.engine.uci.info.ScoreInfo;
 
+/**
+ * Searches a PGN file for tactical problems. The file is streamed through a
+ * pipeline:
+ * <ol>
+ * <li>Games are parsed one at a time.</li>
+ * <li>Each classic game is replayed and cheap static checks pick candidate
+ * positions: a material swing of MIN_SWING_PAWNS within SWING_PLIES which is
+ * not just a trade, or the approach to a checkmate ending the game.</li>
+ * <li>Candidates whose zobrist position hash was not verified before are
+ * searched by an engine from a UCIEnginePool. Games are verified in parallel,
+ * one per engine instance.</li>
+ * <li>Problems are appended to prefix.epd and prefix.pgn as they are found.</li>
+ * </ol>
+ * Progress is written to prefix.checkpoint every CHECKPOINT_MILLIS. Running
+ * again with the same arguments resumes from the last checkpoint: the lines
+ * before the first unfinished game are skipped without parsing them, the
+ * output files are truncated to their checkpointed lengths and the verified
+ * positions are restored.
+ */
 public class ProblemGenerator {
-	protected class CandidateInfoListener implements UCIInfoListener {
-		protected UCIBestMove bestMove;
-		protected ScoreInfo score;
-		protected BestLineFoundInfo bestLineFound;
-		protected boolean hasIssuedStop = false;
-
-		public void engineSentBestMove(UCIBestMove uciBestMove) {
-			bestMove = uciBestMove;
-		}
-
-		public void engineSentInfo(UCIInfo[] infos) {
-			for (UCIInfo info : infos) {
-				if (info instanceof ScoreInfo) {
-					score = (ScoreInfo) info;
-					if (!hasIssuedStop && score.getMateInMoves() != 0
-							|| !score.isLowerBoundScore()
-							&& !score.isUpperBoundScore()) {
-						hasIssuedStop = true;
-						new Thread(new Runnable() {
-							public void run() {
-								engine.stop();
-							}
-						}).start();
-					}
-				} else if (info instanceof BestLineFoundInfo) {
-					bestLineFound = (BestLineFoundInfo) info;
-				}
-			}
-		}
-
-		public boolean isFinished() {
-			return bestMove != null;
-		}
-	}
-
 	protected class ProblemInfoListener implements UCIInfoListener {
 		protected UCIBestMove bestMove;
 		protected ScoreInfo score;
@@ -110,20 +119,89 @@ public class ProblemGenerator {
 		}
 	}
 
+	/**
+	 * Usage: ProblemGenerator enginePath pgnFile outputPrefix [engines]
+	 */
 	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err
+					.println("Usage: ProblemGenerator enginePath pgnFile outputPrefix [engines]");
+			return;
+		}
 		UCIEngine engine = new UCIEngine();
-		engine.setUsingThreadService(false);
-		engine.setProcessPath("/Applications/HIARCS/Hiarcs12.1SPUCI");
-		new ProblemGenerator(engine,
-				"/Users/mindspan/raptor/raptor/projectFiles/test/Alekhine4Pawns.pgn");
+		engine.setProcessPath(args[0]);
+		UCIEnginePool pool = new UCIEnginePool(engine,
+				args.length > 3 ? Integer.parseInt(args[3]) : UCIEnginePool
+						.getDefaultSize());
+		pool.setSupervised(false);
+		if (pool.start() == 0) {
+			System.err.println("Could not start " + args[0]);
+			return;
+		}
+		try {
+			new ProblemGenerator(pool, args[1], args[2]).run();
+		} finally {
+			pool.quit();
+		}
 	}
 
-	protected int numGames;
-	protected UCIEngine engine;
-	protected StreamingPgnParser parser;
-	protected String outputFile = "/Users/mindspan/problemGeneratorOutput.txt";
+	/**
+	 * Positions before this ply are book moves and never candidates.
+	 */
+	public static final int MIN_PLY = 10;
+	public static final int MIN_GAME_PLIES = 20;
+	public static final int SWING_PLIES = 4;
+	public static final int MIN_SWING_PAWNS = 3;
+	public static final int MATE_PLIES = 6;
+	public static final int MAX_CANDIDATES_PER_GAME = 3;
+
+	/**
+	 * The number of positions from a candidate onwards that are searched.
+	 */
+	public static final int VERIFY_PLIES = 4;
+
+	public static final long CHECKPOINT_MILLIS = 60 * 1000L;
+	public static final int PROGRESS_INTERVAL = 1000;
+
+	protected static final long PROBLEM_MILLIS = 5000L;
+	protected static final int CHECKPOINT_MAGIC = 0x50474350;
+	protected static final int CHECKPOINT_VERSION = 1;
+
+	/**
+	 * Indexed by piece, PAWN through QUEEN.
+	 */
+	protected static final int[] PIECE_VALUES = { 0, 1, 3, 3, 5, 9 };
+
+	protected UCIEnginePool pool;
+	protected String pgnFile;
+	protected File epdFile;
+	protected File pgnOutputFile;
+	protected File checkpointFile;
+	protected Writer epdWriter;
+	protected Writer pgnWriter;
+	protected ExecutorService verifiers;
 
-	protected LenientPgnParserListener parserLisetener = new LenientPgnParserListener() {
+	protected int numGames;
+	protected int lineOffset;
+	protected int gameStartLine;
+	protected int lastGameIndex;
+	protected int lastGameStartLine;
+	protected int candidatesVerified;
+	protected int problemsFound;
+	protected long lastCheckpointTime;
+
+	/**
+	 * Guarded by this. Positions searched so far, problems or not.
+	 */
+	protected PositionHashSet verifiedPositions = new PositionHashSet();
+
+	/**
+	 * Guarded by this. Maps the index of each game being verified to the line
+	 * its Event header is on.
+	 */
+	protected TreeMap<Integer, Integer> unfinishedGames = new TreeMap<Integer, Integer>();
+
+	protected LenientPgnParserListener parserListener = new LenientPgnParserListener() {
 
 		@Override
 		public void errorEncountered(PgnParserError error) {
@@ -132,150 +210,480 @@ public class ProblemGenerator {
 
 		@Override
 		public void gameParsed(Game game, int lineNumber) {
-			if (game.getVariant() == Variant.classic) {
-				checkGameForCandidates(game);
-			}
+			dispatch(game, numGames++, gameStartLine);
+		}
+
+		@Override
+		public void onGameStart(PgnParser parser) {
+			super.onGameStart(parser);
+			gameStartLine = lineOffset + parser.getLineNumber();
 		}
 	};
 
-	public ProblemGenerator(UCIEngine engine, String pgnFile) throws Exception {
-		this.engine = engine;
-		parser = new StreamingPgnParser(new FileReader(pgnFile),
-				Integer.MAX_VALUE);
-		parser.addPgnParserListener(parserLisetener);
-		parser.parse();
+	/**
+	 * @param pool
+	 *            A started pool. Each verification acquires one instance.
+	 * @param pgnFile
+	 *            The PGN file to search.
+	 * @param outputPrefix
+	 *            The path of the output files without extension.
+	 */
+	public ProblemGenerator(UCIEnginePool pool, String pgnFile,
+			String outputPrefix) {
+		this.pool = pool;
+		this.pgnFile = pgnFile;
+		epdFile = new File(outputPrefix + ".epd");
+		pgnOutputFile = new File(outputPrefix + ".pgn");
+		checkpointFile = new File(outputPrefix + ".checkpoint");
 	}
 
-	public void checkGameForCandidates(Game game) {
-		System.err.println(new Date() + " " + "Checking game: " + numGames++
-				+ " " + game.getHeader(PgnHeader.Event) + " "
-				+ game.getHeader(PgnHeader.White) + "("
-				+ game.getHeader(PgnHeader.WhiteElo) + ") vs "
-				+ game.getHeader(PgnHeader.Black) + "("
-				+ game.getHeader(PgnHeader.BlackElo) + ")");
-
-		MoveList moveList = game.getMoveList().deepCopy();
-		if (moveList.getSize() > 20) {
-			while (game.getMoveList().getSize() > 10) {
-				game.rollback();
-			}
-			if (!engine.isConnected()) {
-				engine.connect();
-			}
-			engine.newGame();
-			engine.isReady();
+	/**
+	 * Processes the PGN file, resuming from the checkpoint if there is one,
+	 * and blocks until every game has been verified.
+	 */
+	public void run() throws Exception {
+		int resumeLine = loadCheckpoint();
+		if (resumeLine == -1) {
+			System.err.println(pgnFile + " was already processed. Delete "
+					+ checkpointFile + " to process it again.");
+			return;
+		}
+
+		lastGameIndex = numGames;
+		lastGameStartLine = resumeLine;
 
-			while (moveList.getSize() > game.getHalfMoveCount()) {
-				engine.setPosition(game.toFen(), null);
-				if (isCandidate()) {
-					System.err
-							.println("Found candidate. Testing to see if its a real problem.");
-					testForProblem(game, moveList);
+		BufferedReader reader = new BufferedReader(new FileReader(pgnFile));
+		epdWriter = new BufferedWriter(new FileWriter(epdFile, true));
+		pgnWriter = new BufferedWriter(new FileWriter(pgnOutputFile, true));
+		verifiers = Executors.newFixedThreadPool(Math.max(1, pool.getSize()));
+		try {
+			for (lineOffset = 0; lineOffset < resumeLine - 1; lineOffset++) {
+				if (reader.readLine() == null) {
 					break;
-				} else {
-					game.move(moveList.get(game.getHalfMoveCount()));
 				}
 			}
+			if (resumeLine > 1) {
+				System.err.println(new Date() + " Resuming at game "
+						+ numGames + " on line " + resumeLine);
+			}
+			lastCheckpointTime = System.currentTimeMillis();
+
+			StreamingPgnParser parser = new StreamingPgnParser(reader,
+					Integer.MAX_VALUE);
+			parser.addPgnParserListener(parserListener);
+			parser.parse();
+
+			verifiers.shutdown();
+			verifiers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			saveCheckpoint(true);
+			System.err.println(new Date() + " Finished. " + getProgress());
+		} finally {
+			verifiers.shutdownNow();
+			reader.close();
+			epdWriter.close();
+			pgnWriter.close();
 		}
 	}
 
-	public String getLine(Game game, BestLineFoundInfo info) {
-		BestLineFoundInfo bestLineFoundInfo = info;
-		StringBuilder line = new StringBuilder(100);
-		game.addState(Game.UPDATING_SAN_STATE);
-		game.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+	/**
+	 * Runs on the parser thread. Picks the candidates of a game and hands
+	 * them to a verifier, blocking while every engine is busy.
+	 */
+	protected void dispatch(final Game game, final int gameIndex,
+			int startLine) {
+		synchronized (this) {
+			unfinishedGames.put(gameIndex, startLine);
+			lastGameIndex = gameIndex;
+			lastGameStartLine = startLine;
+		}
 
-		boolean isFirstMove = true;
+		final MoveList moveList = game.getMoveList().deepCopy();
+		final List<Integer> candidates = game.getVariant() == Variant.classic ? findCandidates(
+				game, moveList)
+				: new ArrayList<Integer>(0);
 
-		for (UCIMove move : bestLineFoundInfo.getMoves()) {
+		if (candidates.isEmpty()) {
+			gameFinished(gameIndex);
+		} else {
+			final UCIEngine engine;
 			try {
-				Move gameMove = null;
+				engine = pool.acquire();
+			} catch (InterruptedException ie) {
+				throw new RuntimeException(ie);
+			}
+			verifiers.execute(new Runnable() {
+				public void run() {
+					try {
+						verifyCandidates(engine, game, moveList, candidates);
+					} catch (Throwable t) {
+						System.err.println("Error verifying game " + gameIndex
+								+ " with " + engine);
+						t.printStackTrace();
+					} finally {
+						if (engine.checkForCrash()) {
+							engine.restart();
+						}
+						pool.release(engine);
+						gameFinished(gameIndex);
+					}
+				}
+			});
+		}
+
+		if (gameIndex % PROGRESS_INTERVAL == 0) {
+			System.err.println(new Date() + " " + getProgress());
+		}
+		if (System.currentTimeMillis() - lastCheckpointTime > CHECKPOINT_MILLIS) {
+			try {
+				saveCheckpoint(false);
+			} catch (IOException ioe) {
+				System.err.println("Error writing " + checkpointFile);
+				ioe.printStackTrace();
+			}
+			lastCheckpointTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Returns the plies of the positions in a game worth searching, in
+	 * ascending order. Positions already verified are left out. The game is
+	 * left at its final position.
+	 */
+	protected List<Integer> findCandidates(Game game, MoveList moveList) {
+		List<Integer> result = new ArrayList<Integer>(MAX_CANDIDATES_PER_GAME);
+		int plies = moveList.getSize();
+		if (plies <= MIN_GAME_PLIES) {
+			return result;
+		}
+		boolean isCheckmate = game.isCheckmate();
+
+		while (game.getHalfMoveCount() > 0) {
+			game.rollback();
+		}
+		int[] balances = new int[plies + 1];
+		long[] hashes = new long[plies + 1];
+		for (int ply = 0;; ply++) {
+			balances[ply] = getMaterialBalance(game);
+			hashes[ply] = game.getZobristPositionHash();
+			if (ply == plies) {
+				break;
+			}
+			game.move(moveList.get(ply));
+		}
 
+		synchronized (this) {
+			for (int ply = MIN_PLY; ply + SWING_PLIES <= plies
+					&& result.size() < MAX_CANDIDATES_PER_GAME; ply++) {
+				if (isLastingSwing(balances, ply)) {
+					if (!verifiedPositions.contains(hashes[ply])) {
+						result.add(ply);
+					}
+					// The following plies are part of the same tactic.
+					ply += SWING_PLIES;
+				}
+			}
+
+			int matePly = plies - MATE_PLIES;
+			if (isCheckmate && matePly >= MIN_PLY
+					&& result.size() < MAX_CANDIDATES_PER_GAME
+					&& !result.contains(matePly)
+					&& !verifiedPositions.contains(hashes[matePly])) {
+				result.add(matePly);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the material of white minus the material of black in pawns.
+	 */
+	protected int getMaterialBalance(Game game) {
+		int result = 0;
+		for (int piece = GameConstants.PAWN; piece <= GameConstants.QUEEN; piece++) {
+			result += PIECE_VALUES[piece]
+					* (game.getPieceCount(GameConstants.WHITE, piece) - game
+							.getPieceCount(GameConstants.BLACK, piece));
+		}
+		return result;
+	}
+
+	protected String getProgress() {
+		synchronized (this) {
+			return "Games: " + numGames + " Positions verified: "
+					+ candidatesVerified + " Problems: " + problemsFound;
+		}
+	}
+
+	protected double getScoreInPawns(ScoreInfo score, boolean isWhitesMove) {
+		return !isWhitesMove ? -1 * score.getValueInCentipawns() / 100.0
+				: score.getValueInCentipawns() / 100.0;
+	}
+
+	/**
+	 * Returns the game with the solution of a problem played out from the
+	 * problem position. Moves the engine sent which can not be made end the
+	 * solution.
+	 */
+	protected Game getSolution(Game game, ProblemResult problem) {
+		Game result = GameFactory.createFromFen(problem.getFen(),
+				Variant.classic);
+		result.addState(Game.UPDATING_SAN_STATE);
+		result.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+		result.setHeader(PgnHeader.Event, game.getHeader(PgnHeader.Event));
+		result.setHeader(PgnHeader.Site, game.getHeader(PgnHeader.Site));
+		result.setHeader(PgnHeader.Date, game.getHeader(PgnHeader.Date));
+		result.setHeader(PgnHeader.Round, game.getHeader(PgnHeader.Round));
+		result.setHeader(PgnHeader.White, game.getHeader(PgnHeader.White));
+		result.setHeader(PgnHeader.Black, game.getHeader(PgnHeader.Black));
+		result.setHeader(PgnHeader.FEN, problem.getFen());
+
+		for (UCIMove move : problem.getLine()) {
+			try {
 				if (move.isPromotion()) {
-					gameMove = game.makeMove(move.getStartSquare(), move
+					result.makeMove(move.getStartSquare(), move
 							.getEndSquare(), move.getPromotedPiece());
 				} else {
-					gameMove = game.makeMove(move.getStartSquare(), move
+					result.makeMove(move.getStartSquare(), move
 							.getEndSquare());
 				}
-
-				String san = gameMove.getSan();
-				String moveNumber = isFirstMove && !gameMove.isWhitesMove() ? gameMove
-						.getFullMoveCount()
-						+ ") ... "
-						: gameMove.isWhitesMove() ? gameMove.getFullMoveCount()
-								+ ") " : "";
-                line.append(StringUtils.isBlank(line.toString()) ? "" : " ").append(moveNumber).append(san).append(game.isInCheck() ? "+" : "").append(game.isCheckmate() ? "#" : "");
-				isFirstMove = false;
 			} catch (Throwable t) {
-				t.printStackTrace();
-				return null;
+				break;
 			}
 		}
-		return line.toString();
+		return result;
 	}
 
-	protected double getScoreInPawns(ScoreInfo score, boolean isWhitesMove) {
-		return !isWhitesMove ? -1 * score.getValueInCentipawns() / 100.0
-				: score.getValueInCentipawns() / 100.0;
+	/**
+	 * Removes a game from the unfinished games once all of its candidates
+	 * were verified.
+	 */
+	protected synchronized void gameFinished(int gameIndex) {
+		unfinishedGames.remove(gameIndex);
 	}
 
-	protected void handleNewProblem(Game game, BestLineFoundInfo bestLine) {
-		System.err.println("\nFound problem:\n" + game.toFen() + "\n"
-				+ getLine(game, bestLine) + "\n\n");
+	/**
+	 * Returns true if the material balance moves by at least MIN_SWING_PAWNS
+	 * within SWING_PLIES of ply and is not won back on the following ply.
+	 */
+	protected boolean isLastingSwing(int[] balances, int ply) {
+		int swing = balances[ply + SWING_PLIES] - balances[ply];
+		if (Math.abs(swing) < MIN_SWING_PAWNS) {
+			return false;
+		}
+		int next = Math.min(ply + SWING_PLIES + 1, balances.length - 1);
+		return Math.abs(balances[next] - balances[ply]) >= MIN_SWING_PAWNS;
 	}
 
-	protected boolean isCandidate() {
-		boolean result = false;
+	/**
+	 * Reads the checkpoint if there is one and truncates the output files to
+	 * the lengths it recorded. Returns the line to resume parsing on, 1 to
+	 * start from the beginning or -1 if the file was already processed.
+	 */
+	protected int loadCheckpoint() throws IOException {
+		if (!checkpointFile.exists()) {
+			epdFile.delete();
+			pgnOutputFile.delete();
+			return 1;
+		}
 
-		CandidateInfoListener listener = new CandidateInfoListener();
-		engine.go("infinite", listener);
-		while (!listener.isFinished()) {
-			try {
-				Thread.sleep(100);
-			} catch (Throwable t) {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(checkpointFile)));
+		try {
+			if (in.readInt() != CHECKPOINT_MAGIC
+					|| in.readInt() != CHECKPOINT_VERSION) {
+				throw new IOException(checkpointFile
+						+ " is not a problem generator checkpoint.");
+			}
+			String checkpointPgnFile = in.readUTF();
+			if (!new File(checkpointPgnFile).getAbsolutePath().equals(
+					new File(pgnFile).getAbsolutePath())) {
+				throw new IOException(checkpointFile + " belongs to "
+						+ checkpointPgnFile + " not " + pgnFile);
 			}
+			boolean isComplete = in.readBoolean();
+			numGames = in.readInt();
+			int resumeLine = in.readInt();
+			candidatesVerified = in.readInt();
+			problemsFound = in.readInt();
+			truncate(epdFile, in.readLong());
+			truncate(pgnOutputFile, in.readLong());
+			verifiedPositions.read(in);
+			return isComplete ? -1 : resumeLine;
+		} finally {
+			in.close();
 		}
+	}
 
-		if (listener.score.getMateInMoves() > 0
-				|| Math.abs(listener.score.getValueInCentipawns() / 100.0) > 3) {
-			result = true;
+	/**
+	 * Writes the checkpoint. The resume point is the first unfinished game, or
+	 * the last game parsed if none are unfinished; replaying that game costs
+	 * nothing since its positions are already verified. The outputs are
+	 * flushed first so their lengths match the verified positions.
+	 */
+	protected synchronized void saveCheckpoint(boolean isComplete)
+			throws IOException {
+		int resumeGame = lastGameIndex;
+		int resumeLine = lastGameStartLine;
+		if (!unfinishedGames.isEmpty()) {
+			resumeGame = unfinishedGames.firstKey();
+			resumeLine = unfinishedGames.get(resumeGame);
+		}
+		epdWriter.flush();
+		pgnWriter.flush();
+
+		File tempFile = new File(checkpointFile.getAbsolutePath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeUTF(pgnFile);
+			out.writeBoolean(isComplete);
+			out.writeInt(resumeGame);
+			out.writeInt(resumeLine);
+			out.writeInt(candidatesVerified);
+			out.writeInt(problemsFound);
+			out.writeLong(epdFile.length());
+			out.writeLong(pgnOutputFile.length());
+			verifiedPositions.write(out);
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(checkpointFile)) {
+			checkpointFile.delete();
+			if (!tempFile.renameTo(checkpointFile)) {
+				throw new IOException("Could not rename " + tempFile);
+			}
 		}
-		return result;
 	}
 
-	protected void testForProblem(Game game, MoveList moveList) {
-		game.rollback();
-		game.rollback();
-		game.rollback();
-		game.rollback();
-		for (int i = 0; i < 4; i++) {
+	/**
+	 * Moves the game forward or back to a ply of moveList.
+	 */
+	protected void seek(Game game, MoveList moveList, int ply) {
+		while (game.getHalfMoveCount() > ply) {
+			game.rollback();
+		}
+		while (game.getHalfMoveCount() < ply) {
+			game.move(moveList.get(game.getHalfMoveCount()));
+		}
+	}
+
+	/**
+	 * Searches the positions from a candidate onwards and returns the first
+	 * which is a problem, or null if none is. The game is left at the problem
+	 * position. A problem is a forced mate, or a final score of 2 pawns or more
+	 * after the score swung by 2 pawns or more between iterations.
+	 */
+	protected ProblemResult testForProblem(UCIEngine engine, Game game,
+			MoveList moveList) {
+		for (int i = 0; i < VERIFY_PLIES
+				&& game.getHalfMoveCount() < moveList.getSize(); i++) {
 			engine.newGame();
-			engine.setPosition(game.toFen(), null);
 			engine.isReady();
 			ProblemInfoListener listener = new ProblemInfoListener();
 			listener.isWhitesMove = game.isWhitesMove();
-			engine.go("infinite", listener);
-			try {
-				Thread.sleep(5000);
-			} catch (InterruptedException ie) {
+
+			// Score swings show up in the deeper iterations, so only stop
+			// early once the search is well past them.
+			BoundedAnalysis.Budget budget = BoundedAnalysis.Budget
+					.forMillis(PROBLEM_MILLIS);
+			budget.minDepth = 16;
+			BoundedAnalysis.analyze(engine, game.toFen(), budget, listener);
+
+			if (listener.score != null && listener.bestLineFound != null) {
+				double finalScore = getScoreInPawns(listener.score, game
+						.isWhitesMove());
+				if (listener.score.getMateInMoves() != 0
+						|| Math.abs(listener.bestScore - listener.worstScore) >= 2.0
+						&& Math.abs(finalScore) >= 2.0) {
+					return new ProblemResult(game.toFen(), listener.bestLineFound
+							.getMoves(), listener.score);
+				}
 			}
-			engine.stop();
-			while (!listener.isFinished()) {
-				try {
-					Thread.sleep(100);
-				} catch (Throwable t) {
+			game.move(moveList.get(game.getHalfMoveCount()));
+		}
+		return null;
+	}
+
+	protected void truncate(File file, long length) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(length);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Runs on a verifier thread with an acquired engine. Each candidate and
+	 * the problem found from it are recorded as verified, so a position which
+	 * recurs in later games is never searched or written twice.
+	 */
+	protected void verifyCandidates(UCIEngine engine, Game game,
+			MoveList moveList, List<Integer> candidates) throws IOException {
+		if (!engine.isConnected()) {
+			engine.connect();
+		}
+		for (int ply : candidates) {
+			seek(game, moveList, ply);
+			long candidateHash = game.getZobristPositionHash();
+			synchronized (this) {
+				if (verifiedPositions.contains(candidateHash)) {
+					continue;
 				}
 			}
-			double finalScore = getScoreInPawns(listener.score, game
-					.isWhitesMove());
-			if (listener.score.getMateInMoves() != 0
-					|| Math.abs(listener.bestScore - listener.worstScore) >= 2.0
-					&& Math.abs(finalScore) >= 2.0) {
-				handleNewProblem(game, listener.bestLineFound);
-				break;
+
+			ProblemResult problem = testForProblem(engine, game, moveList);
+
+			synchronized (this) {
+				candidatesVerified++;
+				boolean isNew = verifiedPositions.add(candidateHash);
+				if (problem != null) {
+					long problemHash = game.getZobristPositionHash();
+					if (problemHash == candidateHash ? isNew
+							: verifiedPositions.add(problemHash)) {
+						writeProblem(game, problem);
+					}
+				}
 			}
-			game.move(moveList.get(game.getHalfMoveCount()));
 		}
 	}
+
+	/**
+	 * Appends a problem to the EPD and PGN files. Invoked while holding this.
+	 */
+	protected void writeProblem(Game game, ProblemResult problem)
+			throws IOException {
+		Game solution = getSolution(game, problem);
+		StringBuilder line = new StringBuilder(100);
+		boolean isFirstMove = true;
+		for (int i = 0; i < solution.getMoveList().getSize(); i++) {
+			if (!isFirstMove) {
+				line.append(' ');
+			}
+			PgnUtils.getMove(line, solution.getMoveList().get(i), isFirstMove);
+			isFirstMove = false;
+		}
+		if (line.length() == 0) {
+			return;
+		}
+		Move firstMove = solution.getMoveList().get(0);
+
+		String[] fenFields = problem.getFen().split(" ");
+		epdWriter.write(fenFields[0] + " " + fenFields[1] + " " + fenFields[2]
+				+ " " + fenFields[3] + " bm " + firstMove.getSan() + "; pv \""
+				+ line + "\"; id \""
+				+ StringUtils.remove(StringUtils.defaultString(game
+						.getHeader(PgnHeader.White)), '"')
+				+ " - "
+				+ StringUtils.remove(StringUtils.defaultString(game
+						.getHeader(PgnHeader.Black)), '"')
+				+ "\";\n");
+		pgnWriter.write(solution.toPgn());
+		pgnWriter.write("\n\n");
+		problemsFound++;
+		System.err.println(new Date() + " Found problem: " + problem.getFen()
+				+ " " + line);
+	}
 }
@@ -19,7 +19,6 @@ import java.util.regex.Pattern;
 import raptor.Raptor;
 import raptor.chat.ChatType;
 import raptor.util.RaptorLogger;
-import bsh.Interpreter;
 
 /**
  * The chat script class. Currently uses BeanShell to execute scripts.
@@ -44,6 +43,7 @@ public class ChatEventScript implements
 	protected boolean isActive = false;
 	protected boolean isSystemScript = true;
 	protected ScriptConnectorType connectorType = ScriptConnectorType.ICS;
+	protected CompiledScript compiledScript;
 	protected Pattern pattern = null;
 
 	public int compareTo(ChatEventScript arg0) {
@@ -65,21 +65,31 @@ public class ChatEventScript implements
 
 
 	/**
-	 * Executes the script with the specified context.
+	 * Executes the script with the specified context. The script is parsed
+	 * the first time it is executed after it is set.
 	 * 
 	 * @param context
 	 */
 	public void execute(ChatScriptContext context) {
 		try {
-			Interpreter interpeter = new Interpreter();
-			interpeter.set("context", context);
-			interpeter.eval("import raptor.chat.*;\n" + script);
+			getCompiledScript().execute(context);
 		} catch (Throwable t) {
 			Raptor.getInstance().onError("Error executing script " + name,
 					t);
 		}
 	}
 
+	/**
+	 * Returns the parsed script, which also records how long executions
+	 * take.
+	 */
+	public synchronized CompiledScript getCompiledScript() {
+		if (compiledScript == null) {
+			compiledScript = new CompiledScript(name, "import raptor.chat.*;", script);
+		}
+		return compiledScript;
+	}
+
 	public ScriptConnectorType getConnectorType() {
 		return connectorType;
 	}
@@ -128,8 +138,9 @@ public class ChatEventScript implements
 		this.chatType = chatType;
 	}
 
-	public void setScript(String script) {
+	public synchronized void setScript(String script) {
 		this.script = script;
+		compiledScript = null;
 	}
 
 	public void setSystemScript(boolean isSystemScript) {
@@ -0,0 +1,150 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.script;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import raptor.util.RaptorLogger;
+import bsh.EvalError;
+import bsh.Interpreter;
+
+/**
+ * A BeanShell script which is parsed once and can then be executed any number
+ * of times, from any number of threads.
+ * 
+ * The script is wrapped in a method and evaluated in an Interpreter, which
+ * parses it. Executing it sets the context variable and invokes the method,
+ * which evaluates the parsed statements without parsing them again. An
+ * Interpreter is used by one thread at a time, idle ones are pooled.
+ * 
+ * The number, errors and duration of executions are recorded so slow scripts
+ * can be found. An execution slower than SLOW_MILLIS and slower than any
+ * before it is logged as a warning.
+ */
+public class CompiledScript {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(CompiledScript.class);
+
+	public static final long SLOW_MILLIS = 100;
+
+	/**
+	 * The most idle Interpreters kept.
+	 */
+	protected static final int MAX_POOLED = 4;
+
+	protected static final String METHOD_NAME = "raptorScriptBody";
+
+	protected String name;
+	protected String source;
+	protected ConcurrentLinkedQueue<Interpreter> pool = new ConcurrentLinkedQueue<Interpreter>();
+
+	protected long executionCount;
+	protected long errorCount;
+	protected long totalNanos;
+	protected long maxNanos;
+
+	/**
+	 * @param name
+	 *            The script's name, used in messages.
+	 * @param imports
+	 *            Statements evaluated before the script, usually imports.
+	 * @param script
+	 *            The script.
+	 */
+	public CompiledScript(String name, String imports, String script) {
+		this.name = name;
+		source = imports + "\n" + METHOD_NAME + "() {\n" + script + "\n}\n";
+	}
+
+	/**
+	 * Executes the script with the specified context. Errors parsing or
+	 * executing the script are thrown.
+	 */
+	public void execute(Object context) throws EvalError {
+		long startTime = System.nanoTime();
+		boolean isSuccessful = false;
+		Interpreter interpreter = pool.poll();
+		try {
+			if (interpreter == null) {
+				interpreter = new Interpreter();
+				interpreter.eval(source);
+			}
+			interpreter.set("context", context);
+			interpreter.getNameSpace().invokeMethod(METHOD_NAME,
+					new Object[0], interpreter);
+			interpreter.unset("context");
+			isSuccessful = true;
+		} finally {
+			// An Interpreter which threw may be half way through something.
+			if (isSuccessful && pool.size() < MAX_POOLED) {
+				pool.offer(interpreter);
+			}
+			record(System.nanoTime() - startTime, isSuccessful);
+		}
+	}
+
+	public synchronized double getAverageMillis() {
+		return executionCount == 0 ? 0.0 : totalNanos / 1000000.0
+				/ executionCount;
+	}
+
+	public synchronized long getErrorCount() {
+		return errorCount;
+	}
+
+	public synchronized long getExecutionCount() {
+		return executionCount;
+	}
+
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1000000.0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized double getTotalMillis() {
+		return totalNanos / 1000000.0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return name
+				+ " executions="
+				+ executionCount
+				+ " errors="
+				+ errorCount
+				+ String.format(" avg/max/total ms=%.2f/%.2f/%.0f",
+						getAverageMillis(), getMaxMillis(), getTotalMillis());
+	}
+
+	protected void record(long nanos, boolean isSuccessful) {
+		boolean isNewSlowest;
+		synchronized (this) {
+			executionCount++;
+			if (!isSuccessful) {
+				errorCount++;
+			}
+			totalNanos += nanos;
+			isNewSlowest = nanos > maxNanos;
+			if (isNewSlowest) {
+				maxNanos = nanos;
+			}
+		}
+		if (isNewSlowest && nanos / 1000000 >= SLOW_MILLIS) {
+			LOG.warn("Slow script: " + this);
+		}
+	}
+}
@@ -14,7 +14,6 @@
 package raptor.script;
 
 import raptor.Raptor;
-import bsh.Interpreter;
 
 public class ParameterScript implements Comparable<ParameterScript> {
 	public enum Type {
@@ -28,6 +27,7 @@ public class ParameterScript implements Comparable<ParameterScript> {
 	protected boolean isSystemScript = true;
 	protected Type type = Type.ConsoleRightClickScripts;
 	protected ScriptConnectorType connectorType = ScriptConnectorType.ICS;
+	protected CompiledScript compiledScript;
 
 	public int compareTo(ParameterScript arg0) {
 		return name.compareTo(arg0.name);
@@ -47,21 +47,31 @@ public class ParameterScript implements Comparable<ParameterScript> {
 	}
 
 	/**
-	 * Executes the script with the specified context.
+	 * Executes the script with the specified context. The script is parsed
+	 * the first time it is executed after it is set.
 	 * 
 	 * @param context
 	 */
 	public void execute(ParameterScriptContext context) {
 		try {
-			Interpreter interpeter = new Interpreter();
-			interpeter.set("context", context);
-			interpeter.eval(script);
+			getCompiledScript().execute(context);
 		} catch (Throwable t) {
 			Raptor.getInstance().onError("Error executing script " + name,
 					t);
 		}
 	}
 
+	/**
+	 * Returns the parsed script, which also records how long executions
+	 * take.
+	 */
+	public synchronized CompiledScript getCompiledScript() {
+		if (compiledScript == null) {
+			compiledScript = new CompiledScript(name, "", script);
+		}
+		return compiledScript;
+	}
+
 	public ScriptConnectorType getConnectorType() {
 		return connectorType;
 	}
@@ -106,8 +116,9 @@ public class ParameterScript implements Comparable<ParameterScript> {
 		this.name = name;
 	}
 
-	public void setScript(String script) {
+	public synchronized void setScript(String script) {
 		this.script = script;
+		compiledScript = null;
 	}
 
 	public void setSystemScript(boolean isSystemScript) {
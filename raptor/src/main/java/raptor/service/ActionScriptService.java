@@ -35,6 +35,8 @@ import raptor.action.RaptorAction.RaptorActionContainer;
 import raptor.action.RaptorActionFactory;
 import raptor.action.ScriptedAction;
 import raptor.action.SeparatorAction;
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
 import raptor.util.RaptorLogger;
 
 /**
@@ -61,8 +63,8 @@ public class ActionScriptService {
 
 	public Map<String, RaptorAction> nameToActionMap = new HashMap<String, RaptorAction>();
 
-	public List<ActionServiceListener> listeners = Collections
-			.synchronizedList(new ArrayList<ActionServiceListener>(5));
+	public ListenerList<ActionServiceListener> listeners = new ListenerList<ActionServiceListener>(
+			"ActionScriptService");
 
 	private ActionScriptService() {
 		reload();
@@ -219,11 +221,11 @@ public class ActionScriptService {
 	}
 
 	protected void fireActionsChanged() {
-		synchronized (listeners) {
-			for (ActionServiceListener listener : listeners) {
+		listeners.fire(new Notification<ActionServiceListener>() {
+			public void deliver(ActionServiceListener listener) {
 				listener.onActionsChanged();
 			}
-		}
+		});
 	}
 
 	protected void loadActions() {
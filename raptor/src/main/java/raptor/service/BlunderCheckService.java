@@ -0,0 +1,560 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import raptor.Raptor;
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.Move;
+import raptor.chess.Variant;
+import raptor.chess.pgn.Comment;
+import raptor.chess.pgn.Nag;
+import raptor.connector.Connector;
+import raptor.engine.uci.BoundedAnalysis;
+import raptor.engine.uci.UCIEngine;
+import raptor.engine.uci.UCIMove;
+import raptor.engine.uci.UCIOption;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.pref.PreferenceKeys;
+import raptor.service.GameService.GameServiceAdapter;
+import raptor.service.GameService.GameServiceListener;
+import raptor.util.RaptorLogger;
+import raptor.util.RaptorRunnable;
+
+/**
+ * A Singleton service which looks for blunders in the background. Observed
+ * games are checked as their moves arrive and the user's own games once they
+ * end. Each position is searched for BOARD_BLUNDER_CHECK_MILLIS by one
+ * single threaded instance of the default UCI engine. A move which loses
+ * BOARD_BLUNDER_CHECK_THRESHOLD centipawns or more for the side that made it
+ * gets the ? NAG and a comment with the score before and after it and the
+ * engine's choice.
+ * 
+ * The service stays out of the way of the user's own games. Searches run on
+ * a minimum priority thread, the thread rests as long as it searched after
+ * each position and nothing is searched while a connector reports that the
+ * user is playing. A search in progress when a game starts is stopped.
+ * Evaluations are shared with the EvaluationCacheService, so positions
+ * already analyzed elsewhere are not searched again.
+ */
+public class BlunderCheckService {
+	/**
+	 * The positions of a game checked so far. scores[ply] is the score of the
+	 * position after ply moves from white's point of view, UNKNOWN_SCORE if
+	 * it was not searched.
+	 */
+	protected static class CheckedGame {
+		protected Game game;
+		protected Game snapshot;
+		protected boolean isQueued;
+		protected boolean isFinished;
+		protected boolean isReset;
+		protected int nextPly;
+		protected int[] scores = new int[0];
+		protected String[] bestMoves = new String[0];
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(BlunderCheckService.class);
+
+	/**
+	 * A mate score is treated as this many centipawns.
+	 */
+	public static final int MATE_SCORE = 10000;
+
+	/**
+	 * How often the worker checks whether the user is still playing.
+	 */
+	public static final long YIELD_POLL_MILLIS = 2000;
+
+	/**
+	 * The worker rests this fraction of each search's duration afterwards.
+	 */
+	public static final double REST_RATIO = 1.0;
+
+	/**
+	 * A cached evaluation at least this deep is used instead of a search.
+	 */
+	public static final int MIN_CACHED_DEPTH = 10;
+
+	protected static final int UNKNOWN_SCORE = Integer.MIN_VALUE;
+	protected static final int HASH_MB = 16;
+
+	public static boolean serviceCreated = false;
+	private static BlunderCheckService singletonInstance;
+
+	public static synchronized BlunderCheckService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new BlunderCheckService();
+		return singletonInstance;
+	}
+
+	protected Map<Game, CheckedGame> games = new HashMap<Game, CheckedGame>();
+	protected LinkedBlockingQueue<CheckedGame> queue = new LinkedBlockingQueue<CheckedGame>();
+	protected Map<Connector, GameServiceListener> connectorToListener = new HashMap<Connector, GameServiceListener>();
+	protected Thread worker;
+	protected UCIEngine engine;
+	protected volatile boolean isDisposed = false;
+
+	private BlunderCheckService() {
+		serviceCreated = true;
+	}
+
+	/**
+	 * Stops the worker and quits the engine.
+	 */
+	public void dispose() {
+		isDisposed = true;
+		synchronized (this) {
+			if (worker != null) {
+				worker.interrupt();
+				worker = null;
+			}
+			for (Map.Entry<Connector, GameServiceListener> entry : connectorToListener
+					.entrySet()) {
+				if (entry.getKey().getGameService() != null) {
+					entry.getKey().getGameService().removeGameServiceListener(
+							entry.getValue());
+				}
+			}
+			connectorToListener.clear();
+			games.clear();
+			queue.clear();
+		}
+		UCIEngine toQuit = engine;
+		if (toQuit != null) {
+			EngineSupervisorService.getInstance().unsupervise(toQuit);
+			toQuit.quit();
+			engine = null;
+		}
+	}
+
+	/**
+	 * Starts following the games of a connector.
+	 */
+	public synchronized void watch(Connector connector) {
+		if (isDisposed || connectorToListener.containsKey(connector)) {
+			return;
+		}
+		GameServiceListener listener = new GameServiceAdapter() {
+			@Override
+			public void gameCreated(Game game) {
+				if (game.isInState(Game.PLAYING_STATE)) {
+					yieldToUser();
+				}
+			}
+
+			@Override
+			public void gameInactive(Game game) {
+				onGameInactive(game);
+			}
+
+			@Override
+			public void gameMovesAdded(Game game) {
+				onMovesAdded(game, true);
+			}
+
+			@Override
+			public void gameStateChanged(Game game, boolean isNewMove) {
+				if (isNewMove) {
+					onMovesAdded(game, false);
+				}
+			}
+		};
+		connectorToListener.put(connector, listener);
+		connector.getGameService().addGameServiceListener(listener);
+	}
+
+	/**
+	 * Stops following the games of a connector.
+	 */
+	public synchronized void unwatch(Connector connector) {
+		GameServiceListener listener = connectorToListener.remove(connector);
+		if (listener != null && connector.getGameService() != null) {
+			connector.getGameService().removeGameServiceListener(listener);
+		}
+	}
+
+	/**
+	 * Queues a game to have its new positions checked. A snapshot is taken
+	 * here on the connector's thread so the worker never reads a game while it
+	 * changes.
+	 */
+	protected synchronized void enqueue(Game game, boolean isReset,
+			boolean isFinished) {
+		if (isDisposed) {
+			return;
+		}
+		CheckedGame checkedGame = games.get(game);
+		if (checkedGame == null) {
+			checkedGame = new CheckedGame();
+			checkedGame.game = game;
+			games.put(game, checkedGame);
+		}
+		checkedGame.snapshot = game.deepCopy(true);
+		checkedGame.isReset |= isReset;
+		checkedGame.isFinished |= isFinished;
+		if (!checkedGame.isQueued) {
+			checkedGame.isQueued = true;
+			queue.add(checkedGame);
+		}
+
+		if (worker == null) {
+			worker = new Thread(new Runnable() {
+				public void run() {
+					runWorker();
+				}
+			}, "BlunderCheckService");
+			worker.setDaemon(true);
+			worker.setPriority(Thread.MIN_PRIORITY);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Checks the positions from nextPly to the end of the snapshot. Returns
+	 * false if it stopped early to yield to the user, the game is then queued
+	 * again.
+	 */
+	protected boolean check(CheckedGame checkedGame, Game snapshot,
+			boolean isReset) throws InterruptedException {
+		int plies = snapshot.getMoveList().getSize();
+		if (isReset || plies < checkedGame.nextPly) {
+			checkedGame.nextPly = 0;
+		}
+		if (checkedGame.scores.length < plies + 1) {
+			int[] scores = new int[plies + 1];
+			String[] bestMoves = new String[plies + 1];
+			System.arraycopy(checkedGame.scores, 0, scores, 0,
+					checkedGame.scores.length);
+			System.arraycopy(checkedGame.bestMoves, 0, bestMoves, 0,
+					checkedGame.bestMoves.length);
+			checkedGame.scores = scores;
+			checkedGame.bestMoves = bestMoves;
+		}
+		if (checkedGame.nextPly > plies) {
+			return true;
+		}
+
+		// Walk back from the end so each position needs a single rollback.
+		// The position before the first one searched is kept for the SAN of
+		// the best move.
+		int first = checkedGame.nextPly;
+		int base = Math.max(0, first - 1);
+		String[] fens = new String[plies + 1 - base];
+		long[] hashes = new long[fens.length];
+		Move[] moves = new Move[fens.length];
+		for (int ply = plies; ply >= base; ply--) {
+			while (snapshot.getMoveList().getSize() > ply) {
+				snapshot.rollback();
+			}
+			fens[ply - base] = snapshot.toFen();
+			hashes[ply - base] = snapshot.getZobristPositionHash();
+			moves[ply - base] = ply > 0 ? snapshot.getMoveList().get(ply - 1)
+					: null;
+		}
+
+		int threshold = Raptor.getInstance().getPreferences().getInt(
+				PreferenceKeys.BOARD_BLUNDER_CHECK_THRESHOLD);
+		for (int ply = first; ply <= plies; ply++) {
+			if (isDisposed || isUserPlaying()) {
+				return false;
+			}
+			long startTime = System.currentTimeMillis();
+			if (!evaluate(checkedGame, ply, fens[ply - base], hashes[ply
+					- base], snapshot.getVariant())) {
+				return false;
+			}
+			checkedGame.nextPly = ply + 1;
+
+			if (ply > 0 && checkedGame.scores[ply - 1] != UNKNOWN_SCORE
+					&& checkedGame.scores[ply] != UNKNOWN_SCORE) {
+				int before = checkedGame.scores[ply - 1];
+				int after = checkedGame.scores[ply];
+				boolean isWhiteMove = moves[ply - base].isWhitesMove();
+				int loss = isWhiteMove ? before - after : after - before;
+				if (loss >= threshold) {
+					annotate(checkedGame.game, ply - 1, moves[ply - base],
+							before, after, getSan(fens[ply - 1 - base],
+									checkedGame.bestMoves[ply - 1]));
+				}
+			}
+
+			long rest = (long) ((System.currentTimeMillis() - startTime) * REST_RATIO);
+			if (rest > 0) {
+				Thread.sleep(rest);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the score and best move of the position after ply moves. Returns
+	 * false if the search was cut short because the user started a game.
+	 */
+	protected boolean evaluate(CheckedGame checkedGame, int ply, String fen,
+			long hash, Variant variant) {
+		boolean isWhitesMove = fen.contains(" w ");
+		EvaluationCacheService.Evaluation cached = EvaluationCacheService
+				.getInstance().get(hash, variant);
+		if (cached != null && cached.isCoordinatePv()
+				&& cached.getDepth() >= MIN_CACHED_DEPTH) {
+			checkedGame.scores[ply] = toWhiteScore(cached.getMateInMoves(),
+					cached.getValueInCentipawns(), isWhitesMove);
+			checkedGame.bestMoves[ply] = cached.getPv().split(" ")[0];
+			return true;
+		}
+
+		UCIEngine searcher = getEngine();
+		if (searcher == null) {
+			checkedGame.scores[ply] = UNKNOWN_SCORE;
+			return true;
+		}
+		BoundedAnalysis.Budget budget = BoundedAnalysis.Budget
+				.forMillis(Raptor.getInstance().getPreferences().getInt(
+						PreferenceKeys.BOARD_BLUNDER_CHECK_MILLIS));
+		BoundedAnalysis.Result result = BoundedAnalysis.analyze(searcher, fen,
+				budget, null);
+		if (isUserPlaying()) {
+			return false;
+		}
+
+		ScoreInfo score = result.score;
+		if (score == null || result.bestLine == null) {
+			checkedGame.scores[ply] = UNKNOWN_SCORE;
+			return true;
+		}
+		checkedGame.scores[ply] = toWhiteScore(score.getMateInMoves(), score
+				.getValueInCentipawns(), isWhitesMove);
+		checkedGame.bestMoves[ply] = result.bestLine.getMoves()[0].getValue();
+		EvaluationCacheService.getInstance().put(hash, variant,
+				searcher.getUserName(), result.depth, score, result.bestLine);
+		return true;
+	}
+
+	/**
+	 * Adds the ? NAG and a comment to the move at halfMoveIndex on the SWT
+	 * thread, if the game still has that move.
+	 */
+	protected void annotate(final Game game, final int halfMoveIndex,
+			final Move checkedMove, int before, int after, String bestMove) {
+		final String text = "Blunder check: " + toPawns(before) + " -> "
+				+ toPawns(after)
+				+ (bestMove == null ? "" : ", best was " + bestMove);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(game.getId() + " move " + halfMoveIndex + " " + text);
+		}
+		Raptor.getInstance().getDisplay().asyncExec(new RaptorRunnable() {
+			@Override
+			public void execute() {
+				if (halfMoveIndex >= game.getMoveList().getSize()) {
+					return;
+				}
+				Move move = game.getMoveList().get(halfMoveIndex);
+				if (move.getFrom() != checkedMove.getFrom()
+						|| move.getTo() != checkedMove.getTo()) {
+					return;
+				}
+				for (Comment comment : move.getComments()) {
+					if (comment.getText().startsWith("Blunder check:")) {
+						return;
+					}
+				}
+				move.addAnnotation(Nag.NAG_2);
+				move.addAnnotation(new Comment(text));
+			}
+		});
+	}
+
+	/**
+	 * Returns the engine, starting it on first use. Returns null if there is
+	 * no UCI engine configured or it can not be started.
+	 */
+	protected UCIEngine getEngine() {
+		if (engine != null && engine.isConnected()) {
+			return engine;
+		}
+		UCIEngine defaultEngine = UCIEngineService.getInstance()
+				.getDefaultEngine();
+		if (defaultEngine == null) {
+			return null;
+		}
+		if (engine == null) {
+			engine = defaultEngine.getIsolatedCopy();
+			engine.setUsingThreadService(false);
+		}
+		if (!engine.connect()) {
+			LOG.warn("Could not start " + engine.getUserName()
+					+ " for blunder checks.");
+			return null;
+		}
+
+		UCIOption threads = engine.getOption("Threads");
+		if (threads != null) {
+			threads.setValue("1");
+			engine.setOption(threads);
+		}
+		UCIOption hash = engine.getOption("Hash");
+		if (hash != null) {
+			hash.setValue(String.valueOf(HASH_MB));
+			engine.setOption(hash);
+		}
+		engine.isReady();
+		EngineSupervisorService.getInstance().supervise(engine);
+		return engine;
+	}
+
+	/**
+	 * Returns the SAN of a UCI move in a position, or the UCI move if it can
+	 * not be made.
+	 */
+	protected String getSan(String fen, String uciMove) {
+		if (uciMove == null) {
+			return null;
+		}
+		try {
+			Game game = GameFactory.createFromFen(fen, Variant.classic);
+			game.addState(Game.UPDATING_SAN_STATE);
+			UCIMove move = new UCIMove(uciMove);
+			Move result = move.isPromotion() ? game.makeMove(move
+					.getStartSquare(), move.getEndSquare(), move
+					.getPromotedPiece()) : game.makeMove(
+					move.getStartSquare(), move.getEndSquare());
+			return result.getSan();
+		} catch (Throwable t) {
+			return uciMove;
+		}
+	}
+
+	/**
+	 * Returns true if any connector reports that the user is playing.
+	 */
+	protected boolean isUserPlaying() {
+		for (Connector connector : ConnectorService.getInstance()
+				.getConnectors()) {
+			if (connector.isLoggedInUserPlayingAGame()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected void onGameInactive(Game game) {
+		if (game.isInState(Game.PLAYING_STATE)) {
+			if (Variant.isClassic(game.getVariant())
+					&& Raptor.getInstance().getPreferences().getBoolean(
+							PreferenceKeys.BOARD_BLUNDER_CHECK_PLAYED)) {
+				enqueue(game, false, true);
+			}
+		} else {
+			synchronized (this) {
+				CheckedGame checkedGame = games.get(game);
+				if (checkedGame != null) {
+					// Check the last moves, then forget the game.
+					enqueue(game, false, true);
+				}
+			}
+		}
+	}
+
+	protected void onMovesAdded(Game game, boolean isReset) {
+		if (game.isInState(Game.OBSERVING_STATE)
+				&& Variant.isClassic(game.getVariant())
+				&& Raptor.getInstance().getPreferences().getBoolean(
+						PreferenceKeys.BOARD_BLUNDER_CHECK_OBSERVED)) {
+			enqueue(game, isReset, false);
+		}
+	}
+
+	/**
+	 * Takes games off the queue and checks them until disposed.
+	 */
+	protected void runWorker() {
+		while (!isDisposed) {
+			try {
+				CheckedGame checkedGame = queue.take();
+				Game snapshot;
+				boolean isReset;
+				synchronized (this) {
+					checkedGame.isQueued = false;
+					snapshot = checkedGame.snapshot;
+					isReset = checkedGame.isReset;
+					checkedGame.isReset = false;
+				}
+
+				if (!check(checkedGame, snapshot, isReset)) {
+					// The user is playing. Try again once they stop.
+					synchronized (this) {
+						if (!checkedGame.isQueued && !isDisposed) {
+							checkedGame.isQueued = true;
+							queue.add(checkedGame);
+						}
+					}
+					while (!isDisposed && isUserPlaying()) {
+						Thread.sleep(YIELD_POLL_MILLIS);
+					}
+					continue;
+				}
+
+				synchronized (this) {
+					if (checkedGame.isFinished && !checkedGame.isQueued) {
+						games.remove(checkedGame.game);
+					}
+				}
+			} catch (InterruptedException ie) {
+				break;
+			} catch (Throwable t) {
+				LOG.error("Error checking a game for blunders", t);
+			}
+		}
+	}
+
+	protected String toPawns(int whiteScore) {
+		if (Math.abs(whiteScore) >= MATE_SCORE) {
+			return whiteScore > 0 ? "+M" : "-M";
+		}
+		return (whiteScore > 0 ? "+" : "")
+				+ new BigDecimal(whiteScore / 100.0).setScale(2,
+						BigDecimal.ROUND_HALF_UP).toString();
+	}
+
+	/**
+	 * Returns a score in centipawns from white's point of view. UCI scores are
+	 * from the point of view of the side to move.
+	 */
+	protected int toWhiteScore(int mateInMoves, int valueInCentipawns,
+			boolean isWhitesMove) {
+		int result = mateInMoves != 0 ? (mateInMoves > 0 ? MATE_SCORE
+				: -MATE_SCORE) : valueInCentipawns;
+		return isWhitesMove ? result : -result;
+	}
+
+	/**
+	 * Stops the search in progress so the engine's core is free for the
+	 * user's game.
+	 */
+	protected void yieldToUser() {
+		UCIEngine searcher = engine;
+		if (searcher != null && searcher.isProcessingGo()) {
+			searcher.requestStop();
+		}
+	}
+}
@@ -13,14 +13,15 @@
  */
 package raptor.service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
 
 import raptor.Raptor;
 import raptor.chat.ChatEvent;
 import raptor.chat.ChatLogger;
 import raptor.connector.Connector;
 import raptor.pref.PreferenceKeys;
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
 
 /**
  * A service which invokes chatEventOccured on added ChatListeners when a
@@ -35,9 +36,10 @@ public class ChatService {
 	}
 
 	protected Connector connector = null;
-	protected List<ChatListener> listeners = new ArrayList<ChatListener>(5);
-	protected List<ChatListener> mainConsoleListeners = new ArrayList<ChatListener>(
-			5);
+	protected ListenerList<ChatListener> listeners = new ListenerList<ChatListener>(
+			"ChatService");
+	protected ListenerList<ChatListener> mainConsoleListeners = new ListenerList<ChatListener>(
+			"ChatService main console");
 	protected ChatLogger logger = null;
 
 	/**
@@ -47,8 +49,11 @@ public class ChatService {
 	 */
 	public ChatService(Connector connector) {
 		this.connector = null;
+		// The single file chat cache used before chat was kept in a store.
+		new File(Raptor.USER_RAPTOR_HOME_PATH + "/chatcache/"
+				+ connector.getShortName() + ".txt").delete();
 		logger = new ChatLogger(connector, Raptor.USER_RAPTOR_HOME_PATH
-				+ "/chatcache/" + connector.getShortName() + ".txt");
+				+ "/chatcache/" + connector.getShortName());
 	}
 
 	/**
@@ -67,9 +72,11 @@ public class ChatService {
 	 * Disposes all resources the ChatService is using.
 	 */
 	public void dispose() {
+		listeners.logTimings();
+		mainConsoleListeners.logTimings();
 		listeners.clear();
 		if (logger != null) {
-			logger.delete();
+			logger.dispose();
 		}
 		listeners = null;
 		logger = null;
@@ -99,26 +106,24 @@ public class ChatService {
 				if (listeners == null) {
 					return;
 				}
-				boolean wasHandled = false;
-				for (ChatListener listener : listeners) {
-					if (listener.isHandling(event)) {
-						listener.chatEventOccured(event);
-						wasHandled = true;
+				final boolean[] wasHandled = { false };
+				Notification<ChatListener> notification = new Notification<ChatListener>() {
+					public void deliver(ChatListener listener) {
+						if (listener.isHandling(event)) {
+							listener.chatEventOccured(event);
+							wasHandled[0] = true;
+						}
 					}
-				}
+				};
+				listeners.fire(notification);
 
-				if (!wasHandled
+				if (!wasHandled[0]
 						|| !Raptor
 								.getInstance()
 								.getPreferences()
 								.getBoolean(
 										PreferenceKeys.CHAT_REMOVE_SUB_TAB_MESSAGES_FROM_MAIN_TAB)) {
-					for (ChatListener listener : mainConsoleListeners) {
-						if (listener.isHandling(event)) {
-							listener.chatEventOccured(event);
-							wasHandled = true;
-						}
-					}
+					mainConsoleListeners.fire(notification);
 				}
 				logger.write(event);
 			}
@@ -0,0 +1,128 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raptor.Raptor;
+import raptor.swt.chess.ClockLabelUpdater;
+import raptor.util.RaptorLogger;
+
+/**
+ * A Singleton service which drives every running chess clock label from a
+ * single SWT timer. Each board used to schedule its own timerExec for each
+ * clock, which with many boards open meant dozens of timers firing at
+ * slightly different times. Clocks register while they are running and the
+ * ticker stops when none are.
+ * 
+ * All methods must be invoked on the SWT thread.
+ */
+public class ClockService {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ClockService.class);
+
+	/**
+	 * The interval between ticks. Remaining times are calculated from
+	 * System.nanoTime() on each tick, so this bounds how stale a label can be
+	 * but late ticks never accumulate error.
+	 */
+	public static final int TICK_MILLIS = 50;
+
+	public static boolean serviceCreated = false;
+	private static ClockService singletonInstance;
+
+	/**
+	 * Returns the singleton instance.
+	 */
+	public static synchronized ClockService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new ClockService();
+		return singletonInstance;
+	}
+
+	protected List<ClockLabelUpdater> runningClocks = new ArrayList<ClockLabelUpdater>(
+			10);
+	protected boolean isTickerScheduled = false;
+
+	protected Runnable ticker = new Runnable() {
+		public void run() {
+			isTickerScheduled = false;
+			if (runningClocks.isEmpty()) {
+				return;
+			}
+			long now = System.nanoTime();
+			ClockLabelUpdater[] clocks = runningClocks
+					.toArray(new ClockLabelUpdater[runningClocks.size()]);
+			for (ClockLabelUpdater clock : clocks) {
+				try {
+					clock.tick(now);
+				} catch (Throwable t) {
+					LOG.error("Error updating clock", t);
+					runningClocks.remove(clock);
+				}
+			}
+			scheduleTicker();
+		}
+
+		public String toString() {
+			return "ClockService.ticker";
+		}
+	};
+
+	private ClockService() {
+		serviceCreated = true;
+	}
+
+	public void dispose() {
+		runningClocks.clear();
+		if (isTickerScheduled && !Raptor.getInstance().getDisplay().isDisposed()) {
+			Raptor.getInstance().getDisplay().timerExec(-1, ticker);
+		}
+		isTickerScheduled = false;
+	}
+
+	/**
+	 * Returns the number of clocks currently running.
+	 */
+	public int getRunningClockCount() {
+		return runningClocks.size();
+	}
+
+	/**
+	 * Adds a clock to be updated on each tick.
+	 */
+	public void register(ClockLabelUpdater clock) {
+		if (!runningClocks.contains(clock)) {
+			runningClocks.add(clock);
+		}
+		scheduleTicker();
+	}
+
+	/**
+	 * Stops updating a clock.
+	 */
+	public void unregister(ClockLabelUpdater clock) {
+		runningClocks.remove(clock);
+	}
+
+	protected void scheduleTicker() {
+		if (!isTickerScheduled && !runningClocks.isEmpty()) {
+			isTickerScheduled = true;
+			Raptor.getInstance().getDisplay().timerExec(TICK_MILLIS, ticker);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import raptor.engine.uci.UCIEngine;
+import raptor.util.RaptorLogger;
+
+/**
+ * A Singleton service which watches running UCI engines. Every
+ * CHECK_INTERVAL_MILLIS each supervised engine is checked:
+ * <ul>
+ * <li>An engine whose process died is restarted. Its options, position and
+ * any unfinished search are restored by UCIEngine.restart().</li>
+ * <li>An engine which is searching is sent isready. If it does not answer
+ * within READY_TIMEOUT_MILLIS it is considered hung and restarted.</li>
+ * <li>The engine's nodes per second are sampled into its metrics.</li>
+ * </ul>
+ * An engine restarted more than MAX_RESTARTS times within
+ * RESTART_WINDOW_MILLIS is given up on and no longer supervised, so a broken
+ * engine does not restart forever.
+ */
+public class EngineSupervisorService {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(EngineSupervisorService.class);
+
+	public static final long CHECK_INTERVAL_MILLIS = 2000;
+	public static final long READY_TIMEOUT_MILLIS = 5000;
+	public static final int MAX_RESTARTS = 3;
+	public static final long RESTART_WINDOW_MILLIS = 10 * 60 * 1000L;
+
+	public static boolean serviceCreated = false;
+	private static EngineSupervisorService singletonInstance;
+
+	public static synchronized EngineSupervisorService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new EngineSupervisorService();
+		return singletonInstance;
+	}
+
+	protected List<UCIEngine> engines = new ArrayList<UCIEngine>(5);
+	protected Map<UCIEngine, LinkedList<Long>> restartTimes = new HashMap<UCIEngine, LinkedList<Long>>();
+	protected boolean isCheckScheduled = false;
+	protected boolean isDisposed = false;
+
+	protected Runnable checker = new Runnable() {
+		public void run() {
+			UCIEngine[] toCheck;
+			synchronized (EngineSupervisorService.this) {
+				isCheckScheduled = false;
+				if (isDisposed) {
+					return;
+				}
+				toCheck = engines.toArray(new UCIEngine[engines.size()]);
+			}
+			for (UCIEngine engine : toCheck) {
+				try {
+					check(engine);
+				} catch (Throwable t) {
+					LOG.error("Error checking engine " + engine, t);
+				}
+			}
+			scheduleCheck();
+		}
+
+		@Override
+		public String toString() {
+			return "EngineSupervisorService.checker";
+		}
+	};
+
+	private EngineSupervisorService() {
+		serviceCreated = true;
+	}
+
+	/**
+	 * Stops supervising all engines.
+	 */
+	public synchronized void dispose() {
+		isDisposed = true;
+		engines.clear();
+		restartTimes.clear();
+	}
+
+	/**
+	 * Returns true if the engine is supervised.
+	 */
+	public synchronized boolean isSupervised(UCIEngine engine) {
+		return engines.contains(engine);
+	}
+
+	/**
+	 * Starts supervising an engine. The engine should be connected. Adding an
+	 * engine which is already supervised has no effect.
+	 */
+	public void supervise(UCIEngine engine) {
+		synchronized (this) {
+			if (isDisposed || engines.contains(engine)) {
+				return;
+			}
+			engines.add(engine);
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Supervising " + engine);
+		}
+		scheduleCheck();
+	}
+
+	/**
+	 * Stops supervising an engine. Call this before quitting an engine.
+	 */
+	public synchronized void unsupervise(UCIEngine engine) {
+		engines.remove(engine);
+		restartTimes.remove(engine);
+	}
+
+	protected void check(UCIEngine engine) {
+		if (!isSupervised(engine)) {
+			return;
+		}
+		// An engine that is not connected because it was quit has not crashed.
+		if (engine.checkForCrash()) {
+			restart(engine, "crashed");
+		} else if (engine.isConnected() && engine.isProcessingGo()) {
+			if (engine.ping(READY_TIMEOUT_MILLIS) == -1
+					&& engine.isProcessingGo()) {
+				restart(engine, "did not answer isready within "
+						+ READY_TIMEOUT_MILLIS + "ms");
+			} else {
+				engine.getMetrics().sampleNodesPerSecond();
+			}
+		}
+	}
+
+	/**
+	 * Restarts an engine unless it has used up its restarts, in which case it
+	 * is no longer supervised.
+	 */
+	protected void restart(UCIEngine engine, String reason) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (!engines.contains(engine)) {
+				return;
+			}
+			LinkedList<Long> times = restartTimes.get(engine);
+			if (times == null) {
+				restartTimes.put(engine, times = new LinkedList<Long>());
+			}
+			while (!times.isEmpty()
+					&& now - times.getFirst() > RESTART_WINDOW_MILLIS) {
+				times.removeFirst();
+			}
+			if (times.size() >= MAX_RESTARTS) {
+				LOG.error(engine + " " + reason + " and was restarted "
+						+ times.size() + " times in the last "
+						+ RESTART_WINDOW_MILLIS / 60000
+						+ " minutes. Giving up on it. "
+						+ engine.getMetrics().getReport());
+				engines.remove(engine);
+				restartTimes.remove(engine);
+				return;
+			}
+			times.add(now);
+		}
+
+		LOG.warn(engine + " " + reason + ". Restarting it.");
+		if (!engine.restart()) {
+			LOG.error("Could not restart " + engine);
+		}
+	}
+
+	protected synchronized void scheduleCheck() {
+		if (!isCheckScheduled && !isDisposed && !engines.isEmpty()) {
+			isCheckScheduled = true;
+			ThreadService.getInstance().scheduleOneShot(CHECK_INTERVAL_MILLIS,
+					checker);
+		}
+	}
+}
@@ -0,0 +1,453 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import raptor.Raptor;
+import raptor.chess.Variant;
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.UCIMove;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.util.RaptorLogger;
+
+/**
+ * A Singleton service which remembers the deepest engine evaluation seen for
+ * each position, keyed by zobrist position hash and variant. Analysis widgets
+ * show a cached evaluation as soon as a position is revisited and automatic
+ * analysis skips positions that have already been searched deeply enough.
+ * 
+ * Evaluations are kept in memory in least recently used order and written to
+ * a compact binary file when Raptor exits and shortly after they change. When
+ * MAX_ENTRIES is reached the least recently used evaluation is dropped.
+ */
+public class EvaluationCacheService {
+	/**
+	 * A cached evaluation. Scores are stored as the engine sent them, from the
+	 * point of view the engine reports them in.
+	 */
+	public static class Evaluation {
+		protected Variant variant;
+		protected int depth;
+		protected int valueInCentipawns;
+		protected int mateInMoves;
+		protected String engineName;
+		protected String pv;
+		protected boolean isCoordinatePv;
+
+		/**
+		 * Returns the depth in plies of the search.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		public String getEngineName() {
+			return engineName;
+		}
+
+		public int getMateInMoves() {
+			return mateInMoves;
+		}
+
+		/**
+		 * Returns the principal variation. If isCoordinatePv is true it is a
+		 * space separated list of UCI moves, otherwise it is the text an
+		 * xboard engine sent.
+		 */
+		public String getPv() {
+			return pv;
+		}
+
+		public int getValueInCentipawns() {
+			return valueInCentipawns;
+		}
+
+		public Variant getVariant() {
+			return variant;
+		}
+
+		public boolean isCoordinatePv() {
+			return isCoordinatePv;
+		}
+
+		/**
+		 * Returns the evaluation as the depth, score and best line infos a
+		 * UCI engine would send, or null if the pv is not in coordinate
+		 * notation.
+		 */
+		public UCIInfo[] toUCIInfos() {
+			if (!isCoordinatePv) {
+				return null;
+			}
+			DepthInfo depthInfo = new DepthInfo();
+			depthInfo.setSearchDepthPlies(depth);
+
+			ScoreInfo scoreInfo = new ScoreInfo();
+			scoreInfo.setValueInCentipawns(valueInCentipawns);
+			scoreInfo.setMateInMoves(mateInMoves);
+
+			String[] moves = pv.split(" ");
+			UCIMove[] uciMoves = new UCIMove[moves.length];
+			for (int i = 0; i < moves.length; i++) {
+				uciMoves[i] = new UCIMove(moves[i]);
+			}
+			BestLineFoundInfo bestLine = new BestLineFoundInfo();
+			bestLine.setMoves(uciMoves);
+
+			return new UCIInfo[] { depthInfo, scoreInfo, bestLine };
+		}
+
+		@Override
+		public String toString() {
+			return "Evaluation " + engineName + " depth=" + depth + " cp="
+					+ valueInCentipawns + " mate=" + mateInMoves + " pv=" + pv;
+		}
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(EvaluationCacheService.class);
+
+	public static final String CACHE_FILE = Raptor.USER_RAPTOR_HOME_PATH
+			+ "/cache/evaluations.dat";
+
+	/**
+	 * The maximum number of evaluations kept. At roughly 60 bytes each on
+	 * disk the file stays under 10MB.
+	 */
+	public static final int MAX_ENTRIES = 150000;
+
+	/**
+	 * How long after the first change the cache is written.
+	 */
+	public static final long SAVE_DELAY_MILLIS = 5 * 60 * 1000L;
+
+	protected static final int FILE_MAGIC = 0x52455643;
+	protected static final int FILE_VERSION = 1;
+
+	protected static final byte COORDINATE_PV_FLAG = 1;
+
+	public static boolean serviceCreated = false;
+	private static EvaluationCacheService singletonInstance;
+
+	public static synchronized EvaluationCacheService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new EvaluationCacheService();
+		return singletonInstance;
+	}
+
+	/**
+	 * Returns the key for a position. Variants are mixed in so the same
+	 * placement in two variants does not share an evaluation.
+	 */
+	protected static long getKey(long zobristPositionHash, Variant variant) {
+		return zobristPositionHash + (variant.ordinal() + 1)
+				* 0x9E3779B97F4A7C15L;
+	}
+
+	protected LinkedHashMap<Long, Evaluation> evaluations = new LinkedHashMap<Long, Evaluation>(
+			1024, .75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Evaluation> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	protected File file;
+	protected int maxEntries;
+	protected boolean isDirty = false;
+	protected boolean isSaveScheduled = false;
+
+	private EvaluationCacheService() {
+		this(new File(CACHE_FILE), MAX_ENTRIES);
+		serviceCreated = true;
+	}
+
+	/**
+	 * Creates a cache kept in the specified file instead of CACHE_FILE.
+	 * Raptor uses getInstance, this is for tests.
+	 */
+	protected EvaluationCacheService(File file, int maxEntries) {
+		this.file = file;
+		this.maxEntries = maxEntries;
+		load();
+	}
+
+	/**
+	 * Writes the cache if it has changed.
+	 */
+	public void dispose() {
+		save();
+	}
+
+	/**
+	 * Returns the cached evaluation of a position, or null if there is none.
+	 */
+	public synchronized Evaluation get(long zobristPositionHash,
+			Variant variant) {
+		Evaluation result = evaluations.get(getKey(zobristPositionHash,
+				variant));
+		return result != null && result.variant == variant ? result : null;
+	}
+
+	/**
+	 * Returns the depth of the cached evaluation of a position, or 0 if there
+	 * is none.
+	 */
+	public int getDepth(long zobristPositionHash, Variant variant) {
+		Evaluation evaluation = get(zobristPositionHash, variant);
+		return evaluation == null ? 0 : evaluation.depth;
+	}
+
+	public synchronized int getSize() {
+		return evaluations.size();
+	}
+
+	/**
+	 * Caches a completed UCI iteration if it is deeper than the cached
+	 * evaluation. Bound scores and empty lines are ignored.
+	 * 
+	 * @return true if the evaluation was stored.
+	 */
+	public boolean put(long zobristPositionHash, Variant variant,
+			String engineName, int depth, ScoreInfo score,
+			BestLineFoundInfo bestLine) {
+		if (depth <= 0 || score == null || score.isLowerBoundScore()
+				|| score.isUpperBoundScore() || bestLine == null
+				|| bestLine.getMoves() == null
+				|| bestLine.getMoves().length == 0) {
+			return false;
+		}
+		if (depth <= getDepth(zobristPositionHash, variant)) {
+			return false;
+		}
+
+		StringBuilder pv = new StringBuilder(bestLine.getMoves().length * 5);
+		for (UCIMove move : bestLine.getMoves()) {
+			pv.append(pv.length() == 0 ? "" : " ").append(move.getValue());
+		}
+		return put(zobristPositionHash, variant, engineName, depth, score
+				.getValueInCentipawns(), score.getMateInMoves(), pv.toString(),
+				true);
+	}
+
+	/**
+	 * Caches an evaluation if it is deeper than the cached evaluation.
+	 * 
+	 * @return true if the evaluation was stored.
+	 */
+	public synchronized boolean put(long zobristPositionHash, Variant variant,
+			String engineName, int depth, int valueInCentipawns,
+			int mateInMoves, String pv, boolean isCoordinatePv) {
+		Long key = getKey(zobristPositionHash, variant);
+		Evaluation current = evaluations.get(key);
+		if (current != null && current.variant == variant
+				&& current.depth >= depth) {
+			return false;
+		}
+
+		Evaluation evaluation = new Evaluation();
+		evaluation.variant = variant;
+		evaluation.depth = depth;
+		evaluation.valueInCentipawns = valueInCentipawns;
+		evaluation.mateInMoves = mateInMoves;
+		evaluation.engineName = engineName == null ? "" : engineName;
+		evaluation.pv = pv == null ? "" : pv.trim();
+		evaluation.isCoordinatePv = isCoordinatePv;
+		evaluations.put(key, evaluation);
+
+		isDirty = true;
+		if (!isSaveScheduled) {
+			isSaveScheduled = true;
+			scheduleSave();
+		}
+		return true;
+	}
+
+	/**
+	 * Loads the cache file. A missing, corrupt or old file leaves the cache
+	 * empty.
+	 */
+	protected synchronized void load() {
+		if (!file.exists()) {
+			return;
+		}
+
+		long startTime = System.currentTimeMillis();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), 64 * 1024));
+			if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+				LOG.warn("Ignoring " + file
+						+ ", it was written by another version.");
+				return;
+			}
+
+			String[] engineNames = new String[in.readShort()];
+			for (int i = 0; i < engineNames.length; i++) {
+				engineNames[i] = in.readUTF();
+			}
+
+			Variant[] variants = Variant.values();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				long key = in.readLong();
+				Evaluation evaluation = new Evaluation();
+				evaluation.variant = variants[in.readByte()];
+				evaluation.depth = in.readShort();
+				byte flags = in.readByte();
+				evaluation.isCoordinatePv = (flags & COORDINATE_PV_FLAG) != 0;
+				evaluation.valueInCentipawns = in.readInt();
+				evaluation.mateInMoves = in.readShort();
+				evaluation.engineName = engineNames[in.readShort()];
+				evaluation.pv = in.readUTF();
+				// Entries are written least recently used first.
+				evaluations.put(key, evaluation);
+			}
+
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Loaded " + count + " cached evaluations in "
+						+ (System.currentTimeMillis() - startTime) + "ms");
+			}
+		} catch (Throwable t) {
+			LOG.warn("Error reading " + file
+					+ ". Starting with an empty evaluation cache.", t);
+			evaluations.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException ioe) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the cache file if the cache has changed. The file is written to
+	 * a temporary file first so a failed write never loses the old cache.
+	 */
+	protected void save() {
+		List<Map.Entry<Long, Evaluation>> entries;
+		synchronized (this) {
+			isSaveScheduled = false;
+			if (!isDirty) {
+				return;
+			}
+			isDirty = false;
+			entries = new ArrayList<Map.Entry<Long, Evaluation>>(evaluations
+					.entrySet());
+		}
+
+		long startTime = System.currentTimeMillis();
+		File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			file.getParentFile().mkdirs();
+
+			Map<String, Integer> engineIndexes = new HashMap<String, Integer>();
+			List<String> engineNames = new ArrayList<String>();
+			for (Map.Entry<Long, Evaluation> entry : entries) {
+				if (!engineIndexes.containsKey(entry.getValue().engineName)) {
+					engineIndexes.put(entry.getValue().engineName, engineNames
+							.size());
+					engineNames.add(entry.getValue().engineName);
+				}
+			}
+
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile), 64 * 1024));
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeShort(engineNames.size());
+			for (String engineName : engineNames) {
+				out.writeUTF(engineName);
+			}
+			out.writeInt(entries.size());
+			for (Map.Entry<Long, Evaluation> entry : entries) {
+				Evaluation evaluation = entry.getValue();
+				out.writeLong(entry.getKey());
+				out.writeByte(evaluation.variant.ordinal());
+				out.writeShort(evaluation.depth);
+				out.writeByte(evaluation.isCoordinatePv ? COORDINATE_PV_FLAG
+						: 0);
+				out.writeInt(evaluation.valueInCentipawns);
+				out.writeShort(evaluation.mateInMoves);
+				out.writeShort(engineIndexes.get(evaluation.engineName));
+				out.writeUTF(evaluation.pv);
+			}
+			out.close();
+			out = null;
+
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Could not replace " + file);
+			}
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Could not rename " + tempFile + " to "
+						+ file);
+			}
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Saved " + entries.size() + " cached evaluations in "
+						+ (System.currentTimeMillis() - startTime) + "ms");
+			}
+		} catch (Throwable t) {
+			LOG.warn("Error writing " + file, t);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ioe) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedules a save SAVE_DELAY_MILLIS from now. Tests override this, since
+	 * ThreadService needs a running Raptor.
+	 */
+	protected void scheduleSave() {
+		ThreadService.getInstance().scheduleOneShot(SAVE_DELAY_MILLIS,
+				new Runnable() {
+					public void run() {
+						save();
+					}
+
+					@Override
+					public String toString() {
+						return "EvaluationCacheService.save";
+					}
+				});
+	}
+}
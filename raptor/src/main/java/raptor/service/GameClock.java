@@ -0,0 +1,86 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+/**
+ * A monotonic model of the clocks in a game. The remaining times reported by
+ * the server are stored with the System.nanoTime() they arrived at, so the
+ * time remaining at any later instant can be calculated without drift from
+ * wall clock adjustments or late timer callbacks.
+ */
+public class GameClock {
+	protected long whiteMillis;
+	protected long blackMillis;
+	protected long syncNanos;
+	protected boolean isTicking;
+	protected boolean isWhiteTicking;
+
+	/**
+	 * Returns the remaining time in milliseconds for the specified color
+	 * right now.
+	 */
+	public long getRemainingMillis(boolean isWhite) {
+		return getRemainingMillis(isWhite, System.nanoTime());
+	}
+
+	/**
+	 * Returns the remaining time in milliseconds for the specified color at
+	 * the specified System.nanoTime().
+	 */
+	public synchronized long getRemainingMillis(boolean isWhite, long nanoTime) {
+		long result = isWhite ? whiteMillis : blackMillis;
+		if (isTicking && isWhite == isWhiteTicking) {
+			result -= (nanoTime - syncNanos) / 1000000L;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the clock of the side to move is running.
+	 */
+	public synchronized boolean isTicking() {
+		return isTicking;
+	}
+
+	/**
+	 * Returns true if white's clock is the one running.
+	 */
+	public synchronized boolean isWhiteTicking() {
+		return isWhiteTicking;
+	}
+
+	/**
+	 * Resets the clock to times reported by the server.
+	 * 
+	 * @param whiteMillis
+	 *            White's remaining time as reported.
+	 * @param blackMillis
+	 *            Black's remaining time as reported.
+	 * @param isTicking
+	 *            True if the clock of the side to move is running.
+	 * @param isWhiteToMove
+	 *            True if white is to move.
+	 * @param compensationMillis
+	 *            The time the report spent in transit. It is deducted from the
+	 *            running clock.
+	 */
+	public synchronized void sync(long whiteMillis, long blackMillis,
+			boolean isTicking, boolean isWhiteToMove, long compensationMillis) {
+		this.whiteMillis = whiteMillis;
+		this.blackMillis = blackMillis;
+		this.isTicking = isTicking;
+		this.isWhiteTicking = isWhiteToMove;
+		syncNanos = System.nanoTime() - compensationMillis * 1000000L;
+	}
+}
@@ -15,10 +15,14 @@ package raptor.service;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import raptor.chess.Game;
+import raptor.connector.ics.replay.ReplayLatencyMonitor;
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
 
 /**
  * A class which manages active games that belong to a connector.
@@ -395,12 +399,24 @@ public class GameService {
 		}
 	}
 
-	protected HashMap<String, Game> gameMap = new HashMap<String, Game>();
+	/**
+	 * Games are added and updated on the connector threads and read from the
+	 * SWT thread, so use a concurrent map. There can be hundreds of games in
+	 * here when monitoring observed games.
+	 */
+	protected Map<String, Game> gameMap = new ConcurrentHashMap<String, Game>();
+
+	/**
+	 * The clock models of the games in gameMap keyed by game id.
+	 */
+	protected Map<String, GameClock> clockMap = new ConcurrentHashMap<String, GameClock>();
 	protected List<Offer> offers = new ArrayList<Offer>(10);
 	protected List<GameInfo> gameInfo = new ArrayList<GameInfo>(400);
 
-	protected List<GameServiceListener> listeners = Collections
-			.synchronizedList(new ArrayList<GameServiceListener>(20));
+	protected ListenerList<GameServiceListener> listeners = new ListenerList<GameServiceListener>(
+			"GameService");
+
+	protected volatile boolean isMonitoringObservedGames;
 
 	public GameInfo[] getGameInfos() {
 		return gameInfo.toArray(new GameInfo[0]);
@@ -415,20 +431,49 @@ public class GameService {
 	}
 
 	public void dispose() {
+		listeners.logTimings();
 		gameMap.clear();
+		clockMap.clear();
+	}
+
+	/**
+	 * Returns the clock model of the game with the specified id, or null if
+	 * the clocks of that game have never been synchronized.
+	 */
+	public GameClock getClock(String gameId) {
+		return clockMap.get(gameId);
+	}
+
+	/**
+	 * Synchronizes the clock model of the game with the specified id with
+	 * times just received from the server, creating it if needed.
+	 * 
+	 * @see GameClock#sync(long, long, boolean, boolean, long)
+	 */
+	public GameClock syncClock(String gameId, long whiteMillis,
+			long blackMillis, boolean isTicking, boolean isWhiteToMove,
+			long compensationMillis) {
+		GameClock clock = clockMap.get(gameId);
+		if (clock == null) {
+			clock = new GameClock();
+			clockMap.put(gameId, clock);
+		}
+		clock.sync(whiteMillis, blackMillis, isTicking, isWhiteToMove,
+				compensationMillis);
+		return clock;
 	}
 
 	/**
 	 * This method should only be invoked from a connector.
 	 */
 	public void fireDroppablePiecesChanged(String gameId) {
-		Game game = getGame(gameId);
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.droppablePiecesChanged(game);
 				}
-			}
+			});
 		}
 	}
 
@@ -436,13 +481,13 @@ public class GameService {
 	 * This method should only be invoked from a connector.
 	 */
 	public void fireExaminedGameBecameSetup(String gameId) {
-		Game game = getGame(gameId);
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.examinedGameBecameSetup(game);
 				}
-			}
+			});
 		}
 	}
 
@@ -450,13 +495,13 @@ public class GameService {
 	 * This method should only be invoked from a connector.
 	 */
 	public void fireGameCreated(String gameId) {
-		Game game = getGame(gameId);
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.gameCreated(game);
 				}
-			}
+			});
 		}
 	}
 
@@ -468,13 +513,13 @@ public class GameService {
 	 * longer updatable by the connector.
 	 */
 	public void fireGameInactive(String gameId) {
-		Game game = getGame(gameId);
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.gameInactive(game);
 				}
-			}
+			});
 			removeGame(game);
 		}
 	}
@@ -483,11 +528,11 @@ public class GameService {
 		synchronized (gameInfo) {
 			gameInfo.clear();
             Collections.addAll(gameInfo, gameInfos);
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.gameInfoChanged();
 				}
-			}
+			});
 		}
 	}
 
@@ -495,41 +540,42 @@ public class GameService {
 	 * This method should only be invoked from a connector.
 	 */
 	public void fireGameMovesAdded(String gameId) {		
-		Game game = getGame(gameId);		
+		final Game game = getGame(gameId);		
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.gameMovesAdded(game);
 				}
-			}
+			});
 		}
 	}
 
 	/**
 	 * This method should only be invoked from a connector.
 	 */
-	public void fireGameStateChanged(String gameId, boolean isNewMove) {
-		Game game = getGame(gameId);
+	public void fireGameStateChanged(String gameId, final boolean isNewMove) {
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.gameStateChanged(game, isNewMove);
 				}
-			}
+			});
+			ReplayLatencyMonitor.getInstance().onGameStateChanged();
 		}
 	}
 
 	/**
 	 * This method should only be invoked from a connector.
 	 */
-	public void fireIllegalMove(String gameId, String move) {
-		Game game = getGame(gameId);
+	public void fireIllegalMove(String gameId, final String move) {
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.illegalMove(game, move);
 				}
-			}
+			});
 		}
 	}
 
@@ -537,13 +583,13 @@ public class GameService {
 	 * This method should only be invoked from a connector.
 	 */
 	public void fireObservedGameBecameExamined(String gameId) {
-		Game game = getGame(gameId);
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.observedGameBecameExamined(game);
 				}
-			}
+			});
 		}
 	}
 
@@ -553,13 +599,13 @@ public class GameService {
 	 * @param offer
 	 *            The offer issued.
 	 */
-	public void fireOfferIssued(Offer offer) {
+	public void fireOfferIssued(final Offer offer) {
 		offers.add(offer);
-		synchronized (listeners) {
-			for (GameServiceListener listener : listeners) {
+		listeners.fire(new Notification<GameServiceListener>() {
+			public void deliver(GameServiceListener listener) {
 				listener.offerIssued(offer);
 			}
-		}
+		});
 	}
 
 	/**
@@ -568,13 +614,13 @@ public class GameService {
 	 * @param offer
 	 *            The offer received.
 	 */
-	public void fireOfferReceived(Offer offer) {
+	public void fireOfferReceived(final Offer offer) {
 		offers.add(offer);
-		synchronized (listeners) {
-			for (GameServiceListener listener : listeners) {
+		listeners.fire(new Notification<GameServiceListener>() {
+			public void deliver(GameServiceListener listener) {
 				listener.offerReceived(offer);
 			}
-		}
+		});
 	}
 
 	/**
@@ -592,12 +638,13 @@ public class GameService {
 			}
 		}
 		if (foundChallenge != null) {
-			offers.remove(foundChallenge);
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
-					listener.offerRemoved(foundChallenge);
+			final Offer removedChallenge = foundChallenge;
+			offers.remove(removedChallenge);
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
+					listener.offerRemoved(removedChallenge);
 				}
-			}
+			});
 		}
 	}
 
@@ -605,13 +652,13 @@ public class GameService {
 	 * This method should only be invoked from a connector.
 	 */
 	public void fireSetupGameBecameExamined(String gameId) {
-		Game game = getGame(gameId);
+		final Game game = getGame(gameId);
 		if (game != null) {
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
+			listeners.fire(new Notification<GameServiceListener>() {
+				public void deliver(GameServiceListener listener) {
 					listener.setupGameBecameExamined(game);
 				}
-			}
+			});
 		}
 	}
 
@@ -646,6 +693,14 @@ public class GameService {
 		return offers.toArray(new Offer[0]);
 	}
 
+	/**
+	 * Returns true if observed games are being shown in a game monitor instead
+	 * of each one getting its own chess board.
+	 */
+	public boolean isMonitoringObservedGames() {
+		return isMonitoringObservedGames;
+	}
+
 	public boolean isManaging(String gameId) {
 		return gameMap.containsKey(gameId);
 	}
@@ -655,6 +710,16 @@ public class GameService {
 	 */
 	public void removeGame(Game game) {
 		gameMap.remove(game.getId());
+		clockMap.remove(game.getId());
+	}
+
+	/**
+	 * Sets the flag denoting observed games are shown in a game monitor. While
+	 * this is true connectors should not open chess boards for newly observed
+	 * games.
+	 */
+	public void setMonitoringObservedGames(boolean isMonitoringObservedGames) {
+		this.isMonitoringObservedGames = isMonitoringObservedGames;
 	}
 
 	/**
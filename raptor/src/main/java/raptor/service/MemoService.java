@@ -13,7 +13,9 @@
  */
 package raptor.service;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -22,13 +24,19 @@ import java.util.List;
 
 import raptor.Raptor;
 import raptor.chat.ChatEvent;
+import raptor.chat.ChatEventUtils;
+import raptor.chat.ChatLogWriter;
 import raptor.chat.ChatLogger;
 import raptor.chat.ChatLogger.ChatEventParseListener;
-import raptor.util.FileUtils;
+import raptor.util.RaptorLogger;
 
 public class MemoService {
-	private static final String MEMOS_FILE = Raptor.USER_RAPTOR_HOME_PATH
+	private static final String MEMOS_DIRECTORY = Raptor.USER_RAPTOR_HOME_PATH
+			+ "/logs/memos";
+	private static final String OLD_MEMOS_FILE = Raptor.USER_RAPTOR_HOME_PATH
 			+ "/logs/memos.txt";
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(MemoService.class);
 	private static MemoService singletonInstance;
 	public static boolean serviceCreated = false;
 	public static final SimpleDateFormat FORMAT = new SimpleDateFormat(
@@ -45,20 +53,13 @@ public class MemoService {
 	protected ChatLogger memoLogger;
 
 	private MemoService() {
-		try {
-			File file = new File(MEMOS_FILE);
-			if (!file.exists()) {
-			    FileUtils.makeEmptyFile(file.getAbsolutePath());
-			}
-			memoLogger = new ChatLogger(file.getAbsolutePath(), false);
-		} catch (IOException ioe) {
-			throw new RuntimeException("Error opening memos file: "
-					+ MEMOS_FILE, ioe);
-		}
+		memoLogger = new ChatLogger(MEMOS_DIRECTORY, false);
+		importOldMemos();
 		serviceCreated = true;
 	}
 
 	public void dispose() {
+		memoLogger.dispose();
 	}
 
 	public ChatEvent[] getMemos() {
@@ -98,16 +99,44 @@ public class MemoService {
 	}
 
 	public void clearMemos() {
+		memoLogger.delete();
+	}
+
+	/**
+	 * Moves the memos from the file they were kept in before they were kept
+	 * in a ChatStore.
+	 */
+	protected void importOldMemos() {
+		File file = new File(OLD_MEMOS_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = null;
 		try {
-			memoLogger.delete();
-			File file = new File(MEMOS_FILE);
-			if (!file.exists()) {
-			    FileUtils.makeEmptyFile(file.getAbsolutePath());
+			reader = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					memoLogger.getStore().append(
+							ChatEventUtils.deserializeChatEvent(line));
+				} catch (Throwable t) {
+					LOG.warn("Skipping unreadable memo " + line, t);
+				}
 			}
 		} catch (IOException ioe) {
-			throw new RuntimeException("Error creating memos file: "
-					+ MEMOS_FILE, ioe);
+			LOG.warn("Error importing " + OLD_MEMOS_FILE, ioe);
+			return;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (Throwable t) {
+				}
+			}
+		}
+		ChatLogWriter.getInstance().flush();
+		if (!file.renameTo(new File(OLD_MEMOS_FILE + ".imported"))) {
+			LOG.warn("Could not rename " + OLD_MEMOS_FILE);
 		}
 	}
-
 }
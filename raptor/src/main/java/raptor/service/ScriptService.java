@@ -20,16 +20,27 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import raptor.Raptor;
 import raptor.script.ParameterScript;
 import raptor.script.ChatEventScript;
+import raptor.script.CompiledScript;
 import raptor.script.ScriptConnectorType;
 import raptor.script.ScriptUtils;
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
 import raptor.util.RaptorLogger;
 
 /**
@@ -65,14 +76,51 @@ public class ScriptService {
 		return singletonInstance;
 	}
 
+	/**
+	 * The threads running chat event scripts.
+	 */
+	public static final int SCRIPT_THREADS = 2;
+
+	/**
+	 * The most chat event script runs waiting for a thread. Runs beyond it
+	 * are dropped.
+	 */
+	public static final int MAX_QUEUED_SCRIPT_RUNS = 500;
+
 	public Map<String, ChatEventScript> nameToChatEventScript = new HashMap<String, ChatEventScript>();
 
 	public Map<String, ParameterScript> nameToParameterScript = new HashMap<String, ParameterScript>();
 
-	public List<ScriptServiceListener> listeners = Collections
-			.synchronizedList(new ArrayList<ScriptServiceListener>(5));
+	public ListenerList<ScriptServiceListener> listeners = new ListenerList<ScriptServiceListener>(
+			"ScriptService");
+
+	protected ThreadPoolExecutor scriptExecutor;
+	protected AtomicLong droppedScriptRuns = new AtomicLong();
 
 	private ScriptService() {
+		scriptExecutor = new ThreadPoolExecutor(SCRIPT_THREADS,
+				SCRIPT_THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_QUEUED_SCRIPT_RUNS),
+				new ThreadFactory() {
+					protected AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread result = new Thread(runnable, "ScriptService-"
+								+ count.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					}
+				}, new RejectedExecutionHandler() {
+					public void rejectedExecution(Runnable runnable,
+							ThreadPoolExecutor executor) {
+						if (droppedScriptRuns.incrementAndGet() % 100 == 1) {
+							LOG.warn("Chat event scripts are falling behind, "
+									+ droppedScriptRuns.get()
+									+ " runs dropped.");
+						}
+					}
+				});
+		scriptExecutor.allowCoreThreadTimeOut(true);
 		reload();
 		serviceCreated = true;
 	}
@@ -105,6 +153,11 @@ public class ScriptService {
 	}
 
 	public void dispose() {
+		scriptExecutor.shutdownNow();
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Chat event script timings:\n" + getScriptTimings());
+		}
+		listeners.logTimings();
 		listeners.clear();
 		nameToChatEventScript.clear();
 		nameToParameterScript.clear();
@@ -171,6 +224,47 @@ public class ScriptService {
 		return result.toArray(new ChatEventScript[0]);
 	}
 
+	/**
+	 * Returns the number of chat event script runs dropped because
+	 * MAX_QUEUED_SCRIPT_RUNS were waiting.
+	 */
+	public long getDroppedScriptRuns() {
+		return droppedScriptRuns.get();
+	}
+
+	/**
+	 * Returns one line per chat event script which has run, with how often it
+	 * ran and how long it took, slowest total first.
+	 */
+	public String getScriptTimings() {
+		List<CompiledScript> compiledScripts = new ArrayList<CompiledScript>();
+		for (ChatEventScript script : getChatEventScripts()) {
+			if (script.getCompiledScript().getExecutionCount() > 0) {
+				compiledScripts.add(script.getCompiledScript());
+			}
+		}
+		Collections.sort(compiledScripts, new Comparator<CompiledScript>() {
+			public int compare(CompiledScript script1, CompiledScript script2) {
+				return Double.compare(script2.getTotalMillis(), script1
+						.getTotalMillis());
+			}
+		});
+		StringBuilder result = new StringBuilder(100 * compiledScripts
+				.size());
+		for (CompiledScript compiledScript : compiledScripts) {
+			result.append(compiledScript).append("\n");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Runs chat event scripts on the script threads. If too many runs are
+	 * waiting the runnable is dropped.
+	 */
+	public void runScripts(Runnable runnable) {
+		scriptExecutor.execute(runnable);
+	}
+
 	/**
 	 * Reloads all of the scripts.
 	 */
@@ -249,19 +343,19 @@ public class ScriptService {
 	}
 
 	protected void fireParameterScriptsChanged() {
-		synchronized (listeners) {
-			for (ScriptServiceListener listener : listeners) {
+		listeners.fire(new Notification<ScriptServiceListener>() {
+			public void deliver(ScriptServiceListener listener) {
 				listener.onParameterScriptsChanged();
 			}
-		}
+		});
 	}
 
 	protected void fireChatEventScriptsChanged() {
-		synchronized (listeners) {
-			for (ScriptServiceListener listener : listeners) {
+		listeners.fire(new Notification<ScriptServiceListener>() {
+			public void deliver(ScriptServiceListener listener) {
 				listener.onChatEventScriptsChanged();
 			}
-		}
+		});
 	}
 
 	protected void loadParameterScripts() {
@@ -13,11 +13,10 @@
  */
 package raptor.service;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import raptor.chat.Seek;
 import raptor.connector.Connector;
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
 
 public class SeekService {
 	public static interface SeekServiceListener {
@@ -30,8 +29,8 @@ public class SeekService {
 
     private Seek[] seeks = new Seek[0];
 	private Connector connector;
-	private List<SeekServiceListener> listeners = new ArrayList<SeekServiceListener>(
-			10);
+	private ListenerList<SeekServiceListener> listeners = new ListenerList<SeekServiceListener>(
+			"SeekService");
 
 	public SeekService(Connector connector) {
 		this.connector = connector;
@@ -63,8 +62,10 @@ public class SeekService {
 	}
 
 	protected void fireSeeksChanged() {
-		for (SeekServiceListener listener : listeners) {
-			listener.seeksChanged(seeks);
-		}
+		listeners.fire(new Notification<SeekServiceListener>() {
+			public void deliver(SeekServiceListener listener) {
+				listener.seeksChanged(seeks);
+			}
+		});
 	}
 }
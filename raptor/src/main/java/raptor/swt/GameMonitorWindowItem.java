@@ -0,0 +1,611 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.MouseAdapter;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.ScrollBar;
+
+import raptor.Quadrant;
+import raptor.Raptor;
+import raptor.RaptorConnectorWindowItem;
+import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.Move;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.util.GameUtils;
+import raptor.connector.Connector;
+import raptor.connector.ics.IcsUtils;
+import raptor.international.L10n;
+import raptor.pref.PreferenceKeys;
+import raptor.service.GameService.GameServiceAdapter;
+import raptor.service.GameService.GameServiceListener;
+import raptor.service.ThreadService;
+import raptor.swt.chess.ChessBoardController;
+import raptor.swt.chess.ChessBoardUtils;
+import raptor.swt.chess.ChessBoardWindowItem;
+import raptor.swt.chess.controller.ObserveController;
+import raptor.util.RaptorRunnable;
+
+/**
+ * Shows every game observed on a connector as a small thumbnail with clocks.
+ * While the monitor is open no chess boards are created for observed games,
+ * only a lightweight snapshot of the position and clocks is kept for each one.
+ * Thumbnails are rendered off-screen and only for the games which are
+ * scrolled into view. Double clicking a game opens its full board. Closing
+ * the monitor unobserves the games which have no open board.
+ */
+public class GameMonitorWindowItem implements RaptorConnectorWindowItem {
+	public static final Quadrant[] MOVE_TO_QUADRANTS = { Quadrant.I,
+			Quadrant.II, Quadrant.III, Quadrant.IV, Quadrant.V, Quadrant.VI,
+			Quadrant.VII, Quadrant.VIII, Quadrant.IX };
+
+	protected static final int SQUARE_SIZE = 20;
+	protected static final int BOARD_SIZE = SQUARE_SIZE * 8;
+	protected static final int LABEL_HEIGHT = 34;
+	protected static final int TILE_MARGIN = 6;
+	protected static final int TILE_WIDTH = BOARD_SIZE + TILE_MARGIN;
+	protected static final int TILE_HEIGHT = BOARD_SIZE + LABEL_HEIGHT
+			+ TILE_MARGIN;
+	protected static final int REFRESH_INTERVAL = 250;
+	protected static final long REMOVE_INACTIVE_DELAY = 30 * 1000L;
+
+	/**
+	 * A lightweight copy of the parts of an observed game the monitor draws.
+	 * It is updated on the game service threads and drawn on the SWT thread.
+	 */
+	protected static class MonitoredGame {
+		protected String id;
+		protected String white;
+		protected String black;
+		protected String lastMove;
+		protected String result;
+		protected int[] pieces = new int[64];
+		protected long whiteRemainingMillis;
+		protected long blackRemainingMillis;
+		protected long lastUpdateTime;
+		protected boolean isWhitesMove;
+		protected boolean isClockTicking;
+		protected volatile boolean isThumbnailDirty = true;
+		protected Image thumbnail;
+
+		protected MonitoredGame(String id) {
+			this.id = id;
+		}
+
+		/**
+		 * Returns the time remaining on the specified clock, adjusted for the
+		 * time passed since the last update if the clock is ticking.
+		 */
+		protected synchronized long getRemainingMillis(boolean isWhite) {
+			long result = isWhite ? whiteRemainingMillis : blackRemainingMillis;
+			if (isClockTicking && isWhitesMove == isWhite) {
+				result -= System.currentTimeMillis() - lastUpdateTime;
+			}
+			return result;
+		}
+
+		protected synchronized void update(Game game) {
+			white = game.getHeader(PgnHeader.White) + " "
+					+ StringUtils.defaultString(game.getHeader(PgnHeader.WhiteElo));
+			black = game.getHeader(PgnHeader.Black) + " "
+					+ StringUtils.defaultString(game.getHeader(PgnHeader.BlackElo));
+			whiteRemainingMillis = parseLong(game
+					.getHeader(PgnHeader.WhiteRemainingMillis));
+			blackRemainingMillis = parseLong(game
+					.getHeader(PgnHeader.BlackRemainingMillis));
+			lastUpdateTime = System.currentTimeMillis();
+			isWhitesMove = game.isWhitesMove();
+			isClockTicking = game.isInState(Game.IS_CLOCK_TICKING_STATE);
+			Move move = game.getLastMove();
+			lastMove = move == null ? null : move.toString();
+
+			boolean hasPositionChanged = false;
+			for (int i = 0; i < 64; i++) {
+				int piece = GameUtils.getColoredPiece(i, game);
+				if (pieces[i] != piece) {
+					pieces[i] = piece;
+					hasPositionChanged = true;
+				}
+			}
+			if (hasPositionChanged) {
+				isThumbnailDirty = true;
+			}
+		}
+
+		protected static long parseLong(String value) {
+			try {
+				return value == null ? 0 : Long.parseLong(value);
+			} catch (NumberFormatException nfe) {
+				return 0;
+			}
+		}
+	}
+
+	protected Connector connector;
+	protected Composite composite;
+	protected Canvas canvas;
+	protected boolean isActive = false;
+	protected Map<String, MonitoredGame> games = new ConcurrentHashMap<String, MonitoredGame>();
+	protected volatile boolean isRedrawNeeded = true;
+	protected static L10n local = L10n.getInstance();
+
+	protected GameServiceListener listener = new GameServiceAdapter() {
+		@Override
+		public void gameCreated(Game game) {
+			updateGame(game);
+		}
+
+		@Override
+		public void gameInactive(Game game) {
+			final MonitoredGame monitoredGame = games.get(game.getId());
+			if (monitoredGame != null) {
+				monitoredGame.update(game);
+				synchronized (monitoredGame) {
+					monitoredGame.result = game.getResult() == null ? null
+							: game.getResult().getDescription();
+					monitoredGame.isClockTicking = false;
+				}
+				isRedrawNeeded = true;
+				ThreadService.getInstance().scheduleOneShot(
+						REMOVE_INACTIVE_DELAY, new Runnable() {
+							public void run() {
+								removeGame(monitoredGame);
+							}
+						});
+			}
+		}
+
+		@Override
+		public void gameMovesAdded(Game game) {
+			updateGame(game);
+		}
+
+		@Override
+		public void gameStateChanged(Game game, boolean isNewMove) {
+			updateGame(game);
+		}
+	};
+
+	protected Runnable refresher = new Runnable() {
+		public void run() {
+			if (canvas == null || canvas.isDisposed()) {
+				return;
+			}
+			if (isActive && (isRedrawNeeded || hasTickingClock())) {
+				isRedrawNeeded = false;
+				updateScrollBar();
+				canvas.redraw();
+			}
+			canvas.getDisplay().timerExec(REFRESH_INTERVAL, this);
+		}
+	};
+
+	public GameMonitorWindowItem(Connector connector) {
+		this.connector = connector;
+	}
+
+	public void addItemChangedListener(ItemChangedListener listener) {
+	}
+
+	/**
+	 * Invoked after this control is moved to a new quadrant.
+	 */
+	public void afterQuadrantMove(Quadrant newQuadrant) {
+		Raptor.getInstance().getPreferences().setValue(
+				connector.getShortName() + "-"
+						+ PreferenceKeys.GAME_MONITOR_QUADRANT, newQuadrant);
+	}
+
+	public boolean confirmClose() {
+		return true;
+	}
+
+	public void dispose() {
+		isActive = false;
+		connector.getGameService().setMonitoringObservedGames(false);
+		connector.getGameService().removeGameServiceListener(listener);
+		for (MonitoredGame game : games.values()) {
+			disposeThumbnail(game);
+			releaseGame(game);
+		}
+		games.clear();
+		composite.dispose();
+	}
+
+	public Connector getConnector() {
+		return connector;
+	}
+
+	public Control getControl() {
+		return composite;
+	}
+
+	public Image getImage() {
+		return null;
+	}
+
+	public Quadrant[] getMoveToQuadrants() {
+		return MOVE_TO_QUADRANTS;
+	}
+
+	public Quadrant getPreferredQuadrant() {
+		return Raptor.getInstance().getPreferences().getQuadrant(
+				connector.getShortName() + "-"
+						+ PreferenceKeys.GAME_MONITOR_QUADRANT);
+	}
+
+	public String getTitle() {
+		return connector.getShortName() + "("
+				+ local.getString("gameMonitor2") + ")";
+	}
+
+	public Control getToolbar(Composite parent) {
+		return null;
+	}
+
+	public void init(Composite parent) {
+		composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new FillLayout());
+
+		canvas = new Canvas(composite, SWT.V_SCROLL | SWT.DOUBLE_BUFFERED
+				| SWT.NO_BACKGROUND);
+		canvas.addPaintListener(new PaintListener() {
+			public void paintControl(PaintEvent e) {
+				paint(e.gc);
+			}
+		});
+		canvas.getVerticalBar().addListener(SWT.Selection, new Listener() {
+			public void handleEvent(Event event) {
+				canvas.redraw();
+			}
+		});
+		canvas.addListener(SWT.Resize, new Listener() {
+			public void handleEvent(Event event) {
+				updateScrollBar();
+			}
+		});
+		canvas.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseDoubleClick(MouseEvent e) {
+				MonitoredGame game = getGameAt(e.x, e.y);
+				if (game != null) {
+					openBoard(game);
+				}
+			}
+
+			@Override
+			public void mouseUp(MouseEvent e) {
+				if (e.button == 3) {
+					MonitoredGame game = getGameAt(e.x, e.y);
+					if (game != null) {
+						showMenu(game, e.x, e.y);
+					}
+				}
+			}
+		});
+
+		connector.getGameService().setMonitoringObservedGames(true);
+		connector.getGameService().addGameServiceListener(listener);
+		for (Game game : connector.getGameService().getAllActiveGames()) {
+			updateGame(game);
+		}
+		canvas.getDisplay().timerExec(REFRESH_INTERVAL, refresher);
+	}
+
+	public void onActivate() {
+		isActive = true;
+		isRedrawNeeded = true;
+	}
+
+	public void onPassivate() {
+		isActive = false;
+	}
+
+	public void removeItemChangedListener(ItemChangedListener listener) {
+	}
+
+	protected void disposeThumbnail(MonitoredGame game) {
+		if (game.thumbnail != null && !game.thumbnail.isDisposed()) {
+			game.thumbnail.dispose();
+		}
+		game.thumbnail = null;
+	}
+
+	protected void drawPlayer(GC gc, MonitoredGame game, boolean isWhite,
+			int x, int y) {
+		String name;
+		long remainingMillis;
+		boolean isToMove;
+		synchronized (game) {
+			name = isWhite ? game.white : game.black;
+			isToMove = game.isWhitesMove == isWhite && game.result == null;
+		}
+		remainingMillis = game.getRemainingMillis(isWhite);
+		String clock = GameUtils.timeToString(remainingMillis, false);
+		int clockWidth = gc.textExtent(clock).x;
+
+		gc.setForeground(canvas.getDisplay().getSystemColor(
+				isToMove ? SWT.COLOR_RED : SWT.COLOR_WIDGET_FOREGROUND));
+		gc.drawText(clock, x + BOARD_SIZE - clockWidth, y, true);
+		gc.setForeground(canvas.getDisplay().getSystemColor(
+				SWT.COLOR_WIDGET_FOREGROUND));
+		gc.setClipping(x, y, BOARD_SIZE - clockWidth - 4, LABEL_HEIGHT / 2);
+		gc.drawText(name, x, y, true);
+		gc.setClipping((Rectangle) null);
+	}
+
+	protected MonitoredGame getGameAt(int x, int y) {
+		int columns = getColumns();
+		int column = x / TILE_WIDTH;
+		int row = (y + canvas.getVerticalBar().getSelection()) / TILE_HEIGHT;
+		if (column >= columns) {
+			return null;
+		}
+		List<MonitoredGame> sortedGames = getSortedGames();
+		int index = row * columns + column;
+		return index < sortedGames.size() ? sortedGames.get(index) : null;
+	}
+
+	protected int getColumns() {
+		return Math.max(1, canvas.getClientArea().width / TILE_WIDTH);
+	}
+
+	protected List<MonitoredGame> getSortedGames() {
+		List<MonitoredGame> result = new ArrayList<MonitoredGame>(games
+				.values());
+		Collections.sort(result, new Comparator<MonitoredGame>() {
+			public int compare(MonitoredGame game1, MonitoredGame game2) {
+				return compareIds(game1.id, game2.id);
+			}
+		});
+		return result;
+	}
+
+	protected static int compareIds(String id1, String id2) {
+		try {
+			return Integer.valueOf(id1).compareTo(Integer.valueOf(id2));
+		} catch (NumberFormatException nfe) {
+			return id1.compareTo(id2);
+		}
+	}
+
+	protected boolean hasTickingClock() {
+		for (MonitoredGame game : games.values()) {
+			if (game.isClockTicking) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected void openBoard(MonitoredGame monitoredGame) {
+		Game game = connector.getGameService().getGame(monitoredGame.id);
+		if (game == null) {
+			return;
+		}
+		ChessBoardController controller = IcsUtils.buildController(game,
+				connector);
+		if (controller instanceof ObserveController) {
+			// Closing the board should return the game to the monitor, not
+			// unobserve it.
+			((ObserveController) controller).setUnobserveOnDispose(false);
+		}
+		ChessBoardUtils.openBoard(controller);
+	}
+
+	protected void paint(GC gc) {
+		Rectangle clientArea = canvas.getClientArea();
+		gc.setBackground(canvas.getDisplay().getSystemColor(
+				SWT.COLOR_WIDGET_BACKGROUND));
+		gc.fillRectangle(clientArea);
+
+		List<MonitoredGame> sortedGames = getSortedGames();
+		if (sortedGames.isEmpty()) {
+			gc.drawText(local.getString("gameMonitor3"), TILE_MARGIN,
+					TILE_MARGIN, true);
+			return;
+		}
+
+		int columns = getColumns();
+		int scrollY = canvas.getVerticalBar().getSelection();
+		int firstRow = scrollY / TILE_HEIGHT;
+		int lastRow = (scrollY + clientArea.height) / TILE_HEIGHT;
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = 0; column < columns; column++) {
+				int index = row * columns + column;
+				if (index >= sortedGames.size()) {
+					return;
+				}
+				MonitoredGame game = sortedGames.get(index);
+				int x = column * TILE_WIDTH + TILE_MARGIN / 2;
+				int y = row * TILE_HEIGHT - scrollY + TILE_MARGIN / 2;
+
+				if (game.thumbnail == null || game.isThumbnailDirty) {
+					renderThumbnail(game);
+				}
+				gc.drawImage(game.thumbnail, x, y);
+				drawPlayer(gc, game, false, x, y + BOARD_SIZE);
+				drawPlayer(gc, game, true, x, y + BOARD_SIZE + LABEL_HEIGHT
+						/ 2);
+
+				String status;
+				synchronized (game) {
+					status = game.result != null ? game.result
+							: game.lastMove;
+				}
+				if (status != null) {
+					gc.setForeground(canvas.getDisplay().getSystemColor(
+							SWT.COLOR_BLUE));
+					gc.drawText(game.id + ": " + status, x + 2, y + 2, false);
+				}
+			}
+		}
+	}
+
+	protected void removeGame(final MonitoredGame game) {
+		games.remove(game.id);
+		isRedrawNeeded = true;
+		if (canvas != null && !canvas.isDisposed()) {
+			canvas.getDisplay().asyncExec(new RaptorRunnable() {
+				@Override
+				public void execute() {
+					disposeThumbnail(game);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Invoked when the monitor closes. A game whose board was opened from the
+	 * monitor is handed back to that board, so closing the board unobserves
+	 * it. Any other game would be left observed without a board, so it is
+	 * unobserved.
+	 */
+	protected void releaseGame(MonitoredGame monitoredGame) {
+		Game game = connector.getGameService().getGame(monitoredGame.id);
+		if (game == null || !game.isInState(Game.ACTIVE_STATE)) {
+			return;
+		}
+		ChessBoardWindowItem item = Raptor.getInstance().getWindow()
+				.getChessBoardWindowItem(monitoredGame.id);
+		if (item != null && item.getController() instanceof ObserveController
+				&& item.getController().getConnector() == connector) {
+			((ObserveController) item.getController())
+					.setUnobserveOnDispose(true);
+		} else if (connector.isConnected()) {
+			connector.onUnobserve(game);
+		}
+	}
+
+	/**
+	 * Renders the position into the games off-screen thumbnail image.
+	 */
+	protected void renderThumbnail(MonitoredGame game) {
+		if (game.thumbnail == null) {
+			game.thumbnail = new Image(canvas.getDisplay(), BOARD_SIZE,
+					BOARD_SIZE);
+		}
+		game.isThumbnailDirty = false;
+
+		Color light = Raptor.getInstance().getPreferences().getColor(
+				PreferenceKeys.BOARD_LIGHT_SQUARE_SOLID_BACKGROUND_COLOR);
+		Color dark = Raptor.getInstance().getPreferences().getColor(
+				PreferenceKeys.BOARD_DARK_SQUARE_SOLID_BACKGROUND_COLOR);
+
+		int[] pieces = new int[64];
+		synchronized (game) {
+			System.arraycopy(game.pieces, 0, pieces, 0, 64);
+		}
+
+		GC gc = new GC(game.thumbnail);
+		try {
+			gc.setAdvanced(true);
+			for (int rank = 0; rank < 8; rank++) {
+				for (int file = 0; file < 8; file++) {
+					int x = file * SQUARE_SIZE;
+					int y = (7 - rank) * SQUARE_SIZE;
+					gc.setBackground((rank + file) % 2 == 0 ? dark : light);
+					gc.fillRectangle(x, y, SQUARE_SIZE, SQUARE_SIZE);
+
+					int piece = pieces[GameUtils.getSquare(rank, file)];
+					if (piece != GameConstants.EMPTY) {
+						gc.drawImage(ChessBoardUtils.getChessPieceImage(piece,
+								SQUARE_SIZE), x, y);
+					}
+				}
+			}
+		} finally {
+			gc.dispose();
+		}
+	}
+
+	protected void showMenu(final MonitoredGame game, int x, int y) {
+		Menu menu = new Menu(canvas.getShell(), SWT.POP_UP);
+		MenuItem item = new MenuItem(menu, SWT.PUSH);
+		item.setText(local.getString("gameMonitor4"));
+		item.addListener(SWT.Selection, new Listener() {
+			public void handleEvent(Event e) {
+				openBoard(game);
+			}
+		});
+		item = new MenuItem(menu, SWT.PUSH);
+		item.setText(local.getString("gameMonitor5"));
+		item.addListener(SWT.Selection, new Listener() {
+			public void handleEvent(Event e) {
+				Game activeGame = connector.getGameService().getGame(game.id);
+				if (activeGame != null) {
+					connector.onUnobserve(activeGame);
+				}
+				removeGame(game);
+			}
+		});
+		Point location = canvas.toDisplay(x, y);
+		menu.setLocation(location.x, location.y);
+		menu.setVisible(true);
+	}
+
+	protected void updateGame(Game game) {
+		if (!game.isInState(Game.OBSERVING_STATE)) {
+			return;
+		}
+		MonitoredGame monitoredGame = games.get(game.getId());
+		if (monitoredGame == null) {
+			monitoredGame = new MonitoredGame(game.getId());
+			games.put(game.getId(), monitoredGame);
+		}
+		monitoredGame.update(game);
+		isRedrawNeeded = true;
+	}
+
+	protected void updateScrollBar() {
+		if (canvas == null || canvas.isDisposed()) {
+			return;
+		}
+		ScrollBar scrollBar = canvas.getVerticalBar();
+		int rows = (games.size() + getColumns() - 1) / getColumns();
+		int contentHeight = rows * TILE_HEIGHT;
+		int clientHeight = canvas.getClientArea().height;
+		scrollBar.setMaximum(Math.max(contentHeight, 1));
+		scrollBar.setThumb(Math.max(1, Math.min(clientHeight, contentHeight)));
+		scrollBar.setPageIncrement(clientHeight);
+		scrollBar.setIncrement(TILE_HEIGHT / 4);
+		scrollBar.setVisible(contentHeight > clientHeight);
+	}
+}
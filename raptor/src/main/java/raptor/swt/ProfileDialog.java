@@ -31,7 +31,9 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 
 import raptor.Raptor;
+import raptor.connector.Connector;
 import raptor.international.L10n;
+import raptor.service.ConnectorService;
 import raptor.service.ThreadService;
 import raptor.util.RaptorStringUtils;
 
@@ -43,7 +45,7 @@ public class ProfileDialog extends Dialog {
 
 	private Label heapm, heap1, heap2, heap3, heap4, stackm, stack1, stack2,
 			stack3, stack4, threadsm, threads1, threads2, threads3, threads4,
-			threads5, image1;
+			threads5, image1, dispatch1;
 	protected static L10n local = L10n.getInstance();
 
 	public ProfileDialog() {
@@ -150,6 +152,11 @@ public class ProfileDialog extends Dialog {
 				+ Raptor.getInstance().getColorRegistry().getKeySet().size()
 				+ "/" + Raptor.getInstance().getCursorRegistry().getSize());
 
+		Label dispatchLabel = new Label(composite, SWT.NONE);
+		dispatchLabel.setText(local.getString("profileDialog17"));
+		dispatch1 = new Label(composite, SWT.NONE);
+		dispatch1.setText(getDispatchDiagnostics());
+
 		Button button = new Button(composite, SWT.PUSH);
 		button.setText(local.getString("profileDialog16"));
 		button.addSelectionListener(new SelectionListener() {
@@ -232,6 +239,8 @@ public class ProfileDialog extends Dialog {
 								+ "/"
 								+ Raptor.getInstance().getCursorRegistry()
 										.getSize());
+						dispatch1.setText(getDispatchDiagnostics());
+						parent.pack();
 
 						Display.getCurrent().timerExec(2000, this);
 					}
@@ -242,4 +251,28 @@ public class ProfileDialog extends Dialog {
 
 		});
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the chat script and message callback timings of every
+	 * connector, indented like the other values.
+	 */
+	protected String getDispatchDiagnostics() {
+		StringBuilder result = new StringBuilder(1000);
+		for (Connector connector : ConnectorService.getInstance()
+				.getConnectors()) {
+			String diagnostics = connector.getDispatchDiagnostics();
+			if (diagnostics.length() > 0) {
+				result.append("   ").append(connector.getShortName()).append(
+						":\n");
+				for (String line : diagnostics.split("\n")) {
+					result.append("      ").append(line).append("\n");
+				}
+			}
+		}
+		if (result.length() == 0) {
+			return "   -";
+		}
+		result.setLength(result.length() - 1);
+		return result.toString();
+	}
+}
@@ -260,6 +260,30 @@ public class SWTUtils {
 		}
 	}
 
+	/**
+	 * Opens a game monitor window item if one is not already open.
+	 */
+	public static void openGameMonitorWindowItem(Connector connector) {
+		RaptorWindowItem[] items = Raptor.getInstance().getWindow()
+				.getWindowItems(GameMonitorWindowItem.class);
+
+		boolean openNewWindow = true;
+
+		for (RaptorWindowItem item : items) {
+			GameMonitorWindowItem monitorItem = (GameMonitorWindowItem) item;
+			if (monitorItem.getConnector() == connector) {
+				Raptor.getInstance().getWindow().forceFocus(item);
+				openNewWindow = false;
+				break;
+			}
+		}
+
+		if (openNewWindow) {
+			Raptor.getInstance().getWindow().addRaptorWindowItem(
+					new GameMonitorWindowItem(connector));
+		}
+	}
+
 	/**
 	 * Opens a bug buttons window item if one is not already open.
 	 */
@@ -50,6 +50,7 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 	protected Composite buttonComposite;
 	protected ChatConsoleController controller;
 	protected StyledText inputText;
+	protected ChatConsoleContent inputTextContent;
 
 	protected StyledText outputText;
 	protected Label promptLabel;
@@ -83,6 +84,7 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 				if (controller != null) {
 					controller.dispose();
 				}
+				inputTextContent.dispose();
 				LOG.info("Disposed chat console.");
 			}
 		});
@@ -93,6 +95,9 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 		inputText = new RaptorStyledText(this, SWT.V_SCROLL | SWT.MULTI
 				| SWT.BORDER);
 		inputText.setLayoutData(new GridData(GridData.FILL_BOTH));
+		inputTextContent = new ChatConsoleContent();
+		inputText.setContent(inputTextContent);
+		inputText.addLineStyleListener(inputTextContent);
 		inputText.setEditable(false);
 		inputText.setWordWrap(true);
 		inputText.setLineSpacing(1);
@@ -160,6 +165,14 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 		return inputText;
 	}
 
+	/**
+	 * Returns the model holding inputText's text and styles. Styles must be
+	 * set on it rather than on inputText.
+	 */
+	public ChatConsoleContent getInputTextContent() {
+		return inputTextContent;
+	}
+
 	public StyledText getOutputText() {
 		return outputText;
 	}
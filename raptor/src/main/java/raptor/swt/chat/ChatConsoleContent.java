@@ -0,0 +1,586 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swt.custom.LineStyleEvent;
+import org.eclipse.swt.custom.LineStyleListener;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+
+/**
+ * The text and styles of a chat console's input text, kept off the
+ * StyledText widget.
+ * 
+ * Text is held in fixed size char arrays and styles as sorted, non
+ * overlapping runs referring to a small table of distinct styles. The widget
+ * asks for the lines it paints and, as the LineStyleListener, for their
+ * styles, so only the visible lines are ever laid out. Style arrays for
+ * recently painted lines are cached.
+ * 
+ * The widget only holds the end of the session. Older lines are moved to a
+ * ChatConsoleHistory by archive, and back by restore when the user scrolls or
+ * searches past the first line. Offsets are always relative to the text in
+ * the widget. write covers the history as well.
+ * 
+ * Lines are delimited by '\n' only; chat text has '\r' removed when it is
+ * parsed.
+ * 
+ * This class is not thread safe. Use it from the SWT thread, like the widget.
+ */
+public class ChatConsoleContent implements StyledTextContent,
+		LineStyleListener {
+
+	/**
+	 * The part of the text getReduceOffset removes once the content is over
+	 * its limit, so reducing does not happen on every append.
+	 */
+	public static final double CLEAN_PERCENTAGE = .33;
+
+	/**
+	 * The number of chars restore is usually asked to move back into the
+	 * widget when the user scrolls past the first line.
+	 */
+	public static final int HISTORY_PAGE_CHARS = 16384;
+
+	protected static final int CHUNK_BITS = 15;
+	protected static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	protected static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	protected static final int MAX_CACHED_LINES = 512;
+	protected static final StyleRange[] NO_STYLES = new StyleRange[0];
+
+	protected List<TextChangeListener> listeners = new ArrayList<TextChangeListener>(
+			2);
+
+	protected List<char[]> chunks = new ArrayList<char[]>();
+	protected int firstChunkStart;
+	protected int charCount;
+
+	protected int[] lineStarts = new int[1024];
+	protected int lineCount = 1;
+
+	protected int[] runStarts = new int[1024];
+	protected int[] runLengths = new int[1024];
+	protected int[] runStyles = new int[1024];
+	protected int runCount;
+	protected List<StyleRange> styles = new ArrayList<StyleRange>(32);
+
+	protected ChatConsoleHistory history = new ChatConsoleHistory();
+
+	@SuppressWarnings("serial")
+	protected Map<Integer, StyleRange[]> lineStylesCache = new LinkedHashMap<Integer, StyleRange[]>(
+			MAX_CACHED_LINES, .75f, true) {
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, StyleRange[]> eldest) {
+			return size() > MAX_CACHED_LINES;
+		}
+	};
+
+	public void addTextChangeListener(TextChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Moves the first length chars and their styles to the history, removing
+	 * them from the widget.
+	 */
+	public void archive(int length) {
+		int base = history.getCharCount();
+		if (history.append(getTextRange(0, length))) {
+			for (int i = 0; i < runCount && runStarts[i] < length; i++) {
+				history.addRun(base + runStarts[i], Math.min(runLengths[i],
+						length - runStarts[i]), runStyles[i]);
+			}
+		}
+		replaceTextRange(0, length, "");
+	}
+
+	/**
+	 * Deletes the history. The text in the widget is kept.
+	 */
+	public void dispose() {
+		history.dispose();
+	}
+
+	public int getCharCount() {
+		return charCount;
+	}
+
+	/**
+	 * Returns the text which has been archived, in front of the text in the
+	 * widget.
+	 */
+	public ChatConsoleHistory getHistory() {
+		return history;
+	}
+
+	public String getLine(int lineIndex) {
+		int start = lineStarts[lineIndex];
+		int end = lineIndex + 1 < lineCount ? lineStarts[lineIndex + 1] - 1
+				: charCount;
+		return getTextRange(start, end - start);
+	}
+
+	public int getLineAtOffset(int offset) {
+		int low = 0;
+		int high = lineCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (lineStarts[middle] <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public String getLineDelimiter() {
+		return "\n";
+	}
+
+	public int getOffsetAtLine(int lineIndex) {
+		return lineStarts[lineIndex];
+	}
+
+	/**
+	 * Returns the offset of the line to keep text from so that at most
+	 * maxChars remain, or 0 if the content does not hold more than maxChars.
+	 * The offset is only inside a line if the last line is too long.
+	 * CLEAN_PERCENTAGE of the text, at least, is removed so the content is not
+	 * reduced again on the next append.
+	 */
+	public int getReduceOffset(int maxChars) {
+		if (charCount <= maxChars) {
+			return 0;
+		}
+		int cleanTo = Math.max(charCount - maxChars,
+				(int) (charCount * CLEAN_PERCENTAGE));
+		int line = getLineAtOffset(cleanTo - 1);
+		return line + 1 < lineCount ? lineStarts[line + 1] : cleanTo;
+	}
+
+	public String getTextRange(int start, int length) {
+		char[] result = new char[length];
+		int position = firstChunkStart + start;
+		int copied = 0;
+		while (copied < length) {
+			int chunkOffset = position & CHUNK_MASK;
+			int count = Math.min(length - copied, CHUNK_SIZE - chunkOffset);
+			System.arraycopy(chunks.get(position >>> CHUNK_BITS), chunkOffset,
+					result, copied, count);
+			copied += count;
+			position += count;
+		}
+		return new String(result);
+	}
+
+	/**
+	 * Returns the offset of the last occurrence of text starting at or before
+	 * fromOffset, ignoring case, or -1 if there is none.
+	 */
+	public int lastIndexOfIgnoreCase(String text, int fromOffset) {
+		int length = text.length();
+		if (length == 0) {
+			return Math.min(fromOffset, charCount);
+		}
+		char first = text.charAt(0);
+		for (int offset = Math.min(fromOffset, charCount - length); offset >= 0; offset--) {
+			if (equalsIgnoreCase(charAt(offset), first)) {
+				int i = 1;
+				while (i < length
+						&& equalsIgnoreCase(charAt(offset + i), text.charAt(i))) {
+					i++;
+				}
+				if (i == length) {
+					return offset;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Supplies the styles of the line being painted by the widget.
+	 */
+	public void lineGetStyle(LineStyleEvent event) {
+		StyleRange[] result = lineStylesCache.get(event.lineOffset);
+		if (result == null) {
+			result = getStyleRanges(event.lineOffset, event.lineText.length());
+			lineStylesCache.put(event.lineOffset, result);
+		}
+		event.styles = result;
+	}
+
+	public void removeTextChangeListener(TextChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Moves the last lines of the history, at least length chars of them or
+	 * all that remain, back in front of the text in the widget along with
+	 * their styles. Returns the number of chars moved.
+	 */
+	public int restore(int length) {
+		int historyCount = history.getCharCount();
+		if (historyCount == 0 || length <= 0) {
+			return 0;
+		}
+		int start = history.getLineStart(Math.max(0, historyCount - length));
+		String text = history.getTextRange(start, historyCount - start);
+
+		int first = history.getFirstRunEndingAfter(start);
+		int restoredRuns = history.getRunCount() - first;
+		int[] restoredStarts = new int[restoredRuns];
+		int[] restoredLengths = new int[restoredRuns];
+		int[] restoredStyles = new int[restoredRuns];
+		for (int i = 0; i < restoredRuns; i++) {
+			int runStart = Math.max(start, history.getRunStart(first + i));
+			restoredStarts[i] = runStart - start;
+			restoredLengths[i] = history.getRunStart(first + i)
+					+ history.getRunLength(first + i) - runStart;
+			restoredStyles[i] = history.getRunStyle(first + i);
+		}
+		history.truncate(start);
+
+		replaceTextRange(0, 0, text);
+		for (int i = 0; i < restoredRuns; i++) {
+			insertRun(i, restoredStarts[i], restoredLengths[i],
+					restoredStyles[i]);
+		}
+		lineStylesCache.clear();
+		return text.length();
+	}
+
+	public void replaceTextRange(int start, int replaceLength, String text) {
+		TextChangingEvent changingEvent = new TextChangingEvent(this);
+		changingEvent.start = start;
+		changingEvent.newText = text;
+		changingEvent.replaceCharCount = replaceLength;
+		changingEvent.newCharCount = text.length();
+		changingEvent.replaceLineCount = getLineAtOffset(start + replaceLength)
+				- getLineAtOffset(start);
+		changingEvent.newLineCount = countLineDelimiters(text);
+		for (TextChangeListener listener : listeners
+				.toArray(new TextChangeListener[0])) {
+			listener.textChanging(changingEvent);
+		}
+
+		invalidateLineStyles(start);
+		if (start == charCount && replaceLength == 0) {
+			appendText(text);
+		} else if (start == 0 && text.length() == 0) {
+			removePrefix(replaceLength);
+		} else {
+			String before = getTextRange(0, start);
+			String after = getTextRange(start + replaceLength, charCount
+					- start - replaceLength);
+			clearText();
+			appendText(before);
+			appendText(text);
+			appendText(after);
+			int index = clearStyles(start, start + replaceLength);
+			shiftRuns(index, text.length() - replaceLength);
+		}
+
+		TextChangedEvent changedEvent = new TextChangedEvent(this);
+		for (TextChangeListener listener : listeners
+				.toArray(new TextChangeListener[0])) {
+			listener.textChanged(changedEvent);
+		}
+	}
+
+	/**
+	 * Applies the style to its range, replacing the styles of any text it
+	 * overlaps, as StyledText.setStyleRange does. The widget is not redrawn,
+	 * use StyledText.redrawRange once all the styles of a change are set.
+	 */
+	public void setStyleRange(StyleRange range) {
+		int start = Math.max(0, range.start);
+		int end = Math.min(charCount, range.start + range.length);
+		if (start >= end) {
+			return;
+		}
+		invalidateLineStyles(start);
+		int style = getStyleIndex(range);
+		int index = clearStyles(start, end);
+		if (index > 0 && runStyles[index - 1] == style
+				&& runStarts[index - 1] + runLengths[index - 1] == start) {
+			runLengths[index - 1] += end - start;
+			index--;
+		} else {
+			insertRun(index, start, end - start, style);
+		}
+		if (index + 1 < runCount && runStyles[index + 1] == style
+				&& runStarts[index + 1] == end) {
+			runLengths[index] += runLengths[index + 1];
+			removeRuns(index + 1, index + 2);
+		}
+	}
+
+	public void setText(String text) {
+		history.dispose();
+		clearText();
+		runCount = 0;
+		lineStylesCache.clear();
+		appendText(text);
+		TextChangedEvent event = new TextChangedEvent(this);
+		for (TextChangeListener listener : listeners
+				.toArray(new TextChangeListener[0])) {
+			listener.textSet(event);
+		}
+	}
+
+	/**
+	 * Writes all the text, the history first, to the writer.
+	 */
+	public void write(Writer writer) throws IOException {
+		history.write(writer);
+		int position = firstChunkStart;
+		int end = firstChunkStart + charCount;
+		while (position < end) {
+			int chunkOffset = position & CHUNK_MASK;
+			int count = Math.min(end - position, CHUNK_SIZE - chunkOffset);
+			writer.write(chunks.get(position >>> CHUNK_BITS), chunkOffset,
+					count);
+			position += count;
+		}
+	}
+
+	protected static int countLineDelimiters(String text) {
+		int result = 0;
+		for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1)) {
+			result++;
+		}
+		return result;
+	}
+
+	protected static boolean equalsIgnoreCase(char c1, char c2) {
+		return c1 == c2
+				|| Character.toUpperCase(c1) == Character.toUpperCase(c2)
+				|| Character.toLowerCase(c1) == Character.toLowerCase(c2);
+	}
+
+	protected static int[] grow(int[] array, int minLength) {
+		if (array.length >= minLength) {
+			return array;
+		}
+		int[] result = new int[Math.max(minLength, array.length * 2)];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	protected void appendText(String text) {
+		int length = text.length();
+		int position = firstChunkStart + charCount;
+		int copied = 0;
+		while (copied < length) {
+			int chunkIndex = position >>> CHUNK_BITS;
+			if (chunkIndex == chunks.size()) {
+				chunks.add(new char[CHUNK_SIZE]);
+			}
+			int chunkOffset = position & CHUNK_MASK;
+			int count = Math.min(length - copied, CHUNK_SIZE - chunkOffset);
+			text.getChars(copied, copied + count, chunks.get(chunkIndex),
+					chunkOffset);
+			copied += count;
+			position += count;
+		}
+
+		for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1)) {
+			lineStarts = grow(lineStarts, lineCount + 1);
+			lineStarts[lineCount++] = charCount + i + 1;
+		}
+		charCount += length;
+	}
+
+	protected char charAt(int offset) {
+		int position = firstChunkStart + offset;
+		return chunks.get(position >>> CHUNK_BITS)[position & CHUNK_MASK];
+	}
+
+	/**
+	 * Removes the styles between start and end, splitting runs which overlap
+	 * either end. Returns the index of the first run at or after end.
+	 */
+	protected int clearStyles(int start, int end) {
+		int index = getFirstRunEndingAfter(start);
+		if (index < runCount && runStarts[index] < start) {
+			int runEnd = runStarts[index] + runLengths[index];
+			runLengths[index] = start - runStarts[index];
+			index++;
+			if (runEnd > end) {
+				insertRun(index, end, runEnd - end, runStyles[index - 1]);
+				return index;
+			}
+		}
+		int last = index;
+		while (last < runCount && runStarts[last] + runLengths[last] <= end) {
+			last++;
+		}
+		removeRuns(index, last);
+		if (index < runCount && runStarts[index] < end) {
+			runLengths[index] -= end - runStarts[index];
+			runStarts[index] = end;
+		}
+		return index;
+	}
+
+	protected void clearText() {
+		chunks.clear();
+		firstChunkStart = 0;
+		charCount = 0;
+		lineCount = 1;
+	}
+
+	protected int getFirstRunEndingAfter(int offset) {
+		int low = 0;
+		int high = runCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (runStarts[middle] + runLengths[middle] <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	protected int getStyleIndex(StyleRange range) {
+		for (int i = styles.size() - 1; i >= 0; i--) {
+			if (styles.get(i).similarTo(range)) {
+				return i;
+			}
+		}
+		StyleRange style = (StyleRange) range.clone();
+		style.start = 0;
+		style.length = 0;
+		styles.add(style);
+		return styles.size() - 1;
+	}
+
+	protected StyleRange[] getStyleRanges(int start, int length) {
+		if (length == 0) {
+			return NO_STYLES;
+		}
+		int end = start + length;
+		int first = getFirstRunEndingAfter(start);
+		int last = first;
+		while (last < runCount && runStarts[last] < end) {
+			last++;
+		}
+		if (first == last) {
+			return NO_STYLES;
+		}
+		StyleRange[] result = new StyleRange[last - first];
+		for (int i = first; i < last; i++) {
+			StyleRange range = (StyleRange) styles.get(runStyles[i]).clone();
+			range.start = Math.max(start, runStarts[i]);
+			range.length = Math.min(end, runStarts[i] + runLengths[i])
+					- range.start;
+			result[i - first] = range;
+		}
+		return result;
+	}
+
+	protected void insertRun(int index, int start, int length, int style) {
+		runStarts = grow(runStarts, runCount + 1);
+		runLengths = grow(runLengths, runCount + 1);
+		runStyles = grow(runStyles, runCount + 1);
+		int moved = runCount - index;
+		System.arraycopy(runStarts, index, runStarts, index + 1, moved);
+		System.arraycopy(runLengths, index, runLengths, index + 1, moved);
+		System.arraycopy(runStyles, index, runStyles, index + 1, moved);
+		runStarts[index] = start;
+		runLengths[index] = length;
+		runStyles[index] = style;
+		runCount++;
+	}
+
+	/**
+	 * Drops cached line styles for lines at or after the one containing
+	 * offset.
+	 */
+	protected void invalidateLineStyles(int offset) {
+		if (lineStylesCache.isEmpty()) {
+			return;
+		}
+		int lineStart = lineStarts[getLineAtOffset(offset)];
+		for (Iterator<Integer> i = lineStylesCache.keySet().iterator(); i
+				.hasNext();) {
+			if (i.next() >= lineStart) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes the first length characters, along with their lines and
+	 * styles.
+	 */
+	protected void removePrefix(int length) {
+		int lines = getLineAtOffset(length);
+		int remainingLines = lineCount - lines;
+		System.arraycopy(lineStarts, lines, lineStarts, 0, remainingLines);
+		lineCount = remainingLines;
+		for (int i = 0; i < lineCount; i++) {
+			lineStarts[i] -= length;
+		}
+		// The first line may start before the removed text ends.
+		lineStarts[0] = 0;
+
+		firstChunkStart += length;
+		charCount -= length;
+		int emptyChunks = firstChunkStart >>> CHUNK_BITS;
+		if (emptyChunks > 0) {
+			chunks.subList(0, emptyChunks).clear();
+			firstChunkStart &= CHUNK_MASK;
+		}
+
+		clearStyles(0, length);
+		shiftRuns(0, -length);
+		lineStylesCache.clear();
+	}
+
+	protected void removeRuns(int from, int to) {
+		if (from < to) {
+			System.arraycopy(runStarts, to, runStarts, from, runCount - to);
+			System.arraycopy(runLengths, to, runLengths, from, runCount - to);
+			System.arraycopy(runStyles, to, runStyles, from, runCount - to);
+			runCount -= to - from;
+		}
+	}
+
+	protected void shiftRuns(int from, int delta) {
+		for (int i = from; i < runCount; i++) {
+			runStarts[i] += delta;
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
@@ -36,6 +37,8 @@ import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseListener;
 import org.eclipse.swt.events.MouseWheelListener;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
@@ -59,11 +62,13 @@ import raptor.Raptor;
 import raptor.RaptorWindowItem;
 import raptor.alias.RaptorAliasResult;
 import raptor.chat.ChatEvent;
-import raptor.chat.ChatLogger.ChatEventParseListener;
+import raptor.chat.ChatLogger;
+import raptor.chat.ChatQuery;
 import raptor.chat.ChatType;
 import raptor.chess.Game;
 import raptor.connector.Connector;
 import raptor.connector.ConnectorListener;
+import raptor.connector.ics.replay.ReplayLatencyMonitor;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
@@ -91,11 +96,15 @@ import raptor.util.RaptorStringTokenizer;
 import raptor.util.RaptorStringUtils;
 
 public abstract class ChatConsoleController implements PreferenceKeys {
-	public static final double CLEAN_PERCENTAGE = .33;
 	public static final long SPELL_CHECK_DELAY = 1000;
+
+	/**
+	 * The number of lines above the first visible line which are never moved
+	 * to the console history.
+	 */
+	public static final int HISTORY_MARGIN_LINES = 100;
 	private static final RaptorLogger LOG = RaptorLogger
 			.getLog(ChatConsoleController.class);
-	public static final int TEXT_CHUNK_SIZE = 1000;
 	public static int[] DONT_FORWARD_KEYSTROKES = { SWT.PAGE_UP, SWT.PAGE_DOWN,
 			SWT.HOME, SWT.END };
 	public static int[] DONT_FORWARD_KEYMASKS = { SWT.COMMAND, SWT.CONTROL };
@@ -103,20 +112,26 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 
 	protected List<ChatEvent> awayList = new ArrayList<ChatEvent>(100);
 	protected ChatConsole chatConsole;
-	protected Queue<ChatEvent> chatEventQueue = new ConcurrentLinkedQueue<ChatEvent>();
+	/**
+	 * Chat events waiting to be appended. Events arriving while a flush is
+	 * scheduled are appended with it, so a burst costs one text change, one
+	 * redraw and one scroll instead of one per event.
+	 */
+	protected Queue<ChatEvent> pendingChatEvents = new ConcurrentLinkedQueue<ChatEvent>();
+	protected AtomicBoolean isFlushScheduled = new AtomicBoolean(false);
 	protected ChatListener chatServiceListener = new ChatListener() {
-		public void chatEventOccured(final ChatEvent event) {			
+		public void chatEventOccured(final ChatEvent event) {
 			if (!isDisposed && chatConsole != null && !chatConsole.isDisposed()) {
-				if (event.getType() == ChatType.CHANNEL_TELL)
-					chatEventQueue.add(event);
-				
-				chatConsole.getDisplay().asyncExec(
-						new RaptorRunnable(getConnector()) {
-							@Override
-							public void execute() {
-								onChatEvent(event);
-							}
-						});
+				pendingChatEvents.add(event);
+				if (isFlushScheduled.compareAndSet(false, true)) {
+					chatConsole.getDisplay().asyncExec(
+							new RaptorRunnable(getConnector()) {
+								@Override
+								public void execute() {
+									flushPendingChatEvents();
+								}
+							});
+				}
 			} else {
 				eventsWhileBeingReparented.add(event);
 			}
@@ -154,6 +169,28 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		}
 	};
 
+	/**
+	 * Restores a page of history once the first line is painted at the top,
+	 * however the user scrolled there.
+	 */
+	protected PaintListener inputTextPaintListener = new PaintListener() {
+		public void paintControl(PaintEvent e) {
+			if (!isRestoreScheduled
+					&& chatConsole.inputText.getTopIndex() == 0
+					&& chatConsole.getInputTextContent().getHistory()
+							.getCharCount() > 0) {
+				isRestoreScheduled = true;
+				chatConsole.getDisplay().asyncExec(
+						new RaptorRunnable(getConnector()) {
+							public void execute() {
+								isRestoreScheduled = false;
+								restoreHistoryIfNeeded();
+							}
+						});
+			}
+		}
+	};
+
 	protected Listener consoleInputKeyUpListener = new Listener() {
 		public void handleEvent(Event event) {
 			processInputTextKeystroke(event, false);
@@ -247,6 +284,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	protected boolean isDirty;
 	protected boolean isSoundDisabled = false;
 	protected boolean isAutoScrolling = true;
+	protected boolean isRestoreScheduled;
 	protected List<ItemChangedListener> itemChangedListeners = new ArrayList<ItemChangedListener>(
 			5);
 	protected List<String> sentText = new ArrayList<String>(50);
@@ -367,6 +405,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	public void addScrollBarListeners() {
 		chatConsole.getInputText().getVerticalBar()
 				.addSelectionListener(verticalScrollbarListener);
+		chatConsole.getInputText().addPaintListener(inputTextPaintListener);
 	}
 
 	public void addToolItem(ToolBarItemKey key, ToolItem item) {
@@ -410,6 +449,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			eventsWhileBeingReparented.clear();
 			eventsWhileBeingReparented = null;
 		}
+		pendingChatEvents.clear();
 
 		if (LOG.isInfoEnabled()) {
 			LOG.info("Disposed ChatConsoleController");
@@ -571,14 +611,19 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	}
 	
 	public void onAppendChatEventToInputText(ChatEvent event) {
-		if (!ignoreAwayList && event.getType() == ChatType.TELL
-				|| event.getType() == ChatType.PARTNER_TELL) {
-			awayList.add(event);
-			adjustAwayButtonEnabled();
-		}
-		
-		String appendText = null;
-		int startIndex = 0;
+		onAppendChatEventsToInputText(Collections.singletonList(event));
+	}
+
+	/**
+	 * Appends the events to the console in order as a single text change,
+	 * then decorates them, redraws and reduces the console once.
+	 */
+	public void onAppendChatEventsToInputText(List<ChatEvent> events) {
+		String[] messages = new String[events.size()];
+		int[] startIndexes = new int[events.size()];
+		StringBuilder appendText = new StringBuilder(events.size() * 80);
+		int appendStart = 0;
+		boolean isAwayListChanged = false;
 
 		// synchronize on chatConsole so the scrolling will be handled
 		// appropriately if there are multiple events being
@@ -587,41 +632,58 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			if (chatConsole.isDisposed()) {
 				return;
 			}
-			
-			if (event.getType() == ChatType.CHANNEL_TELL)
-				event = (chatEventQueue.size()==0) ? event 
-						: chatEventQueue.poll();
 
-			String messageText = filterText(event.getMessage());
-			String date = "";
+			SimpleDateFormat format = null;
 			if (Raptor.getInstance().getPreferences()
 					.getBoolean(CHAT_TIMESTAMP_CONSOLE)) {
-				SimpleDateFormat format = new SimpleDateFormat(Raptor
-						.getInstance().getPreferences()
+				format = new SimpleDateFormat(Raptor.getInstance()
+						.getPreferences()
 						.getString(CHAT_TIMESTAMP_CONSOLE_FORMAT));
-				date = format.format(new Date(event.getTime()));
-			} else {
-				messageText = RaptorStringUtils
-						.removeBeginingNewlines(messageText);
 			}
-			// There use to be an else {messageText = messateText.trim();} here.
-			// It was removed to fix Issue 48.
-			// This comment is here just in case someone ever adds it back.
 
-			appendText = (chatConsole.inputText.getCharCount() == 0 ? "" : "\n")
-					+ date + messageText;
-			
-			chatConsole.inputText.append(appendText);
+			appendStart = chatConsole.inputText.getCharCount();
+			for (int i = 0; i < messages.length; i++) {
+				ChatEvent event = events.get(i);
+				if (!ignoreAwayList && event.getType() == ChatType.TELL
+						|| event.getType() == ChatType.PARTNER_TELL) {
+					awayList.add(event);
+					isAwayListChanged = true;
+				}
+
+				String messageText = filterText(event.getMessage());
+				String date = "";
+				if (format != null) {
+					date = format.format(new Date(event.getTime()));
+				} else {
+					messageText = RaptorStringUtils
+							.removeBeginingNewlines(messageText);
+				}
+				// There use to be an else {messageText = messateText.trim();}
+				// here. It was removed to fix Issue 48.
+				// This comment is here just in case someone ever adds it back.
+
+				startIndexes[i] = appendStart + appendText.length();
+				messages[i] = (startIndexes[i] == 0 ? "" : "\n") + date
+						+ messageText;
+				appendText.append(messages[i]);
+			}
 
-			startIndex = chatConsole.inputText.getCharCount()
-					- appendText.length();
+			chatConsole.inputText.append(appendText.toString());
+			ReplayLatencyMonitor.getInstance().onConsoleAppend();
 
 			if (isAutoScrolling) {
 				onForceAutoScroll();
 			}
 		}
 
-		onDecorateInputText(event, appendText, startIndex);
+		if (isAwayListChanged) {
+			adjustAwayButtonEnabled();
+		}
+		for (int i = 0; i < messages.length; i++) {
+			onDecorateInputText(events.get(i), messages[i], startIndexes[i]);
+		}
+		chatConsole.inputText.redrawRange(appendStart, appendText.length(),
+				false);
 		reduceInputTextIfNeeded();
 	}
 
@@ -646,10 +708,16 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	
 	
 	public void onChatEvent(ChatEvent event) {
-		onAppendChatEventToInputText(event);
+		onChatEvents(Collections.singletonList(event));
+	}
+
+	public void onChatEvents(List<ChatEvent> events) {
+		onAppendChatEventsToInputText(events);
 		if (!isIgnoringActions()) {
-			playSounds(event);
-			updateImageIcon(event);
+			for (ChatEvent event : events) {
+				playSounds(event);
+				updateImageIcon(event);
+			}
 		}
 	}
 
@@ -689,21 +757,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 							try {
 								writer = new FileWriter(selected);
                                 writer.append(local.getString("chatConsCont6")).append(String.valueOf(new Date())).append("\n");
-								int i = 0;
-								while (i < chatConsole.getInputText()
-										.getCharCount() - 1) {
-									int endIndex = i + TEXT_CHUNK_SIZE;
-									if (endIndex >= chatConsole.getInputText()
-											.getCharCount()) {
-										endIndex = i
-												+ chatConsole.getInputText()
-														.getCharCount() - i - 1;
-									}
-									String string = chatConsole.getInputText()
-											.getText(i, endIndex);
-									writer.append(string);
-									i = endIndex;
-								}
+								chatConsole.getInputTextContent().write(writer);
 								writer.flush();
 							} catch (Throwable t) {
 								LOG.error("Error writing file: " + selected, t);
@@ -736,53 +790,37 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 								box.setText(local.getString("chatConsCont8"));
 								box.open();
 							} else {
-								boolean foundText = false;
-								String searchStringUpper = searchString
-										.toUpperCase();
-								int start = chatConsole.inputText
-										.getCaretOffset();
-
-								if (start >= chatConsole.inputText
-										.getCharCount()) {
-									start = chatConsole.inputText
-											.getCharCount() - 1;
-								} else if (start - searchStringUpper.length()
-										+ 1 >= 0) {
-									String text = chatConsole.inputText
-											.getText(start - searchStringUpper
-													.length(), start - 1);
-									if (text.equalsIgnoreCase(searchStringUpper)) {
-										start -= searchStringUpper.length();
+								// Continue before the current match, if any.
+								Point selection = chatConsole.inputText
+										.getSelection();
+								int start = selection.x != selection.y ? selection.x
+										: chatConsole.inputText.getCaretOffset();
+								ChatConsoleContent content = chatConsole
+										.getInputTextContent();
+								int index = content.lastIndexOfIgnoreCase(
+										searchString, start - 1);
+								if (index == -1) {
+									// Continue in the history, and bring the
+									// match back into the widget.
+									ChatConsoleHistory history = content
+											.getHistory();
+									int historyCount = history.getCharCount();
+									int historyIndex = history
+											.lastIndexOfIgnoreCase(
+													searchString,
+													historyCount - 1);
+									if (historyIndex != -1) {
+										int restored = content
+												.restore(historyCount
+														- historyIndex);
+										index = historyIndex
+												- (historyCount - restored);
 									}
 								}
-
-								while (start > 0) {
-									int charsBack = 0;
-									if (start - TEXT_CHUNK_SIZE > 0) {
-										charsBack = TEXT_CHUNK_SIZE;
-									} else {
-										charsBack = start;
-									}
-
-									String stringToSearch = chatConsole.inputText
-											.getText(start - charsBack, start)
-											.toUpperCase();
-									int index = stringToSearch
-											.lastIndexOf(searchStringUpper);
-									if (index != -1) {
-										int textStart = start - charsBack
-												+ index;
-										chatConsole.inputText.setSelection(
-												textStart, textStart
-														+ searchStringUpper
-																.length());
-										foundText = true;
-										break;
-									}
-									start -= charsBack;
-								}
-
-								if (!foundText) {
+								if (index != -1) {
+									chatConsole.inputText.setSelection(index,
+											index + searchString.length());
+								} else {
 									MessageBox box = new MessageBox(chatConsole
 											.getShell(), SWT.ICON_INFORMATION
 											| SWT.OK);
@@ -1144,20 +1182,16 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 					.getLine(chatConsole.inputText
 							.getLineAtOffset(caretPosition));
 
-			connector.getChatService().getChatLogger()
-					.parseFile(new ChatEventParseListener() {
-
-						public boolean onNewEventParsed(ChatEvent event) {
-							if (event.getMessage().contains(line)) {
-								parameterMap.put("chatEvent", event);
-								return false;
-							}
-							return true;
-						}
-
-						public void onParseCompleted() {
-						}
-					});
+			ChatLogger logger = connector.getChatService().getChatLogger();
+			ChatQuery query = new ChatQuery();
+			query.setText(line);
+			query.setFromTime(logger.getSessionStartTime());
+			for (ChatEvent event : logger.search(query)) {
+				if (event.getMessage().contains(line)) {
+					parameterMap.put("chatEvent", event);
+					break;
+				}
+			}
 			parameterMap.put("selection", message);
 
 			if (parameterMap.containsKey("chatEvent")) {
@@ -1298,48 +1332,6 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		setToolItemEnabled(ToolBarItemKey.AWAY_BUTTON, !awayList.isEmpty());
 	}
 
-	protected void decorateBugWhoLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if ((event.getType() == ChatType.BUGWHO_ALL || event.getType() == ChatType.BUGWHO_GAMES)
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-			// Currently this will only work with FICS games messages that are
-			// in bugwho games format.
-			List<int[]> linkRanges = new ArrayList<int[]>(5);
-
-			int lastNewlineIndex = 0;
-			int newLineIndex = 0;
-			while ((newLineIndex = message.indexOf('\n', lastNewlineIndex + 1)) != -1) {
-				String line = message.substring(lastNewlineIndex + 1,
-						newLineIndex).trim();
-				if (StringUtils.isNotBlank(line)
-						&& (line.contains("W:") || line.contains("B:"))) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (NumberUtils.isDigits(firstWord)) {
-							linkRanges.add(new int[] { lastNewlineIndex + 1,
-									newLineIndex });
-						}
-					}
-				}
-				lastNewlineIndex = newLineIndex;
-			}
-
-			// skip the last line
-
-			// add all the ranges that were found.
-			for (int[] linkRange : linkRanges) {
-				StyleRange range = new StyleRange(textStartPosition
-						+ linkRange[0], linkRange[1] - linkRange[0],
-						getPreferences().getColor(event),
-						chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
-		}
-	}
-
 	protected void decorateForegroundColor(ChatEvent event, String message,
 			int textStartPosition) {
 		Color color = getPreferences().getColor(event);
@@ -1352,582 +1344,29 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			message = message.substring(0, message.length() - prompt.length());
 		}
 
-		chatConsole.inputText
-				.setStyleRange(new StyleRange(textStartPosition, message
-						.length(), color, chatConsole.inputText.getBackground()));
-	}
-
-	protected void decorateGameNotifyLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() == ChatType.UNKNOWN
-				&& (message.startsWith("\nGame notification: ") || message
-						.startsWith("Game notification: "))
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-			// Currently this will only work with FICS games messages that
-			// are
-			// formatted like this:
-			// Game notification: sgs (1567) vs. FireFics (1416) rated
-			// bughouse 3 0: Game 182
-
-			int startIndex = message.indexOf("Game notification:");
-			int endIndex = -1;
-			for (int i = startIndex; i < message.length(); i++) {
-				if (!Character.isWhitespace(message.charAt(i))) {
-					endIndex = i;
-				}
-			}
-
-			if (endIndex != -1) {
-				StyleRange range = new StyleRange(textStartPosition
-						+ startIndex, (endIndex - startIndex) + 1,
-						getPreferences().getColor(event),
-						chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
-		}
-	}
-
-	protected void decorateGamesLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() == ChatType.GAMES
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-			// Currently this will only work with FICS games messages that are
-			// formatted like this:
-			// 200 1878 InsaneMania 1747 jova [ br 5 0] 3:51 - 3:57 (32-31) B:
-			// 19
-			// 17 1787 Ymar 1842 slapsky [ br 3 0] 1:36 - 1:42 (32-31) W: 21
-			// 27 1736 PoindexterI 1940 noexplode [ Br 2 0] 1:14 - 0:59 (27-25)
-			// W: 30
-			// 171 1729 bugowner 1889 yolin [ Br 2 0] 1:23 - 0:56 (51-53) W: 18
-			// 38 2297 plink 1364 CruzerC [ sr 15 0] 15:00 - 14:53 (39-39) B: 5
-			// 39 1866 celu 1821 Timoka [ br 3 0] 2:31 - 2:22 (35-35) B: 12
-			// 217 1867 BRUZLEE 1858 ianleewc [ bu 3 1] 2:26 - 2:50 (35-35) W:
-			// 13
-			// 54 1648 nemotyro 2098 dfgordon [ sr 20 5] 12:48 - 20:02 (34-34)
-			// W: 13
-			// 94 1867 Kobac 1911 Benyz [ sr 6 15] 0:10 - 1:18 (31-30) W: 24
-			// 201 1759 kecapi 2027 BenWeaver [ sr 15 0] 13:27 - 11:54 (26-26)
-			// B: 15
-			// 85 1886 report 1902 lakelandch [ br 3 0] 2:08 - 1:53 (32-32) B:
-			// 18
-			// 90 1832 lapham 1993 berkutchi [ br 3 0] 1:32 - 1:28 (28-27) B: 21
-			// 247 1830 Gurkan 2001 FDog [ sr 20 10] 19:43 - 18:05 (38-38) B: 8
-			// 129 2049 tentacle 2062 RuReti [ br 5 12] 0:08 - 11:03 ( 5- 5) W:
-			// 113
-			// 81 2041 IMgooeyjim 2079 iseeo [ sr 15 0] 12:21 - 10:58 (35-34) W:
-			// 18
-			// 64 2147 ragez 2127 wxvr [ br 3 0] 1:23 - 1:34 (17-17) B: 29
-			// 6 2207 owlce 2073 parrot [ br 5 0] 3:35 - 3:17 (30-27) B: 29
-			// 110 2168 Zeck 2153 Mori [ zr 2 0] 1:34 - 1:38 (39-39) W: 12
-			// 45 2228 Ukimix 2217 GrandLapin [ xr 3 1] 1:28 - 0:10 (23-22) W:
-			// 18
-			// 230 2765 Hephasto 2690 Angledust [ sr 15 0] 12:28 - 12:18 (28-27)
-			// B: 21
-			//
-			// 262 games displayed.
-
-			List<int[]> linkRanges = new ArrayList<int[]>(5);
-
-			int lastNewlineIndex = 0;
-			int newLineIndex = 0;
-			while ((newLineIndex = message.indexOf('\n', lastNewlineIndex + 1)) != -1) {
-				String line = message.substring(lastNewlineIndex + 1,
-						newLineIndex).trim();
-				if (StringUtils.isNotBlank(line)
-						&& (line.contains("W:") || line.contains("B:"))) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (NumberUtils.isDigits(firstWord)) {
-							linkRanges.add(new int[] { lastNewlineIndex + 1,
-									newLineIndex });
-						}
-					}
-				}
-				lastNewlineIndex = newLineIndex;
-			}
-
-			// skip the last line
-
-			// add all the ranges that were found.
-			for (int[] linkRange : linkRanges) {
-				StyleRange range = new StyleRange(textStartPosition
-						+ linkRange[0], linkRange[1] - linkRange[0],
-						getPreferences().getColor(event),
-						chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
-		}
-	}
-
-	protected void decorateHistoryLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() == ChatType.HISTORY
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-
-			// Currently this will only work with FICS historys that are
-			// formatted like this:
-			// History for CDay:
-			// Opponent Type ECO End Date
-			// 54: - 1850 W 1756 rsherry [ zr 2 0] --- Fla Fri Dec 25, 19:44 EST
-			// 2009
-			// 55: - 1796 B 1522 Bogg [ Br 2 0] --- Mat Fri Dec 25, 19:52 EST
-			// 2009
-			// 56: + 1803 W 1515 Bogg [ Br 2 0] --- Mat Fri Dec 25, 19:55 EST
-			// 2009
-			// 57: + 1807 B 2029 Betzero [ Br 2 0] --- Mat Fri Dec 25, 19:57 EST
-			// 2009
-			// 58: + 1811 W 2025 Betzero [ Br 2 0] --- Mat Fri Dec 25, 19:59 EST
-			// 2009
-			// 59: + 1815 B 2021 Betzero [ Br 2 0] --- PW Fri Dec 25, 20:02 EST
-			// 2009
-			// 60: + 1819 W 2017 Betzero [ Br 2 0] --- Res Fri Dec 25, 20:05 EST
-			// 2009
-			// 61: + 1822 B 1514 rsherry [ Br 2 0] --- PW Fri Dec 25, 20:32 EST
-			// 2009
-			// 62: + 1825 W 1511 rsherry [ Br 2 0] --- PW Fri Dec 25, 20:35 EST
-			// 2009
-			// 63: + 1828 B 1508 rsherry [ Br 2 0] --- Mat Fri Dec 25, 20:37 EST
-			// 2009
-
-			List<int[]> linkRanges = new ArrayList<int[]>(5);
-
-			int lastNewlineIndex = 0;
-			int newLineIndex = 0;
-			while ((newLineIndex = message.indexOf('\n', lastNewlineIndex + 1)) != -1) {
-				String line = message.substring(lastNewlineIndex + 1,
-						newLineIndex).trim();
-				if (StringUtils.isNotBlank(line)) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (firstWord.endsWith(":")) {
-							firstWord = firstWord.substring(0,
-									firstWord.length() - 1);
-							if (NumberUtils.isDigits(firstWord)) {
-								linkRanges.add(new int[] {
-										lastNewlineIndex + 1, newLineIndex });
-							}
-						}
-					}
-				}
-				lastNewlineIndex = newLineIndex;
-			}
-
-			// handle the last line.
-			if (lastNewlineIndex != 0) {
-				String line = message.substring(lastNewlineIndex + 1,
-						message.length()).trim();
-				if (StringUtils.isNotBlank(line)) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (firstWord.endsWith(":")) {
-							firstWord = firstWord.substring(0,
-									firstWord.length() - 1);
-							if (NumberUtils.isDigits(firstWord)) {
-								linkRanges
-										.add(new int[] { lastNewlineIndex + 1,
-												message.length() });
-							}
-						}
-					}
-				}
-			}
-
-			// add all the ranges that were found.
-			for (int[] linkRange : linkRanges) {
-				StyleRange range = new StyleRange(textStartPosition
-						+ linkRange[0], linkRange[1] - linkRange[0],
-						getPreferences().getColor(event),
-						chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
-		}
-	}
-
-	protected void decorateJournalLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() == ChatType.JOURNAL
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-
-			// Currently this will only work with FICS journals that are
-			// formatted like this:
-			// Journal for CDay:
-			// White Rating Black Rating Type ECO End Result
-			// %01: MarkG 1639 CDay 1690 [ br 5 0] C11 Res 0-1
-			// %02: CDay 1724 cbu 1857 [ br 5 0] C30 Res 1-0
-			// %03: CDay 1630 sonareclipse 1727 [ br 5 0] B23 Fla 1-0
-			// %04: Drukkarg 1788 TheRaven 2060 [ Br 2 0] --- Res 1-0
-			// %05: Liverppol 1481 BillJr 1472 [ Br 2 0] --- Fla 1-0
-			// %06: CDay 1795 caspiwins 1735 [ Br 2 0] --- PW 0-1
-			// %09: nomaster 1710 CDay 1589 [ br 3 0] B06 Fla 1-0
-			// %11: CDay 2082 Flesh 2183 [ zr 1 0] --- Mat 1-0
-			// %12: Morteza 1787 Rusman 1552 [ Br 2 0] --- Res 0-1
-			// %13: JellyRoll 1751 CDay 1758 [ Br 2 0] --- PW 1-0
-			// %14: CDay 1674 pacancabal 1662 [ br 5 0] B03 Res 1-0
-			// %15: CDay 1666 borisak 1606 [ br 5 0] B90 Res 1-0
-
-			List<int[]> linkRanges = new ArrayList<int[]>(5);
-
-			int lastNewlineIndex = 0;
-			int newLineIndex = 0;
-			while ((newLineIndex = message.indexOf('\n', lastNewlineIndex + 1)) != -1) {
-				String line = message.substring(lastNewlineIndex + 1,
-						newLineIndex);
-				if (StringUtils.isNotBlank(line)) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (firstWord.endsWith(":")) {
-							firstWord = firstWord.substring(1,
-									firstWord.length() - 1);
-							if (NumberUtils.isDigits(firstWord)) {
-								firstWord = firstWord.substring(0,
-										firstWord.length() - 1);
-								if (NumberUtils.isDigits(firstWord)) {
-
-									int lastIndex = newLineIndex;
-									while (Character.isWhitespace(message
-											.charAt(lastIndex))) {
-										lastIndex--;
-									}
-									linkRanges
-											.add(new int[] {
-													lastNewlineIndex + 1,
-													lastIndex + 1 });
-								}
-							}
-						}
-					}
-				}
-				lastNewlineIndex = newLineIndex;
-			}
-
-			// handle the last line.
-			if (lastNewlineIndex != 0) {
-				String line = message.substring(lastNewlineIndex + 1,
-						message.length());
-				if (StringUtils.isNotBlank(line)) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (firstWord.endsWith(":")) {
-							firstWord = firstWord.substring(1,
-									firstWord.length() - 1);
-							if (NumberUtils.isDigits(firstWord)) {
-								int lastIndex = message.length() - 1;
-								while (Character.isWhitespace(message
-										.charAt(lastIndex))) {
-									lastIndex--;
-								}
-								linkRanges.add(new int[] {
-										lastNewlineIndex + 1, lastIndex + 1 });
-							}
-						}
-					}
-				}
-			}
-
-			// add all the ranges that were found.
-			for (int[] linkRange : linkRanges) {
-				StyleRange range = new StyleRange(textStartPosition
-						+ linkRange[0], linkRange[1] - linkRange[0],
-						getPreferences().getColor(event),
-						chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
-		}
-	}
-
-	protected void decorateLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() != ChatType.OUTBOUND
-				&& getPreferences().getBoolean(CHAT_UNDERLINE_URLS)
-				&& event.getType() != ChatType.GAMES
-				&& event.getType() != ChatType.BUGWHO_ALL
-				&& event.getType() != ChatType.BUGWHO_GAMES
-				&& event.getType() != ChatType.BUGWHO_AVAILABLE_TEAMS
-				&& event.getType() != ChatType.BUGWHO_UNPARTNERED_BUGGERS
-				&& !message.endsWith("(*) indicates system administrator.")) {
-			List<int[]> linkRanges = new ArrayList<int[]>(5);
-			
-			// First check http://,https://,www.
-			int startIndex = message.indexOf("http://");
-			if (startIndex == -1) {
-				startIndex = message.indexOf("https://");
-				if (startIndex == -1) {
-					startIndex = message.indexOf("www.");
-				}
-			}
-			while (startIndex != -1 && startIndex < message.length()) {
-				int endIndex = startIndex + 1;
-				while (endIndex < message.length()) {
-
-					// On ICS servers line breaks follow the convention \n\\
-					// This code underlines links that have line breaks in
-					// them.
-					if (message.charAt(endIndex) == '\n'
-							&& message.length() > endIndex + 1
-							&& message.charAt(endIndex + 1) == '\\') {
-						endIndex += 2;
-
-						// Move past the white space and then continue on
-						// with
-						// the
-						// main loop.
-						while (endIndex < message.length()
-								&& Character.isWhitespace(message
-										.charAt(endIndex))) {
-							endIndex++;
-						}
-						continue;
-					} else if (Character.isWhitespace(message.charAt(endIndex))) {
-						break;
-					}
-					endIndex++;
-				}
-
-				if (message.charAt(endIndex - 1) == '.') {
-					endIndex--;
-				}
-
-				linkRanges.add(new int[] { startIndex, endIndex });
-
-				startIndex = message.indexOf("http://", endIndex + 1);
-				if (startIndex == -1) {
-					startIndex = message.indexOf("https://", endIndex + 1);
-					if (startIndex == -1) {
-						startIndex = message.indexOf("www.", endIndex + 1);
-					}
-				}
-			}
-
-			// this string builder is used in order to get the matched domain from getEndIndexOfUrl()
-			StringBuilder dom = new StringBuilder();
-			
-			// Next check ending with .com,.org,.edu...
-			int endIndex = ChatUtils.getEndIndexOfUrl(startIndex, linkRanges, message, dom);			
-			
-			int linkEnd = endIndex + dom.length()-1;
-			if (message.charAt(linkEnd) == '/') {
-				// the link of type code.google.com/p/raptor-chess-interface
-				for (; linkEnd < message.length() && !Character.isWhitespace(message.charAt(linkEnd)); linkEnd++);
-			}
-			
-			while (endIndex != -1) {
-				startIndex = endIndex--;
-				while (startIndex >= 0) {
-					// On ICS servers line breaks follow the convention \n\\
-					// This code underlines links that have line breaks in
-					// them.
-					if (Character.isWhitespace(message.charAt(startIndex))) {
-						break;
-					}
-					startIndex--;
-				}
-
-				// Filter out emails.
-				int atIndex = message.indexOf('@', startIndex);
-				if (atIndex == -1 || atIndex > linkEnd) {
-					linkRanges.add(new int[] { startIndex + 1, linkEnd });
-				}
-
-				dom = new StringBuilder();
-				endIndex = ChatUtils.getEndIndexOfUrl(startIndex, linkRanges, message, linkEnd+1, dom);	
-				
-				linkEnd = endIndex + dom.length()-1;
-			}
-
-			// add all the ranges that were found.
-			for (int[] linkRange : linkRanges) {
-				Color underlineColor = chatConsole.getPreferences().getColor(
-						CHAT_LINK_UNDERLINE_COLOR);
-				StyleRange range = new StyleRange(textStartPosition
-						+ linkRange[0], linkRange[1] - linkRange[0],
-						underlineColor, chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
-		}
+		chatConsole.getInputTextContent().setStyleRange(
+				new StyleRange(textStartPosition, message.length(), color,
+						chatConsole.inputText.getBackground()));
 	}
 
-	protected void decorateNewsLinks(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() == ChatType.UNKNOWN
-				&& isPossibleNewsMessage(message)
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-			// Currently this will only work with FICS messages that contain:
-			// Index of the last few news items:
-			// 1371 (Tue, Jun 23) www.ficsgames.com is back online
-			// 1378 (Fri, Aug 28) Unofficial Fics Forum
-			// 1383 (Sun, Oct 4) mamer help files now available in French
-			// 1390 (Sat, Nov 14) 1 hour waiting period for adjudications
-			// 1391 (Wed, Nov 18) FICS on Facebook
-			// 1392 (Sat, Nov 21) Torrent available with 100,000,000 FICS games
-			// 1393 (Fri, Dec 4) 1^ OTB OpenChessCup
-			// 1394 (Sat, Dec 5) ChessLecture Prize Tourney No Longer a Daily
-			// Event
-			// 1396 (Tue, Dec 22) Adjudications working again.
-			// 1397 (Thu, Dec 24) Merry Christmas!
-
-			List<int[]> linkRanges = new ArrayList<int[]>(5);
-
-			int lastNewlineIndex = 0;
-			int newLineIndex = 0;
-			while ((newLineIndex = message.indexOf('\n', lastNewlineIndex + 1)) != -1) {
-				String line = message.substring(lastNewlineIndex + 1,
-						newLineIndex).trim();
-				if (StringUtils.isNotBlank(line)
-						&& (line.contains("(") || line.contains(")"))
-						&& !line.contains("W:") && !line.contains("B:")) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (NumberUtils.isDigits(firstWord)) {
-							linkRanges.add(new int[] { lastNewlineIndex + 1,
-									newLineIndex });
-						}
-					}
-				}
-				lastNewlineIndex = newLineIndex;
-			}
-
-			// handle the last line.
-			if (lastNewlineIndex != 0) {
-				String line = message.substring(lastNewlineIndex + 1,
-						message.length()).trim();
-				if (StringUtils.isNotBlank(line)
-						&& (line.contains("(") || line.contains(")"))
-						&& !line.contains("W:") && !line.contains("B:")) {
-					int spaceIndex = line.indexOf(' ');
-					if (spaceIndex != -1) {
-						String firstWord = line.substring(0, spaceIndex);
-						if (NumberUtils.isDigits(firstWord)) {
-							linkRanges.add(new int[] { lastNewlineIndex + 1,
-									message.length() });
-						}
-					}
-				}
-			}
-
-			// add all the ranges that were found.
-			for (int[] linkRange : linkRanges) {
-				StyleRange range = new StyleRange(textStartPosition
-						+ linkRange[0], linkRange[1] - linkRange[0],
-						getPreferences().getColor(event),
-						chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
+	/**
+	 * Appends every pending chat event. Runs on the UI thread. The flag is
+	 * cleared before draining, so an event queued during the drain schedules
+	 * another flush rather than waiting for the next burst.
+	 */
+	protected void flushPendingChatEvents() {
+		isFlushScheduled.set(false);
+		if (isDisposed || chatConsole.isDisposed()) {
+			pendingChatEvents.clear();
+			return;
 		}
-	}
-
-	protected void decorateQuotes(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() != ChatType.OUTBOUND) {
-			boolean isUnderliningSingleQuotes = getPreferences().getBoolean(
-					CHAT_UNDERLINE_SINGLE_QUOTES);
-			boolean isUnderliningDoubleQuotes = getPreferences().getBoolean(
-					CHAT_UNDERLINE_QUOTED_TEXT);
-
-			if (!isUnderliningSingleQuotes && !isUnderliningDoubleQuotes) {
-				return;
-			}
-
-			List<int[]> quotedRanges = new ArrayList<int[]>(5);
-
-			int quoteIndex = !isUnderliningDoubleQuotes ? -1 : message
-					.indexOf('\"');
-			if (quoteIndex == -1 && isUnderliningSingleQuotes) {
-				quoteIndex = message.indexOf('\'');
-			}
-
-			while (quoteIndex != -1) {
-				int endQuote = !isUnderliningDoubleQuotes ? -1 : message
-						.indexOf('\"', quoteIndex + 1);
-				if (endQuote == -1 && isUnderliningSingleQuotes) {
-					endQuote = message.indexOf('\'', quoteIndex + 1);
-				}
-
-				if (endQuote == -1) {
-					break;
-				} else {
-					if (quoteIndex + 1 != endQuote) {
-
-						// If there is a newline between the quotes ignore
-						// it.
-						int newLine = message.indexOf('\n', quoteIndex);
-
-						// If there is just one character and the a space
-						// after
-						// the
-						// first quote ignore it.
-						boolean isASpaceTwoCharsAfterQuote = message
-								.charAt(quoteIndex + 2) == ' ';
-
-						// If the quotes dont match ignore it.
-						boolean doQuotesMatch = message.charAt(quoteIndex) == message
-								.charAt(endQuote);
-
-						if (!(newLine > quoteIndex && newLine < endQuote)
-								&& !isASpaceTwoCharsAfterQuote && doQuotesMatch) {
-							quotedRanges.add(new int[] { quoteIndex + 1,
-									endQuote });
-
-						}
-					}
-				}
-
-				quoteIndex = !isUnderliningDoubleQuotes ? -1 : message.indexOf(
-                        '\"', endQuote + 1);
-				if (quoteIndex == -1 && isUnderliningSingleQuotes) {
-					quoteIndex = message.indexOf('\'', endQuote + 1);
-				}
-			}
-
-			for (int[] quotedRange : quotedRanges) {
-				Color underlineColor = chatConsole.getPreferences().getColor(
-						CHAT_QUOTE_UNDERLINE_COLOR);
-				StyleRange range = new StyleRange(textStartPosition
-						+ quotedRange[0], quotedRange[1] - quotedRange[0],
-						underlineColor, chatConsole.inputText.getBackground());
-				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
-			}
+		List<ChatEvent> events = new ArrayList<ChatEvent>();
+		ChatEvent event = null;
+		while ((event = pendingChatEvents.poll()) != null) {
+			events.add(event);
 		}
-	}
-
-	protected void decoreateNext(ChatEvent event, String message,
-			int textStartPosition) {
-		if (event.getType() != ChatType.OUTBOUND
-				&& getPreferences().getBoolean(
-						PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
-			List<int[]> nextRanges = new ArrayList<int[]>(5);
-
-			int nextIndex = message.indexOf("[next]");
-			while (nextIndex != -1) {
-				nextRanges.add(new int[] { nextIndex, nextIndex + 6 });
-				nextIndex = message.indexOf("[next]", nextIndex + 1);
-			}
-
-			for (int[] nextRange : nextRanges) {
-				Color underlineColor = chatConsole.getPreferences().getColor(
-						CHAT_QUOTE_UNDERLINE_COLOR);
-				StyleRange range = new StyleRange(textStartPosition
-						+ nextRange[0], nextRange[1] - nextRange[0],
-						underlineColor, chatConsole.inputText.getBackground());
-				chatConsole.inputText.setStyleRange(range);
-			}
+		if (!events.isEmpty()) {
+			onChatEvents(events);
 		}
 	}
 
@@ -1955,33 +1394,64 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		return result;
 	}	
 
-	protected boolean isPossibleNewsMessage(String message) {
-		return message.startsWith("Index of news items ")
-				|| message.startsWith("Index of news items ", 1)
-				|| message.startsWith("Index of all news items:")
-				|| message.startsWith("Index of all news items:", 1)
-				|| message.startsWith("Index of the last few news items:")
-				|| message.contains("\nIndex of the last few news items:")
-				|| message.startsWith("\nIndex of new news items:")
-				|| message.startsWith("\nIndex of new news items:", 1)
-				|| message.contains("\nIndex of new news items:");
+	/**
+	 * Returns the ChatDecorations flags matching the chat preferences.
+	 */
+	protected int getDecorationFlags() {
+		int result = 0;
+		if (getPreferences().getBoolean(PreferenceKeys.CHAT_UNDERLINE_COMMANDS)) {
+			result |= ChatDecorations.UNDERLINE_COMMANDS;
+		}
+		if (getPreferences().getBoolean(CHAT_UNDERLINE_URLS)) {
+			result |= ChatDecorations.UNDERLINE_URLS;
+		}
+		if (getPreferences().getBoolean(CHAT_UNDERLINE_QUOTED_TEXT)) {
+			result |= ChatDecorations.UNDERLINE_QUOTED_TEXT;
+		}
+		if (getPreferences().getBoolean(CHAT_UNDERLINE_SINGLE_QUOTES)) {
+			result |= ChatDecorations.UNDERLINE_SINGLE_QUOTES;
+		}
+		return result;
 	}
 
 	protected void onDecorateInputText(final ChatEvent event,
 			final String message, final int textStartPosition) {
 		decorateForegroundColor(event, message, textStartPosition);
-		decoreateNext(event, message, textStartPosition);
-		decorateHistoryLinks(event, message, textStartPosition);
-		decorateGamesLinks(event, message, textStartPosition);
-		decorateJournalLinks(event, message, textStartPosition);
-		decorateBugWhoLinks(event, message, textStartPosition);
-		decorateNewsLinks(event, message, textStartPosition);
-		decorateGameNotifyLinks(event, message, textStartPosition);
-
-		// Decorate these last. They might override others.
-		decorateQuotes(event, message, textStartPosition);
-		decorateLinks(event, message, textStartPosition);
 
+		ChatDecorations decorations = ChatDecorations.get(event, message,
+				getDecorationFlags());
+		if (decorations.getCount() == 0) {
+			return;
+		}
+		ChatConsoleContent content = chatConsole.getInputTextContent();
+		Color background = chatConsole.inputText.getBackground();
+		Color commandColor = getPreferences().getColor(event);
+		Color linkColor = getPreferences().getColor(CHAT_LINK_UNDERLINE_COLOR);
+		Color quoteColor = getPreferences()
+				.getColor(CHAT_QUOTE_UNDERLINE_COLOR);
+		for (int i = 0; i < decorations.getCount(); i++) {
+			StyleRange range = new StyleRange(textStartPosition
+					+ decorations.getStart(i), decorations.getLength(i), null,
+					background);
+			switch (decorations.getStyle(i)) {
+			case COMMAND:
+				range.foreground = commandColor;
+				range.underline = true;
+				break;
+			case LINK:
+				range.foreground = linkColor;
+				range.underline = true;
+				break;
+			case QUOTE:
+				range.foreground = quoteColor;
+				range.underline = true;
+				break;
+			case NEXT:
+				range.foreground = quoteColor;
+				break;
+			}
+			content.setStyleRange(range);
+		}
 	}
 
 	protected void onInputTextDoubleClick(MouseEvent e) {
@@ -2356,26 +1826,52 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		}
 	}
 
+	/**
+	 * Moves the oldest lines of the console to its history once it holds more
+	 * than the CHAT_MAX_CONSOLE_CHARS preference. The lines being viewed and
+	 * HISTORY_MARGIN_LINES above them stay in the widget, and the view does
+	 * not move.
+	 */
 	protected void reduceInputTextIfNeeded() {
-
-		int charCount = chatConsole.inputText.getCharCount();
-		if (charCount > Raptor.getInstance().getPreferences()
-				.getInt(CHAT_MAX_CONSOLE_CHARS)) {
+		ChatConsoleContent content = chatConsole.getInputTextContent();
+		int cleanTo = content.getReduceOffset(Raptor.getInstance()
+				.getPreferences().getInt(CHAT_MAX_CONSOLE_CHARS));
+		int topIndex = chatConsole.inputText.getTopIndex();
+		cleanTo = Math.min(cleanTo, content.getOffsetAtLine(Math.max(0,
+				topIndex - HISTORY_MARGIN_LINES)));
+		if (cleanTo > 0) {
 			LOG.info("Cleaning chat console");
 			long startTime = System.currentTimeMillis();
-			int cleanTo = (int) (charCount * CLEAN_PERCENTAGE);
-			int lineNumber = chatConsole.inputText.getContent()
-					.getLineAtOffset(cleanTo);
-			cleanTo = chatConsole.inputText.getContent().getOffsetAtLine(
-					lineNumber++);
-			chatConsole.inputText.replaceTextRange(0, cleanTo, "");
+			int topOffset = content.getOffsetAtLine(topIndex);
+			content.archive(cleanTo);
 			setCaretToOutputTextEnd();
-			onForceAutoScroll();
+			if (isAutoScrolling) {
+				onForceAutoScroll();
+			} else {
+				chatConsole.inputText.setTopIndex(content
+						.getLineAtOffset(topOffset - cleanTo));
+			}
 			LOG.info("Cleaned console in "
 					+ (System.currentTimeMillis() - startTime));
 		}
 	}
 
+	/**
+	 * Moves a page of the console's history back into the widget if the
+	 * first line is at the top of the view, keeping the view where it is.
+	 */
+	protected void restoreHistoryIfNeeded() {
+		ChatConsoleContent content = chatConsole.getInputTextContent();
+		if (chatConsole.isDisposed()
+				|| chatConsole.inputText.getTopIndex() != 0
+				|| content.getHistory().getCharCount() == 0) {
+			return;
+		}
+		int lineCount = content.getLineCount();
+		content.restore(ChatConsoleContent.HISTORY_PAGE_CHARS);
+		chatConsole.inputText.setTopIndex(content.getLineCount() - lineCount);
+	}
+
 	protected void registerForChatEvents() {
 		if (this instanceof MainController) {
 			connector.getChatService().addMainConsoleListener(
@@ -2411,6 +1907,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			chatConsole.inputText.removeMouseListener(inputTextClickListener);
 			chatConsole.inputText.getVerticalBar().removeSelectionListener(
 					verticalScrollbarListener);
+			chatConsole.inputText.removePaintListener(inputTextPaintListener);
 		}
 	}
 
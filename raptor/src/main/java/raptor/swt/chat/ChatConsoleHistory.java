@@ -0,0 +1,257 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import raptor.util.RaptorLogger;
+
+/**
+ * The part of a chat console's text which no longer fits in the widget, kept
+ * so scrolling back, searching and saving cover the whole session.
+ * 
+ * Text is written to a temporary file, two bytes per char so an offset maps
+ * directly to a file position. The styles of the text are kept in memory as
+ * runs, like ChatConsoleContent keeps them, referring to ChatConsoleContent's
+ * table of distinct styles. Text is only added and removed at the end, as
+ * ChatConsoleContent moves lines out of and back into the widget.
+ * 
+ * If the file can not be written the text is dropped and logged, and the
+ * console continues without it.
+ * 
+ * This class is not thread safe. Use it from the SWT thread, like the widget.
+ */
+public class ChatConsoleHistory {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ChatConsoleHistory.class);
+
+	protected static final int BLOCK_CHARS = 32768;
+
+	protected RandomAccessFile file;
+	protected File path;
+	protected int charCount;
+	protected boolean isFailed;
+
+	protected int[] runStarts = new int[256];
+	protected int[] runLengths = new int[256];
+	protected int[] runStyles = new int[256];
+	protected int runCount;
+
+	/**
+	 * Adds a style run to the end of the history. Runs must be added in
+	 * order, after the text they cover has been appended.
+	 */
+	public void addRun(int start, int length, int style) {
+		if (runCount > 0 && runStyles[runCount - 1] == style
+				&& runStarts[runCount - 1] + runLengths[runCount - 1] == start) {
+			runLengths[runCount - 1] += length;
+			return;
+		}
+		runStarts = ChatConsoleContent.grow(runStarts, runCount + 1);
+		runLengths = ChatConsoleContent.grow(runLengths, runCount + 1);
+		runStyles = ChatConsoleContent.grow(runStyles, runCount + 1);
+		runStarts[runCount] = start;
+		runLengths[runCount] = length;
+		runStyles[runCount] = style;
+		runCount++;
+	}
+
+	/**
+	 * Appends text to the end of the history. Returns false if it could not be
+	 * kept.
+	 */
+	public boolean append(String text) {
+		if (isFailed) {
+			return false;
+		}
+		try {
+			if (file == null) {
+				path = File.createTempFile("raptor-console", ".tmp");
+				path.deleteOnExit();
+				file = new RandomAccessFile(path, "rw");
+			}
+			byte[] bytes = new byte[text.length() * 2];
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				bytes[i * 2] = (byte) (c >>> 8);
+				bytes[i * 2 + 1] = (byte) c;
+			}
+			file.seek((long) charCount * 2);
+			file.write(bytes);
+			charCount += text.length();
+			return true;
+		} catch (IOException ioe) {
+			LOG.error("Error writing console history, it will not be kept.",
+					ioe);
+			isFailed = true;
+			dispose();
+			return false;
+		}
+	}
+
+	/**
+	 * Closes and deletes the file. The history is empty afterwards.
+	 */
+	public void dispose() {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException ioe) {
+			}
+			file = null;
+			path.delete();
+		}
+		charCount = 0;
+		runCount = 0;
+	}
+
+	public int getCharCount() {
+		return charCount;
+	}
+
+	/**
+	 * Returns the index of the first run ending after offset.
+	 */
+	public int getFirstRunEndingAfter(int offset) {
+		int low = 0;
+		int high = runCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (runStarts[middle] + runLengths[middle] <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	public int getRunCount() {
+		return runCount;
+	}
+
+	public int getRunLength(int index) {
+		return runLengths[index];
+	}
+
+	public int getRunStart(int index) {
+		return runStarts[index];
+	}
+
+	public int getRunStyle(int index) {
+		return runStyles[index];
+	}
+
+	/**
+	 * Returns the offset of the start of the line containing offset.
+	 */
+	public int getLineStart(int offset) {
+		int end = Math.min(offset, charCount);
+		while (end > 0) {
+			int start = Math.max(0, end - BLOCK_CHARS);
+			String block = getTextRange(start, end - start);
+			int index = block.lastIndexOf('\n');
+			if (index != -1) {
+				return start + index + 1;
+			}
+			end = start;
+		}
+		return 0;
+	}
+
+	public String getTextRange(int start, int length) {
+		if (length == 0 || file == null) {
+			return "";
+		}
+		try {
+			byte[] bytes = new byte[length * 2];
+			file.seek((long) start * 2);
+			file.readFully(bytes);
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) ((bytes[i * 2] & 0xff) << 8 | bytes[i * 2 + 1] & 0xff);
+			}
+			return new String(chars);
+		} catch (IOException ioe) {
+			throw new RuntimeException("Error reading console history", ioe);
+		}
+	}
+
+	/**
+	 * Returns the offset of the last occurrence of text starting at or before
+	 * fromOffset, ignoring case, or -1 if there is none. The file is read
+	 * backwards a block at a time.
+	 */
+	public int lastIndexOfIgnoreCase(String text, int fromOffset) {
+		int length = text.length();
+		if (length == 0 || length > charCount || fromOffset < 0) {
+			return -1;
+		}
+		int end = Math.min(fromOffset + length, charCount);
+		while (end >= length) {
+			int start = Math.max(0, end - Math.max(BLOCK_CHARS, length));
+			char[] block = getTextRange(start, end - start).toCharArray();
+			for (int offset = block.length - length; offset >= 0; offset--) {
+				int i = 0;
+				while (i < length
+						&& ChatConsoleContent.equalsIgnoreCase(block[offset
+								+ i], text.charAt(i))) {
+					i++;
+				}
+				if (i == length) {
+					return start + offset;
+				}
+			}
+			if (start == 0) {
+				break;
+			}
+			// Overlap the blocks so a match across them is found.
+			end = start + length - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the text from offset to the end, along with its styles.
+	 */
+	public void truncate(int offset) {
+		charCount = offset;
+		int index = getFirstRunEndingAfter(offset);
+		if (index < runCount && runStarts[index] < offset) {
+			runLengths[index] = offset - runStarts[index];
+			index++;
+		}
+		runCount = index;
+		if (file != null) {
+			try {
+				file.setLength((long) offset * 2);
+			} catch (IOException ioe) {
+				LOG.warn("Error truncating console history", ioe);
+			}
+		}
+	}
+
+	/**
+	 * Writes all the text to the writer.
+	 */
+	public void write(Writer writer) throws IOException {
+		for (int start = 0; start < charCount; start += BLOCK_CHARS) {
+			writer.write(getTextRange(start, Math.min(BLOCK_CHARS, charCount
+					- start)));
+		}
+	}
+}
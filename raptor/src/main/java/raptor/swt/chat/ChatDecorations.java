@@ -0,0 +1,513 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chat;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatType;
+
+/**
+ * The ranges of a chat message a console underlines or colors: command links
+ * in history, journal, games, bugwho and news output, URLs, quoted text and
+ * [next] prompts.
+ * 
+ * All ranges are found in one pass over the message. Decorations are cached
+ * for the last few events, so a message shown in several consoles, e.g. the
+ * main console and a channel tab, is only scanned once.
+ * 
+ * Ranges are relative to the message and are listed in the order they
+ * should be applied. Later ranges override earlier ones where they overlap.
+ */
+public class ChatDecorations {
+	/**
+	 * How a range is styled.
+	 */
+	public static enum Style {
+		/**
+		 * Underlined in the color of the event.
+		 */
+		COMMAND,
+		/**
+		 * Underlined in the link color.
+		 */
+		LINK,
+		/**
+		 * Underlined in the quote color.
+		 */
+		QUOTE,
+		/**
+		 * In the quote color.
+		 */
+		NEXT
+	}
+
+	/**
+	 * Flags passed to get, from the corresponding chat preferences.
+	 */
+	public static final int UNDERLINE_COMMANDS = 1;
+	public static final int UNDERLINE_URLS = 2;
+	public static final int UNDERLINE_QUOTED_TEXT = 4;
+	public static final int UNDERLINE_SINGLE_QUOTES = 8;
+
+	protected static final int CACHE_SIZE = 32;
+
+	protected static final String[] TOP_LEVEL_DOMAINS = { "com", "org",
+			"edu", "gov", "uk", "net", "ca", "de", "jp", "fr", "ru", "au",
+			"us", "ch", "it", "nl", "se", "no", "es", "mil" };
+
+	protected static final String NEXT = "[next]";
+	protected static final String GAME_NOTIFICATION = "Game notification:";
+
+	/**
+	 * The kinds of lines linked to commands.
+	 */
+	protected static final int NO_LINES = 0;
+	protected static final int HISTORY_LINES = 1;
+	protected static final int JOURNAL_LINES = 2;
+	protected static final int GAMES_LINES = 3;
+	protected static final int NEWS_LINES = 4;
+
+	protected static final ChatDecorations[] cache = new ChatDecorations[CACHE_SIZE];
+	protected static int nextCacheIndex;
+	protected static long cacheHits;
+	protected static long cacheMisses;
+
+	protected ChatEvent event;
+	protected String message;
+	protected int flags;
+
+	protected int[] starts = new int[8];
+	protected int[] ends = new int[8];
+	protected Style[] styles = new Style[8];
+	protected int count;
+
+	protected ChatDecorations(ChatEvent event, String message, int flags) {
+		this.event = event;
+		this.message = message;
+		this.flags = flags;
+	}
+
+	/**
+	 * Returns the decorations of the message, which is the text of the event
+	 * as it is appended to a console.
+	 * 
+	 * @param flags
+	 *            A combination of the UNDERLINE flags.
+	 */
+	public static ChatDecorations get(ChatEvent event, String message,
+			int flags) {
+		synchronized (cache) {
+			for (ChatDecorations decorations : cache) {
+				if (decorations != null && decorations.event == event
+						&& decorations.flags == flags
+						&& decorations.message.equals(message)) {
+					cacheHits++;
+					return decorations;
+				}
+			}
+		}
+
+		ChatDecorations result = new ChatDecorations(event, message, flags);
+		result.scan();
+
+		synchronized (cache) {
+			cache[nextCacheIndex] = result;
+			nextCacheIndex = (nextCacheIndex + 1) % CACHE_SIZE;
+			cacheMisses++;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a one line summary of the cache hit rate.
+	 */
+	public static String getCacheStatistics() {
+		synchronized (cache) {
+			return "Chat decorations cached: " + cacheHits + " hits "
+					+ cacheMisses + " misses";
+		}
+	}
+
+	/**
+	 * Returns true if the message looks like a FICS news index.
+	 */
+	public static boolean isPossibleNewsMessage(String message) {
+		return message.startsWith("Index of news items ")
+				|| message.startsWith("Index of news items ", 1)
+				|| message.startsWith("Index of all news items:")
+				|| message.startsWith("Index of all news items:", 1)
+				|| message.startsWith("Index of the last few news items:")
+				|| message.contains("\nIndex of the last few news items:")
+				|| message.startsWith("\nIndex of new news items:")
+				|| message.startsWith("\nIndex of new news items:", 1)
+				|| message.contains("\nIndex of new news items:");
+	}
+
+	protected static boolean isDigits(String text, int start, int end) {
+		if (start >= end) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (!Character.isDigit(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getLength(int index) {
+		return ends[index] - starts[index];
+	}
+
+	public int getStart(int index) {
+		return starts[index];
+	}
+
+	public Style getStyle(int index) {
+		return styles[index];
+	}
+
+	protected void add(int start, int end, Style style) {
+		if (count == starts.length) {
+			int[] newStarts = new int[count * 2];
+			int[] newEnds = new int[count * 2];
+			Style[] newStyles = new Style[count * 2];
+			System.arraycopy(starts, 0, newStarts, 0, count);
+			System.arraycopy(ends, 0, newEnds, 0, count);
+			System.arraycopy(styles, 0, newStyles, 0, count);
+			starts = newStarts;
+			ends = newEnds;
+			styles = newStyles;
+		}
+		starts[count] = start;
+		ends[count] = end;
+		styles[count] = style;
+		count++;
+	}
+
+	/**
+	 * Adds the range of a line if it is linked to a command. start and end
+	 * bound the line, without its line feed. hasMoveMarker is true if the
+	 * line contains "W:" or "B:", hasParen if it contains a parenthesis.
+	 */
+	protected void addCommandLine(int lineKind, int start, int end,
+			boolean hasMoveMarker, boolean hasParen) {
+		int trimmedStart = start;
+		int trimmedEnd = end;
+		while (trimmedStart < trimmedEnd
+				&& message.charAt(trimmedStart) <= ' ') {
+			trimmedStart++;
+		}
+		while (trimmedEnd > trimmedStart
+				&& message.charAt(trimmedEnd - 1) <= ' ') {
+			trimmedEnd--;
+		}
+		if (trimmedStart == trimmedEnd) {
+			return;
+		}
+
+		switch (lineKind) {
+		case HISTORY_LINES: {
+			// 54: - 1850 W 1756 rsherry [ zr 2 0] --- Fla Fri Dec 25, ...
+			int space = indexOfSpace(trimmedStart, trimmedEnd);
+			if (space != -1 && message.charAt(space - 1) == ':'
+					&& isDigits(message, trimmedStart, space - 1)) {
+				add(start, end, Style.COMMAND);
+			}
+			break;
+		}
+		case JOURNAL_LINES: {
+			// %01: MarkG 1639 CDay 1690 [ br 5 0] C11 Res 0-1
+			int space = indexOfSpace(start, end);
+			if (space != -1 && message.charAt(space - 1) == ':'
+					&& isDigits(message, start + 1, space - 1)) {
+				add(start, trimmedEnd, Style.COMMAND);
+			}
+			break;
+		}
+		case GAMES_LINES: {
+			// 200 1878 InsaneMania 1747 jova [ br 5 0] 3:51 - 3:57 (32-31) B:
+			int space = indexOfSpace(trimmedStart, trimmedEnd);
+			if (hasMoveMarker && space != -1
+					&& isDigits(message, trimmedStart, space)) {
+				add(start, end, Style.COMMAND);
+			}
+			break;
+		}
+		case NEWS_LINES: {
+			// 1371 (Tue, Jun 23) www.ficsgames.com is back online
+			int space = indexOfSpace(trimmedStart, trimmedEnd);
+			if (hasParen && !hasMoveMarker && space != -1
+					&& isDigits(message, trimmedStart, space)) {
+				add(start, end, Style.COMMAND);
+			}
+			break;
+		}
+		}
+	}
+
+	protected int getCommandLineKind() {
+		if ((flags & UNDERLINE_COMMANDS) == 0) {
+			return NO_LINES;
+		}
+		switch (event.getType()) {
+		case HISTORY:
+			return HISTORY_LINES;
+		case JOURNAL:
+			return JOURNAL_LINES;
+		case GAMES:
+		case BUGWHO_ALL:
+		case BUGWHO_GAMES:
+			return GAMES_LINES;
+		case UNKNOWN:
+			return isPossibleNewsMessage(message) ? NEWS_LINES : NO_LINES;
+		default:
+			return NO_LINES;
+		}
+	}
+
+	/**
+	 * Returns the length of the top level domain starting after the '.' at
+	 * index, if it ends a domain name, else 0.
+	 */
+	protected int getTopLevelDomainLength(int index) {
+		for (String domain : TOP_LEVEL_DOMAINS) {
+			int end = index + 1 + domain.length();
+			if (end < message.length()
+					&& message.startsWith(domain, index + 1)) {
+				char terminator = message.charAt(end);
+				if (terminator == ' ' || terminator == '\n'
+						|| terminator == '/') {
+					return domain.length();
+				}
+			}
+		}
+		return 0;
+	}
+
+	protected int indexOfSpace(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (message.charAt(i) == ' ') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	protected boolean isUnderliningUrls() {
+		ChatType type = event.getType();
+		return (flags & UNDERLINE_URLS) != 0 && type != ChatType.OUTBOUND
+				&& type != ChatType.GAMES && type != ChatType.BUGWHO_ALL
+				&& type != ChatType.BUGWHO_GAMES
+				&& type != ChatType.BUGWHO_AVAILABLE_TEAMS
+				&& type != ChatType.BUGWHO_UNPARTNERED_BUGGERS
+				&& !message.endsWith("(*) indicates system administrator.");
+	}
+
+	/**
+	 * Returns the end of the URL starting at start. On ICS servers long lines
+	 * are broken with "\n\\" followed by white space, URLs continue across
+	 * these breaks.
+	 */
+	protected int getUrlEnd(int start) {
+		int length = message.length();
+		int end = start + 1;
+		while (end < length) {
+			char c = message.charAt(end);
+			if (c == '\n' && end + 1 < length
+					&& message.charAt(end + 1) == '\\') {
+				end += 2;
+				while (end < length
+						&& Character.isWhitespace(message.charAt(end))) {
+					end++;
+				}
+			} else if (Character.isWhitespace(c)) {
+				break;
+			} else {
+				end++;
+			}
+		}
+		if (message.charAt(end - 1) == '.') {
+			end--;
+		}
+		return end;
+	}
+
+	protected void scan() {
+		ChatType type = event.getType();
+		boolean isOutbound = type == ChatType.OUTBOUND;
+		boolean isUnderliningNext = !isOutbound
+				&& (flags & UNDERLINE_COMMANDS) != 0;
+		boolean isUnderliningDoubleQuotes = !isOutbound
+				&& (flags & UNDERLINE_QUOTED_TEXT) != 0;
+		boolean isUnderliningSingleQuotes = !isOutbound
+				&& (flags & UNDERLINE_SINGLE_QUOTES) != 0;
+		boolean isUnderliningUrls = isUnderliningUrls();
+		int lineKind = getCommandLineKind();
+
+		// Ranges are found in text order but applied by kind, in the order
+		// the decorations were originally layered.
+		ChatDecorations next = new ChatDecorations(event, message, flags);
+		ChatDecorations lines = new ChatDecorations(event, message, flags);
+		ChatDecorations quotes = new ChatDecorations(event, message, flags);
+		ChatDecorations links = new ChatDecorations(event, message, flags);
+
+		int length = message.length();
+
+		// The first line starts after the line feed which usually starts an
+		// appended message.
+		int lineStart = 1;
+		boolean lineHasMoveMarker = false;
+		boolean lineHasParen = false;
+		boolean hasLineBreak = false;
+
+		int lastLineFeed = -1;
+		int doubleQuote = -1;
+		int singleQuote = -1;
+
+		int wordStart = 0;
+		boolean wordHasDomain = false;
+		boolean wordHasAt = false;
+		int urlEnd = 0;
+
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? message.charAt(i) : '\n';
+
+			if (Character.isWhitespace(c)) {
+				if (wordHasDomain && !wordHasAt && wordStart >= urlEnd) {
+					links.add(wordStart, i, Style.LINK);
+				}
+				wordStart = i + 1;
+				wordHasDomain = false;
+				wordHasAt = false;
+			}
+
+			switch (c) {
+			case '\n':
+				if (i == length) {
+					if (lineKind != NO_LINES && lineKind != GAMES_LINES
+							&& hasLineBreak) {
+						lines.addCommandLine(lineKind, lineStart, length,
+								lineHasMoveMarker, lineHasParen);
+					}
+				} else if (i > 0) {
+					if (lineKind != NO_LINES) {
+						lines.addCommandLine(lineKind, lineStart, i,
+								lineHasMoveMarker, lineHasParen);
+					}
+					lineStart = i + 1;
+					lineHasMoveMarker = false;
+					lineHasParen = false;
+					hasLineBreak = true;
+				}
+				lastLineFeed = i;
+				break;
+			case ':':
+				if (i - 1 >= lineStart
+						&& (message.charAt(i - 1) == 'W' || message
+								.charAt(i - 1) == 'B')) {
+					lineHasMoveMarker = true;
+				}
+				break;
+			case '(':
+			case ')':
+				lineHasParen = true;
+				break;
+			case '[':
+				if (isUnderliningNext && message.startsWith(NEXT, i)) {
+					next.add(i, i + NEXT.length(), Style.NEXT);
+				}
+				break;
+			case '"':
+				if (isUnderliningDoubleQuotes) {
+					if (doubleQuote == -1) {
+						doubleQuote = i;
+					} else {
+						quotes.addQuote(doubleQuote, i, lastLineFeed);
+						doubleQuote = -1;
+					}
+				}
+				break;
+			case '\'':
+				if (isUnderliningSingleQuotes) {
+					if (singleQuote == -1) {
+						singleQuote = i;
+					} else {
+						quotes.addQuote(singleQuote, i, lastLineFeed);
+						singleQuote = -1;
+					}
+				}
+				break;
+			case 'h':
+			case 'w':
+				if (isUnderliningUrls
+						&& i >= urlEnd
+						&& (message.startsWith("http://", i)
+								|| message.startsWith("https://", i) || message
+								.startsWith("www.", i))) {
+					urlEnd = getUrlEnd(i);
+					links.add(i, urlEnd, Style.LINK);
+				}
+				break;
+			case '.':
+				if (isUnderliningUrls && !wordHasDomain
+						&& getTopLevelDomainLength(i) > 0) {
+					wordHasDomain = true;
+				}
+				break;
+			case '@':
+				wordHasAt = true;
+				break;
+			}
+		}
+
+		append(next);
+		append(lines);
+		if ((flags & UNDERLINE_COMMANDS) != 0 && type == ChatType.UNKNOWN
+				&& (message.startsWith("\n" + GAME_NOTIFICATION + " ") || message
+						.startsWith(GAME_NOTIFICATION + " "))) {
+			// Game notification: sgs (1567) vs. FireFics (1416) rated
+			// bughouse 3 0: Game 182
+			int end = length;
+			while (end > 0 && Character.isWhitespace(message.charAt(end - 1))) {
+				end--;
+			}
+			add(message.indexOf(GAME_NOTIFICATION), end, Style.COMMAND);
+		}
+		append(quotes);
+		append(links);
+	}
+
+	/**
+	 * Adds the text between two matching quotes unless it is empty, spans a
+	 * line break, or is a single character followed by a space, which is
+	 * more likely an apostrophe than a quote.
+	 */
+	protected void addQuote(int open, int close, int lastLineFeed) {
+		if (close > open + 1 && lastLineFeed < open
+				&& message.charAt(open + 2) != ' ') {
+			add(open + 1, close, Style.QUOTE);
+		}
+	}
+
+	protected void append(ChatDecorations decorations) {
+		for (int i = 0; i < decorations.count; i++) {
+			add(decorations.starts[i], decorations.ends[i],
+					decorations.styles[i]);
+		}
+	}
+}
@@ -13,6 +13,7 @@
  */
 package raptor.swt.chat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -70,6 +71,11 @@ public class ChatUtils {
 	private static final RaptorLogger LOG = RaptorLogger.getLog(ChatUtils.class);
 	public static final String whiteSpaceChars = " \r\n\t";
 	protected static L10n local = L10n.getInstance();
+
+	/**
+	 * The number of logged chat events appended to a new console at a time.
+	 */
+	protected static final int PREVIOUS_CHATS_BATCH_SIZE = 200;
 	
 	protected static final Pattern urlPattern = Pattern.compile("[\\!\\#\\$\\&\\-\\;\\=\\?\\-\\[\\]\\_a-z\\~]+\\.[^ ]+",
 			Pattern.CASE_INSENSITIVE);
@@ -96,7 +102,7 @@ public class ChatUtils {
 
 	/**
 	 * Appends all of the previous chat events to the controller. This method
-	 * executes asynchronously.
+	 * executes asynchronously, appending the events in batches.
 	 */
 	public static void appendPreviousChatsToController(final ChatConsole console) {
 		ThreadService.getInstance().run(new Runnable() {
@@ -105,36 +111,57 @@ public class ChatUtils {
 				console.getController().getConnector().getChatService()
 						.getChatLogger().parseFile(
 								new ChatEventParseListener() {
+									List<ChatEvent> batch = new ArrayList<ChatEvent>(
+											PREVIOUS_CHATS_BATCH_SIZE);
 
 									public boolean onNewEventParsed(
 											final ChatEvent event) {
+										batch.add(event);
+										if (batch.size() == PREVIOUS_CHATS_BATCH_SIZE) {
+											flush();
+										}
+										return true;
+									}
+
+									public void onParseCompleted() {
+										flush();
+										console.getController()
+												.setSoundDisabled(false);
+									}
+
+									protected void flush() {
+										if (batch.isEmpty()) {
+											return;
+										}
+										final List<ChatEvent> events = batch;
+										batch = new ArrayList<ChatEvent>(
+												PREVIOUS_CHATS_BATCH_SIZE);
 										console.getDisplay().syncExec(
 												new RaptorRunnable(console
 														.getController()
 														.getConnector()) {
 													@Override
 													public void execute() {
-
-														if (!console
+														if (console
 																.isDisposed()) {
-															if (console
-																	.getController()
-																	.isAcceptingChatEvent(
-																			event)) {
-																console
-																		.getController()
-																		.onChatEvent(
-																				event);
+															return;
+														}
+														ChatConsoleController controller = console
+																.getController();
+														List<ChatEvent> accepted = new ArrayList<ChatEvent>(
+																events.size());
+														for (ChatEvent event : events) {
+															if (controller
+																	.isAcceptingChatEvent(event)) {
+																accepted.add(event);
 															}
 														}
+														if (!accepted.isEmpty()) {
+															controller
+																	.onChatEvents(accepted);
+														}
 													}
 												});
-										return true;
-									}
-
-									public void onParseCompleted() {
-										console.getController()
-												.setSoundDisabled(false);
 									}
 								});
 			}
@@ -666,55 +693,4 @@ public class ChatUtils {
 		});
 		return result;
 	}
-	
-	private static boolean isInRanges(int location, List<int[]> ranges) {
-		boolean result = false;
-		for (int[] range : ranges) {
-			if (location >= range[0] && location <= range[1]) {
-				result = true;
-				break;
-			}
-		}
-		return result;
-	}
-	
-	private static final String[] TOP_LEVEL_DOMAINS = {".com ", ".org ", ".edu ", ".gov ", ".uk ", ".net ", ".ca ", ".de ", ".jp ", ".fr ",
-		".ru ", ".au ", ".us ", ".ch ", ".it ", ".nl ", ".se ",".no ", ".es ", ".mil ",
-		".com\n", ".org\n", ".edu\n", ".gov\n", ".uk\n", ".net\n", ".ca\n", ".de\n", ".jp\n", ".fr\n",
-		".ru\n", ".au\n", ".us\n", ".ch\n", ".it\n", ".nl\n", ".se\n",".no\n", ".es\n", ".mil\n",
-		".com/", ".org/", ".edu/", ".gov/", ".uk/", ".net/", ".ca/", ".de/", ".jp/", ".fr/",
-		".ru/", ".au/", ".us/", ".ch/", ".it/", ".nl/", ".se/",".no/", ".es/", ".mil/"};
-
-	public static int getEndIndexOfUrl(int startIndex, List<int[]> linkRanges, String message, StringBuilder dom) {		
-		int endIndex = message.indexOf(TOP_LEVEL_DOMAINS[0]);
-		dom.append(TOP_LEVEL_DOMAINS[0]);
-		for (int i = 1; (endIndex == -1 || isInRanges(startIndex, linkRanges))
-				&& i < TOP_LEVEL_DOMAINS.length; i++) {
-			endIndex = message.indexOf(TOP_LEVEL_DOMAINS[i]);
-			dom.delete( 0, dom.length() );
-			dom.append(TOP_LEVEL_DOMAINS[i]);
-		}
-		
-		if (endIndex != -1 && isInRanges(startIndex, linkRanges)) {
-			endIndex = -1;
-		}		
-		return endIndex;
-	}
-	
-	public static int getEndIndexOfUrl(int startIndex, List<int[]> linkRanges, String message, int fromIndex, StringBuilder dom) {
-		int endIndex = message.indexOf(TOP_LEVEL_DOMAINS[0], fromIndex);
-		dom.append(TOP_LEVEL_DOMAINS[0]);
-		for (int i = 1; (endIndex == -1 || isInRanges(startIndex, linkRanges))
-				&& i < TOP_LEVEL_DOMAINS.length; i++) {
-			endIndex = message.indexOf(TOP_LEVEL_DOMAINS[i], fromIndex);
-			dom.delete( 0, dom.length() );
-			dom.append(TOP_LEVEL_DOMAINS[i]);
-		}
-		
-		if (endIndex != -1 && isInRanges(startIndex, linkRanges)) {
-			endIndex = -1;
-		}
-		return endIndex;
-	}
-
-}
\ No newline at end of file
+}
@@ -39,6 +39,7 @@ import raptor.connector.Connector;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
+import raptor.service.GameClock;
 import raptor.service.SoundService;
 import raptor.swt.ItemChangedListener;
 import raptor.swt.chess.controller.ToolBarItemKey;
@@ -1127,9 +1128,18 @@ public abstract class ChessBoardController implements BoardConstants,
 
 	/**
 	 * Returns an array indexed by color containing the remaining time in
-	 * milliseconds.
+	 * milliseconds. If the connector keeps a clock model for the game the
+	 * times are taken from it, so they include the time elapsed since the
+	 * last update arrived. Otherwise they are read from the game's headers.
 	 */
 	protected long[] getRemainingTimes() {
+		GameClock clock = connector == null || game == null ? null
+				: connector.getGameService().getClock(game.getId());
+		if (clock != null) {
+			long now = System.nanoTime();
+			return new long[] { clock.getRemainingMillis(true, now),
+					clock.getRemainingMillis(false, now) };
+		}
 
 		long whiteTime = 0;
 		long blackTime = 0;
@@ -18,17 +18,27 @@ import raptor.chess.pgn.PgnHeader;
 import raptor.chess.util.GameUtils;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
+import raptor.service.ClockService;
 import raptor.service.SoundService;
 import raptor.swt.RaptorLabel;
 
+/**
+ * Updates a clock label while its clock is running. Updaters do not schedule
+ * their own timers; they register with the ClockService, which ticks every
+ * running clock from a single timer. The remaining time is calculated from
+ * System.nanoTime() relative to when the clock was started, so late ticks
+ * never accumulate drift.
+ */
 public class ClockLabelUpdater implements Runnable, PreferenceKeys {
 	ChessBoardController controller;
 	ChessBoard board;
 	boolean isWhite;
 	RaptorLabel clockLabel;
 	boolean isRunning;
-	long lastSystemTime = 0;
+	long startNanos = 0;
+	long startRemainingTimeMillis;
 	long remainingTimeMillis;
+	String lastText;
 	int lastCountdownPlayed = -1;
 	boolean isSpeakingCountdown;
 
@@ -42,34 +52,8 @@ public class ClockLabelUpdater implements Runnable, PreferenceKeys {
 		this.isSpeakingCountdown = isSpeakingCountdown;
 	}
 
-	public long calculateNextUpdate() {
-		// The previous approach of trying to update at less frequent intervals
-		// depending on how the clock is setup didnt work so well.
-
-		// For now make a check every 100 milliseconds if showing tenths then
-		// every 50 ms.
-		long result = 0L;
-		if (remainingTimeMillis < 0) {
-			// Just update every 100L to get the flashing behavior.
-			result = 100L;
-		} else {
-			if (remainingTimeMillis >= getPreferences().getLong(
-					BOARD_CLOCK_SHOW_SECONDS_WHEN_LESS_THAN)) {
-				result = 100L;
-			} else if (remainingTimeMillis >= getPreferences().getLong(
-					BOARD_CLOCK_SHOW_MILLIS_WHEN_LESS_THAN)) {
-				result = 100L;
-			} else {
-				result = remainingTimeMillis % 50L;
-				if (result == 0L) {
-					result = 50L;
-				}
-			}
-		}
-		return result;
-	}
-
 	public void dispose() {
+		stop();
 		board = null;
 		clockLabel = null;
 	}
@@ -78,53 +62,70 @@ public class ClockLabelUpdater implements Runnable, PreferenceKeys {
 		return remainingTimeMillis;
 	}
 
+	public boolean isRunning() {
+		return isRunning;
+	}
+
 	public void run() {
-		if (isRunning && board != null && clockLabel != null
-				&& !clockLabel.isDisposed()) {
-			long currentTime = System.currentTimeMillis();
-			remainingTimeMillis -= currentTime - lastSystemTime;
-			lastSystemTime = currentTime;
-
-			if (remainingTimeMillis < 10000 && isSpeakingCountdown) {
-				playCountdownSound(remainingTimeMillis);
-			}
-
-			controller.getGame().setHeader(
-					isWhite ? PgnHeader.WhiteRemainingMillis
-							: PgnHeader.BlackRemainingMillis,
-                    String.valueOf(remainingTimeMillis));
-
-			clockLabel.setText(GameUtils
-					.timeToString(remainingTimeMillis, true));
-
-			controller.adjustTimeUpLabel();
-
-			// Continue running even if time has expired. This produces the
-			// flashing behavior.
-			long nextUpdate = calculateNextUpdate();
-			if (isRunning) {
-				Raptor.getInstance().getDisplay().timerExec((int) nextUpdate,
-						this);
-			}
-		}
+		tick(System.nanoTime());
 	}
 
 	public void setRemainingTimeMillis(long elapsedTimeMillis) {
-		remainingTimeMillis = elapsedTimeMillis;
+		remainingTimeMillis = startRemainingTimeMillis = elapsedTimeMillis;
+		startNanos = System.nanoTime();
+		lastText = null;
 	}
 
 	public void start() {
 		isRunning = true;
 		if (remainingTimeMillis > 0) {
-			lastSystemTime = System.currentTimeMillis();
-			long nextUpdate = calculateNextUpdate();
-			Raptor.getInstance().getDisplay().timerExec((int) nextUpdate, this);
+			startRemainingTimeMillis = remainingTimeMillis;
+			startNanos = System.nanoTime();
+			lastText = null;
+			ClockService.getInstance().register(this);
 		}
 	}
 
 	public void stop() {
 		isRunning = false;
-		Raptor.getInstance().getDisplay().timerExec(-1, this);
+		ClockService.getInstance().unregister(this);
+	}
+
+	/**
+	 * Invoked by the ClockService on each tick. Recalculates the remaining
+	 * time and only touches the label when the displayed text changes.
+	 * 
+	 * @param nanoTime
+	 *            The System.nanoTime() of the tick.
+	 */
+	public void tick(long nanoTime) {
+		if (!isRunning || board == null || clockLabel == null
+				|| clockLabel.isDisposed()) {
+			ClockService.getInstance().unregister(this);
+			return;
+		}
+
+		remainingTimeMillis = startRemainingTimeMillis
+				- (nanoTime - startNanos) / 1000000L;
+
+		if (remainingTimeMillis < 10000 && isSpeakingCountdown) {
+			playCountdownSound(remainingTimeMillis);
+		}
+
+		controller.getGame().setHeader(
+				isWhite ? PgnHeader.WhiteRemainingMillis
+						: PgnHeader.BlackRemainingMillis,
+				String.valueOf(remainingTimeMillis));
+
+		String text = GameUtils.timeToString(remainingTimeMillis, true);
+		if (!text.equals(lastText)) {
+			lastText = text;
+			clockLabel.setText(text);
+		}
+
+		// Continue running even if time has expired. This produces the
+		// flashing behavior.
+		controller.adjustTimeUpLabel();
 	}
 
 	protected RaptorPreferenceStore getPreferences() {
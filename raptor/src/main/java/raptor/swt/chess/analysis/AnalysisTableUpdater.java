@@ -0,0 +1,354 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chess.analysis;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+
+import raptor.Raptor;
+import raptor.chess.Game;
+import raptor.chess.Variant;
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.CPULoadInfo;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.MultiPVInfo;
+import raptor.engine.uci.info.NodesPerSecondInfo;
+import raptor.engine.uci.info.NodesSearchedInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.engine.uci.info.TimeInfo;
+import raptor.international.L10n;
+import raptor.service.EvaluationCacheService;
+import raptor.swt.RaptorTable;
+import raptor.util.RaptorRunnable;
+import raptor.util.RaptorStringUtils;
+
+/**
+ * Shows the output of an analyzing engine in an analysis widget's table. The
+ * UCI and xboard analysis widgets both use it, their engines deliver the same
+ * UCIInfo arrays.
+ * 
+ * Infos arrive on engine threads. Completed iterations of the first line are
+ * stored in the evaluation cache and infos shallower than a cached evaluation
+ * being shown are dropped. The rest are queued and shown at most once every
+ * REFRESH_MILLIS, each MultiPV line updating its own row in place.
+ */
+public class AnalysisTableUpdater {
+	/**
+	 * The minimum interval between refreshes of the table, about two frames.
+	 */
+	protected static final int REFRESH_MILLIS = 40;
+
+	protected static L10n local = L10n.getInstance();
+
+	protected RaptorTable bestMoves;
+	protected Composite labelParent;
+	protected Label nodesPerSecondLabel;
+	protected Label cpuPercentageLabel;
+	protected SanLineCache sanLineCache = new SanLineCache();
+	protected List<UCIInfo[]> pendingInfos = new ArrayList<UCIInfo[]>();
+	protected boolean isRefreshScheduled;
+
+	protected volatile String analysisFen;
+	protected volatile long analysisHash;
+	protected volatile Variant analysisVariant;
+	protected volatile boolean isWhitesMove;
+	protected volatile String engineName;
+	protected volatile boolean isMultiplyBlackScoreByMinus1;
+	protected volatile int cachedDepth;
+	protected volatile boolean isAnalyzing;
+
+	/**
+	 * Shows everything received since the last refresh.
+	 */
+	protected Runnable refresher = new RaptorRunnable() {
+		@Override
+		public void execute() {
+			List<UCIInfo[]> batches;
+			synchronized (pendingInfos) {
+				batches = coalesce(pendingInfos);
+				pendingInfos.clear();
+				isRefreshScheduled = false;
+			}
+			if (!bestMoves.isDisposed()) {
+				bestMoves.getTable().setRedraw(false);
+				try {
+					for (UCIInfo[] infos : batches) {
+						showInfos(infos);
+					}
+				} finally {
+					bestMoves.getTable().setRedraw(true);
+				}
+			}
+		}
+	};
+
+	/**
+	 * @param bestMoves
+	 *            The table to update. Its columns are score, depth, time,
+	 *            nodes and line.
+	 */
+	public AnalysisTableUpdater(RaptorTable bestMoves) {
+		this.bestMoves = bestMoves;
+	}
+
+	/**
+	 * Sets the labels nodes per second and cpu load are shown in. parent is
+	 * laid out when they change. Without labels these infos are ignored.
+	 */
+	public void setProgressLabels(Composite parent, Label nodesPerSecondLabel,
+			Label cpuPercentageLabel) {
+		labelParent = parent;
+		this.nodesPerSecondLabel = nodesPerSecondLabel;
+		this.cpuPercentageLabel = cpuPercentageLabel;
+	}
+
+	/**
+	 * Invoke before an engine starts analyzing the current position of game.
+	 * Returns the cached evaluation of the position as infos to hand to add
+	 * once the engine started, or null if there is none.
+	 * 
+	 * @param isMultiplyBlackScoreByMinus1
+	 *            True if the engine's scores are from the side to move's point
+	 *            of view and should be shown from white's.
+	 */
+	public UCIInfo[] start(Game game, String engineName,
+			boolean isMultiplyBlackScoreByMinus1) {
+		analysisFen = game.toFen();
+		analysisHash = game.getZobristPositionHash();
+		analysisVariant = game.getVariant();
+		isWhitesMove = game.isWhitesMove();
+		this.engineName = engineName;
+		this.isMultiplyBlackScoreByMinus1 = isMultiplyBlackScoreByMinus1;
+
+		EvaluationCacheService.Evaluation cached = EvaluationCacheService
+				.getInstance().get(analysisHash, analysisVariant);
+		UCIInfo[] result = cached == null ? null : cached.toUCIInfos();
+		cachedDepth = result == null ? 0 : cached.getDepth();
+		isAnalyzing = true;
+		return result;
+	}
+
+	/**
+	 * Invoke when the engine is stopped. Lines it still sends are not shown.
+	 */
+	public void stop() {
+		isAnalyzing = false;
+	}
+
+	/**
+	 * Queues infos from the engine and schedules a refresh. May be invoked
+	 * from any thread.
+	 */
+	public void add(UCIInfo[] infos) {
+		if (cacheIteration(infos) < cachedDepth) {
+			// The cached evaluation being shown is deeper.
+			return;
+		}
+
+		synchronized (pendingInfos) {
+			pendingInfos.add(infos);
+			if (isRefreshScheduled) {
+				return;
+			}
+			isRefreshScheduled = true;
+		}
+		Raptor.getInstance().getDisplay().asyncExec(new RaptorRunnable() {
+			@Override
+			public void execute() {
+				Raptor.getInstance().getDisplay().timerExec(REFRESH_MILLIS,
+						refresher);
+			}
+		});
+	}
+
+	/**
+	 * Stores infos in the evaluation cache if they complete an iteration and
+	 * returns their depth, or Integer.MAX_VALUE if they carry no depth.
+	 */
+	protected int cacheIteration(UCIInfo[] infos) {
+		int depth = Integer.MAX_VALUE;
+		ScoreInfo score = null;
+		BestLineFoundInfo bestLine = null;
+		for (UCIInfo info : infos) {
+			if (info instanceof DepthInfo) {
+				depth = ((DepthInfo) info).getSearchDepthPlies();
+			} else if (info instanceof ScoreInfo) {
+				score = (ScoreInfo) info;
+			} else if (info instanceof BestLineFoundInfo && bestLine == null) {
+				bestLine = (BestLineFoundInfo) info;
+			}
+		}
+		if (depth != Integer.MAX_VALUE && depth > cachedDepth
+				&& analysisVariant != null && engineName != null
+				&& MultiPVInfo.getIndex(infos) == 1) {
+			EvaluationCacheService.getInstance().put(analysisHash,
+					analysisVariant, engineName, depth, score, bestLine);
+		}
+		return depth;
+	}
+
+	/**
+	 * Reduces info batches to the ones worth showing: the latest batch with a
+	 * line for each MultiPV index, followed by the latest info of each type
+	 * from batches without a line.
+	 */
+	protected List<UCIInfo[]> coalesce(List<UCIInfo[]> batches) {
+		List<UCIInfo[]> result = new ArrayList<UCIInfo[]>();
+		if (batches.size() == 1) {
+			result.add(batches.get(0));
+			return result;
+		}
+
+		Map<Integer, UCIInfo[]> lines = new TreeMap<Integer, UCIInfo[]>();
+		Map<Class<?>, UCIInfo> progress = new LinkedHashMap<Class<?>, UCIInfo>();
+		for (UCIInfo[] batch : batches) {
+			boolean hasLine = false;
+			for (UCIInfo info : batch) {
+				if (info instanceof BestLineFoundInfo) {
+					hasLine = true;
+					break;
+				}
+			}
+			if (hasLine) {
+				lines.put(MultiPVInfo.getIndex(batch), batch);
+			} else {
+				for (UCIInfo info : batch) {
+					progress.put(info.getClass(), info);
+				}
+			}
+		}
+		result.addAll(lines.values());
+		if (!progress.isEmpty()) {
+			result.add(progress.values().toArray(
+					new UCIInfo[progress.size()]));
+		}
+		return result;
+	}
+
+	/**
+	 * Sets a cell if text is not blank and differs from its current text.
+	 */
+	protected void setCell(int row, int column, String text) {
+		if (StringUtils.isNotBlank(text)
+				&& !text.equals(bestMoves.getText(row, column))) {
+			bestMoves.setText(row, column, text);
+		}
+	}
+
+	/**
+	 * Updates the table and labels from infos. Infos with a line update the
+	 * row of their MultiPV index in place, other infos update the first row.
+	 * Must be invoked on the SWT thread.
+	 */
+	protected void showInfos(UCIInfo[] infos) {
+		String score = null;
+		String time = null;
+		String depth = null;
+		String nodes = null;
+		String cpu = null;
+		String nps = null;
+		String pv = null;
+		int multiPv = 1;
+
+		for (UCIInfo info : infos) {
+			if (info instanceof ScoreInfo) {
+				ScoreInfo scoreInfo = (ScoreInfo) info;
+				if (scoreInfo.getMateInMoves() != 0) {
+					score = local.getString("uciAnalW_0")
+							+ scoreInfo.getMateInMoves();
+				} else {
+					double scoreAsDouble = isWhitesMove
+							|| !isMultiplyBlackScoreByMinus1 ? scoreInfo
+							.getValueInCentipawns() / 100.0
+							: -scoreInfo.getValueInCentipawns() / 100.0;
+
+					score = new BigDecimal(scoreAsDouble).setScale(2,
+							BigDecimal.ROUND_HALF_UP).toString();
+
+					if (scoreInfo.isLowerBoundScore()) {
+						score += "++";
+					} else if (scoreInfo.isUpperBoundScore()) {
+						score += "--";
+					}
+				}
+			} else if (info instanceof DepthInfo) {
+				DepthInfo depthInfo = (DepthInfo) info;
+				depth = depthInfo.getSearchDepthPlies()
+						+ local.getString("uciAnalW_4");
+			} else if (info instanceof MultiPVInfo) {
+				multiPv = ((MultiPVInfo) info).getIndex();
+			} else if (info instanceof NodesSearchedInfo) {
+				NodesSearchedInfo nodesSearchedInfo = (NodesSearchedInfo) info;
+				nodes = RaptorStringUtils.formatAsNumber(String
+						.valueOf(nodesSearchedInfo.getNodesSearched() / 1000));
+			} else if (info instanceof CPULoadInfo) {
+				CPULoadInfo cpuLoad = (CPULoadInfo) info;
+				cpu = local.getString("uciAnalW_6")
+						+ new BigDecimal(cpuLoad.getCpuUsage() / 1000.0 * 100)
+								.setScale(0, BigDecimal.ROUND_HALF_UP)
+								.toString();
+			} else if (info instanceof NodesPerSecondInfo) {
+				NodesPerSecondInfo nodesPerSecondInfo = (NodesPerSecondInfo) info;
+				nps = local.getString("uciAnalW_7")
+						+ RaptorStringUtils.formatAsNumber(String
+								.valueOf(nodesPerSecondInfo
+										.getNodesPerSecond() / 1000));
+			} else if (info instanceof TimeInfo) {
+				TimeInfo timeInfo = (TimeInfo) info;
+				time = new BigDecimal(timeInfo.getTimeMillis() / 1000.0)
+						.setScale(1, BigDecimal.ROUND_HALF_UP).toString();
+			} else if (info instanceof BestLineFoundInfo) {
+				if (!isAnalyzing)
+					return;
+
+				pv = sanLineCache.getLine(analysisFen, analysisVariant,
+						((BestLineFoundInfo) info).getMoves());
+			}
+		}
+
+		if (pv != null) {
+			int row = Math.max(0, multiPv - 1);
+			while (bestMoves.getRowCount() <= row) {
+				bestMoves.appendRow(new String[] { "", "", "", "", "" });
+			}
+			setCell(row, 0, score);
+			setCell(row, 1, depth);
+			setCell(row, 2, time);
+			setCell(row, 3, nodes);
+			setCell(row, 4, pv);
+		} else if (bestMoves.getRowCount() > 0) {
+			setCell(0, 0, score);
+			setCell(0, 1, depth);
+			setCell(0, 2, time);
+			setCell(0, 3, nodes);
+		}
+		if (cpu != null && cpuPercentageLabel != null) {
+			cpuPercentageLabel.setText(cpu);
+			labelParent.layout(true, true);
+		}
+		if (nps != null && nodesPerSecondLabel != null) {
+			nodesPerSecondLabel.setText(nps);
+			labelParent.layout(true, true);
+		}
+	}
+}
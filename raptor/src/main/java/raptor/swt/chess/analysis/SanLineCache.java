@@ -0,0 +1,189 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chess.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.Move;
+import raptor.chess.Variant;
+import raptor.chess.util.GameUtils;
+import raptor.engine.uci.UCIMove;
+import raptor.util.RaptorLogger;
+
+/**
+ * Converts principal variations from UCI moves to SAN lines for one root
+ * position, remembering every move it has converted in a tree. Successive
+ * iterations and the lines of a MultiPV search share most of their moves, so
+ * usually only the last move or two of a line has to be played on a board.
+ * 
+ * A single working game is kept positioned at the last converted node and is
+ * moved to a new node by rolling back to the common ancestor, never by
+ * parsing the FEN again.
+ * 
+ * This class is not thread safe.
+ */
+public class SanLineCache {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(SanLineCache.class);
+
+	/**
+	 * The cache is cleared when it holds this many moves.
+	 */
+	public static final int MAX_NODES = 50000;
+
+	protected static class Node {
+		protected UCIMove move;
+		protected String san;
+		protected boolean isWhitesMove;
+		protected int fullMoveCount;
+		protected Map<String, Node> children;
+
+		protected Node getChild(String uciMove) {
+			return children == null ? null : children.get(uciMove);
+		}
+
+		protected void addChild(String uciMove, Node child) {
+			if (children == null) {
+				children = new HashMap<String, Node>(4);
+			}
+			children.put(uciMove, child);
+		}
+	}
+
+	protected String rootFen;
+	protected Variant variant;
+	protected Node root;
+	protected int nodeCount;
+	protected Game game;
+	protected List<Node> gamePath = new ArrayList<Node>();
+	protected List<Node> path = new ArrayList<Node>();
+
+	/**
+	 * Returns the SAN line for moves played from fen, with move numbers and
+	 * check and mate marks. The line stops before the first illegal move.
+	 */
+	public String getLine(String fen, Variant variant, UCIMove[] moves) {
+		if (root == null || !fen.equals(rootFen) || variant != this.variant
+				|| nodeCount > MAX_NODES) {
+			reset(fen, variant);
+		}
+
+		StringBuilder result = new StringBuilder(moves.length * 8);
+		Node node = root;
+		path.clear();
+		for (int i = 0; i < moves.length; i++) {
+			Node child = node.getChild(moves[i].getValue());
+			if (child == null) {
+				child = play(moves[i]);
+				if (child == null) {
+					break;
+				}
+				node.addChild(moves[i].getValue(), child);
+				nodeCount++;
+			}
+			path.add(child);
+			node = child;
+
+			if (result.length() > 0) {
+				result.append(' ');
+			}
+			if (child.isWhitesMove) {
+				result.append(child.fullMoveCount).append(") ");
+			} else if (i == 0) {
+				result.append(child.fullMoveCount).append(") ... ");
+			}
+			result.append(child.san);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Forgets every converted move.
+	 */
+	public void reset(String fen, Variant variant) {
+		rootFen = fen;
+		this.variant = variant;
+		root = new Node();
+		nodeCount = 0;
+		game = null;
+		gamePath.clear();
+	}
+
+	/**
+	 * Plays move after the nodes in path and returns its node, or null if the
+	 * move is illegal.
+	 */
+	protected Node play(UCIMove move) {
+		try {
+			positionGame();
+			Move gameMove = makeMove(move);
+
+			Node result = new Node();
+			result.move = move;
+			result.isWhitesMove = gameMove.isWhitesMove();
+			result.fullMoveCount = gameMove.getFullMoveCount();
+			result.san = GameUtils.convertSanToUseUnicode(gameMove.getSan(),
+					gameMove.isWhitesMove())
+					+ (game.isCheckmate() ? "#" : game.isInCheck() ? "+" : "");
+			gamePath.add(result);
+			return result;
+		} catch (Throwable t) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Illegal move " + move.getValue() + " in line from "
+						+ rootFen, t);
+			}
+			// The game may be part way through a move, start over next time.
+			game = null;
+			gamePath.clear();
+			return null;
+		}
+	}
+
+	/**
+	 * Moves the working game to the position after the nodes in path.
+	 */
+	protected void positionGame() {
+		if (game == null) {
+			game = GameFactory.createFromFen(rootFen, variant);
+			game.addState(Game.UPDATING_SAN_STATE);
+			game.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+			gamePath.clear();
+		}
+
+		int common = 0;
+		while (common < gamePath.size() && common < path.size()
+				&& gamePath.get(common) == path.get(common)) {
+			common++;
+		}
+		while (gamePath.size() > common) {
+			game.rollback();
+			gamePath.remove(gamePath.size() - 1);
+		}
+		for (int i = common; i < path.size(); i++) {
+			makeMove(path.get(i).move);
+			gamePath.add(path.get(i));
+		}
+	}
+
+	protected Move makeMove(UCIMove move) {
+		return move.isPromotion() ? game.makeMove(move.getStartSquare(), move
+				.getEndSquare(), move.getPromotedPiece()) : game.makeMove(move
+				.getStartSquare(), move.getEndSquare());
+	}
+}
@@ -13,10 +13,6 @@
  */
 package raptor.swt.chess.analysis;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.dnd.Clipboard;
@@ -41,26 +37,17 @@ import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
 
 import raptor.Raptor;
-import raptor.chess.Game;
-import raptor.chess.GameFactory;
-import raptor.chess.Move;
 import raptor.chess.Variant;
 import raptor.chess.util.GameUtils;
 import raptor.engine.uci.UCIBestMove;
 import raptor.engine.uci.UCIEngine;
 import raptor.engine.uci.UCIInfo;
 import raptor.engine.uci.UCIInfoListener;
-import raptor.engine.uci.UCIMove;
-import raptor.engine.uci.info.BestLineFoundInfo;
-import raptor.engine.uci.info.CPULoadInfo;
-import raptor.engine.uci.info.DepthInfo;
-import raptor.engine.uci.info.NodesPerSecondInfo;
-import raptor.engine.uci.info.NodesSearchedInfo;
-import raptor.engine.uci.info.ScoreInfo;
-import raptor.engine.uci.info.TimeInfo;
 import raptor.engine.uci.options.UCICheck;
+import raptor.engine.uci.options.UCISpinner;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
+import raptor.service.EngineSupervisorService;
 import raptor.service.ThreadService;
 import raptor.service.UCIEngineService;
 import raptor.swt.RaptorTable;
@@ -69,17 +56,19 @@ import raptor.swt.SWTUtils;
 import raptor.swt.UCIEnginePropertiesDialog;
 import raptor.swt.chess.ChessBoardController;
 import raptor.swt.chess.EngineAnalysisWidget;
-import raptor.swt.chess.controller.AutomaticAnalysisController;
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorRunnable;
-import raptor.util.RaptorStringUtils;
 
 public class UciAnalysisWidget implements EngineAnalysisWidget {
 	private static final RaptorLogger LOG = RaptorLogger
 			.getLog(UciAnalysisWidget.class);
 
+	/**
+	 * The most lines that can be chosen in the lines combo.
+	 */
+	protected static final int MAX_MULTIPV = 5;
+
 	protected ChessBoardController controller;
-	protected AutomaticAnalysisController analysisController;
 	protected Composite composite, topLine, labelComposite;
 	protected UCIEngine currentEngine;
 	protected Label nodesPerSecondLabel;
@@ -89,243 +78,16 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 	protected Button startStopButton, propertiesButton;
 	protected boolean ignoreEngineSelection;
 	protected boolean isInStart = false;
+	protected AnalysisTableUpdater tableUpdater;
+	protected Combo multiPvCombo;
+	protected volatile int multiPvLines = 1;
 	protected static L10n local = L10n.getInstance();
 	protected UCIInfoListener listener = new UCIInfoListener() {
 		public void engineSentBestMove(UCIBestMove uciBestMove) {
 		}
 
 		public void engineSentInfo(final UCIInfo[] infos) {
-			if (analysisController != null)
-				analysisController.engineSentInfo(infos, currentEngine
-						.isMultiplyBlackScoreByMinus1());
-			
-			Raptor.getInstance().getDisplay()
-					.asyncExec(new RaptorRunnable(controller.getConnector()) {
-						@Override
-						public void execute() {
-							String score = null;
-							String time = null;
-							String depth = null;
-							String nodes = null;
-							String cpu = null;
-							String nps = null;
-							List<String> pvs = new ArrayList<String>(3);
-
-							for (UCIInfo info : infos) {
-								if (info instanceof ScoreInfo) {
-									ScoreInfo scoreInfo = (ScoreInfo) info;
-									if (((ScoreInfo) info).getMateInMoves() != 0) {
-										score = local.getString("uciAnalW_0") 
-												+ scoreInfo.getMateInMoves();
-									} else {
-										double scoreAsDouble = controller
-												.getGame().isWhitesMove()
-												|| !currentEngine
-														.isMultiplyBlackScoreByMinus1() ? scoreInfo
-												.getValueInCentipawns() / 100.0
-												: -scoreInfo
-														.getValueInCentipawns() / 100.0;
-
-										score = new BigDecimal(scoreAsDouble)
-                                                .setScale(
-                                                        2,
-                                                        BigDecimal.ROUND_HALF_UP)
-                                                .toString();
-										
-										if (scoreInfo.isLowerBoundScore()) {
-											score += "++";
-										} else if (scoreInfo.isUpperBoundScore()) {
-											score += "--";
-										}
-										
-									}
-								} else if (info instanceof DepthInfo) {
-									DepthInfo depthInfo = (DepthInfo) info;
-									depth = depthInfo.getSearchDepthPlies()
-											+ local.getString("uciAnalW_4");
-								} else if (info instanceof NodesSearchedInfo) {
-									NodesSearchedInfo nodesSearchedInfo = (NodesSearchedInfo) info;
-									nodes = RaptorStringUtils.formatAsNumber(String.valueOf(nodesSearchedInfo
-                                            .getNodesSearched() / 1000));
-								} else if (info instanceof CPULoadInfo) {
-									CPULoadInfo cpuLoad = (CPULoadInfo) info;
-									cpu = local.getString("uciAnalW_6") 
-											+ new BigDecimal(
-													cpuLoad.getCpuUsage() / 1000.0 * 100)
-													.setScale(
-															0,
-															BigDecimal.ROUND_HALF_UP)
-													.toString();
-								} else if (info instanceof NodesPerSecondInfo) {
-									NodesPerSecondInfo nodesPerSecondInfo = (NodesPerSecondInfo) info;
-									nps = local.getString("uciAnalW_7") 
-											+ RaptorStringUtils.formatAsNumber(String.valueOf(nodesPerSecondInfo
-                                            .getNodesPerSecond()
-                                            / 1000));
-								} else if (info instanceof TimeInfo) {
-									TimeInfo timeInfo = (TimeInfo) info;
-									time = new BigDecimal(timeInfo
-											.getTimeMillis() / 1000.0)
-											.setScale(1,
-													BigDecimal.ROUND_HALF_UP)
-											.toString();
-								} else if (info instanceof BestLineFoundInfo) {
-									if (!currentEngine.isProcessingGo())
-										return;
-									
-									BestLineFoundInfo bestLineFoundInfo = (BestLineFoundInfo) info;
-									StringBuilder line = new StringBuilder(100);
-									Game gameClone = GameFactory.createFromFen(currentEngine.getLastSetFen(),
-											controller.getGame().getVariant());
-									gameClone.addState(Game.UPDATING_SAN_STATE);
-									gameClone
-											.clearState(Game.UPDATING_ECO_HEADERS_STATE);
-
-									boolean isFirstMove = true;
-
-									for (UCIMove move : bestLineFoundInfo
-											.getMoves()) {
-										try {
-											Move gameMove = null;
-
-											if (move.isPromotion()) {
-												gameMove = gameClone.makeMove(
-														move.getStartSquare(),
-														move.getEndSquare(),
-														move.getPromotedPiece());
-											} else {
-												gameMove = gameClone.makeMove(
-														move.getStartSquare(),
-														move.getEndSquare());
-											}
-
-											String san = GameUtils.convertSanToUseUnicode(
-													gameMove.getSan(),
-													gameMove.isWhitesMove());
-											String moveNumber = isFirstMove
-													&& !gameMove.isWhitesMove() ? gameMove
-													.getFullMoveCount()
-													+ ") ... " : gameMove 
-													.isWhitesMove() ? gameMove
-													.getFullMoveCount() + ") " 
-													: "";
-                                            line.append(StringUtils.isBlank(line.toString()) ? ""  //$NON-NLS-2$
-                                                    : " ").append(moveNumber).append(san).append(gameClone.isInCheck() ? "+"
-                                                    : "").append(gameClone.isCheckmate() ? "#"
-                                                    : "");
-											isFirstMove = false;
-										} catch (Throwable t) {
-											if (LOG.isInfoEnabled()) {
-												LOG.info(
-														"Illegal line found skipping line (This can occur if the position was " 
-																+ "changing when the analysis line was being calculated).", 
-														t);
-											}
-											break;
-										}
-									}
-									pvs.add(line.toString());
-								}
-							}
-
-							final String finalScore = score;
-							final String finalTime = time;
-							final String finalDepth = depth;
-							final String finalNodes = nodes;
-							final List<String> finalPVs = pvs;
-							final String finalCPU = cpu;
-							final String finalNPS = nps;
-
-							Raptor.getInstance()
-									.getDisplay()
-									.asyncExec(
-											new RaptorRunnable(controller
-													.getConnector()) {
-												@Override
-												public void execute() {
-													if (composite.isDisposed()) {
-														return;
-													}
-													if (!finalPVs.isEmpty()) {
-														String[][] data = new String[bestMoves
-																.getRowCount()
-																+ finalPVs
-																		.size()][5];
-
-														for (int i = 0; i < finalPVs
-																.size(); i++) {
-															data[0][0] = StringUtils
-																	.defaultString(finalScore);
-															data[0][1] = StringUtils
-																	.defaultString(finalDepth);
-															data[0][2] = StringUtils
-																	.defaultString(finalTime);
-															data[0][3] = StringUtils
-																	.defaultString(finalNodes);
-															data[0][4] = StringUtils
-																	.defaultString(finalPVs
-																			.get(i));
-														}
-
-														for (int i = 0; i < bestMoves
-																.getRowCount(); i++) {
-															for (int j = 0; j < bestMoves
-																	.getColumnCount(); j++) {
-																data[i
-																		+ finalPVs
-																				.size()][j] = bestMoves
-																		.getText(
-																				i,
-																				j);
-															}
-														}
-
-														bestMoves
-																.refreshTable(data);
-													} else if (bestMoves
-															.getRowCount() > 0) {
-														if (StringUtils
-																.isNotBlank(finalScore)) {
-															bestMoves.setText(
-																	0, 0,
-																	finalScore);
-														}
-														if (StringUtils
-																.isNotBlank(finalDepth)) {
-															bestMoves.setText(
-																	0, 1,
-																	finalDepth);
-														}
-														if (StringUtils
-																.isNotBlank(finalTime)) {
-															bestMoves.setText(
-																	0, 2,
-																	finalTime);
-														}
-
-														if (StringUtils
-																.isNotBlank(finalNodes)) {
-															bestMoves.setText(
-																	0, 3,
-																	finalNodes);
-														}
-													}
-													if (finalCPU != null) {
-														cpuPercentageLabel
-																.setText(finalCPU);
-														topLine.layout(true,
-																true);
-													}
-													if (finalNPS != null) {
-														nodesPerSecondLabel
-																.setText(finalNPS);
-														topLine.layout(true,
-																true);
-													}
-												}
-											});
-						}
-					});
+			tableUpdater.add(infos);
 		}
 	};
 
@@ -348,6 +110,8 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 		composite.addDisposeListener(new DisposeListener() {
 			public void widgetDisposed(DisposeEvent e) {
 				if (currentEngine != null) {
+					EngineSupervisorService.getInstance().unsupervise(
+							currentEngine);
 					currentEngine.quit();
 				}
 			}
@@ -389,6 +153,8 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 					final UCIEngine engineToQuit = currentEngine;
 					ThreadService.getInstance().run(new Runnable() {
 						public void run() {
+							EngineSupervisorService.getInstance()
+									.unsupervise(engineToQuit);
 							engineToQuit.quit();
 						}
 					});
@@ -413,6 +179,22 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 			}
 		});
 
+		multiPvCombo = new Combo(topLine, SWT.DROP_DOWN | SWT.READ_ONLY);
+		multiPvCombo.setToolTipText(local.getString("uciAnalW_55"));
+		for (int i = 1; i <= MAX_MULTIPV; i++) {
+			multiPvCombo.add(i + " " + local.getString("uciAnalW_56"));
+		}
+		multiPvCombo.select(multiPvLines - 1);
+		multiPvCombo.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				multiPvLines = multiPvCombo.getSelectionIndex() + 1;
+				if (currentEngine != null && currentEngine.isProcessingGo()) {
+					start(true);
+				}
+			}
+		});
+
 		labelComposite = new Composite(topLine, SWT.NONE);
 		labelComposite.setLayout(SWTUtils
 				.createMarginlessRowLayout(SWT.VERTICAL));
@@ -475,6 +257,9 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 		bestMoves.addColumn(local.getString("uciAnalW_42"), SWT.LEFT, 60, false, null); 
 		bestMoves.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 1,
 				1));
+		tableUpdater = new AnalysisTableUpdater(bestMoves);
+		tableUpdater.setProgressLabels(topLine, nodesPerSecondLabel,
+				cpuPercentageLabel);
 
 		bestMoves.addRaptorTableListener(new RaptorTableAdapter() {
 			@Override
@@ -538,8 +323,11 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 					}
 				});
 		if (currentEngine != null) {
+			tableUpdater.stop();
 			ThreadService.getInstance().run(new Runnable() {
 				public void run() {
+					EngineSupervisorService.getInstance().unsupervise(
+							currentEngine);
 					currentEngine.quit();
 				}
 			});
@@ -558,6 +346,7 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 
 	public void stop() {		
 		if (currentEngine != null) {
+			tableUpdater.stop();
 			ThreadService.getInstance().run(new Runnable() {
 				public void run() {
 					if (currentEngine.isConnected()) {
@@ -609,6 +398,8 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 						if (!currentEngine.isConnected()) {
 							currentEngine.connect();
 						}
+						EngineSupervisorService.getInstance().supervise(
+								currentEngine);
 						Raptor.getInstance()
 								.getDisplay()
 								.asyncExec(
@@ -633,13 +424,32 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 							opt.setValue("false");  
 						}
 
+						if (currentEngine.hasOption("MultiPV")) {
+							UCISpinner opt = (UCISpinner) currentEngine
+									.getOption("MultiPV");
+							String lines = String.valueOf(Math.min(
+									multiPvLines, opt.getMaximum()));
+							if (!lines.equals(opt.getValue())) {
+								opt.setValue(lines);
+								currentEngine.setOption(opt);
+							}
+						}
+
 						currentEngine.newGame();
 						currentEngine.setPosition(controller.getGame().toFen(),
 								null);
 						currentEngine.isReady();
+
+						UCIInfo[] cachedInfos = tableUpdater.start(controller
+								.getGame(), currentEngine.getUserName(),
+								currentEngine.isMultiplyBlackScoreByMinus1());
+
 						currentEngine.go(
 								currentEngine.getGoAnalysisParameters(),
 								listener);
+						if (cachedInfos != null) {
+							listener.engineSentInfo(cachedInfos);
+						}
 						Raptor.getInstance().getDisplay()
 								.asyncExec(new RaptorRunnable() {
 									@Override
@@ -693,12 +503,4 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 		topLine.pack(true);
 		topLine.layout(true, true);
 	}
-	
-	public AutomaticAnalysisController getAnalysisController() {
-		return analysisController;
-	}
-
-	public void setAnalysisController(AutomaticAnalysisController analysisController) {
-		this.analysisController = analysisController;
-	}
 }
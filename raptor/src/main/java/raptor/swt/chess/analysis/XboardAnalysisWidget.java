@@ -13,7 +13,6 @@
  */
 package raptor.swt.chess.analysis;
 
-import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.dnd.Clipboard;
 import org.eclipse.swt.dnd.TextTransfer;
@@ -37,8 +36,10 @@ import org.eclipse.swt.widgets.MenuItem;
 
 import raptor.Raptor;
 import raptor.chess.util.GameUtils;
+import raptor.engine.uci.UCIBestMove;
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.UCIInfoListener;
 import raptor.engine.xboard.XboardEngine;
-import raptor.engine.xboard.XboardInfoListener;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.service.ThreadService;
@@ -63,56 +64,14 @@ public class XboardAnalysisWidget implements EngineAnalysisWidget {
 	protected Button startStopButton, propertiesButton;
 	protected static L10n local = L10n.getInstance();
 	private boolean ignoreEngineSelection;
-	
-	protected XboardInfoListener listener = new XboardInfoListener() {
-
-		public void engineSentInfo(final String ply, final String score,
-				final String time, final String nodes, final String pv) {
-			Raptor.getInstance().getDisplay().asyncExec(
-					new RaptorRunnable(controller.getConnector()) {
-						@Override
-						public void execute() {
-							if (composite.isDisposed()) {
-								return;
-							}
-							
-							if (StringUtils.isEmpty(score))
-								return;
-							
-							if (!currentEngine.isProcessingGo()) {
-								currentEngine.send("stop");
-								currentEngine.quit();
-							}
-
-							String[][] data = new String[1][5];
-
-							data[0][0] = StringUtils.defaultString(score);
-							data[0][1] = StringUtils.defaultString(ply);
-							data[0][2] = StringUtils.defaultString(time);
-							data[0][3] = StringUtils.defaultString(nodes);
-							data[0][4] = StringUtils.defaultString(pv);
-							
-							bestMoves.refreshTable(data);
-
-							/*if (StringUtils.isNotBlank(score)) {
-								bestMoves.setText(0, 0, score);
-							}
-							if (StringUtils.isNotBlank(ply)) {
-								bestMoves.setText(0, 1, ply);
-							}
-							if (StringUtils.isNotBlank(time)) {
-								bestMoves.setText(0, 2, time);
-							}
+	protected AnalysisTableUpdater tableUpdater;
 
-							if (StringUtils.isNotBlank(nodes)) {
-								bestMoves.setText(0, 3, nodes);
-							}
-							if (StringUtils.isNotBlank(pv)) {
-								bestMoves.setText(0, 4, pv);
-							}*/
-						}
-					});
+	protected UCIInfoListener listener = new UCIInfoListener() {
+		public void engineSentBestMove(UCIBestMove uciBestMove) {
+		}
 
+		public void engineSentInfo(UCIInfo[] infos) {
+			tableUpdater.add(infos);
 		}
 	};
 
@@ -229,6 +188,7 @@ public class XboardAnalysisWidget implements EngineAnalysisWidget {
 		bestMoves.addColumn(local.getString("uciAnalW_42"), SWT.LEFT, 60, false, null);
 		bestMoves.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 1,
 				1));
+		tableUpdater = new AnalysisTableUpdater(bestMoves);
 		
 		bestMoves.addRaptorTableListener(new RaptorTableAdapter() {
 			@Override
@@ -291,6 +251,7 @@ public class XboardAnalysisWidget implements EngineAnalysisWidget {
 					}
 				});
 		if (currentEngine != null) {
+			tableUpdater.stop();
 			ThreadService.getInstance().run(new Runnable() {
 				public void run() {
 					currentEngine.quit();
@@ -328,7 +289,15 @@ public class XboardAnalysisWidget implements EngineAnalysisWidget {
 					currentEngine.newGame(controller.getGame().getVariant());
 					currentEngine.setPosition(controller.getGame().toFen(),
 							controller.getGame().isWhitesMove());
+
+					UCIInfo[] cachedInfos = tableUpdater.start(controller
+							.getGame(), currentEngine.getEngineName(),
+							currentEngine.isMultiplyBlackScoreByMinus1());
+
 					currentEngine.analyze(listener);
+					if (cachedInfos != null) {
+						listener.engineSentInfo(cachedInfos);
+					}
 					Raptor.getInstance().getDisplay().asyncExec(
 							new RaptorRunnable() {
 								@Override
@@ -346,6 +315,7 @@ public class XboardAnalysisWidget implements EngineAnalysisWidget {
 
 	public void stop() {
 		if (currentEngine != null) {
+			tableUpdater.stop();
 			ThreadService.getInstance().run(new Runnable() {
 				public void run() {
 					if (currentEngine.isConnected()) {
@@ -400,5 +370,4 @@ public class XboardAnalysisWidget implements EngineAnalysisWidget {
 		topLine.pack(true);
 		topLine.layout(true, true);
 	}
-
 }
@@ -15,16 +15,20 @@ package raptor.swt.chess.controller;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import raptor.engine.uci.UCIInfo;
+import raptor.chess.Game;
+import raptor.chess.GameCursor;
+import raptor.engine.uci.UCIEngine;
+import raptor.engine.uci.UCIEnginePool;
 import raptor.engine.uci.info.BestLineFoundInfo;
 import raptor.engine.uci.info.ScoreInfo;
 import raptor.international.L10n;
 import raptor.service.ThreadService;
+import raptor.service.UCIEngineService;
 import raptor.swt.chess.movelist.TextAreaMoveList;
 import raptor.swt.chess.analysis.AnalysisCommentsGenerator;
-import raptor.swt.chess.analysis.UciAnalysisWidget;
 import raptor.util.RaptorLogger;
 
 public class AutomaticAnalysisController {
@@ -52,135 +56,207 @@ public class AutomaticAnalysisController {
 				: -score.getValueInCentipawns() / 100.0;
 	}
 
+	/**
+	 * Analyzes the game from startMove on with a pool of instances of the
+	 * default UCI engine, one per core. Positions are analyzed in parallel
+	 * for secsPerMove each and the comments are added to the move list in
+	 * move order as the results come in.
+	 */
 	public void startAnalysis(final int secsPerMove, final float threshold,
 			final int startMove, final boolean ansWhite, final boolean ansBlack) {
-		final AutomaticAnalysisController thisCont = this;
+		final UCIEngine engine = UCIEngineService.getInstance()
+				.getDefaultEngine();
+		if (engine == null) {
+			LOG.warn("No UCI engine is configured. Automatic analysis was not started.");
+			return;
+		}
+
 		ThreadService.getInstance().run(new Runnable() {
 
 			@Override
 			public void run() {
+				final List<Integer> plies = new ArrayList<Integer>();
+				final List<String> fens = new ArrayList<String>();
+				final List<Long> hashes = new ArrayList<Long>();
 				boardController.getBoard().getControl().getDisplay()
 						.syncExec(new Runnable() {
 							@Override
 							public void run() {
-								boardController.getBoard()
-										.showEngineAnalysisWidget();
 								boardController.getBoard().showMoveList();
+								collectPositions(startMove, ansWhite,
+										ansBlack, plies, fens, hashes);
 							}
 						});
-				((UciAnalysisWidget) boardController.getBoard()
-						.getEngineAnalysisWidget())
-						.setAnalysisController(thisCont);
-
-				int nOfMoves = boardController.getGame().getMoveList()
-						.getSize();
-				for (int i = startMove * 2 - 1; i <= nOfMoves; i++) {
-					final int ii = i;
-					if (!(ii%2!=0 && ansWhite || ii%2==0 && ansBlack))
-						continue;
-					
-					boardController.getBoard().getControl().getDisplay()
-							.syncExec(new Runnable() {
-								@Override
-								public void run() {	
-									boardController.gotoMove(ii);
-								}
-							});
+				if (plies.isEmpty()) {
+					return;
+				}
 
-					try {
-						Thread.sleep(secsPerMove * 1000);
-					} catch (InterruptedException e) {
-					}					
-					boardController.getBoard().getControl().getDisplay()
-							.syncExec(new Runnable() {
-								@Override
-								public void run() {
-									String score;
-									if (thisPosScore.getMateInMoves() != 0) {
-										score = local.getString("uciAnalW_0")
-												+ Math.abs(thisPosScore.getMateInMoves());
-									} else {
-										double scoreAsDouble = asDouble(thisPosScore);
-										
-										score = new BigDecimal(scoreAsDouble)
-                                                .setScale(
-                                                        2,
-                                                        BigDecimal.ROUND_HALF_UP)
-                                                .toString();
-										
-										if (thisPosScore.isLowerBoundScore()) 
-											score += "++"; 
-										else if (thisPosScore.isUpperBoundScore())
-											score += "--"; 
-									}
-									
-									positionScores.add(thisPosScore);										
-
-									boolean bad = false;
-									String comment = "";
-									if (positionScores.size() >= 2) {
-										ScoreInfo previousPosScore = positionScores.get(positionScores.size()-2);
-										double prevMoveDiff;
-										if (!(ansWhite && ansBlack) && ansWhite) {
-											prevMoveDiff = asDouble(previousPosScore) - asDouble(thisPosScore);
-										}
-										else if (!(ansWhite && ansBlack) && ansBlack) {
-											prevMoveDiff = asDouble(thisPosScore) - asDouble(previousPosScore);
-										}
-										else
-											prevMoveDiff = boardController
-												.getGame().isWhitesMove() ? asDouble(thisPosScore) + asDouble(previousPosScore)
-												: -asDouble(previousPosScore) - asDouble(thisPosScore);
-												
-										LOG.debug("ThisScore: " + asDouble(thisPosScore) 
-												+" PrevScore: " + asDouble(previousPosScore)
-												+" prevMoveDiff: " + prevMoveDiff);
-
-										if (prevMoveDiff > threshold * 2) {
-											score += " VERY BAD!";
-											bad = true;
-										}
-										else if (prevMoveDiff > threshold) {
-											score += " BAD!";
-											bad = true;
-										}
-										comment = " " + commGenerator
-												.getComment(positionScores, thisCont,
-														prevMoveDiff, !boardController
-														.getGame().isWhitesMove(), thisPosBestLine, boardController.getGame());
-										if (comment.equals(" "))
-											comment = "";
+				final UCIEnginePool pool = new UCIEnginePool(engine, Math.min(
+						UCIEnginePool.getDefaultSize(), plies.size()));
+				try {
+					if (pool.start() == 0) {
+						LOG.error("Could not start " + engine.getUserName()
+								+ " for automatic analysis.");
+						return;
+					}
+					isMultiplyBlackScoreByMinus = pool
+							.isMultiplyBlackScoreByMinus1();
+
+					long[] hashArray = new long[hashes.size()];
+					for (int i = 0; i < hashArray.length; i++) {
+						hashArray[i] = hashes.get(i);
+					}
+					pool.setPositionHashes(hashArray, boardController
+							.getGame().getVariant());
+
+					pool.analyze(fens.toArray(new String[0]),
+							secsPerMove * 1000L,
+							new UCIEnginePool.PoolListener() {
+								public void positionAnalyzed(final int index,
+										final ScoreInfo score,
+										final BestLineFoundInfo bestLine) {
+									if (boardController.isDisposed()) {
+										pool.cancel();
+										return;
 									}
-									score = "(" + score + comment + ")";
-									((TextAreaMoveList) boardController
-											.getBoard().getMoveList())
-											.addCommentToMove(ii - 1, score, bad);
+									boardController.getBoard().getControl()
+											.getDisplay().syncExec(
+													new Runnable() {
+														@Override
+														public void run() {
+															if (!boardController
+																	.isDisposed()) {
+																addAnalysis(
+																		plies.get(index),
+																		score,
+																		bestLine,
+																		threshold,
+																		ansWhite,
+																		ansBlack);
+															}
+														}
+													});
 								}
 							});
+				} finally {
+					pool.quit();
 				}
-				boardController.getBoard().getControl().getDisplay()
-						.syncExec(new Runnable() {
-							@Override
-							public void run() {
-								boardController.getBoard()
-										.hideEngineAnalysisWidget();
-							}
-						});
 			}
 
+			@Override
+			public String toString() {
+				return "AutomaticAnalysisController.startAnalysis runnable";
+			}
 		});
+	}
 
+	/**
+	 * Adds the half move numbers to analyze and the fen and zobrist position
+	 * hash of the position after each of them to the lists. Must be invoked
+	 * on the SWT thread.
+	 */
+	protected void collectPositions(int startMove, boolean ansWhite,
+			boolean ansBlack, List<Integer> plies, List<String> fens,
+			List<Long> hashes) {
+		Game game = boardController.getGame() instanceof GameCursor ? ((GameCursor) boardController
+				.getGame()).getMasterGame()
+				: boardController.getGame();
+		int nOfMoves = game.getMoveList().getSize();
+		for (int i = startMove * 2 - 1; i <= nOfMoves; i++) {
+			if (i%2!=0 && ansWhite || i%2==0 && ansBlack)
+				plies.add(i);
+		}
+
+		// Walk back from the end of the game so each position needs a single
+		// rollback.
+		Game copy = game.deepCopy(true);
+		String[] fenArray = new String[plies.size()];
+		Long[] hashArray = new Long[plies.size()];
+		for (int i = plies.size() - 1; i >= 0; i--) {
+			while (copy.getMoveList().getSize() > plies.get(i)) {
+				copy.rollback();
+			}
+			fenArray[i] = copy.toFen();
+			hashArray[i] = copy.getZobristPositionHash();
+		}
+		fens.addAll(Arrays.asList(fenArray));
+		hashes.addAll(Arrays.asList(hashArray));
 	}
 
-	public void engineSentInfo(UCIInfo[] infos,
-			boolean isMultiplyBlackScoreByMinus) {
-		this.isMultiplyBlackScoreByMinus = isMultiplyBlackScoreByMinus;
-		for (UCIInfo info : infos) {
-			if (info instanceof ScoreInfo) {
-				thisPosScore = (ScoreInfo) info;
-			} else if (info instanceof BestLineFoundInfo)
-				thisPosBestLine = (BestLineFoundInfo) info;
+	/**
+	 * Shows the position after the half move ii and adds the comment for the
+	 * engine's score to the move list. Must be invoked on the SWT thread in
+	 * move order.
+	 */
+	protected void addAnalysis(final int ii, ScoreInfo score,
+			BestLineFoundInfo bestLine, float threshold, boolean ansWhite,
+			boolean ansBlack) {
+		boardController.gotoMove(ii);
+		if (score == null) {
+			return;
+		}
+		thisPosScore = score;
+		thisPosBestLine = bestLine;
+		final AutomaticAnalysisController thisCont = this;
+
+		String scoreText;
+		if (thisPosScore.getMateInMoves() != 0) {
+			scoreText = local.getString("uciAnalW_0")
+					+ Math.abs(thisPosScore.getMateInMoves());
+		} else {
+			double scoreAsDouble = asDouble(thisPosScore);
+
+			scoreText = new BigDecimal(scoreAsDouble).setScale(2,
+					BigDecimal.ROUND_HALF_UP).toString();
+
+			if (thisPosScore.isLowerBoundScore())
+				scoreText += "++";
+			else if (thisPosScore.isUpperBoundScore())
+				scoreText += "--";
+		}
+
+		positionScores.add(thisPosScore);
+
+		boolean bad = false;
+		String comment = "";
+		if (positionScores.size() >= 2) {
+			ScoreInfo previousPosScore = positionScores.get(positionScores.size()-2);
+			double prevMoveDiff;
+			if (!(ansWhite && ansBlack) && ansWhite) {
+				prevMoveDiff = asDouble(previousPosScore) - asDouble(thisPosScore);
+			}
+			else if (!(ansWhite && ansBlack) && ansBlack) {
+				prevMoveDiff = asDouble(thisPosScore) - asDouble(previousPosScore);
+			}
+			else
+				prevMoveDiff = boardController
+					.getGame().isWhitesMove() ? asDouble(thisPosScore) + asDouble(previousPosScore)
+					: -asDouble(previousPosScore) - asDouble(thisPosScore);
+
+			LOG.debug("ThisScore: " + asDouble(thisPosScore)
+					+" PrevScore: " + asDouble(previousPosScore)
+					+" prevMoveDiff: " + prevMoveDiff);
+
+			if (prevMoveDiff > threshold * 2) {
+				scoreText += " VERY BAD!";
+				bad = true;
+			}
+			else if (prevMoveDiff > threshold) {
+				scoreText += " BAD!";
+				bad = true;
+			}
+			if (thisPosBestLine != null) {
+				comment = " " + commGenerator
+						.getComment(positionScores, thisCont,
+								prevMoveDiff, !boardController
+								.getGame().isWhitesMove(), thisPosBestLine, boardController.getGame());
+			}
+			if (comment.equals(" "))
+				comment = "";
 		}
+		scoreText = "(" + scoreText + comment + ")";
+		((TextAreaMoveList) boardController.getBoard().getMoveList())
+				.addCommentToMove(ii - 1, scoreText, bad);
 	}
 
 }
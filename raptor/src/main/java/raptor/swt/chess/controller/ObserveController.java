@@ -274,6 +274,14 @@ public class ObserveController extends ChessBoardController {
 		}
 	}
 
+	/**
+	 * Sets the flag denoting if the game should be unobserved when this
+	 * controller is disposed.
+	 */
+	public void setUnobserveOnDispose(boolean unobserveOnDispose) {
+		this.unobserveOnDispose = unobserveOnDispose;
+	}
+
 	public void enableDisableNavButtons() {
 		setToolItemEnabled(ToolBarItemKey.NEXT_NAV, cursor.hasNext());
 		setToolItemEnabled(ToolBarItemKey.BACK_NAV, cursor.hasPrevious());
@@ -0,0 +1,202 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe list of listeners which can be notified while listeners are
+ * added and removed. The listeners are kept in an array which is copied on
+ * every add and remove, so notifying never locks, and sees the listeners as
+ * they were when it started.
+ * 
+ * fire times each call to a listener. Calls taking longer than
+ * SLOW_CALL_MILLIS are logged, and getTimings summarizes the calls made to
+ * each listener so slow listeners can be found.
+ */
+public class ListenerList<T> implements Iterable<T> {
+	/**
+	 * A call made to each listener by fire.
+	 */
+	public static interface Notification<T> {
+		public void deliver(T listener);
+	}
+
+	/**
+	 * A listener and the time spent in it.
+	 */
+	protected static class Entry<T> {
+		protected T listener;
+		protected AtomicLong callCount = new AtomicLong();
+		protected AtomicLong totalNanos = new AtomicLong();
+		protected volatile long maxNanos;
+
+		protected Entry(T listener) {
+			this.listener = listener;
+		}
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ListenerList.class);
+
+	public static final long SLOW_CALL_MILLIS = 250;
+
+	protected static final Entry<?>[] NO_ENTRIES = new Entry<?>[0];
+
+	protected String name;
+	protected volatile Entry<?>[] entries = NO_ENTRIES;
+
+	/**
+	 * @param name
+	 *            The name used for this list in logs and getTimings.
+	 */
+	public ListenerList(String name) {
+		this.name = name;
+	}
+
+	public synchronized void add(T listener) {
+		Entry<?>[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+		newEntries[entries.length] = new Entry<T>(listener);
+		entries = newEntries;
+	}
+
+	public synchronized void clear() {
+		entries = NO_ENTRIES;
+	}
+
+	/**
+	 * Delivers the notification to each listener in the order they were
+	 * added, timing each call. An exception thrown by a listener is passed on
+	 * to the caller, and the listeners after it are not notified.
+	 */
+	@SuppressWarnings("unchecked")
+	public void fire(Notification<T> notification) {
+		for (Entry<?> entry : entries) {
+			Entry<T> typedEntry = (Entry<T>) entry;
+			long startTime = System.nanoTime();
+			try {
+				notification.deliver(typedEntry.listener);
+			} finally {
+				long nanos = System.nanoTime() - startTime;
+				entry.callCount.incrementAndGet();
+				entry.totalNanos.addAndGet(nanos);
+				if (nanos > entry.maxNanos) {
+					// Racy, the maximum is only informational.
+					entry.maxNanos = nanos;
+				}
+				if (nanos > SLOW_CALL_MILLIS * 1000000L) {
+					LOG.warn(name + " listener " + entry.listener + " took "
+							+ nanos / 1000000L + "ms");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a summary of the calls made to each listener by fire, slowest
+	 * in total first, one listener per line.
+	 */
+	public String getTimings() {
+		List<Entry<?>> sorted = new ArrayList<Entry<?>>(Arrays.asList(entries));
+		Collections.sort(sorted, new Comparator<Entry<?>>() {
+			public int compare(Entry<?> entry1, Entry<?> entry2) {
+				long total1 = entry1.totalNanos.get();
+				long total2 = entry2.totalNanos.get();
+				return total1 < total2 ? 1 : total1 > total2 ? -1 : 0;
+			}
+		});
+
+		StringBuilder result = new StringBuilder(sorted.size() * 100);
+		for (Entry<?> entry : sorted) {
+			long calls = entry.callCount.get();
+			result.append(name).append(' ').append(entry.listener).append(
+					": calls=").append(calls).append(" avg/max ms=").append(
+					String.format("%.3f/%.3f", calls == 0 ? 0.0 : entry.totalNanos
+							.get()
+							/ 1000000.0 / calls, entry.maxNanos / 1000000.0))
+					.append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Logs getTimings at info level if there are listeners.
+	 */
+	public void logTimings() {
+		if (LOG.isInfoEnabled() && !isEmpty()) {
+			LOG.info(name + " listener timings:\n" + getTimings());
+		}
+	}
+
+	public boolean isEmpty() {
+		return entries.length == 0;
+	}
+
+	/**
+	 * Returns an iterator over the listeners when this method was invoked.
+	 * Calls made through it are not timed.
+	 */
+	public Iterator<T> iterator() {
+		final Entry<?>[] snapshot = entries;
+		return new Iterator<T>() {
+			protected int index;
+
+			public boolean hasNext() {
+				return index < snapshot.length;
+			}
+
+			@SuppressWarnings("unchecked")
+			public T next() {
+				if (index == snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				return (T) snapshot[index++].listener;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Removes the first occurrence of the listener. Returns true if it was
+	 * in the list.
+	 */
+	public synchronized boolean remove(T listener) {
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i].listener == listener
+					|| entries[i].listener.equals(listener)) {
+				Entry<?>[] newEntries = new Entry<?>[entries.length - 1];
+				System.arraycopy(entries, 0, newEntries, 0, i);
+				System.arraycopy(entries, i + 1, newEntries, i,
+						newEntries.length - i);
+				entries = newEntries;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return entries.length;
+	}
+}
@@ -0,0 +1,250 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A set of regular expressions, compiled with RegExUtils.getPattern, which a
+ * text can be matched against all at once. matchesAny returns true if any
+ * expression matches the whole text, the same as calling RegExUtils.matches
+ * with each.
+ * 
+ * Expressions are split by shape. Literal expressions are kept in a hash
+ * set. Expressions which are a literal followed by .* are kept in a trie
+ * walked once along the start of the text. All others are joined into one
+ * alternation, except those with back references, which would refer to the
+ * wrong group once joined. Literals are compared ignoring the case of ASCII letters,
+ * as Pattern.CASE_INSENSITIVE does.
+ * 
+ * A PatternSet is immutable and thread safe. Use with to build a new one
+ * from an updated list of expressions: it reuses the parts which didn't
+ * change.
+ */
+public class PatternSet {
+	/**
+	 * A trie node. A terminal node ends a prefix.
+	 */
+	protected static class Node {
+		protected Map<Character, Node> children;
+		protected boolean isTerminal;
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(PatternSet.class);
+
+	protected static final Pattern BACK_REFERENCE = Pattern
+			.compile("\\\\(\\d|k<)");
+
+	protected static final PatternSet EMPTY = new PatternSet(new String[0],
+			null);
+
+	protected String[] regularExpressions;
+	protected Set<String> literals = new HashSet<String>();
+	protected Node prefixes = new Node();
+	protected List<String> others = new ArrayList<String>();
+	protected Pattern combined;
+	protected List<Pattern> separate = new ArrayList<Pattern>();
+
+	/**
+	 * Builds a set of the specified expressions. Invalid expressions are
+	 * logged and ignored.
+	 */
+	public PatternSet(String[] regularExpressions) {
+		this(regularExpressions, null);
+	}
+
+	protected PatternSet(String[] regularExpressions, PatternSet previous) {
+		this.regularExpressions = regularExpressions.clone();
+		for (String regularExpression : regularExpressions) {
+			add(regularExpression);
+		}
+		if (!others.isEmpty()) {
+			if (previous != null && previous.others.equals(others)) {
+				combined = previous.combined;
+			} else {
+				combined = combine(others);
+			}
+		}
+	}
+
+	/**
+	 * Returns a set with no expressions.
+	 */
+	public static PatternSet empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Lower cases ASCII letters only, like Pattern.CASE_INSENSITIVE without
+	 * Pattern.UNICODE_CASE.
+	 */
+	protected static String toAsciiLowerCase(String text) {
+		char[] chars = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				if (chars == null) {
+					chars = text.toCharArray();
+				}
+				chars[i] = (char) (c + ('a' - 'A'));
+			}
+		}
+		return chars == null ? text : new String(chars);
+	}
+
+	protected static char toAsciiLowerCase(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	protected static boolean isAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > 127) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns one Pattern matching whatever any of the expressions matches,
+	 * or null if none of them compiles.
+	 */
+	protected static Pattern combine(List<String> regularExpressions) {
+		StringBuilder result = new StringBuilder(regularExpressions.size() * 30);
+		for (String regularExpression : regularExpressions) {
+			if (result.length() > 0) {
+				result.append('|');
+			}
+			result.append("(?:").append(regularExpression).append(')');
+		}
+		return RegExUtils.getPattern(result.toString());
+	}
+
+	public String[] getRegularExpressions() {
+		return regularExpressions.clone();
+	}
+
+	/**
+	 * Returns true if any expression in the set matches the whole text.
+	 */
+	public boolean matchesAny(String text) {
+		if (!literals.isEmpty() && literals.contains(toAsciiLowerCase(text))) {
+			return true;
+		}
+		if (prefixes.isTerminal) {
+			return true;
+		}
+		if (prefixes.children != null) {
+			Node node = prefixes;
+			for (int i = 0; i < text.length() && node.children != null; i++) {
+				node = node.children.get(toAsciiLowerCase(text.charAt(i)));
+				if (node == null) {
+					break;
+				}
+				if (node.isTerminal) {
+					return true;
+				}
+			}
+		}
+		if (combined != null && RegExUtils.matches(combined, text)) {
+			return true;
+		}
+		for (Pattern pattern : separate) {
+			if (RegExUtils.matches(pattern, text)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return regularExpressions.length;
+	}
+
+	@Override
+	public String toString() {
+		return "PatternSet literals=" + literals.size() + " combined="
+				+ others.size() + " separate=" + separate.size() + " " + Arrays.toString(regularExpressions);
+	}
+
+	/**
+	 * Returns a set of the specified expressions. If they are the ones in
+	 * this set, this set is returned, and the combined expression is reused
+	 * if the expressions which need it didn't change.
+	 */
+	public PatternSet with(String[] regularExpressions) {
+		if (Arrays.equals(this.regularExpressions, regularExpressions)) {
+			return this;
+		}
+		return new PatternSet(regularExpressions, this);
+	}
+
+	protected void add(String regularExpression) {
+		if (regularExpression == null || regularExpression.length() == 0) {
+			return;
+		}
+		Pattern pattern = RegExUtils.getPattern(regularExpression);
+		if (pattern == null) {
+			LOG.error("Invalid regex pattern " + regularExpression
+					+ ". Will be ignored.");
+			return;
+		}
+
+		String literal = RegExUtils.getLiteral(regularExpression);
+		if (literal != null && isAscii(literal)) {
+			literals.add(toAsciiLowerCase(literal));
+			return;
+		}
+
+		if (regularExpression.endsWith(".*")) {
+			String head = regularExpression.substring(0, regularExpression
+					.length() - 2);
+			String prefix = RegExUtils.getLiteral(head);
+			if (prefix != null && isAscii(prefix)) {
+				addPrefix(toAsciiLowerCase(prefix));
+				return;
+			}
+		}
+
+		if (BACK_REFERENCE.matcher(regularExpression).find()) {
+			separate.add(pattern);
+		} else {
+			others.add(regularExpression);
+		}
+	}
+
+	protected void addPrefix(String prefix) {
+		Node node = prefixes;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (node.children == null) {
+				node.children = new HashMap<Character, Node>();
+			}
+			Node child = node.children.get(prefix.charAt(i));
+			if (child == null) {
+				child = new Node();
+				node.children.put(prefix.charAt(i), child);
+			}
+			node = child;
+		}
+		node.isTerminal = true;
+	}
+}
@@ -22,6 +22,68 @@ import raptor.util.RaptorLogger;
 public class RegExUtils {
 	private static final RaptorLogger LOG = RaptorLogger.getLog(RegExUtils.class);
 
+	/**
+	 * Returns the literal text every match of the regular expression must
+	 * start with, or "" if there is none. Used to skip matching text which
+	 * can't match. The prefix is found conservatively: it stops at the first
+	 * construct which isn't a plain or escaped character, and is "" if the
+	 * expression has an alternation or inline flags.
+	 */
+	public static String getLiteralPrefix(String regularExpression) {
+		StringBuilder result = new StringBuilder();
+		parseLiteralPrefix(regularExpression, result);
+		return result.toString();
+	}
+
+	/**
+	 * Returns the text the regular expression matches if it only matches one
+	 * text, i.e. it is made of plain and escaped characters. Returns null
+	 * otherwise.
+	 */
+	public static String getLiteral(String regularExpression) {
+		StringBuilder result = new StringBuilder();
+		return regularExpression != null
+				&& parseLiteralPrefix(regularExpression, result) == regularExpression
+						.length() ? result.toString() : null;
+	}
+
+	/**
+	 * Appends the literal prefix of the regular expression to result and
+	 * returns the index in the expression where it ends.
+	 */
+	protected static int parseLiteralPrefix(String regularExpression,
+			StringBuilder result) {
+		if (regularExpression == null
+				|| regularExpression.indexOf('|') != -1
+				|| regularExpression.startsWith("(?")) {
+			return 0;
+		}
+		int length = regularExpression.length();
+		int i = 0;
+		while (i < length) {
+			char c = regularExpression.charAt(i);
+			int next = i + 1;
+			if (c == '\\') {
+				if (next == length
+						|| Character.isLetterOrDigit(regularExpression
+								.charAt(next))) {
+					break;
+				}
+				c = regularExpression.charAt(next++);
+			} else if (".*+?[](){}^$".indexOf(c) != -1) {
+				break;
+			}
+			if (next < length
+					&& "*+?{".indexOf(regularExpression.charAt(next)) != -1) {
+				// The character is quantified, it may not be there at all.
+				break;
+			}
+			result.append(c);
+			i = next;
+		}
+		return i;
+	}
+
 	public static Pattern getPattern(String regularExpression) {
 		try {
 			return Pattern.compile(regularExpression, Pattern.MULTILINE
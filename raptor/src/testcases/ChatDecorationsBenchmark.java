@@ -0,0 +1,166 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatType;
+import raptor.connector.ics.replay.AckRequestFilter;
+import raptor.connector.ics.replay.SessionLog;
+import raptor.swt.chat.ChatDecorations;
+
+/**
+ * A microbenchmark of ChatDecorations over a burst of games, history and
+ * journal output like the one sent when a user checks the games list and a
+ * few histories. Run it as a Java application. Pass a file captured by
+ * SessionRecorder to use its output instead, and optionally the number of
+ * iterations.
+ * 
+ * Each message is decorated twice, as it would be when shown in the main
+ * console and a tab. The first lookup scans the message, the second is served
+ * from the cache, and both are reported.
+ */
+public class ChatDecorationsBenchmark {
+	protected static final int FLAGS = ChatDecorations.UNDERLINE_COMMANDS
+			| ChatDecorations.UNDERLINE_URLS
+			| ChatDecorations.UNDERLINE_QUOTED_TEXT;
+
+	public static void main(String[] args) throws Exception {
+		List<ChatEvent> burst = args.length > 0 ? loadBurst(new File(args[0]))
+				: createBurst();
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		long characters = 0;
+		int decorations = 0;
+		for (ChatEvent event : burst) {
+			characters += event.getMessage().length();
+			decorations += ChatDecorations.get(event, event.getMessage(),
+					FLAGS).getCount();
+		}
+		System.out.println(burst.size() + " messages, " + characters
+				+ " characters, " + decorations + " decorations.");
+
+		for (int round = 0; round < 3; round++) {
+			long checksum = 0;
+			long scanNanos = 0;
+			long cachedNanos = 0;
+			for (int i = 0; i < iterations; i++) {
+				for (ChatEvent event : burst) {
+					// A new event each time, so only the second lookup hits
+					// the cache.
+					ChatEvent copy = new ChatEvent(event.getSource(), event
+							.getType(), event.getMessage());
+					long start = System.nanoTime();
+					checksum += ChatDecorations.get(copy, copy.getMessage(),
+							FLAGS).getCount();
+					long scanned = System.nanoTime();
+					checksum += ChatDecorations.get(copy, copy.getMessage(),
+							FLAGS).getCount();
+					cachedNanos += System.nanoTime() - scanned;
+					scanNanos += scanned - start;
+				}
+			}
+
+			long messages = (long) iterations * burst.size();
+			System.out.println("Round " + round + ": scan "
+					+ (scanNanos / messages) + " ns/message, "
+					+ (scanNanos / (characters * iterations))
+					+ " ns/char, cached " + (cachedNanos / messages)
+					+ " ns/message (" + checksum + ")");
+		}
+		System.out.println(ChatDecorations.getCacheStatistics());
+	}
+
+	protected static List<ChatEvent> createBurst() {
+		List<ChatEvent> result = new ArrayList<ChatEvent>();
+		StringBuilder games = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			games.append("\n").append(i + 1).append(" ").append(1500 + i)
+					.append(" Player").append(i).append(" ")
+					.append(1900 - i).append(" Opponent").append(i)
+					.append(" [ br  3   0]   2:31 -  2:22 (35-35) ")
+					.append(i % 2 == 0 ? "W" : "B").append(": ").append(i % 40);
+		}
+		games.append("\n\n  300 games displayed.");
+		result.add(new ChatEvent(null, ChatType.GAMES, games.toString()));
+
+		for (int player = 0; player < 10; player++) {
+			StringBuilder history = new StringBuilder();
+			history.append("\nHistory for Player").append(player).append(":");
+			history.append("\n                  Opponent      Type         ECO End Date");
+			for (int i = 0; i < 10; i++) {
+				history.append("\n").append(80 + i).append(": ")
+						.append(i % 3 == 0 ? "-" : "+").append(" ")
+						.append(1800 + i).append(" W ").append(1700 + i)
+						.append(" Opponent").append(i)
+						.append("     [ br  5   0] B23 Res Fri Dec 25, 19:44 EST 2009");
+			}
+			result.add(new ChatEvent(null, ChatType.HISTORY, history
+					.toString()));
+
+			StringBuilder journal = new StringBuilder();
+			journal.append("\nJournal for Player").append(player).append(":");
+			journal.append("\n   White         Rating  Black         Rating  Type         ECO End Result");
+			for (int i = 1; i <= 10; i++) {
+				journal.append("\n%").append(i < 10 ? "0" : "").append(i)
+						.append(": Player").append(player)
+						.append("      1639  Opponent").append(i)
+						.append("         1690  [ br  5   0] C11 Res 0-1");
+			}
+			result.add(new ChatEvent(null, ChatType.JOURNAL, journal
+					.toString()));
+
+			result.add(new ChatEvent("Player" + player, ChatType.CHANNEL_TELL,
+					"\nPlayer" + player + "(24): has anyone seen \"the game\" "
+							+ "at http://www.freechess.org/ or ficsgames.org/ ?"));
+		}
+		return result;
+	}
+
+	/**
+	 * Splits a captured session into one event per prompt, after removing
+	 * the timeseal ack requests. Games, history and journal output is
+	 * recognized by its header, everything else is treated as a tell.
+	 */
+	protected static List<ChatEvent> loadBurst(File file) throws Exception {
+		List<ChatEvent> result = new ArrayList<ChatEvent>();
+		StringBuilder text = new StringBuilder();
+		AckRequestFilter filter = new AckRequestFilter();
+		for (SessionLog.Chunk chunk : SessionLog.load(file, "fics% ")
+				.getChunks()) {
+			ByteBuffer buffer = filter.filter(chunk);
+			text.append(new String(buffer.array(), buffer.position(), buffer
+					.remaining(), SessionLog.CHARSET));
+		}
+		for (String message : StringUtils.splitByWholeSeparator(StringUtils
+				.remove(text.toString(), '\r'), "fics% ")) {
+			ChatType type = ChatType.TELL;
+			if (message.contains("games displayed.")) {
+				type = ChatType.GAMES;
+			} else if (message.contains("History for ")) {
+				type = ChatType.HISTORY;
+			} else if (message.contains("Journal for ")) {
+				type = ChatType.JOURNAL;
+			}
+			result.add(new ChatEvent(null, type, message));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import raptor.connector.ics.replay.AckRequestFilter;
+import raptor.connector.ics.replay.SessionLog;
+
+public class TestAckRequestFilter {
+	protected static String filter(AckRequestFilter filter, String text) {
+		ByteBuffer buffer = filter.filter(new SessionLog.Chunk(0, text));
+		return new String(buffer.array(), buffer.position(), buffer
+				.remaining());
+	}
+
+	@Test
+	public void testStrip() {
+		AckRequestFilter filter = new AckRequestFilter();
+		assertEquals("fics% \nGame 1", filter(filter,
+				"fics% \n\n\r[G]\n\rGame 1"));
+		assertEquals("", filter(filter, "\n\r[G]\n\r"));
+		assertEquals(2, filter.getAckRequestCount());
+	}
+
+	@Test
+	public void testSplitAckRequest() {
+		AckRequestFilter filter = new AckRequestFilter();
+		assertEquals("abc", filter(filter, "abc\n\r[G"));
+		assertEquals("def", filter(filter, "]\n\rdef"));
+		assertEquals(1, filter.getAckRequestCount());
+
+		// A held back prefix which turns out not to be a request is kept.
+		assertEquals("abc", filter(filter, "abc\n\r["));
+		assertEquals("\n\r[Xdef", filter(filter, "Xdef"));
+		assertEquals(1, filter.getAckRequestCount());
+	}
+
+	@Test
+	public void testLargeChunk() {
+		AckRequestFilter filter = new AckRequestFilter();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			text.append("line ").append(i).append('\n');
+		}
+		assertEquals(text.toString(), filter(filter, text + "\n\r[G]\n\r"));
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import raptor.swt.chat.ChatConsoleContent;
+import raptor.swt.chat.ChatConsoleHistory;
+
+public class TestChatConsoleContent {
+	protected static class Content extends ChatConsoleContent {
+		/**
+		 * Returns the styles the widget gets for a line.
+		 */
+		protected StyleRange[] getLineStyles(int lineIndex) {
+			return getStyleRanges(getOffsetAtLine(lineIndex), getLine(
+					lineIndex).length());
+		}
+	}
+
+	protected static final int LINES = 100;
+	protected static final int LINE_LENGTH = 8;
+
+	protected Content content;
+
+	protected static StyleRange createStyle(int start, int length,
+			boolean isUnderline) {
+		StyleRange result = new StyleRange();
+		result.start = start;
+		result.length = length;
+		result.underline = isUnderline;
+		result.strikeout = !isUnderline;
+		return result;
+	}
+
+	protected static void assertStyle(StyleRange style, int start,
+			int length, boolean isUnderline) {
+		assertEquals(start, style.start);
+		assertEquals(length, style.length);
+		assertEquals(isUnderline, style.underline);
+	}
+
+	protected static String getText(ChatConsoleContent content)
+			throws IOException {
+		StringWriter writer = new StringWriter();
+		content.write(writer);
+		return writer.toString();
+	}
+
+	@Before
+	public void setUp() {
+		content = new Content();
+		for (int i = 0; i < LINES; i++) {
+			String number = String.valueOf(i);
+			content.replaceTextRange(content.getCharCount(), 0, "line "
+					+ (number.length() == 1 ? "0" + number : number) + "\n");
+		}
+	}
+
+	@After
+	public void tearDown() {
+		content.dispose();
+	}
+
+	@Test
+	public void testArchiveAndRestore() throws IOException {
+		String text = getText(content);
+		content.setStyleRange(createStyle(10 * LINE_LENGTH, 4, false));
+		content.setStyleRange(createStyle(300, 8, true));
+
+		int cleanTo = content.getReduceOffset(500);
+		content.archive(cleanTo);
+		ChatConsoleHistory history = content.getHistory();
+		assertEquals(cleanTo, history.getCharCount());
+		assertEquals(LINES * LINE_LENGTH - cleanTo, content.getCharCount());
+		assertEquals("line 38", content.getLine(0));
+		// Nothing is lost, save writes the history first.
+		assertEquals(text, getText(content));
+
+		// Whole lines are restored, at least as many chars as asked for.
+		assertEquals(3 * LINE_LENGTH, content.restore(20));
+		assertEquals(cleanTo - 3 * LINE_LENGTH, history.getCharCount());
+		assertEquals("line 35", content.getLine(0));
+		assertEquals(text, getText(content));
+
+		// The style cut by the archive is whole again.
+		int line37 = 2 * LINE_LENGTH;
+		StyleRange[] styles = content.getLineStyles(2);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], line37 + 4, 3, true);
+		styles = content.getLineStyles(3);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], line37 + LINE_LENGTH, 4, true);
+
+		// Restoring everything brings back the oldest styles.
+		content.restore(Integer.MAX_VALUE);
+		assertEquals(0, history.getCharCount());
+		assertEquals(LINES * LINE_LENGTH, content.getCharCount());
+		assertEquals("line 00", content.getLine(0));
+		styles = content.getLineStyles(10);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], 10 * LINE_LENGTH, 4, false);
+		assertEquals(0, content.restore(100));
+	}
+
+	@Test
+	public void testHistorySearch() {
+		content.archive(content.getReduceOffset(100));
+		ChatConsoleHistory history = content.getHistory();
+		int last = history.getCharCount() - 1;
+		assertEquals(5 * LINE_LENGTH, history.lastIndexOfIgnoreCase("LINE 05",
+				last));
+		assertEquals(-1, history.lastIndexOfIgnoreCase("line 05", 5
+				* LINE_LENGTH - 1));
+		assertEquals(-1, history.lastIndexOfIgnoreCase("line 99", last));
+		assertEquals(-1, history.lastIndexOfIgnoreCase("line 50", -1));
+
+		// Matches across the blocks the file is read in are found.
+		ChatConsoleHistory longHistory = new ChatConsoleHistory();
+		try {
+			StringBuilder text = new StringBuilder();
+			while (text.length() < 100000) {
+				text.append("abcdefghij");
+			}
+			longHistory.append(text.toString());
+			longHistory.append("needle");
+			longHistory.append(text.toString());
+			assertEquals(text.length(), longHistory.lastIndexOfIgnoreCase(
+					"NEEDLE", longHistory.getCharCount() - 1));
+			for (int offset = 32760; offset < 32770; offset++) {
+				assertEquals(offset - offset % 10, longHistory
+						.lastIndexOfIgnoreCase("abcdefghij", offset));
+			}
+			assertEquals(0, longHistory.getLineStart(longHistory
+					.getCharCount()));
+		} finally {
+			longHistory.dispose();
+		}
+	}
+
+	@Test
+	public void testReduce() {
+		assertEquals(LINES * LINE_LENGTH, content.getCharCount());
+		assertEquals(LINES + 1, content.getLineCount());
+		assertEquals(0, content.getReduceOffset(LINES * LINE_LENGTH));
+
+		// A third is removed, up to the end of the line it ends in.
+		int cleanTo = content.getReduceOffset(700);
+		assertEquals(264, cleanTo);
+		// Enough is removed to get under the limit.
+		cleanTo = content.getReduceOffset(500);
+		assertEquals(304, cleanTo);
+
+		content.replaceTextRange(0, cleanTo, "");
+		assertEquals(LINES * LINE_LENGTH - 304, content.getCharCount());
+		assertEquals(LINES + 1 - 38, content.getLineCount());
+		assertEquals("line 38", content.getLine(0));
+		assertEquals("line 99", content.getLine(content.getLineCount() - 2));
+		assertEquals(LINE_LENGTH, content.getOffsetAtLine(1));
+		assertEquals(1, content.getLineAtOffset(LINE_LENGTH));
+		assertEquals("line 40\n", content.getTextRange(2 * LINE_LENGTH,
+				LINE_LENGTH));
+	}
+
+	@Test
+	public void testReduceLongLastLine() {
+		content.replaceTextRange(content.getCharCount(), 0,
+				"a last line without a line delimiter");
+		int charCount = content.getCharCount();
+		assertEquals(charCount - 10, content.getReduceOffset(10));
+	}
+
+	@Test
+	public void testStyleOffsets() {
+		content.setStyleRange(createStyle(0, 10, true));
+		content.setStyleRange(createStyle(3, 2, false));
+
+		StyleRange[] styles = content.getLineStyles(0);
+		assertEquals(3, styles.length);
+		assertStyle(styles[0], 0, 3, true);
+		assertStyle(styles[1], 3, 2, false);
+		assertStyle(styles[2], 5, 2, true);
+
+		// The first style continues past the line delimiter.
+		styles = content.getLineStyles(1);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], LINE_LENGTH, 2, true);
+
+		// Styles replace the ones they overlap and merge with equal ones.
+		content.setStyleRange(createStyle(2, 4, true));
+		styles = content.getLineStyles(0);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], 0, 7, true);
+		assertEquals(0, content.getLineStyles(2).length);
+	}
+
+	@Test
+	public void testStyleOffsetsAfterReduce() {
+		int line50 = 50 * LINE_LENGTH;
+		content.setStyleRange(createStyle(line50, 4, true));
+		content.setStyleRange(createStyle(line50 + 5, 2, false));
+		content.setStyleRange(createStyle(300, 8, true));
+
+		int cleanTo = content.getReduceOffset(500);
+		content.replaceTextRange(0, cleanTo, "");
+
+		// The style which spanned the removed text is cut at the start.
+		StyleRange[] styles = content.getLineStyles(0);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], 0, 308 - cleanTo, true);
+
+		int line = 50 - cleanTo / LINE_LENGTH;
+		assertEquals("line 50", content.getLine(line));
+		styles = content.getLineStyles(line);
+		assertEquals(2, styles.length);
+		assertStyle(styles[0], line50 - cleanTo, 4, true);
+		assertStyle(styles[1], line50 - cleanTo + 5, 2, false);
+
+		// Appending after a reduce keeps the offsets consistent.
+		int start = content.getCharCount();
+		content.replaceTextRange(start, 0, "appended\n");
+		content.setStyleRange(createStyle(start, 8, true));
+		styles = content.getLineStyles(content.getLineCount() - 2);
+		assertEquals(1, styles.length);
+		assertStyle(styles[0], start, 8, true);
+		assertTrue(content.getLineStyles(line + 1).length == 0);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatType;
+import raptor.swt.chat.ChatDecorations;
+import raptor.swt.chat.ChatDecorations.Style;
+
+public class TestChatDecorations {
+	protected static final int FLAGS = ChatDecorations.UNDERLINE_COMMANDS
+			| ChatDecorations.UNDERLINE_URLS
+			| ChatDecorations.UNDERLINE_QUOTED_TEXT;
+
+	/**
+	 * Returns the decorations as "STYLE:text" separated by '|', which keeps
+	 * the expected values readable.
+	 */
+	protected static String decorate(ChatType type, String message) {
+		ChatEvent event = new ChatEvent(null, type, message);
+		ChatDecorations decorations = ChatDecorations.get(event, message,
+				FLAGS);
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < decorations.getCount(); i++) {
+			if (i > 0) {
+				result.append('|');
+			}
+			result.append(decorations.getStyle(i)).append(':').append(
+					message.substring(decorations.getStart(i), decorations
+							.getStart(i)
+							+ decorations.getLength(i)));
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void testHistory() {
+		assertEquals(
+				"COMMAND:81: + 1800 W 1700 Opponent     [ br  5   0] B23 Res Fri Dec 25, 19:44 EST 2009",
+				decorate(
+						ChatType.HISTORY,
+						"\nHistory for bob:\n                  Opponent      Type\n"
+								+ "81: + 1800 W 1700 Opponent     [ br  5   0] B23 Res Fri Dec 25, 19:44 EST 2009\n"));
+	}
+
+	@Test
+	public void testGamesSkipsLastLine() {
+		String line = "  1 1500 alice 1900 bob [ br  3   0]   2:31 -  2:22 (35-35) W: 12";
+		assertEquals("COMMAND:" + line, decorate(ChatType.GAMES, "\n"
+				+ line + "\n  1 games displayed. W: 1"));
+	}
+
+	@Test
+	public void testJournal() {
+		assertEquals(
+				"COMMAND:%01: bob 1639 alice 1690 [ br  5   0] C11 Res 0-1",
+				decorate(ChatType.JOURNAL,
+						"\nJournal for bob:\n%01: bob 1639 alice 1690 [ br  5   0] C11 Res 0-1\n"));
+	}
+
+	@Test
+	public void testLinks() {
+		assertEquals("LINK:http://www.freechess.org/", decorate(
+				ChatType.TELL, "bob tells you: see http://www.freechess.org/."));
+		assertEquals("LINK:ficsgames.org/", decorate(ChatType.TELL,
+				"bob tells you: see ficsgames.org/ now"));
+		assertEquals("", decorate(ChatType.TELL,
+				"bob tells you: mail bob@example.com please"));
+	}
+
+	@Test
+	public void testQuotesAndNext() {
+		assertEquals("QUOTE:help", decorate(ChatType.TELL,
+				"bob tells you: type \"help\" please"));
+		assertEquals("NEXT:[next]", decorate(ChatType.UNKNOWN,
+				"Type [next] to see next page."));
+	}
+
+	@Test
+	public void testOutboundIsNotDecorated() {
+		assertEquals("", decorate(ChatType.OUTBOUND,
+				"tell bob see http://www.freechess.org"));
+	}
+
+	@Test
+	public void testCachedPerEvent() {
+		String message = "bob tells you: \"hi\" at www.freechess.org";
+		ChatEvent event = new ChatEvent(null, ChatType.TELL, message);
+		ChatDecorations decorations = ChatDecorations.get(event, message,
+				FLAGS);
+		assertSame(decorations, ChatDecorations.get(event, message, FLAGS));
+		assertTrue(decorations != ChatDecorations.get(event, message,
+				ChatDecorations.UNDERLINE_URLS));
+		assertEquals(Style.QUOTE, decorations.getStyle(0));
+		assertEquals(Style.LINK, decorations.getStyle(1));
+	}
+}
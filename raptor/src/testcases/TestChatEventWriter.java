@@ -0,0 +1,174 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatEventReader;
+import raptor.chat.ChatEventUtils;
+import raptor.chat.ChatEventWriter;
+import raptor.chat.ChatType;
+
+public class TestChatEventWriter {
+	protected static ChatEvent createEvent(long time, ChatType type,
+			String source, String channel, String message) {
+		ChatEvent result = new ChatEvent(source, type, message);
+		result.setTime(time);
+		result.setChannel(channel);
+		return result;
+	}
+
+	protected static void assertSameEvent(ChatEvent expected, ChatEvent actual) {
+		assertEquals(expected.getTime(), actual.getTime());
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getSource(), actual.getSource());
+		assertEquals(expected.getChannel(), actual.getChannel());
+		assertEquals(expected.getGameId(), actual.getGameId());
+		assertEquals(expected.getMessage(), actual.getMessage());
+	}
+
+	protected static List<ChatEvent> readAll(byte[] bytes) throws IOException {
+		List<ChatEvent> result = new ArrayList<ChatEvent>();
+		ChatEventReader reader = new ChatEventReader(new ByteArrayInputStream(
+				bytes));
+		ChatEvent event;
+		while ((event = reader.read()) != null) {
+			result.add(event);
+		}
+		return result;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<ChatEvent> events = new ArrayList<ChatEvent>();
+		events.add(createEvent(1300000000000L, ChatType.CHANNEL_TELL, "bob",
+				"24", "bob(24): hello\nsecond line"));
+		events.add(createEvent(1300000000500L, ChatType.TELL, "bob", null,
+				"bob tells you: caf\u00e9 \u2654 \ud83d\ude00"));
+		// Out of order times and empty strings.
+		events.add(createEvent(1299999999000L, ChatType.TELL, "", null, ""));
+		events.add(createEvent(0, null, null, null, null));
+		ChatEvent kibitz = createEvent(1300000001000L, ChatType.KIBITZ,
+				"alice", null, "alice kibitzes: nice");
+		kibitz.setGameId("123");
+		events.add(kibitz);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChatEventWriter writer = new ChatEventWriter(out);
+		int written = 0;
+		for (ChatEvent event : events) {
+			written += writer.write(event);
+		}
+		assertEquals(out.size(), written);
+
+		List<ChatEvent> read = readAll(out.toByteArray());
+		assertEquals(events.size(), read.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertSameEvent(events.get(i), read.get(i));
+		}
+	}
+
+	@Test
+	public void testAppendedBlocks() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<ChatEvent> events = new ArrayList<ChatEvent>();
+		// Each writer starts a block, and a block is started every
+		// MAX_STRINGS strings.
+		for (int block = 0; block < 3; block++) {
+			ChatEventWriter writer = new ChatEventWriter(out);
+			for (int i = 0; i < ChatEventWriter.MAX_STRINGS; i++) {
+				ChatEvent event = createEvent(1300000000000L + i * 1000L,
+						ChatType.TELL, "user" + (block * 100000 + i), null,
+						"message " + i);
+				writer.write(event);
+				events.add(event);
+			}
+		}
+
+		List<ChatEvent> read = readAll(out.toByteArray());
+		assertEquals(events.size(), read.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertSameEvent(events.get(i), read.get(i));
+		}
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChatEventWriter writer = new ChatEventWriter(out);
+		writer.write(createEvent(1300000000000L, ChatType.TELL, "bob", null,
+				"first"));
+		writer.write(createEvent(1300000001000L, ChatType.TELL, "bob", null,
+				"second"));
+		byte[] bytes = out.toByteArray();
+		byte[] truncated = new byte[bytes.length - 2];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+		ChatEventReader reader = new ChatEventReader(new ByteArrayInputStream(
+				truncated));
+		assertEquals("first", reader.read().getMessage());
+		boolean isThrown = false;
+		try {
+			reader.read();
+		} catch (IOException ioe) {
+			isThrown = true;
+		}
+		assertTrue(isThrown);
+	}
+
+	@Test
+	public void testConvertTextLog() throws IOException {
+		File textFile = File.createTempFile("TestChatEventWriter", ".txt");
+		File binaryFile = File.createTempFile("TestChatEventWriter", ".dat");
+		try {
+			ChatEvent event = createEvent(1300000000000L,
+					ChatType.CHANNEL_TELL, "bob", "24", "bob(24): a\nb");
+			FileWriter writer = new FileWriter(textFile);
+			writer.write(ChatEventUtils.serializeChatEvent(event) + "\n");
+			writer.write("not an event\n\n");
+			writer.write(ChatEventUtils.serializeChatEvent(event) + "\n");
+			writer.close();
+
+			assertEquals(2, ChatEventUtils.convertTextLog(textFile,
+					binaryFile));
+
+			// The text form reads null fields back as empty strings.
+			event = ChatEventUtils.deserializeChatEvent(ChatEventUtils
+					.serializeChatEvent(event));
+
+			ChatEventReader reader = new ChatEventReader(new FileInputStream(
+					binaryFile));
+			assertSameEvent(event, reader.read());
+			assertSameEvent(event, reader.read());
+			assertEquals(null, reader.read());
+			reader.close();
+		} finally {
+			textFile.delete();
+			binaryFile.delete();
+		}
+	}
+}
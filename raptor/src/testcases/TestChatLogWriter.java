@@ -0,0 +1,195 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatEventReader;
+import raptor.chat.ChatLogWriter;
+import raptor.chat.ChatType;
+
+public class TestChatLogWriter {
+	protected static final long START = 1300000000000L;
+	protected static final long DAY = 24 * 60 * 60 * 1000L;
+
+	protected File directory;
+	protected SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+	protected SimpleDateFormat timestampFormat = new SimpleDateFormat(
+			"yyyy-MM-dd HH:mm");
+
+	protected static ChatEvent createEvent(long time, String message) {
+		ChatEvent result = new ChatEvent();
+		result.setTime(time);
+		result.setType(ChatType.TELL);
+		result.setSource("alice");
+		result.setMessage(message);
+		return result;
+	}
+
+	protected static List<String> readLines(File file) throws IOException {
+		List<String> result = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				result.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	protected String line(long time, String message) {
+		return "[" + timestampFormat.format(new Date(time)) + "] " + message;
+	}
+
+	protected File rotated(String day) {
+		return new File(directory, "chat-" + day + ".log");
+	}
+
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"),
+				"TestChatLogWriter" + System.nanoTime());
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		ChatLogWriter.getInstance().flush();
+		TestChatStore.deleteAll(directory);
+	}
+
+	@Test
+	public void testFlush() throws IOException {
+		ChatLogWriter writer = ChatLogWriter.getInstance();
+		File file = new File(directory, "chat.log");
+		for (int i = 0; i < 3; i++) {
+			writer.writeLogLine(file.getPath(), createEvent(START + i * 1000L,
+					"Line " + i));
+		}
+		writer.flush();
+
+		List<String> lines = readLines(file);
+		assertEquals(3, lines.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(line(START + i * 1000L, "Line " + i), lines.get(i));
+		}
+	}
+
+	@Test
+	public void testFlushSerialized() throws IOException {
+		ChatLogWriter writer = ChatLogWriter.getInstance();
+		File file = new File(directory, "events.dat");
+		writer.writeSerialized(file.getPath(), createEvent(START, "First"));
+		writer.writeSerialized(file.getPath(), createEvent(START + 1000L,
+				"Second"));
+		writer.flush();
+
+		ChatEventReader reader = new ChatEventReader(new FileInputStream(file));
+		try {
+			ChatEvent event = reader.read();
+			assertEquals("First", event.getMessage());
+			assertEquals(START, event.getTime());
+			event = reader.read();
+			assertEquals("Second", event.getMessage());
+			assertEquals(START + 1000L, event.getTime());
+			assertNull(reader.read());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testDelete() {
+		ChatLogWriter writer = ChatLogWriter.getInstance();
+		File file = new File(directory, "chat.log");
+		writer.writeLogLine(file.getPath(), createEvent(START, "Line"));
+		writer.delete(file.getPath());
+		writer.flush();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testDailyRotation() throws IOException {
+		ChatLogWriter writer = ChatLogWriter.getInstance();
+		File file = new File(directory, "chat.log");
+		long rotations = writer.getRotationCount();
+
+		writer.writeLogLine(file.getPath(), createEvent(START, "Day 0"));
+		writer.writeLogLine(file.getPath(), createEvent(START + 60000L,
+				"Day 0 again"));
+		writer.writeLogLine(file.getPath(), createEvent(START + DAY, "Day 1"));
+		writer.writeLogLine(file.getPath(), createEvent(START + 2 * DAY,
+				"Day 2"));
+		writer.flush();
+
+		assertEquals(rotations + 2, writer.getRotationCount());
+		String day0 = dayFormat.format(new Date(START));
+		String day1 = dayFormat.format(new Date(START + DAY));
+
+		List<String> lines = readLines(rotated(day0));
+		assertEquals(2, lines.size());
+		assertEquals(line(START, "Day 0"), lines.get(0));
+		assertEquals(line(START + 60000L, "Day 0 again"), lines.get(1));
+
+		lines = readLines(rotated(day1));
+		assertEquals(1, lines.size());
+		assertEquals(line(START + DAY, "Day 1"), lines.get(0));
+
+		lines = readLines(file);
+		assertEquals(1, lines.size());
+		assertEquals(line(START + 2 * DAY, "Day 2"), lines.get(0));
+	}
+
+	@Test
+	public void testRotationSuffix() throws IOException {
+		ChatLogWriter writer = ChatLogWriter.getInstance();
+		File file = new File(directory, "chat.log");
+		String day0 = dayFormat.format(new Date(START));
+		FileWriter existing = new FileWriter(rotated(day0));
+		existing.write("Existing\n");
+		existing.close();
+
+		writer.writeLogLine(file.getPath(), createEvent(START, "Day 0"));
+		writer.writeLogLine(file.getPath(), createEvent(START + DAY, "Day 1"));
+		writer.flush();
+
+		assertEquals("Existing", readLines(rotated(day0)).get(0));
+		File suffixed = new File(directory, "chat-" + day0 + "-1.log");
+		assertTrue(suffixed.exists());
+		assertEquals(line(START, "Day 0"), readLines(suffixed).get(0));
+		assertEquals(line(START + DAY, "Day 1"), readLines(file).get(0));
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatEventUtils;
+import raptor.chat.ChatLogWriter;
+import raptor.chat.ChatQuery;
+import raptor.chat.ChatStore;
+import raptor.chat.ChatType;
+
+public class TestChatStore {
+	protected static final long START = 1300000000000L;
+	protected static final int EVENTS = 20000;
+	protected static final String[] SOURCES = { "alice", "bob", "bobby",
+			"carol" };
+
+	protected File directory;
+
+	protected static void deleteAll(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteAll(child);
+			}
+		}
+		file.delete();
+	}
+
+	protected static ChatEvent createEvent(int i) {
+		ChatEvent result = new ChatEvent();
+		result.setTime(START + i * 1000L);
+		if (i % 3 == 0) {
+			result.setType(ChatType.CHANNEL_TELL);
+			result.setChannel(String.valueOf(i % 7));
+		} else {
+			result.setType(ChatType.TELL);
+		}
+		result.setSource(SOURCES[i % SOURCES.length]);
+		result.setMessage("Message number " + i
+				+ (i % 1000 == 0 ? " with a rareword" : ""));
+		return result;
+	}
+
+	protected ChatStore createStore() {
+		ChatStore result = new ChatStore(directory, 0);
+		assertTrue(result.awaitLoaded(30000));
+		return result;
+	}
+
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"),
+				"TestChatStore" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() {
+		ChatLogWriter.getInstance().flush();
+		deleteAll(directory);
+	}
+
+	@Test
+	public void testSearch() {
+		ChatStore store = createStore();
+		for (int i = 0; i < EVENTS; i++) {
+			store.append(createEvent(i));
+		}
+		assertEquals(EVENTS, store.getEventCount());
+
+		ChatQuery query = new ChatQuery();
+		query.setTypes(ChatType.TELL);
+		query.setSource("BOB");
+		query.setLimit(50);
+		List<ChatEvent> result = store.search(query);
+		assertEquals(50, result.size());
+		assertEquals("Message number 19997", result.get(49).getMessage());
+		for (ChatEvent event : result) {
+			assertEquals("bob", event.getSource());
+			assertEquals(ChatType.TELL, event.getType());
+		}
+
+		query.setSourcePrefix(true);
+		query.setLimit(0);
+		assertEquals(6667, store.search(query).size());
+
+		query = new ChatQuery();
+		query.setWords("rareword");
+		query.setFromTime(START + 10000 * 1000L);
+		result = store.search(query);
+		assertEquals(10, result.size());
+		assertEquals("Message number 10000 with a rareword", result.get(0)
+				.getMessage());
+
+		query = new ChatQuery();
+		query.setFromTime(START + 100 * 1000L);
+		query.setToTime(START + 110 * 1000L);
+		result = store.search(query);
+		assertEquals(10, result.size());
+		assertEquals("Message number 100", result.get(0).getMessage());
+
+		query = new ChatQuery();
+		query.setTypes(ChatType.CHANNEL_TELL);
+		query.setChannel("3");
+		query.setPattern(Pattern.compile(".*number 1999\\d"));
+		result = store.search(query);
+		assertEquals(1, result.size());
+		assertEquals("Message number 19995", result.get(0).getMessage());
+
+		query = new ChatQuery();
+		query.setText("umber 1234");
+		assertEquals(11, store.search(query).size());
+		store.dispose();
+	}
+
+	@Test
+	public void testConvertsTextSegments() throws IOException {
+		directory.mkdirs();
+		FileWriter writer = new FileWriter(new File(directory,
+				"segment-00001.txt"));
+		for (int i = 0; i < 100; i++) {
+			writer.write(ChatEventUtils.serializeChatEvent(createEvent(i))
+					+ "\n");
+		}
+		writer.close();
+
+		ChatStore store = createStore();
+		assertEquals(100, store.getEventCount());
+		assertTrue(!new File(directory, "segment-00001.txt").exists());
+
+		ChatQuery query = new ChatQuery();
+		query.setWords("rareword");
+		List<ChatEvent> result = store.search(query);
+		assertEquals(1, result.size());
+		assertEquals("Message number 0 with a rareword", result.get(0)
+				.getMessage());
+		store.dispose();
+	}
+
+	@Test
+	public void testUnknownEventsNotWordIndexed() {
+		ChatStore store = createStore();
+		ChatEvent event = createEvent(1000);
+		event.setType(ChatType.UNKNOWN);
+		store.append(event);
+		store.append(createEvent(2000));
+
+		ChatQuery query = new ChatQuery();
+		query.setWords("rareword");
+		List<ChatEvent> result = store.search(query);
+		assertEquals(1, result.size());
+		assertEquals(ChatType.TELL, result.get(0).getType());
+
+		query = new ChatQuery();
+		query.setTypes(ChatType.UNKNOWN);
+		query.setPattern(Pattern.compile(".*rareword"));
+		assertEquals(1, store.search(query).size());
+		store.dispose();
+	}
+
+	@Test
+	public void testReopenAndClear() {
+		ChatStore store = createStore();
+		for (int i = 0; i < EVENTS; i++) {
+			store.append(createEvent(i));
+		}
+		store.dispose();
+		ChatLogWriter.getInstance().flush();
+
+		store = createStore();
+		assertEquals(EVENTS, store.getEventCount());
+		store.append(createEvent(EVENTS));
+
+		ChatQuery query = new ChatQuery();
+		query.setWords("rareword");
+		List<ChatEvent> result = store.search(query);
+		assertEquals(EVENTS / 1000 + 1, result.size());
+		assertEquals("Message number 0 with a rareword", result.get(0)
+				.getMessage());
+		assertEquals("Message number 20000 with a rareword", result.get(
+				result.size() - 1).getMessage());
+
+		store.clear();
+		assertEquals(0, store.getEventCount());
+		assertEquals(0, store.search(new ChatQuery()).size());
+		store.dispose();
+		ChatLogWriter.getInstance().flush();
+
+		store = createStore();
+		assertEquals(0, store.getEventCount());
+		store.dispose();
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import raptor.chess.Variant;
+import raptor.engine.uci.UCIMove;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.service.EvaluationCacheService;
+import raptor.service.EvaluationCacheService.Evaluation;
+
+public class TestEvaluationCacheService {
+	protected static final int MAX_ENTRIES = 3;
+
+	protected File file;
+
+	protected static EvaluationCacheService createCache(File file) {
+		return new EvaluationCacheService(file, MAX_ENTRIES) {
+			@Override
+			protected void scheduleSave() {
+				// Saved by dispose.
+			}
+		};
+	}
+
+	protected static ScoreInfo createScore(int valueInCentipawns) {
+		ScoreInfo result = new ScoreInfo();
+		result.setValueInCentipawns(valueInCentipawns);
+		return result;
+	}
+
+	protected static BestLineFoundInfo createBestLine(String... moves) {
+		UCIMove[] uciMoves = new UCIMove[moves.length];
+		for (int i = 0; i < moves.length; i++) {
+			uciMoves[i] = new UCIMove(moves[i]);
+		}
+		BestLineFoundInfo result = new BestLineFoundInfo();
+		result.setMoves(uciMoves);
+		return result;
+	}
+
+	@Before
+	public void setUp() {
+		file = new File(System.getProperty("java.io.tmpdir"),
+				"TestEvaluationCacheService" + System.nanoTime() + ".dat");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testHits() {
+		EvaluationCacheService cache = createCache(file);
+		assertNull(cache.get(1, Variant.classic));
+		assertEquals(0, cache.getDepth(1, Variant.classic));
+
+		assertTrue(cache.put(1, Variant.classic, "engine", 12,
+				createScore(35), createBestLine("e2e4", "e7e5")));
+		Evaluation evaluation = cache.get(1, Variant.classic);
+		assertEquals(12, evaluation.getDepth());
+		assertEquals(35, evaluation.getValueInCentipawns());
+		assertEquals("e2e4 e7e5", evaluation.getPv());
+		assertEquals("engine", evaluation.getEngineName());
+		assertTrue(evaluation.isCoordinatePv());
+		assertEquals(3, evaluation.toUCIInfos().length);
+
+		// The same position in another variant is a different entry.
+		assertNull(cache.get(1, Variant.wild));
+		assertNull(cache.get(2, Variant.classic));
+	}
+
+	@Test
+	public void testIgnoredIterations() {
+		EvaluationCacheService cache = createCache(file);
+		ScoreInfo bound = createScore(50);
+		bound.setLowerBoundScore(true);
+		assertFalse(cache.put(1, Variant.classic, "engine", 12, bound,
+				createBestLine("e2e4")));
+		assertFalse(cache.put(1, Variant.classic, "engine", 12,
+				createScore(50), createBestLine()));
+		assertFalse(cache.put(1, Variant.classic, "engine", 0,
+				createScore(50), createBestLine("e2e4")));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testDepthReplacement() {
+		EvaluationCacheService cache = createCache(file);
+		assertTrue(cache.put(1, Variant.classic, "engine", 12,
+				createScore(35), createBestLine("e2e4")));
+		assertFalse(cache.put(1, Variant.classic, "engine", 12,
+				createScore(10), createBestLine("d2d4")));
+		assertFalse(cache.put(1, Variant.classic, "engine", 8,
+				createScore(10), createBestLine("d2d4")));
+		assertEquals(35, cache.get(1, Variant.classic).getValueInCentipawns());
+
+		assertTrue(cache.put(1, Variant.classic, "other", 20,
+				createScore(-15), createBestLine("c2c4")));
+		Evaluation evaluation = cache.get(1, Variant.classic);
+		assertEquals(20, evaluation.getDepth());
+		assertEquals(-15, evaluation.getValueInCentipawns());
+		assertEquals("c2c4", evaluation.getPv());
+		assertEquals("other", evaluation.getEngineName());
+		assertEquals(1, cache.getSize());
+	}
+
+	@Test
+	public void testEviction() {
+		EvaluationCacheService cache = createCache(file);
+		for (long hash = 1; hash <= MAX_ENTRIES; hash++) {
+			cache.put(hash, Variant.classic, "engine", 10, 0, 0, "e2e4", true);
+		}
+		// Using 1 makes 2 the least recently used.
+		assertTrue(cache.get(1, Variant.classic) != null);
+		cache.put(4, Variant.classic, "engine", 10, 0, 0, "e2e4", true);
+
+		assertEquals(MAX_ENTRIES, cache.getSize());
+		assertNull(cache.get(2, Variant.classic));
+		assertTrue(cache.get(1, Variant.classic) != null);
+		assertTrue(cache.get(3, Variant.classic) != null);
+		assertTrue(cache.get(4, Variant.classic) != null);
+	}
+
+	@Test
+	public void testSaveAndLoad() {
+		EvaluationCacheService cache = createCache(file);
+		cache.put(1, Variant.classic, "engine", 10, 25, 0, "e2e4", true);
+		cache.put(2, Variant.crazyhouse, "xboard engine", 14, 0, 3,
+				"1. e4 e5", false);
+		cache.dispose();
+		assertTrue(file.exists());
+
+		EvaluationCacheService loaded = createCache(file);
+		assertEquals(2, loaded.getSize());
+		assertEquals(25, loaded.get(1, Variant.classic)
+				.getValueInCentipawns());
+		Evaluation evaluation = loaded.get(2, Variant.crazyhouse);
+		assertEquals(14, evaluation.getDepth());
+		assertEquals(3, evaluation.getMateInMoves());
+		assertEquals("1. e4 e5", evaluation.getPv());
+		assertFalse(evaluation.isCoordinatePv());
+		assertNull(evaluation.toUCIInfos());
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import raptor.util.ListenerList;
+import raptor.util.ListenerList.Notification;
+
+public class TestListenerList {
+	@Test
+	public void testFireInOrder() {
+		final ListenerList<String> listeners = new ListenerList<String>("test");
+		listeners.add("a");
+		listeners.add("b");
+		listeners.add("c");
+		assertTrue(listeners.remove("b"));
+		assertFalse(listeners.remove("b"));
+
+		final List<String> delivered = new ArrayList<String>();
+		listeners.fire(new Notification<String>() {
+			public void deliver(String listener) {
+				delivered.add(listener);
+				// Changes made while firing apply to the next fire.
+				listeners.add(listener + "2");
+			}
+		});
+		assertEquals("[a, c]", delivered.toString());
+		assertEquals(4, listeners.size());
+
+		List<String> iterated = new ArrayList<String>();
+		for (String listener : listeners) {
+			iterated.add(listener);
+		}
+		assertEquals("[a, c, a2, c2]", iterated.toString());
+	}
+
+	@Test
+	public void testIteratorIsSnapshot() {
+		ListenerList<String> listeners = new ListenerList<String>("test");
+		listeners.add("a");
+		Iterator<String> iterator = listeners.iterator();
+		listeners.clear();
+		assertTrue(listeners.isEmpty());
+		assertEquals("a", iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testTimings() {
+		ListenerList<String> listeners = new ListenerList<String>("test");
+		listeners.add("slow");
+		listeners.add("fast");
+		for (int i = 0; i < 3; i++) {
+			listeners.fire(new Notification<String>() {
+				public void deliver(String listener) {
+					if (listener.equals("slow")) {
+						try {
+							Thread.sleep(5);
+						} catch (InterruptedException ie) {
+						}
+					}
+				}
+			});
+		}
+		String timings = listeners.getTimings();
+		assertTrue(timings.startsWith("test slow: calls=3 "));
+		assertTrue(timings.contains("test fast: calls=3 "));
+	}
+}
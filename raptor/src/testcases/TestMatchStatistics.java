@@ -0,0 +1,96 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import raptor.enginematch.MatchStatistics;
+
+public class TestMatchStatistics {
+	protected static final double DELTA = 1e-3;
+
+	protected static MatchStatistics create(int wins, int losses, int draws) {
+		MatchStatistics result = new MatchStatistics();
+		for (int i = 0; i < wins; i++) {
+			result.addResult(1.0);
+		}
+		for (int i = 0; i < losses; i++) {
+			result.addResult(0.0);
+		}
+		for (int i = 0; i < draws; i++) {
+			result.addResult(0.5);
+		}
+		return result;
+	}
+
+	@Test
+	public void testElo() {
+		assertEquals(0.0, MatchStatistics.scoreToElo(0.5), DELTA);
+		assertEquals(190.849, MatchStatistics.scoreToElo(0.75), DELTA);
+		assertEquals(-190.849, MatchStatistics.scoreToElo(0.25), DELTA);
+		assertEquals(0.75, MatchStatistics.eloToScore(190.849), 1e-6);
+
+		MatchStatistics statistics = create(30, 20, 50);
+		assertEquals(100, statistics.getGames());
+		assertEquals(0.55, statistics.getScore(), 1e-9);
+		assertEquals(34.860, statistics.getEloDifference(), DELTA);
+		assertEquals(48.470, statistics.getEloErrorMargin(), DELTA);
+		assertEquals(0.92135, statistics.getLikelihoodOfSuperiority(), 1e-5);
+	}
+
+	@Test
+	public void testNoGames() {
+		MatchStatistics statistics = new MatchStatistics();
+		assertEquals(0.5, statistics.getScore(), 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, statistics
+				.getEloErrorMargin(), 0.0);
+		assertEquals(0.5, statistics.getLikelihoodOfSuperiority(), 0.0);
+	}
+
+	@Test
+	public void testSprt() {
+		MatchStatistics statistics = create(30, 20, 50);
+		assertEquals(MatchStatistics.SPRT_CONTINUE, statistics
+				.getSprtResult());
+		assertEquals(0.0, statistics.getSprtLlr(), 0.0);
+
+		statistics.setSprt(0, 5, 0.05, 0.05);
+		assertEquals(0.2725, statistics.getSprtLlr(), 1e-4);
+		assertEquals(MatchStatistics.SPRT_CONTINUE, statistics
+				.getSprtResult());
+
+		statistics = create(600, 400, 1000);
+		statistics.setSprt(0, 5, 0.05, 0.05);
+		assertEquals(5.4509, statistics.getSprtLlr(), 1e-4);
+		assertEquals(MatchStatistics.SPRT_ACCEPT_H1, statistics
+				.getSprtResult());
+
+		statistics = create(400, 600, 1000);
+		statistics.setSprt(0, 5, 0.05, 0.05);
+		assertEquals(MatchStatistics.SPRT_ACCEPT_H0, statistics
+				.getSprtResult());
+	}
+
+	@Test
+	public void testInvalidSprt() {
+		try {
+			new MatchStatistics().setSprt(5, 0, 0.05, 0.05);
+			fail("elo1 must be above elo0");
+		} catch (IllegalArgumentException iae) {
+		}
+	}
+}
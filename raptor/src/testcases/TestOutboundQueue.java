@@ -0,0 +1,162 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import raptor.connector.ics.OutboundQueue;
+import raptor.connector.ics.OutboundQueue.Lane;
+
+public class TestOutboundQueue {
+	/**
+	 * Records the batches written.
+	 */
+	protected static class RecordingSender implements OutboundQueue.Sender {
+		protected List<String> batches = new ArrayList<String>();
+		protected List<Boolean> isResettingIdleTimes = new ArrayList<Boolean>();
+
+		public synchronized void send(String text, boolean isResettingIdleTime) {
+			batches.add(text);
+			isResettingIdleTimes.add(isResettingIdleTime);
+			notifyAll();
+		}
+
+		public void onSendError(Throwable t) {
+			t.printStackTrace();
+		}
+
+		protected synchronized List<String> awaitBatches(int count)
+				throws InterruptedException {
+			long end = System.currentTimeMillis() + 5000;
+			while (batches.size() < count && System.currentTimeMillis() < end) {
+				wait(100);
+			}
+			return new ArrayList<String>(batches);
+		}
+	}
+
+	protected RecordingSender sender = new RecordingSender();
+	protected OutboundQueue queue = new OutboundQueue("test", sender);
+
+	@After
+	public void tearDown() {
+		queue.stop();
+	}
+
+	@Test
+	public void testGetLane() {
+		assertEquals(Lane.MOVE, OutboundQueue.getLane("e4"));
+		assertEquals(Lane.MOVE, OutboundQueue.getLane("Nxf3+"));
+		assertEquals(Lane.MOVE, OutboundQueue.getLane("e8=Q"));
+		assertEquals(Lane.MOVE, OutboundQueue.getLane("O-O-O"));
+		assertEquals(Lane.MOVE, OutboundQueue.getLane("P@e5"));
+		assertEquals(Lane.CHAT, OutboundQueue.getLane("tell bob hi"));
+		assertEquals(Lane.CHAT, OutboundQueue.getLane("$$xtell bob hi"));
+		assertEquals(Lane.CHAT, OutboundQueue.getLane("24 hello"));
+		assertEquals(Lane.GAME, OutboundQueue.getLane("draw"));
+		assertEquals(Lane.GAME, OutboundQueue.getLane("seek 5 0"));
+		assertEquals(Lane.GAME, OutboundQueue.getLane("1234 hello"));
+	}
+
+	@Test
+	public void testOrderAndCoalescing() throws InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			queue.add("tell bob " + i + "\n", Lane.CHAT, true);
+		}
+		queue.add("draw\n", Lane.GAME, true);
+		queue.add("e4\n", Lane.MOVE, true);
+		queue.add("abort\n", Lane.GAME, true);
+		queue.add("Nf3\n", Lane.MOVE, true);
+		assertEquals(10, queue.getDepth(Lane.CHAT));
+		queue.start();
+
+		// Moves and game commands in the order they were added, then the
+		// chat allowed in a tick, are written as one batch.
+		List<String> batches = sender.awaitBatches(3);
+		assertEquals(3, batches.size());
+		assertEquals("draw\ne4\nabort\nNf3\ntell bob 0\ntell bob 1\n"
+				+ "tell bob 2\ntell bob 3\n", batches.get(0));
+		assertEquals("tell bob 4\ntell bob 5\ntell bob 6\ntell bob 7\n",
+				batches.get(1));
+		assertEquals("tell bob 8\ntell bob 9\n", batches.get(2));
+
+		assertEquals(2, queue.getSentCount(Lane.MOVE));
+		assertEquals(2, queue.getSentCount(Lane.GAME));
+		assertEquals(10, queue.getSentCount(Lane.CHAT));
+		assertEquals(0, queue.getDepth(Lane.CHAT));
+	}
+
+	@Test
+	public void testGameCommandBeforeMove() throws InterruptedException {
+		queue.add("tell bob hi\n", Lane.CHAT, true);
+		queue.add("$$back\n", Lane.GAME, false);
+		queue.add("$$forward\n", Lane.GAME, false);
+		queue.add("e4\n", Lane.MOVE, true);
+		queue.add("$$back\n", Lane.GAME, false);
+		queue.start();
+
+		// The move overtakes chat but not the game commands around it.
+		assertEquals("$$back\n$$forward\ne4\n$$back\ntell bob hi\n", sender
+				.awaitBatches(1).get(0));
+	}
+
+	@Test
+	public void testStopSendsQueued() throws InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			queue.add("tell bob " + i + "\n", Lane.CHAT, true);
+		}
+		queue.start();
+		queue.stop();
+
+		// Chat is not throttled while stopping, so nothing is dropped.
+		StringBuilder sent = new StringBuilder();
+		for (String batch : sender.awaitBatches(0)) {
+			sent.append(batch);
+		}
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			expected.append("tell bob " + i + "\n");
+		}
+		assertEquals(expected.toString(), sent.toString());
+		assertEquals(10, queue.getSentCount(Lane.CHAT));
+		assertEquals(0, queue.getDepth(Lane.CHAT));
+		assertFalse(queue.isRunning());
+	}
+
+	@Test
+	public void testIdleTime() throws InterruptedException {
+		queue.add("$$games\n", Lane.GAME, false);
+		queue.add("$$who\n", Lane.GAME, false);
+		queue.start();
+		assertEquals("$$games\n$$who\n", sender.awaitBatches(1).get(0));
+		assertFalse(sender.isResettingIdleTimes.get(0));
+
+		RecordingSender mixedSender = new RecordingSender();
+		OutboundQueue mixedQueue = new OutboundQueue("mixed", mixedSender);
+		mixedQueue.add("$$games\n", Lane.GAME, false);
+		mixedQueue.add("draw\n", Lane.GAME, true);
+		mixedQueue.start();
+		assertEquals("$$games\ndraw\n", mixedSender.awaitBatches(1).get(0));
+		assertTrue(mixedSender.isResettingIdleTimes.get(0));
+		mixedQueue.stop();
+	}
+}
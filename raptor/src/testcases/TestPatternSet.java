@@ -0,0 +1,77 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import raptor.util.PatternSet;
+import raptor.util.RegExUtils;
+
+public class TestPatternSet {
+	protected static final String[] PATTERNS = { "defprompt set\\.",
+			"set interface Raptor .*", "Style 12 set\\.", ".* has arrived\\.",
+			"(\\w+) says \\1", "Channel [0-9]+ is now open\\." };
+
+	protected static final String[] MESSAGES = { "defprompt set.",
+			"DEFPROMPT SET.", "defprompt set", "defprompt set.x",
+			"set interface Raptor 1.0", "set interface Raptor ",
+			"set interface raptor\nmore", "Set interface Raptor 1.0",
+			"set interface", "bob has arrived.", "bob has arrived",
+			"bob says bob", "bob says alice", "Channel 24 is now open.",
+			"Channel x is now open.", "", "Style 12 set." };
+
+	/**
+	 * Verifies matchesAny agrees with matching each pattern in turn.
+	 */
+	@Test
+	public void testMatchesLikeEachPattern() {
+		PatternSet set = new PatternSet(PATTERNS);
+		for (String message : MESSAGES) {
+			boolean expected = false;
+			for (String pattern : PATTERNS) {
+				expected |= RegExUtils.matches(pattern, message);
+			}
+			assertEquals(message, expected, set.matchesAny(message));
+		}
+	}
+
+	@Test
+	public void testEmptyPrefix() {
+		PatternSet set = new PatternSet(new String[] { ".*" });
+		assertTrue(set.matchesAny(""));
+		assertTrue(set.matchesAny("anything"));
+		assertFalse(PatternSet.empty().matchesAny("anything"));
+	}
+
+	@Test
+	public void testInvalidPatternsAreIgnored() {
+		PatternSet set = new PatternSet(new String[] { "(unclosed", "ok" });
+		assertTrue(set.matchesAny("OK"));
+		assertFalse(set.matchesAny("(unclosed"));
+	}
+
+	@Test
+	public void testWith() {
+		PatternSet set = new PatternSet(PATTERNS);
+		assertSame(set, set.with(PATTERNS.clone()));
+		PatternSet updated = set.with(new String[] { "defprompt set\\." });
+		assertTrue(updated.matchesAny("defprompt set."));
+		assertFalse(updated.matchesAny("bob has arrived."));
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import raptor.problemgen.PositionHashSet;
+
+public class TestPositionHashSet {
+	@Test
+	public void testCollisions() {
+		// These all fold to the same slot, so each probes past the others.
+		PositionHashSet set = new PositionHashSet();
+		for (long i = 1; i <= 1000; i++) {
+			assertTrue(set.add(i << 16));
+		}
+		for (long i = 1; i <= 1000; i++) {
+			assertFalse(set.add(i << 16));
+			assertTrue(set.contains(i << 16));
+		}
+		assertFalse(set.contains(1001L << 16));
+		assertFalse(set.contains(1));
+		assertEquals(1000, set.size());
+	}
+
+	@Test
+	public void testZero() {
+		PositionHashSet set = new PositionHashSet();
+		assertFalse(set.contains(0));
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		assertTrue(set.contains(0));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void testResize() {
+		PositionHashSet set = new PositionHashSet();
+		assertTrue(set.add(0));
+		for (long i = 1; i <= 200000; i++) {
+			assertTrue(set.add(i * 0x9E3779B97F4A7C15L));
+		}
+		assertEquals(200001, set.size());
+		for (long i = 1; i <= 200000; i++) {
+			assertTrue(set.contains(i * 0x9E3779B97F4A7C15L));
+		}
+		assertTrue(set.contains(0));
+		assertFalse(set.contains(200001 * 0x9E3779B97F4A7C15L));
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		PositionHashSet set = new PositionHashSet();
+		set.add(0);
+		for (long i = 1; i <= 5000; i++) {
+			set.add(i << 20);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		set.write(new DataOutputStream(bytes));
+
+		PositionHashSet read = new PositionHashSet();
+		read.add(1L << 20);
+		read.read(new DataInputStream(new ByteArrayInputStream(bytes
+				.toByteArray())));
+		assertEquals(5001, read.size());
+		assertTrue(read.contains(0));
+		for (long i = 1; i <= 5000; i++) {
+			assertTrue(read.contains(i << 20));
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import raptor.problemgen.PositionHashSet;
+import raptor.problemgen.ProblemGenerator;
+
+public class TestProblemGeneratorCheckpoint {
+	/**
+	 * Exposes the checkpoint state, which run() normally fills in.
+	 */
+	protected static class Generator extends ProblemGenerator {
+		protected Generator(String pgnFile, String outputPrefix) {
+			super(null, pgnFile, outputPrefix);
+		}
+
+		protected void open() throws IOException {
+			epdWriter = new FileWriter(epdFile, true);
+			pgnWriter = new FileWriter(pgnOutputFile, true);
+		}
+
+		protected void close() throws IOException {
+			epdWriter.close();
+			pgnWriter.close();
+		}
+
+		protected void write(String epd, String pgn) throws IOException {
+			epdWriter.write(epd);
+			pgnWriter.write(pgn);
+		}
+
+		protected void setProgress(int lastGameIndex, int lastGameStartLine,
+				int candidatesVerified, int problemsFound) {
+			this.lastGameIndex = lastGameIndex;
+			this.lastGameStartLine = lastGameStartLine;
+			this.candidatesVerified = candidatesVerified;
+			this.problemsFound = problemsFound;
+		}
+
+		protected void addUnfinishedGame(int gameIndex, int startLine) {
+			unfinishedGames.put(gameIndex, startLine);
+		}
+
+		protected PositionHashSet getVerifiedPositions() {
+			return verifiedPositions;
+		}
+
+		/**
+		 * Returns the games, candidates verified, problems found and the
+		 * lengths of the EPD and PGN outputs.
+		 */
+		protected long[] getState() {
+			return new long[] { numGames, candidatesVerified, problemsFound,
+					epdFile.length(), pgnOutputFile.length() };
+		}
+
+		protected int load() throws IOException {
+			return loadCheckpoint();
+		}
+
+		protected void save(boolean isComplete) throws IOException {
+			saveCheckpoint(isComplete);
+		}
+	}
+
+	protected File directory;
+	protected String pgnFile;
+	protected String prefix;
+
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"),
+				"TestProblemGeneratorCheckpoint" + System.nanoTime());
+		directory.mkdirs();
+		pgnFile = new File(directory, "games.pgn").getAbsolutePath();
+		prefix = new File(directory, "problems").getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Generator saved = new Generator(pgnFile, prefix);
+		assertEquals(1, saved.load());
+		saved.open();
+		saved.write("first problem\n", "[Event \"first\"]\n");
+		saved.setProgress(12, 300, 25, 1);
+		saved.addUnfinishedGame(9, 200);
+		saved.addUnfinishedGame(11, 260);
+		saved.getVerifiedPositions().add(0);
+		for (long i = 1; i <= 100; i++) {
+			saved.getVerifiedPositions().add(i << 16);
+		}
+		saved.save(false);
+		long[] state = saved.getState();
+
+		// Output written after the checkpoint is dropped when resuming.
+		saved.write("unverified problem\n", "[Event \"unverified\"]\n");
+		saved.close();
+
+		Generator loaded = new Generator(pgnFile, prefix);
+		assertEquals(200, loaded.load());
+		// The first unfinished game is where parsing resumes.
+		state[0] = 9;
+		assertTrue(Arrays.equals(state, loaded.getState()));
+		assertEquals(101, loaded.getVerifiedPositions().size());
+		assertTrue(loaded.getVerifiedPositions().contains(0));
+		assertTrue(loaded.getVerifiedPositions().contains(100L << 16));
+
+		loaded.open();
+		loaded.setProgress(12, 300, 25, 1);
+		loaded.save(true);
+		loaded.close();
+		assertEquals(-1, new Generator(pgnFile, prefix).load());
+	}
+
+	@Test
+	public void testOtherPgnFile() throws IOException {
+		Generator saved = new Generator(pgnFile, prefix);
+		saved.open();
+		saved.save(false);
+		saved.close();
+
+		try {
+			new Generator(pgnFile + ".other", prefix).load();
+			fail("The checkpoint belongs to " + pgnFile);
+		} catch (IOException ioe) {
+		}
+	}
+}
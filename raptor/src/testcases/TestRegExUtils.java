@@ -0,0 +1,60 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import raptor.util.RegExUtils;
+
+public class TestRegExUtils {
+	protected static void assertPrefix(String expected, String regularExpression) {
+		assertEquals(expected, RegExUtils.getLiteralPrefix(regularExpression));
+	}
+
+	@Test
+	public void testLiteralPrefix() {
+		assertPrefix("-- channel list:", "\\-\\- channel list\\:.*");
+		assertPrefix("bob tells you: ", "bob tells you\\: .*");
+		assertPrefix("Channel 24", "Channel 24.*");
+		assertPrefix("", ".* tells you\\: .*");
+		assertPrefix("plain", "plain");
+	}
+
+	@Test
+	public void testLiteralPrefixStopsAtOptionalCharacters() {
+		assertPrefix("a", "ab*c");
+		assertPrefix("a", "ab?c");
+		assertPrefix("ab", "abc{2}");
+		assertPrefix("", "\\d+x");
+	}
+
+	@Test
+	public void testNoLiteralPrefixForAlternationsOrFlags() {
+		assertPrefix("", "abc|abd");
+		assertPrefix("", "(?i)abc");
+		assertPrefix("", "(abc)");
+	}
+
+	@Test
+	public void testPrefixMatchesCaseInsensitively() {
+		String regularExpression = "\\-\\- Censor list\\:.*";
+		String message = "-- censor list: 2 names --";
+		String prefix = RegExUtils.getLiteralPrefix(regularExpression);
+		assertTrue(message.regionMatches(true, 0, prefix, 0, prefix.length()));
+		assertTrue(RegExUtils.matches(regularExpression, message));
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import raptor.connector.ics.timeseal.TimesealCodec;
+
+public class TestTimesealCodec {
+	protected static final byte[] KEY = "Timestamp (FICS) v1.0 - programmed by Henrik Gram."
+			.getBytes();
+
+	/**
+	 * The encoder TimesealSocketMessageProducer used before TimesealCodec,
+	 * kept here to check the codec is byte for byte compatible.
+	 */
+	protected static byte[] legacyCrypt(byte[] line, long timestamp) {
+		byte[] buffer = new byte[10000];
+		int length = legacyCrypt(line, timestamp, buffer);
+		byte[] result = new byte[length];
+		System.arraycopy(buffer, 0, result, 0, length);
+		return result;
+	}
+
+	protected static int legacyCrypt(byte[] line, long timestamp,
+			byte[] buffer) {
+		int length = line.length;
+		System.arraycopy(line, 0, buffer, 0, line.length);
+		buffer[length++] = 24;
+		byte[] stamp = Long.toString(timestamp).getBytes();
+		System.arraycopy(stamp, 0, buffer, length, stamp.length);
+		length += stamp.length;
+		buffer[length++] = 25;
+		int j = length;
+		for (length += 12 - length % 12; j < length;) {
+			buffer[j++] = 49;
+		}
+		for (int k = 0; k < length; k++) {
+			buffer[k] |= 0x80;
+		}
+		for (int i = 0; i < length; i += 12) {
+			byte b = buffer[i + 11];
+			buffer[i + 11] = buffer[i];
+			buffer[i] = b;
+			b = buffer[i + 9];
+			buffer[i + 9] = buffer[i + 2];
+			buffer[i + 2] = b;
+			b = buffer[i + 7];
+			buffer[i + 7] = buffer[i + 4];
+			buffer[i + 4] = b;
+		}
+		int keyIndex = 0;
+		for (int i = 0; i < length; i++) {
+			buffer[i] ^= KEY[keyIndex];
+			keyIndex = (keyIndex + 1) % KEY.length;
+		}
+		for (int i = 0; i < length; i++) {
+			buffer[i] -= 32;
+		}
+		buffer[length++] = -128;
+		buffer[length++] = 10;
+		return length;
+	}
+
+	protected static byte[] encode(String line, long timestamp) {
+		ByteBuffer dst = ByteBuffer.allocate(TimesealCodec
+				.getMaxEncodedLength(line.length()));
+		int length = new TimesealCodec().encode(ByteBuffer.wrap(line
+				.getBytes()), timestamp, dst);
+		byte[] result = new byte[length];
+		System.arraycopy(dst.array(), 0, result, 0, length);
+		return result;
+	}
+
+	protected static String strip(TimesealCodec codec, ByteBuffer buffer,
+			String text, int expectedAcks) {
+		buffer.put(text.getBytes());
+		buffer.flip();
+		assertEquals(expectedAcks, codec.stripAckRequests(buffer));
+		String result = new String(buffer.array(), buffer.position(), buffer
+				.remaining());
+		codec.retainPending(buffer);
+		return result;
+	}
+
+	@Test
+	public void testEncodeMatchesLegacy() {
+		String[] lines = { "", "e4", "1-0", "abcdefghi", "abcdefghijkl",
+				"tell 24 Premove heavy bullet play sends many small writes",
+				"$$ping", "\u00029" };
+		long[] timestamps = { 0, 7, 10, 999, 123456789L, Long.MAX_VALUE };
+		for (String line : lines) {
+			for (long timestamp : timestamps) {
+				assertArrayEquals(line + " " + timestamp, legacyCrypt(line
+						.getBytes(), timestamp), encode(line, timestamp));
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTrip() {
+		TimesealCodec codec = new TimesealCodec();
+		String[] lines = { "", "e4", "abcdefghijkl", "tell 24 hi there",
+				"set style 12" };
+		for (String line : lines) {
+			for (long timestamp = 0; timestamp < 100000; timestamp += 9973) {
+				byte[] encoded = encode(line, timestamp);
+				ByteBuffer src = ByteBuffer.wrap(encoded, 0, encoded.length
+						- TimesealCodec.TRAILER_LENGTH);
+				ByteBuffer dst = ByteBuffer.allocate(encoded.length);
+				assertEquals(timestamp, codec.decode(src, dst));
+				assertEquals(line, new String(dst.array(), 0, dst.position()));
+			}
+		}
+	}
+
+	@Test
+	public void testStripAckRequests() {
+		TimesealCodec codec = new TimesealCodec();
+		ByteBuffer buffer = ByteBuffer.allocate(1000);
+
+		assertEquals("fics% ", strip(codec, buffer, "\n\r[G]\n\rfics% ", 1));
+		assertEquals("a\n\rb", strip(codec, buffer,
+				"a\n\r[G]\n\r\n\r[G]\n\r\n\rb\n\r[G]\n\r", 3));
+
+		// A request split across two reads.
+		assertEquals("text\n\r", strip(codec, buffer, "text\n\r\n\r[G", 0));
+		assertEquals(4, buffer.position());
+		assertEquals("fics% ", strip(codec, buffer, "]\n\rfics% ", 1));
+
+		// A held back prefix that turns out to be text.
+		assertEquals("x", strip(codec, buffer, "x\n\r[", 0));
+		assertEquals("\n\r[x", strip(codec, buffer, "x", 0));
+
+		// Short tails are never held back.
+		assertEquals("line\n\r", strip(codec, buffer, "line\n\r", 0));
+		assertEquals(0, buffer.position());
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.UCIInfoLine;
+import raptor.engine.uci.UCIProtocolReader;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.ScoreInfo;
+
+public class TestUCIInfoLine {
+	protected static UCIInfoLine parse(String line) {
+		UCIInfoLine result = new UCIInfoLine();
+		byte[] bytes = line.getBytes();
+		result.parse(bytes, bytes.length);
+		return result;
+	}
+
+	@Test
+	public void testIterationLine() {
+		UCIInfoLine info = parse("info depth 12 seldepth 18 multipv 2 score cp -35 nodes 123456 nps 987654 time 125 pv e2e4 e7e5 g1f3");
+		assertEquals(12, info.getDepth());
+		assertEquals(18, info.getSelDepth());
+		assertEquals(2, info.getMultiPv());
+		assertEquals(-35, info.getScoreCentipawns());
+		assertEquals(123456, info.getNodes());
+		assertEquals(987654, info.getNodesPerSecond());
+		assertEquals(125, info.getTimeMillis());
+		assertEquals(3, info.getPvLength());
+		assertEquals("e2e4", info.getPvMove(0));
+		assertEquals("g1f3", info.getPvMove(2));
+		assertFalse(info.isLowerBound());
+	}
+
+	@Test
+	public void testPvFollowedByFields() {
+		UCIInfoLine info = parse("info pv d2d4 d7d5 score mate -3 upperbound hashfull 500");
+		assertEquals(2, info.getPvLength());
+		assertEquals(-3, info.getScoreMate());
+		assertTrue(info.isUpperBound());
+		assertEquals(500, info.getHashFull());
+		assertEquals(1, info.getMultiPv());
+	}
+
+	@Test
+	public void testProgressLine() {
+		UCIInfoLine info = parse("info currmove b1c3 currmovenumber 7 nodes 5000000000");
+		assertEquals(UCIInfoLine.CURRMOVE | UCIInfoLine.CURRMOVENUMBER
+				| UCIInfoLine.NODES, info.getFields());
+		assertEquals(7, info.getCurrMoveNumber());
+		assertEquals(5000000000L, info.getNodes());
+	}
+
+	@Test
+	public void testReuse() {
+		UCIInfoLine info = parse("info depth 3 score cp 10 lowerbound pv a2a3");
+		byte[] bytes = "info string hello  world".getBytes();
+		assertTrue(info.parse(bytes, bytes.length));
+		assertEquals(UCIInfoLine.STRING, info.getFields());
+		assertFalse(info.isLowerBound());
+		assertEquals(0, info.getPvLength());
+	}
+
+	@Test
+	public void testToInfos() {
+		UCIInfo[] infos = parse("info depth 5 score cp 20 lowerbound pv e2e4 e7e5")
+				.toInfos();
+		assertEquals(3, infos.length);
+		ScoreInfo score = (ScoreInfo) infos[1];
+		assertEquals(20, score.getValueInCentipawns());
+		assertTrue(score.isLowerBoundScore());
+		assertEquals("e7e5", ((BestLineFoundInfo) infos[2]).getMoves()[1]
+				.getValue());
+	}
+
+	@Test
+	public void testReaderLines() throws Exception {
+		UCIProtocolReader reader = new UCIProtocolReader(
+				new ByteArrayInputStream(
+						"id name Test\r\ninfo depth 1\n\nbestmove e2e4"
+								.getBytes()));
+		assertEquals("id name Test", reader.readLine());
+		assertTrue(reader.nextLine());
+		assertTrue(reader.lineStartsWith("info"));
+		assertEquals("", reader.readLine());
+		assertEquals("bestmove e2e4", reader.readLine());
+		assertNull(reader.readLine());
+	}
+}
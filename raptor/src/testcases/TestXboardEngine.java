@@ -3,8 +3,10 @@ package testcases;
 import org.junit.Assert;
 import org.junit.Test;
 
+import raptor.engine.uci.UCIBestMove;
+import raptor.engine.uci.UCIInfo;
+import raptor.engine.uci.UCIInfoListener;
 import raptor.engine.xboard.XboardEngine;
-import raptor.engine.xboard.XboardInfoListener;
 import raptor.util.RaptorLogger;
 
 public class TestXboardEngine {
@@ -17,9 +19,11 @@ public class TestXboardEngine {
 		engine.setProcessPath("gnuchess");
 		Assert.assertTrue(engine.connect());
 		Assert.assertTrue(engine.getEngineName().equals("GNU Chess 5.07"));
-		engine.analyze(new XboardInfoListener() {
-			public void engineSentInfo(String ply, String score, String time, String nodes,
-					String pv) {
+		engine.analyze(new UCIInfoListener() {
+			public void engineSentBestMove(UCIBestMove uciBestMove) {
+			}
+
+			public void engineSentInfo(UCIInfo[] infos) {
 				
 			}
 		});
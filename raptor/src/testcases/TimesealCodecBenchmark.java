@@ -0,0 +1,70 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2011 RaptorProject (http://code.google.com/p/raptor-chess-interface/)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import java.nio.ByteBuffer;
+
+import raptor.connector.ics.timeseal.TimesealCodec;
+
+/**
+ * A microbenchmark comparing TimesealCodec with the encoder it replaced. Run
+ * it as a Java application, optionally passing the number of iterations.
+ */
+public class TimesealCodecBenchmark {
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		byte[] line = "e4".getBytes();
+		TimesealCodec codec = new TimesealCodec();
+		ByteBuffer src = ByteBuffer.wrap(line);
+		ByteBuffer dst = ByteBuffer.allocate(TimesealCodec
+				.getMaxEncodedLength(1024));
+
+		for (int round = 0; round < 3; round++) {
+			long checksum = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				src.clear();
+				dst.clear();
+				checksum += codec.encode(src, i, dst);
+			}
+			long codecNanos = System.nanoTime() - start;
+
+			byte[] legacyBuffer = new byte[10000];
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				checksum += TestTimesealCodec.legacyCrypt(line, i,
+						legacyBuffer);
+			}
+			long legacyNanos = System.nanoTime() - start;
+
+			ByteBuffer inbound = ByteBuffer.allocate(4096);
+			byte[] text = "\n\r<12> rnbqkbnr pppppppp -------- -------- ----P--- -------- PPPP-PPP RNBQKBNR B 4 1 1 1 1 0 7 GuestA GuestB -1 1 0 39 39 60 60 1 P/e2-e4 (0:00) e4 0 0 0\n\r[G]\n\rfics% "
+					.getBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				inbound.clear();
+				inbound.put(text);
+				inbound.flip();
+				checksum += codec.stripAckRequests(inbound);
+			}
+			long stripNanos = System.nanoTime() - start;
+
+			System.out.println("Round " + round + ": encode "
+					+ (codecNanos / iterations) + " ns/line, legacy encode "
+					+ (legacyNanos / iterations) + " ns/line, strip acks "
+					+ (stripNanos / iterations) + " ns/read (" + checksum
+					+ ")");
+		}
+	}
+}